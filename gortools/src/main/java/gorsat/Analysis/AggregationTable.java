@@ -0,0 +1,667 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Per group aggregation state for the GROUP and GRANNO commands. Groups are keyed by a {@link GroupKeyTable} and the
+ * numeric accumulators of all groups are kept in flat primitive arrays indexed by group and aggregated column. Values
+ * needed for median, quantile, set, list and distinct aggregates are collected in {@link DoubleBuffer}s, and the
+ * aggregate columns are appended directly to a caller supplied builder.
+ * <p>
+ * In approximate mode the distinct counts, medians, quantiles and sets are computed from bounded size, mergeable
+ * sketches ({@link HyperLogLog}, {@link KllSketch}, {@link KllItemsSketch} and {@link HeavyHitters}) instead of from
+ * all the values of the group.
+ */
+public class AggregationTable {
+
+    /**
+     * The commands differ slightly in how some aggregates are presented.
+     */
+    public enum Style {
+        /** GROUP: medians of even sized float columns are averaged, sets and lists are truncated with ... */
+        GROUP,
+        /** GRANNO -range: sets and lists hold whole values up to the maximum length */
+        RANGE,
+        /** GRANNO: as RANGE but the variance is not clamped at zero */
+        GRANNO
+    }
+
+    // Rough heap cost of a group, of an aggregated cell of a group, of a collected string and of a sketch
+    private static final long GROUP_BYTES = 64;
+    private static final long CELL_BYTES = 56;
+    private static final long STRING_BYTES = 48;
+    private static final long SKETCH_BYTES = 4096;
+
+    private final GroupKeyTable keys;
+    private final int[] columns;
+    private final char[] types;
+    private final int numCols;
+    private final Style style;
+    private final boolean useCount, useCdist, useMax, useMin, useMed, useDis, useSet, useLis, useAvg, useStd, useSum;
+    private final boolean approximate;
+    private final double[] quantiles;
+    private final boolean collectNumbers;
+    private final boolean collectStrings;
+    private final boolean useDistinctSketch;
+    private final boolean useQuantileSketch;
+    private final boolean useSetSketch;
+    private final int setLen;
+    private final String sepVal;
+    private final long cellBytes;
+
+    private int capacity = 0;
+    private long totalBytes = 0;
+    private long[] groupBytes;
+    private long[] allCount;
+    private int[] lastPos;
+    private String[] lastChr;
+    private String[] line;
+    private HashSet<String>[] distinctRows;
+
+    private int[] ns;
+    private double[] sums;
+    private double[] sqSums;
+    private double[] fMin;
+    private double[] fMax;
+    private String[] aMin;
+    private String[] aMax;
+    private DoubleBuffer[] values;
+    private ArrayList<String>[] strings;
+    private StringBuilder[] rawList;
+    private HyperLogLog[] distinctSketch;
+    private KllSketch[] quantileSketch;
+    private KllItemsSketch<String>[] stringQuantileSketch;
+    private HeavyHitters<Double>[] numberSet;
+    private HeavyHitters<String>[] stringSet;
+
+    private final DoubleBuffer sortedValues = new DoubleBuffer(64);
+    private final ArrayList<String> sortedStrings = new ArrayList<>();
+    private final StringBuilder lineBuilder = new StringBuilder();
+
+    /**
+     * @param groupColumns the group columns
+     * @param columns      the aggregated columns in increasing order
+     * @param types        'a', 'i' or 'f' for each aggregated column
+     */
+    public AggregationTable(Style style, int[] groupColumns, int[] columns, char[] types, boolean useCount,
+                            boolean useCdist, boolean useMax, boolean useMin, boolean useMed, boolean useDis,
+                            boolean useSet, boolean useLis, boolean useAvg, boolean useStd, boolean useSum,
+                            int setLen, String sepVal) {
+        this(style, groupColumns, columns, types, useCount, useCdist, useMax, useMin, useMed, useDis, useSet, useLis,
+                useAvg, useStd, useSum, setLen, sepVal, false, new double[0]);
+    }
+
+    /**
+     * @param approximate use sketches for the distinct counts, medians, quantiles and sets
+     * @param quantiles   the quantiles to report for the numeric columns, values between 0 and 1
+     */
+    public AggregationTable(Style style, int[] groupColumns, int[] columns, char[] types, boolean useCount,
+                            boolean useCdist, boolean useMax, boolean useMin, boolean useMed, boolean useDis,
+                            boolean useSet, boolean useLis, boolean useAvg, boolean useStd, boolean useSum,
+                            int setLen, String sepVal, boolean approximate, double[] quantiles) {
+        this.style = style;
+        this.keys = new GroupKeyTable(groupColumns);
+        this.columns = columns;
+        this.types = types;
+        this.numCols = columns.length;
+        this.useCount = useCount;
+        this.useCdist = useCdist;
+        this.useMax = useMax;
+        this.useMin = useMin;
+        this.useMed = useMed;
+        this.useDis = useDis;
+        this.useSet = useSet;
+        this.useLis = useLis;
+        this.useAvg = useAvg;
+        this.useStd = useStd;
+        this.useSum = useSum;
+        this.approximate = approximate;
+        this.quantiles = quantiles;
+        boolean valueList = useLis && style != Style.GROUP;
+        this.collectNumbers = !approximate && (useDis || useMed || useSet || quantiles.length > 0 || valueList);
+        this.collectStrings = !approximate && (useDis || useMed || useSet || valueList);
+        this.useDistinctSketch = approximate && useDis;
+        this.useQuantileSketch = approximate && (useMed || quantiles.length > 0);
+        this.useSetSketch = approximate && useSet;
+        this.setLen = setLen;
+        this.sepVal = sepVal;
+        int sketches = (useDistinctSketch ? 1 : 0) + (useQuantileSketch ? 1 : 0) + (useSetSketch ? 1 : 0);
+        this.cellBytes = CELL_BYTES + sketches * SKETCH_BYTES;
+        ensureCapacity(16);
+    }
+
+    public GroupKeyTable keys() {
+        return keys;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public void clear() {
+        keys.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * @return a rough estimate of the heap used by the aggregation state of the current groups
+     */
+    public long estimatedBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Adds the row to its group.
+     *
+     * @return the group of the row
+     */
+    public int add(Row r) {
+        int before = keys.size();
+        int g = keys.group(r);
+        long bytes = 0;
+        if (g == before) {
+            initGroup(g);
+            bytes += GROUP_BYTES + 2L * keys.keyLength(g) + cellBytes * numCols;
+        }
+
+        allCount[g]++;
+        lastPos[g] = r.pos;
+        lastChr[g] = r.chr;
+        line[g] = null;
+        if (useCdist) {
+            String s = r.toString();
+            if (distinctRows[g].add(s)) bytes += STRING_BYTES + 2L * s.length();
+        }
+
+        int base = g * numCols;
+        for (int i = 0; i < numCols; i++) {
+            int k = base + i;
+            int j = columns[i];
+            if (types[i] == 'a') {
+                try {
+                    String v = r.colAsString(j).toString();
+                    if (collectStrings) {
+                        strings[k].add(v);
+                        bytes += STRING_BYTES + 2L * v.length();
+                    }
+                    if (useDistinctSketch) distinctSketch[k].add(v);
+                    if (useSetSketch) stringSet[k].add(v);
+                    if (useQuantileSketch && useMed) stringQuantileSketch[k].add(v);
+                    if (useLis && style == Style.GROUP) bytes += appendRaw(k, v);
+                    if (ns[k] == 0) {
+                        aMin[k] = v;
+                        aMax[k] = v;
+                    } else {
+                        if (v.compareTo(aMin[k]) < 0) aMin[k] = v;
+                        if (v.compareTo(aMax[k]) > 0) aMax[k] = v;
+                    }
+                    ns[k]++;
+                } catch (Exception e) {
+                    // values that can not be read are not aggregated
+                }
+            } else {
+                try {
+                    double v = r.colAsDouble(j);
+                    if (!Double.isNaN(v)) {
+                        if (collectNumbers) {
+                            values[k].add(v);
+                            bytes += 8;
+                        }
+                        if (useQuantileSketch) quantileSketch[k].add(v);
+                        if (useDistinctSketch) distinctSketch[k].add(v);
+                        if (useSetSketch) numberSet[k].add(v == 0.0 ? 0.0 : v);
+                        if (useLis && style == Style.GROUP) bytes += appendRaw(k, r.colAsString(j));
+                        sums[k] += v;
+                        sqSums[k] += v * v;
+                        if (ns[k] == 0) {
+                            fMin[k] = v;
+                            fMax[k] = v;
+                        } else {
+                            if (v < fMin[k]) fMin[k] = v;
+                            if (v > fMax[k]) fMax[k] = v;
+                        }
+                        ns[k]++;
+                    }
+                } catch (Exception e) {
+                    // values that can not be parsed are not aggregated
+                }
+            }
+        }
+        groupBytes[g] += bytes;
+        totalBytes += bytes;
+        return g;
+    }
+
+    /**
+     * Removes the groups whose last row is on another chromosome or before the given position.
+     */
+    public void removeGroupsBefore(String chr, int pos) {
+        int size = keys.size();
+        boolean[] keep = new boolean[size];
+        boolean any = false;
+        for (int g = 0; g < size; g++) {
+            keep[g] = lastPos[g] >= pos && chr.equals(lastChr[g]);
+            if (!keep[g]) {
+                any = true;
+                totalBytes -= groupBytes[g];
+            }
+        }
+        if (!any) return;
+
+        int[] mapping = keys.retain(keep);
+        for (int g = 0; g < size; g++) {
+            int n = mapping[g];
+            if (n < 0 || n == g) continue;
+            groupBytes[n] = groupBytes[g];
+            allCount[n] = allCount[g];
+            lastPos[n] = lastPos[g];
+            lastChr[n] = lastChr[g];
+            line[n] = line[g];
+            distinctRows[n] = swap(distinctRows, g, n);
+            for (int i = 0; i < numCols; i++) {
+                int from = g * numCols + i;
+                int to = n * numCols + i;
+                ns[to] = ns[from];
+                sums[to] = sums[from];
+                sqSums[to] = sqSums[from];
+                fMin[to] = fMin[from];
+                fMax[to] = fMax[from];
+                aMin[to] = aMin[from];
+                aMax[to] = aMax[from];
+                values[to] = swap(values, from, to);
+                strings[to] = swap(strings, from, to);
+                rawList[to] = swap(rawList, from, to);
+                distinctSketch[to] = swap(distinctSketch, from, to);
+                quantileSketch[to] = swap(quantileSketch, from, to);
+                stringQuantileSketch[to] = swap(stringQuantileSketch, from, to);
+                numberSet[to] = swap(numberSet, from, to);
+                stringSet[to] = swap(stringSet, from, to);
+            }
+        }
+    }
+
+    /**
+     * @return the aggregate columns of the group, tab separated and cached until the group gets another row
+     */
+    public String line(int g) {
+        if (line[g] == null) {
+            lineBuilder.setLength(0);
+            appendAggregates(g, lineBuilder);
+            line[g] = lineBuilder.length() > 0 ? lineBuilder.substring(1) : "";
+        }
+        return line[g];
+    }
+
+    /**
+     * Appends the aggregate columns of the group, each preceded by a tab.
+     */
+    public void appendAggregates(int g, StringBuilder sb) {
+        if (useCount) sb.append('\t').append(allCount[g]);
+        if (useCdist) sb.append('\t').append(distinctRows[g].size());
+
+        for (int i = 0; i < numCols; i++) {
+            int k = g * numCols + i;
+            char type = types[i];
+            if (ns[k] == 0) {
+                if (useMin) sb.append('\t');
+                if (useMed) sb.append('\t');
+                if (useMax) sb.append('\t');
+                if (useSet) sb.append('\t');
+                if (useLis) sb.append('\t');
+                if (useDis) sb.append('\t');
+                if (type != 'a') {
+                    for (int q = 0; q < quantiles.length; q++) sb.append('\t');
+                    if (useAvg) sb.append('\t');
+                    if (useStd) sb.append('\t');
+                    if (useSum) sb.append('\t');
+                }
+            } else if (type == 'a') {
+                appendStringAggregates(k, sb);
+            } else {
+                appendNumericAggregates(k, type == 'i', sb);
+            }
+        }
+    }
+
+    private void appendNumericAggregates(int k, boolean isInt, StringBuilder sb) {
+        if (collectNumbers && (useMed || useSet || useDis || quantiles.length > 0)) {
+            values[k].sortedCopyTo(sortedValues);
+        }
+        int n = sortedValues.size();
+        if (useMin) appendNumber(sb.append('\t'), fMin[k], isInt);
+        if (useMed) {
+            sb.append('\t');
+            if (approximate) {
+                appendNumber(sb, quantileSketch[k].quantile(0.5), isInt);
+            } else if (style == Style.GROUP && !isInt && n % 2 == 0) {
+                sb.append((sortedValues.get(n / 2 - 1) + sortedValues.get(n / 2)) / 2.0);
+            } else {
+                appendNumber(sb, sortedValues.get(n / 2), isInt);
+            }
+        }
+        for (double q : quantiles) {
+            sb.append('\t');
+            if (approximate) {
+                appendNumber(sb, quantileSketch[k].quantile(q), isInt);
+            } else {
+                appendNumber(sb, sortedValues.get(Math.min(n - 1, (int) (q * n))), isInt);
+            }
+        }
+        if (useMax) appendNumber(sb.append('\t'), fMax[k], isInt);
+        if (useSet && approximate) {
+            sb.append('\t');
+            int start = sb.length();
+            long previous = 0;
+            int appended = 0;
+            for (double v : numberSet[k].sortedItems()) {
+                if (isInt && appended > 0 && (long) v == previous) continue;
+                if (appended++ > 0) sb.append(sepVal);
+                appendNumber(sb, v, isInt);
+                previous = (long) v;
+                if (sb.length() - start > setLen) break;
+            }
+            truncate(sb, start);
+        } else if (useSet) {
+            sb.append('\t');
+            int start = sb.length();
+            int len = start;
+            int appended = 0;
+            for (int i = 0; i < sortedValues.size(); i++) {
+                double v = sortedValues.get(i);
+                if (i > 0 && (isInt ? (long) v == (long) sortedValues.get(i - 1) : v == sortedValues.get(i - 1))) {
+                    continue;
+                }
+                // 0.0 and -0.0 are the same value, the one seen last represents both
+                if (v == 0.0 && !isInt) v = values[k].lastZero();
+                if (style == Style.GROUP) {
+                    if (appended++ > 0) sb.append(sepVal);
+                    appendNumber(sb, v, isInt);
+                    if (sb.length() - start > setLen) break;
+                } else {
+                    int mark = sb.length();
+                    if (appended++ > 0) sb.append(sepVal);
+                    appendNumber(sb, v, isInt);
+                    len += sb.length() - mark;
+                    if (len > start + setLen) {
+                        sb.setLength(mark);
+                        if (appended > 1) break;
+                    }
+                }
+            }
+            if (style == Style.GROUP) truncate(sb, start);
+        }
+        if (useLis) {
+            sb.append('\t');
+            if (style == Style.GROUP) {
+                appendTruncated(sb, rawList[k]);
+            } else {
+                DoubleBuffer list = values[k];
+                int start = sb.length();
+                int len = start;
+                for (int i = 0; i < list.size(); i++) {
+                    int mark = sb.length();
+                    if (i > 0) sb.append(sepVal);
+                    appendNumber(sb, list.get(i), isInt);
+                    len += sb.length() - mark;
+                    if (len > start + setLen) {
+                        sb.setLength(mark);
+                        if (i > 0) break;
+                    }
+                }
+            }
+        }
+        if (useDis) {
+            sb.append('\t').append(approximate ? distinctSketch[k].estimate() : sortedValues.sortedDistinctCount());
+        }
+
+        double mean = sums[k] / ns[k];
+        double variance = sqSums[k] / ns[k] - mean * mean;
+        if (style != Style.GRANNO) variance = Math.abs(variance);
+        if (useAvg) sb.append('\t').append(mean);
+        if (useStd) sb.append('\t').append(Math.sqrt(variance));
+        if (useSum) appendNumber(sb.append('\t'), sums[k], isInt);
+    }
+
+    private void appendStringAggregates(int k, StringBuilder sb) {
+        if (collectStrings && (useMed || useSet || useDis)) {
+            sortedStrings.clear();
+            sortedStrings.addAll(strings[k]);
+            Collections.sort(sortedStrings);
+        }
+        if (useMin) sb.append('\t').append(aMin[k]);
+        if (useMed) {
+            sb.append('\t');
+            sb.append(approximate ? stringQuantileSketch[k].quantile(0.5) : sortedStrings.get(sortedStrings.size() / 2));
+        }
+        if (useMax) sb.append('\t').append(aMax[k]);
+        if (useSet && approximate) {
+            sb.append('\t');
+            int start = sb.length();
+            int appended = 0;
+            for (String v : stringSet[k].sortedItems()) {
+                if (appended++ > 0) sb.append(sepVal);
+                sb.append(v);
+                if (sb.length() - start > setLen) break;
+            }
+            truncate(sb, start);
+        } else if (useSet) {
+            sb.append('\t');
+            int start = sb.length();
+            int len = start;
+            int appended = 0;
+            for (int i = 0; i < sortedStrings.size(); i++) {
+                String v = sortedStrings.get(i);
+                if (i > 0 && v.equals(sortedStrings.get(i - 1))) continue;
+                if (style == Style.GROUP) {
+                    if (appended++ > 0) sb.append(sepVal);
+                    sb.append(v);
+                    if (sb.length() - start > setLen) break;
+                } else {
+                    len += (appended > 0 ? sepVal.length() : 0) + v.length();
+                    if (len <= start + setLen) {
+                        if (appended > 0) sb.append(sepVal);
+                        sb.append(v);
+                    } else if (appended > 0) {
+                        break;
+                    }
+                    appended++;
+                }
+            }
+            if (style == Style.GROUP) truncate(sb, start);
+        }
+        if (useLis) {
+            sb.append('\t');
+            if (style == Style.GROUP) {
+                appendTruncated(sb, rawList[k]);
+            } else {
+                ArrayList<String> list = strings[k];
+                int len = sb.length();
+                int max = len + setLen;
+                for (int i = 0; i < list.size(); i++) {
+                    String v = list.get(i);
+                    len += (i > 0 ? sepVal.length() : 0) + v.length();
+                    if (len <= max) {
+                        if (i > 0) sb.append(sepVal);
+                        sb.append(v);
+                    } else if (i > 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (useDis && approximate) {
+            sb.append('\t').append(distinctSketch[k].estimate());
+        } else if (useDis) {
+            int count = 0;
+            for (int i = 0; i < sortedStrings.size(); i++) {
+                if (i == 0 || !sortedStrings.get(i).equals(sortedStrings.get(i - 1))) count++;
+            }
+            sb.append('\t').append(count);
+        }
+    }
+
+    private static void appendNumber(StringBuilder sb, double v, boolean isInt) {
+        if (isInt) {
+            sb.append((long) v);
+        } else {
+            sb.append(v);
+        }
+    }
+
+    private long appendRaw(int k, CharSequence v) {
+        StringBuilder raw = rawList[k];
+        int before = raw.length();
+        if (ns[k] > 0) raw.append(sepVal);
+        raw.append(v);
+        return 2L * (raw.length() - before);
+    }
+
+    private void appendTruncated(StringBuilder sb, CharSequence s) {
+        if (s.length() > setLen) {
+            sb.append(s, 0, setLen).append("...");
+        } else {
+            sb.append(s);
+        }
+    }
+
+    private void truncate(StringBuilder sb, int start) {
+        if (sb.length() - start > setLen) {
+            sb.setLength(start + setLen);
+            sb.append("...");
+        }
+    }
+
+    private static <T> T swap(T[] array, int from, int to) {
+        T moved = array[from];
+        array[from] = array[to];
+        return moved;
+    }
+
+    private void initGroup(int g) {
+        if (g >= capacity) ensureCapacity(2 * capacity);
+        groupBytes[g] = 0;
+        allCount[g] = 0;
+        line[g] = null;
+        if (useCdist) {
+            if (distinctRows[g] == null) distinctRows[g] = new HashSet<>();
+            else distinctRows[g].clear();
+        }
+        for (int k = g * numCols; k < (g + 1) * numCols; k++) {
+            ns[k] = 0;
+            sums[k] = 0.0;
+            sqSums[k] = 0.0;
+            boolean isString = types[k - g * numCols] == 'a';
+            if (isString && collectStrings) {
+                if (strings[k] == null) strings[k] = new ArrayList<>();
+                else strings[k].clear();
+            }
+            if (!isString && collectNumbers) {
+                if (values[k] == null) values[k] = new DoubleBuffer();
+                else values[k].clear();
+            }
+            if (useDistinctSketch) {
+                if (distinctSketch[k] == null) distinctSketch[k] = new HyperLogLog();
+                else distinctSketch[k].clear();
+            }
+            if (!isString && useQuantileSketch) {
+                if (quantileSketch[k] == null) quantileSketch[k] = new KllSketch();
+                else quantileSketch[k].clear();
+            }
+            if (isString && useQuantileSketch && useMed) {
+                if (stringQuantileSketch[k] == null) stringQuantileSketch[k] = new KllItemsSketch<>();
+                else stringQuantileSketch[k].clear();
+            }
+            if (useSetSketch) {
+                if (isString) {
+                    if (stringSet[k] == null) stringSet[k] = new HeavyHitters<>();
+                    else stringSet[k].clear();
+                } else {
+                    if (numberSet[k] == null) numberSet[k] = new HeavyHitters<>();
+                    else numberSet[k].clear();
+                }
+            }
+            if (useLis && style == Style.GROUP) {
+                if (rawList[k] == null) rawList[k] = new StringBuilder();
+                else rawList[k].setLength(0);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensureCapacity(int groups) {
+        int cells = groups * numCols;
+        if (capacity == 0) {
+            groupBytes = new long[groups];
+            allCount = new long[groups];
+            lastPos = new int[groups];
+            lastChr = new String[groups];
+            line = new String[groups];
+            distinctRows = new HashSet[groups];
+            ns = new int[cells];
+            sums = new double[cells];
+            sqSums = new double[cells];
+            fMin = new double[cells];
+            fMax = new double[cells];
+            aMin = new String[cells];
+            aMax = new String[cells];
+            values = new DoubleBuffer[cells];
+            strings = new ArrayList[cells];
+            rawList = new StringBuilder[cells];
+            distinctSketch = new HyperLogLog[cells];
+            quantileSketch = new KllSketch[cells];
+            stringQuantileSketch = new KllItemsSketch[cells];
+            numberSet = new HeavyHitters[cells];
+            stringSet = new HeavyHitters[cells];
+        } else {
+            groupBytes = Arrays.copyOf(groupBytes, groups);
+            allCount = Arrays.copyOf(allCount, groups);
+            lastPos = Arrays.copyOf(lastPos, groups);
+            lastChr = Arrays.copyOf(lastChr, groups);
+            line = Arrays.copyOf(line, groups);
+            distinctRows = Arrays.copyOf(distinctRows, groups);
+            ns = Arrays.copyOf(ns, cells);
+            sums = Arrays.copyOf(sums, cells);
+            sqSums = Arrays.copyOf(sqSums, cells);
+            fMin = Arrays.copyOf(fMin, cells);
+            fMax = Arrays.copyOf(fMax, cells);
+            aMin = Arrays.copyOf(aMin, cells);
+            aMax = Arrays.copyOf(aMax, cells);
+            values = Arrays.copyOf(values, cells);
+            strings = Arrays.copyOf(strings, cells);
+            rawList = Arrays.copyOf(rawList, cells);
+            distinctSketch = Arrays.copyOf(distinctSketch, cells);
+            quantileSketch = Arrays.copyOf(quantileSketch, cells);
+            stringQuantileSketch = Arrays.copyOf(stringQuantileSketch, cells);
+            numberSet = Arrays.copyOf(numberSet, cells);
+            stringSet = Arrays.copyOf(stringSet, cells);
+        }
+        capacity = groups;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of primitive doubles, used to collect the values needed for median, set, list and distinct
+ * aggregates without boxing.
+ */
+public class DoubleBuffer {
+    private double[] values;
+    private int size = 0;
+
+    public DoubleBuffer() {
+        this(8);
+    }
+
+    public DoubleBuffer(int capacity) {
+        values = new double[Math.max(1, capacity)];
+    }
+
+    public void add(double v) {
+        if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+        values[size++] = v;
+    }
+
+    public double get(int i) {
+        return values[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the most recently added zero, which tells apart 0.0 and -0.0
+     */
+    public double lastZero() {
+        for (int i = size - 1; i >= 0; i--) {
+            if (values[i] == 0.0) return values[i];
+        }
+        return 0.0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the values into the given buffer and sorts them there, leaving this buffer in insertion order.
+     */
+    public void sortedCopyTo(DoubleBuffer target) {
+        if (target.values.length < size) target.values = new double[Math.max(size, 2 * target.values.length)];
+        System.arraycopy(values, 0, target.values, 0, size);
+        target.size = size;
+        Arrays.sort(target.values, 0, size);
+    }
+
+    /**
+     * @return the number of numerically distinct values, only valid for a sorted buffer
+     */
+    public int sortedDistinctCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || values[i - 1] != values[i]) count++;
+        }
+        return count;
+    }
+}
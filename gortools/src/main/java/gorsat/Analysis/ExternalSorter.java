@@ -0,0 +1,471 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.MemoryBudget;
+import org.gorpipe.model.genome.files.gor.Row;
+import org.gorpipe.model.gor.RowObj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * External merge sort of rows in genomic order followed by the sort columns. Rows are collected in memory until the
+ * estimated size of the buffer reaches half of the memory budget. The full buffer is then sorted and written as a
+ * run on a background thread while the next buffer is filled. Runs are zstd compressed binary files where each row
+ * is stored with its {@link SortKey}, and they are merged with a {@link LoserTree}.
+ * <p>
+ * With a {@link MemoryBudget.Reservation} the buffers beyond the first megabyte are reserved from the process memory
+ * budget and a run is also written when the reservation can not grow.
+ * <p>
+ * Rows are ordered by chromosome and then by their sort keys, which are computed once per row. When the keys have a
+ * fixed width the buffers are sorted with a radix sort on the chromosome rank and the key bytes.
+ * <p>
+ * Rows that compare equal keep their input order.
+ */
+public class ExternalSorter implements AutoCloseable {
+    private static final int RADIX_MIN_ROWS = 1024;
+    private static final int ROW_BYTES = 80;
+    private static final long MIN_MEMORY = 1 << 20;
+    private static final int WRITE_BUFFER = 1 << 20;
+    private static final int MIN_READ_BUFFER = 64 * 1024;
+    private static final int MAX_READ_BUFFER = 1 << 20;
+    private static final int MAX_FAN_IN = 256;
+    // Rough memory held by the decompression context of an open run
+    private static final int READER_BYTES = 256 * 1024;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+    private static final ExecutorService runWriters = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "SortRunWriterThread-" + threadCounter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Row.SortInfo[] sortInfo;
+    private final SortKey sortKey;
+    private final long memoryBytes;
+    private final int maxRows;
+    private final MemoryBudget.Reservation reservation;
+    private final Comparator<Entry> comparator;
+
+    private Entry[] buffer = new Entry[1024];
+    private int rows = 0;
+    private long bufferBytes = 0;
+    private boolean alreadySorted = true;
+    private final List<File> runs = new ArrayList<>();
+    private Future<File> pendingRun;
+
+    /**
+     * @param sortInfo    the columns to sort on after chromosome and position, with none the rest of the row is used
+     * @param memoryBytes the memory budget for the buffered rows, at least 1 MB is used
+     * @param maxRows     the maximum number of rows in a run
+     */
+    public ExternalSorter(Row.SortInfo[] sortInfo, long memoryBytes, int maxRows) {
+        this(sortInfo, memoryBytes, maxRows, null);
+    }
+
+    /**
+     * @param reservation the reservation the buffered rows are accounted on, null for none
+     */
+    public ExternalSorter(Row.SortInfo[] sortInfo, long memoryBytes, int maxRows, MemoryBudget.Reservation reservation) {
+        this.reservation = reservation;
+        this.sortInfo = sortInfo == null ? new Row.SortInfo[0] : sortInfo;
+        this.sortKey = new SortKey(this.sortInfo);
+        this.memoryBytes = Math.max(MIN_MEMORY, memoryBytes);
+        this.maxRows = Math.max(1, maxRows);
+        this.comparator = this::compare;
+    }
+
+    /**
+     * The memory budget for sorting, from the gor.sort.memory.mb property and by default a quarter of the maximum
+     * heap.
+     */
+    public static long memoryBudget() {
+        String mb = System.getProperty("gor.sort.memory.mb");
+        if (mb != null) return Long.parseLong(mb.trim()) * 1024 * 1024;
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    public void add(Row r) {
+        Entry entry = new Entry(r, sortKey.encode(r));
+        if (alreadySorted && rows > 0 && compare(entry, buffer[rows - 1]) < 0) alreadySorted = false;
+        if (rows == buffer.length) buffer = Arrays.copyOf(buffer, 2 * rows);
+        buffer[rows++] = entry;
+        bufferBytes += ROW_BYTES + 2L * r.length() + 4L * r.numCols() + (entry.key != null ? entry.key.length : 0);
+        // Two buffers can be in memory while a run is written in the background
+        if (rows >= maxRows || 2 * bufferBytes > memoryBytes || !reserved(2 * bufferBytes)) spill();
+    }
+
+    private boolean reserved(long bytes) {
+        return reservation == null || bytes <= MIN_MEMORY || reservation.ensure(bytes);
+    }
+
+    public boolean hasSpilled() {
+        return !runs.isEmpty() || pendingRun != null;
+    }
+
+    /**
+     * Sends all the rows in sorted order to the consumer and clears the sorter for reuse.
+     */
+    public void finish(Consumer<Row> out) {
+        try {
+            if (!hasSpilled()) {
+                sortBuffer(buffer, rows, alreadySorted);
+                for (int i = 0; i < rows; i++) out.accept(buffer[i].row);
+            } else {
+                if (rows > 0) spill();
+                awaitPendingRun();
+                reduceRuns();
+                merge(runs, entry -> out.accept(entry.row));
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Discards the buffered rows and deletes the runs.
+     */
+    @Override
+    public void close() {
+        if (pendingRun != null) {
+            try {
+                runs.add(pendingRun.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // nothing was written
+            }
+            pendingRun = null;
+        }
+        for (File run : runs) {
+            if (!run.delete()) run.deleteOnExit();
+        }
+        runs.clear();
+        buffer = new Entry[1024];
+        rows = 0;
+        bufferBytes = 0;
+        alreadySorted = true;
+        if (reservation != null) reservation.release();
+    }
+
+    private void spill() {
+        awaitPendingRun();
+        Entry[] full = buffer;
+        int length = rows;
+        boolean sorted = alreadySorted;
+        pendingRun = runWriters.submit(() -> {
+            sortBuffer(full, length, sorted);
+            return writeRun(full, length);
+        });
+        buffer = new Entry[Math.min(Math.max(1024, length), maxRows)];
+        rows = 0;
+        bufferBytes = 0;
+        alreadySorted = true;
+    }
+
+    private void awaitPendingRun() {
+        if (pendingRun == null) return;
+        try {
+            runs.add(pendingRun.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GorSystemException("Interrupted while writing sort run", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GorSystemException("Unable to write sort run", e.getCause());
+        } finally {
+            pendingRun = null;
+        }
+    }
+
+    private void sortBuffer(Entry[] entries, int length, boolean sorted) {
+        if (sorted) return;
+        if (length < RADIX_MIN_ROWS || !sortKey.isFixedWidth() || !radixSort(entries, length)) {
+            Arrays.parallelSort(entries, 0, length, comparator);
+        }
+    }
+
+    /**
+     * Stable least significant digit radix sort on the rank of the chromosome followed by the fixed width keys.
+     * Byte positions that are the same for all the rows are skipped.
+     *
+     * @return false if the rows can not be radix sorted
+     */
+    private boolean radixSort(Entry[] entries, int length) {
+        Map<String, Integer> ranks = new HashMap<>();
+        int width = -1;
+        for (int i = 0; i < length; i++) {
+            byte[] key = entries[i].key;
+            if (key == null || width >= 0 && key.length != width) return false;
+            width = key.length;
+            ranks.putIfAbsent(entries[i].row.chr, 0);
+        }
+        if (ranks.size() > 1 << 16) return false;
+        String[] chromosomes = ranks.keySet().toArray(new String[0]);
+        Arrays.sort(chromosomes);
+        for (int i = 0; i < chromosomes.length; i++) ranks.put(chromosomes[i], i);
+        char[] chrRank = new char[length];
+        for (int i = 0; i < length; i++) chrRank[i] = (char) (int) ranks.get(entries[i].row.chr);
+
+        Entry[] from = entries;
+        Entry[] to = new Entry[length];
+        char[] fromRank = chrRank;
+        char[] toRank = new char[length];
+        int[] counts = new int[257];
+        for (int digit = width + 1; digit >= 0; digit--) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) counts[digit(from[i], fromRank[i], digit, width) + 1]++;
+            boolean constant = false;
+            for (int b = 1; b <= 256 && !constant; b++) constant = counts[b] == length;
+            if (constant) continue;
+            for (int b = 1; b <= 256; b++) counts[b] += counts[b - 1];
+            for (int i = 0; i < length; i++) {
+                int target = counts[digit(from[i], fromRank[i], digit, width)]++;
+                to[target] = from[i];
+                toRank[target] = fromRank[i];
+            }
+            Entry[] swapEntries = from;
+            from = to;
+            to = swapEntries;
+            char[] swapRanks = fromRank;
+            fromRank = toRank;
+            toRank = swapRanks;
+        }
+        if (from != entries) System.arraycopy(from, 0, entries, 0, length);
+        return true;
+    }
+
+    private static int digit(Entry entry, char rank, int digit, int width) {
+        if (digit == 0) return rank >>> 8;
+        if (digit == 1) return rank & 0xff;
+        return entry.key[digit - 2] & 0xff;
+    }
+
+    private int compare(Entry a, Entry b) {
+        Row x = a.row;
+        Row y = b.row;
+        int cmp = x.chr.compareTo(y.chr);
+        if (cmp != 0) return cmp;
+        // Rows with unparsable numeric sort columns are compared on their text, which fails as before
+        if (a.key == null || b.key == null) return x.advancedCompare(y, sortInfo);
+        return SortKey.compare(a.key, b.key);
+    }
+
+    private File writeRun(Entry[] entries, int length) throws IOException {
+        RunWriter writer = new RunWriter();
+        try {
+            for (int i = 0; i < length; i++) {
+                writer.write(entries[i]);
+                entries[i] = null;
+            }
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            writer.discard();
+            throw e;
+        }
+        return writer.file;
+    }
+
+    /**
+     * Merges consecutive runs into larger runs until they can all be merged at once within the memory budget.
+     */
+    private void reduceRuns() {
+        int fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, memoryBytes / (MIN_READ_BUFFER + READER_BYTES)));
+        while (runs.size() > fanIn) {
+            List<File> current = new ArrayList<>(runs);
+            List<File> merged = new ArrayList<>();
+            int from = 0;
+            while (from < current.size()) {
+                List<File> group = current.subList(from, Math.min(current.size(), from + fanIn));
+                from += group.size();
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                RunWriter writer;
+                try {
+                    writer = new RunWriter();
+                } catch (IOException e) {
+                    throw new GorSystemException("Unable to create sort run", e);
+                }
+                // Keep track of the new run so it is deleted if the merge fails
+                runs.add(writer.file);
+                boolean written = false;
+                try {
+                    merge(group, entry -> {
+                        try {
+                            writer.write(entry);
+                        } catch (IOException e) {
+                            throw new GorSystemException("Unable to write sort run " + writer.file, e);
+                        }
+                    });
+                    writer.close();
+                    written = true;
+                } catch (IOException e) {
+                    throw new GorSystemException("Unable to write sort run " + writer.file, e);
+                } finally {
+                    if (!written) writer.discardStream();
+                }
+                for (File run : group) {
+                    if (!run.delete()) run.deleteOnExit();
+                }
+                merged.add(writer.file);
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    private void merge(List<File> files, Consumer<Entry> out) {
+        int readBuffer = (int) Math.max(MIN_READ_BUFFER, Math.min(MAX_READ_BUFFER, memoryBytes / (2L * files.size())));
+        RunReader[] readers = new RunReader[files.size()];
+        try {
+            for (int i = 0; i < readers.length; i++) readers[i] = new RunReader(files.get(i), readBuffer);
+            LoserTree<Entry> tree = new LoserTree<>(readers, comparator);
+            Entry entry;
+            while ((entry = tree.poll()) != null) out.accept(entry);
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) reader.close();
+            }
+        }
+    }
+
+    private static class Entry {
+        final Row row;
+        final byte[] key;
+
+        Entry(Row row, byte[] key) {
+            this.row = row;
+            this.key = key;
+        }
+    }
+
+    private class RunWriter {
+        private final File file;
+        private final DataOutputStream out;
+
+        RunWriter() throws IOException {
+            file = File.createTempFile("gorsort", ".run");
+            file.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new ZstdOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER)), WRITE_BUFFER));
+        }
+
+        void write(Entry entry) throws IOException {
+            byte[] bytes = entry.row.getAllCols().toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            if (entry.key == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+            }
+            out.write(bytes);
+        }
+
+        void close() throws IOException {
+            out.writeInt(-1);
+            out.close();
+        }
+
+        void discardStream() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // already closed or failed, the file is deleted with the other runs
+            }
+        }
+
+        void discard() {
+            discardStream();
+            if (!file.delete()) file.deleteOnExit();
+        }
+    }
+
+    private class RunReader implements LoserTree.Source<Entry> {
+        private final File file;
+        private final DataInputStream in;
+        private byte[] bytes = new byte[256];
+
+        RunReader(File file, int bufferSize) {
+            this.file = file;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new ZstdInputStream(
+                        new BufferedInputStream(new FileInputStream(file), bufferSize)), MIN_READ_BUFFER));
+            } catch (IOException e) {
+                throw new GorSystemException("Unable to read sort run " + file, e);
+            }
+        }
+
+        @Override
+        public Entry next() {
+            try {
+                int length = in.readInt();
+                if (length < 0) return null;
+                int keyLength = in.readInt();
+                byte[] key = null;
+                if (keyLength >= 0) {
+                    key = new byte[keyLength];
+                    in.readFully(key);
+                }
+                if (length > bytes.length) bytes = new byte[Math.max(length, 2 * bytes.length)];
+                in.readFully(bytes, 0, length);
+                return new Entry(RowObj.apply(new String(bytes, 0, length, StandardCharsets.UTF_8)), key);
+            } catch (IOException e) {
+                throw new GorSystemException("Unable to read sort run " + file, e);
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the run is deleted anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table mapping the values of a fixed set of group columns to dense group indices.
+ * The key characters are hashed and compared in place in the row when the row exposes its split array, so looking
+ * up an existing group does not allocate. Keys of new groups are copied into a shared character arena.
+ */
+public class GroupKeyTable {
+    private static final int INITIAL_GROUPS = 16;
+
+    private final int[] columns;
+    private final StringBuilder fallback = new StringBuilder();
+    private Row row;
+    private int[] split;
+    private int lookupLength;
+
+    private char[] arena = new char[1024];
+    private int arenaSize = 0;
+    private int[] keyStart = new int[INITIAL_GROUPS];
+    private int[] keyLength = new int[INITIAL_GROUPS];
+    private int[] keyHash = new int[INITIAL_GROUPS];
+    private int[] slots = new int[2 * INITIAL_GROUPS];
+    private int size = 0;
+
+    /**
+     * @param columns the zero based group columns, an empty array puts all rows in a single group with an empty key
+     */
+    public GroupKeyTable(int[] columns) {
+        this.columns = columns;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the group of the row, a new group is added if the key has not been seen before
+     */
+    public int group(Row r) {
+        return lookup(r, true);
+    }
+
+    /**
+     * @return the index of the group of the row or -1 if the key has not been seen
+     */
+    public int find(Row r) {
+        return lookup(r, false);
+    }
+
+    public String key(int group) {
+        return new String(arena, keyStart[group], keyLength[group]);
+    }
+
+    public int keyLength(int group) {
+        return keyLength[group];
+    }
+
+    public int keyHash(int group) {
+        return keyHash[group];
+    }
+
+    public void appendKey(int group, StringBuilder sb) {
+        sb.append(arena, keyStart[group], keyLength[group]);
+    }
+
+    /**
+     * @return the group indices ordered by their keys, with the same ordering as {@link String#compareTo(String)}
+     */
+    public int[] sortedGroups() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, this::compareKeys);
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) sorted[i] = order[i];
+        return sorted;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        arenaSize = 0;
+        size = 0;
+    }
+
+    /**
+     * Removes the groups not marked to be kept. The remaining groups keep their relative order but are renumbered.
+     *
+     * @return mapping from old group index to new group index, -1 for removed groups
+     */
+    public int[] retain(boolean[] keep) {
+        int[] mapping = new int[size];
+        int newSize = 0;
+        int newArenaSize = 0;
+        for (int g = 0; g < size; g++) {
+            if (keep[g]) {
+                System.arraycopy(arena, keyStart[g], arena, newArenaSize, keyLength[g]);
+                keyStart[newSize] = newArenaSize;
+                keyLength[newSize] = keyLength[g];
+                keyHash[newSize] = keyHash[g];
+                newArenaSize += keyLength[g];
+                mapping[g] = newSize++;
+            } else {
+                mapping[g] = -1;
+            }
+        }
+        size = newSize;
+        arenaSize = newArenaSize;
+        rehash(slots.length);
+        return mapping;
+    }
+
+    private int compareKeys(int a, int b) {
+        int aStart = keyStart[a];
+        int bStart = keyStart[b];
+        int len = Math.min(keyLength[a], keyLength[b]);
+        for (int i = 0; i < len; i++) {
+            char ca = arena[aStart + i];
+            char cb = arena[bStart + i];
+            if (ca != cb) return ca - cb;
+        }
+        return keyLength[a] - keyLength[b];
+    }
+
+    /**
+     * @return the hash of the key of the row, the same hash the table uses for the group of the row
+     */
+    public int hash(Row r) {
+        // Rows exposing their split array are read a character at a time, leaving the row text and its cached
+        // column values alone
+        row = r;
+        split = r.getSplitArray();
+        if (split == null) {
+            fallback.setLength(0);
+            if (columns.length > 0) fallback.append(r.selectedColumns(columns));
+        }
+        int segments = split == null ? 1 : columns.length;
+
+        int hash = 0;
+        int length = 0;
+        for (int s = 0; s < segments; s++) {
+            if (s > 0) {
+                hash = 31 * hash + '\t';
+                length++;
+            }
+            int end = segmentEnd(s);
+            for (int i = segmentStart(s); i < end; i++) {
+                hash = 31 * hash + charAt(i);
+            }
+            length += end - segmentStart(s);
+        }
+        hash ^= hash >>> 16;
+        lookupLength = length;
+        return hash;
+    }
+
+    private int lookup(Row r, boolean insert) {
+        int hash = hash(r);
+        int length = lookupLength;
+        int segments = split == null ? 1 : columns.length;
+
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int g = slots[slot] - 1;
+            if (keyHash[g] == hash && keyLength[g] == length && keyEquals(g, segments)) return g;
+            slot = (slot + 1) & mask;
+        }
+        if (!insert) return -1;
+
+        if (size == keyStart.length) growGroups();
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + length));
+        }
+        int g = size++;
+        keyStart[g] = arenaSize;
+        keyLength[g] = length;
+        keyHash[g] = hash;
+        for (int s = 0; s < segments; s++) {
+            if (s > 0) arena[arenaSize++] = '\t';
+            int end = segmentEnd(s);
+            for (int i = segmentStart(s); i < end; i++) arena[arenaSize++] = charAt(i);
+        }
+        slots[slot] = g + 1;
+        if (2 * size > slots.length) rehash(2 * slots.length);
+        return g;
+    }
+
+    private boolean keyEquals(int g, int segments) {
+        int k = keyStart[g];
+        for (int s = 0; s < segments; s++) {
+            if (s > 0 && arena[k++] != '\t') return false;
+            int end = segmentEnd(s);
+            for (int i = segmentStart(s); i < end; i++) {
+                if (arena[k++] != charAt(i)) return false;
+            }
+        }
+        return true;
+    }
+
+    private int segmentStart(int s) {
+        if (split == null) return 0;
+        int col = columns[s];
+        return col == 0 ? 0 : split[col - 1] + 1;
+    }
+
+    private int segmentEnd(int s) {
+        return split == null ? fallback.length() : split[columns[s]];
+    }
+
+    private char charAt(int i) {
+        return split == null ? fallback.charAt(i) : row.charAt(i);
+    }
+
+    private void growGroups() {
+        int capacity = 2 * keyStart.length;
+        keyStart = Arrays.copyOf(keyStart, capacity);
+        keyLength = Arrays.copyOf(keyLength, capacity);
+        keyHash = Arrays.copyOf(keyHash, capacity);
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int g = 0; g < size; g++) {
+            int slot = keyHash[g] & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = g + 1;
+        }
+    }
+}
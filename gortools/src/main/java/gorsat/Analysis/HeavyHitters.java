@@ -0,0 +1,109 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters sketch holding at most a fixed number of distinct items. While fewer distinct items
+ * than the capacity have been seen the sketch is exact, after that a new item replaces the item with the lowest
+ * count so the most frequent items are retained. Two sketches can be merged.
+ *
+ * @param <T> the item type
+ */
+public class HeavyHitters<T extends Comparable<T>> {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final HashMap<T, long[]> counts;
+    private boolean exact = true;
+
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Heavy hitters capacity must be positive");
+        this.capacity = capacity;
+        this.counts = new HashMap<>();
+    }
+
+    public void add(T item) {
+        add(item, 1);
+    }
+
+    public void add(T item, long count) {
+        long[] c = counts.get(item);
+        if (c != null) {
+            c[0] += count;
+        } else if (counts.size() < capacity) {
+            counts.put(item, new long[]{count});
+        } else {
+            exact = false;
+            T min = null;
+            long minCount = Long.MAX_VALUE;
+            for (Map.Entry<T, long[]> e : counts.entrySet()) {
+                if (e.getValue()[0] < minCount) {
+                    minCount = e.getValue()[0];
+                    min = e.getKey();
+                }
+            }
+            counts.remove(min);
+            counts.put(item, new long[]{minCount + count});
+        }
+    }
+
+    public void merge(HeavyHitters<T> other) {
+        exact &= other.exact;
+        for (Map.Entry<T, long[]> e : other.counts.entrySet()) add(e.getKey(), e.getValue()[0]);
+    }
+
+    /**
+     * @return true if no item has been evicted, i.e. the retained items are all the distinct items seen
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public long count(T item) {
+        long[] c = counts.get(item);
+        return c == null ? 0 : c[0];
+    }
+
+    /**
+     * @return the retained items in their natural order
+     */
+    public List<T> sortedItems() {
+        List<T> items = new ArrayList<>(counts.keySet());
+        items.sort(null);
+        return items;
+    }
+
+    public void clear() {
+        counts.clear();
+        exact = true;
+    }
+}
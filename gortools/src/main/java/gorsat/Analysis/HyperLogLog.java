@@ -0,0 +1,144 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct count sketch. Small sets are kept as a list of 64 bit hashes and counted exactly, the sketch
+ * switches to 2^precision registers once the list fills up. Two sketches with the same precision can be merged.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 12;
+    private static final int SPARSE_LIMIT = 128;
+
+    private final int precision;
+    private long[] sparse = new long[8];
+    private int sparseSize = 0;
+    private byte[] registers = null;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18, got " + precision);
+        }
+        this.precision = precision;
+    }
+
+    public void add(double v) {
+        addHash(hash(v));
+    }
+
+    public void add(CharSequence s) {
+        addHash(hash(s));
+    }
+
+    public void addHash(long hash) {
+        if (registers != null) {
+            int index = (int) (hash >>> (64 - precision));
+            long rest = (hash << precision) | (1L << (precision - 1));
+            byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+            if (registers[index] < rank) registers[index] = rank;
+            return;
+        }
+        for (int i = 0; i < sparseSize; i++) {
+            if (sparse[i] == hash) return;
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toRegisters();
+            addHash(hash);
+            return;
+        }
+        if (sparseSize == sparse.length) sparse = Arrays.copyOf(sparse, 2 * sparseSize);
+        sparse[sparseSize++] = hash;
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision");
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.sparseSize; i++) addHash(other.sparse[i]);
+        } else {
+            if (registers == null) toRegisters();
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] < other.registers[i]) registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        if (registers == null) return sparseSize;
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void clear() {
+        sparseSize = 0;
+        registers = null;
+    }
+
+    private void toRegisters() {
+        registers = new byte[1 << precision];
+        int size = sparseSize;
+        sparseSize = 0;
+        for (int i = 0; i < size; i++) addHash(sparse[i]);
+    }
+
+    static long hash(double v) {
+        // 0.0 and -0.0 count as the same value
+        return mix(v == 0.0 ? 0L : Double.doubleToLongBits(v));
+    }
+
+    static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
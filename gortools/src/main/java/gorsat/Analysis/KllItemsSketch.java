@@ -0,0 +1,154 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Arrays;
+
+/**
+ * KLL quantile sketch over comparable items, e.g. strings, with the same compaction scheme as {@link KllSketch}. The
+ * sketch is exact as long as fewer than k items have been added, and two sketches with the same k can be merged.
+ *
+ * @param <T> the item type
+ */
+public class KllItemsSketch<T extends Comparable<T>> {
+    private final int k;
+    private Object[][] levels = new Object[1][];
+    private int[] sizes = new int[1];
+    private boolean[] keepOdd = new boolean[1];
+    private long count = 0;
+
+    public KllItemsSketch() {
+        this(KllSketch.DEFAULT_K);
+    }
+
+    public KllItemsSketch(int k) {
+        if (k < KllSketch.MIN_CAPACITY) {
+            throw new IllegalArgumentException("KLL sketch k must be at least " + KllSketch.MIN_CAPACITY);
+        }
+        this.k = k;
+        levels[0] = new Object[KllSketch.MIN_CAPACITY];
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(T item) {
+        append(0, item);
+        count++;
+        compress();
+    }
+
+    public void merge(KllItemsSketch<T> other) {
+        if (other.k != k) throw new IllegalArgumentException("Cannot merge KLL sketches with different k");
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) append(h, other.levels[h][i]);
+        }
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * @return the smallest retained item whose cumulative weight exceeds the fraction q of all items, which for an
+     * exact sketch is the item at index floor(q * count) in sorted order, or null if the sketch is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T quantile(double q) {
+        if (count == 0) return null;
+        int total = 0;
+        for (int size : sizes) total += size;
+        Object[] items = new Object[total];
+        long[] weights = new long[total];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                items[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> ((T) items[a]).compareTo((T) items[b]));
+
+        long totalWeight = 0;
+        for (long w : weights) totalWeight += w;
+        double rank = q * totalWeight;
+        long cumulative = 0;
+        for (int i = 0; i < total; i++) {
+            cumulative += weights[order[i]];
+            if (cumulative > rank) return (T) items[order[i]];
+        }
+        return (T) items[order[total - 1]];
+    }
+
+    public void clear() {
+        levels = new Object[1][];
+        levels[0] = new Object[KllSketch.MIN_CAPACITY];
+        sizes = new int[1];
+        keepOdd = new boolean[1];
+        count = 0;
+    }
+
+    private void append(int level, Object item) {
+        while (level >= levels.length) addLevel();
+        if (sizes[level] == levels[level].length) levels[level] = Arrays.copyOf(levels[level], 2 * sizes[level]);
+        levels[level][sizes[level]++] = item;
+    }
+
+    private void addLevel() {
+        int n = levels.length;
+        levels = Arrays.copyOf(levels, n + 1);
+        levels[n] = new Object[KllSketch.MIN_CAPACITY];
+        sizes = Arrays.copyOf(sizes, n + 1);
+        keepOdd = Arrays.copyOf(keepOdd, n + 1);
+    }
+
+    private void compress() {
+        boolean compacted = true;
+        while (compacted) {
+            compacted = false;
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] >= KllSketch.capacity(k, levels.length - 1 - h) && sizes[h] >= 2) {
+                    compact(h);
+                    compacted = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        Object[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // an odd item out stays on this level
+        int pairs = size / 2;
+        int offset = keepOdd[level] ? 1 : 0;
+        keepOdd[level] = !keepOdd[level];
+        Object leftover = size % 2 == 1 ? items[size - 1] : null;
+        for (int i = 0; i < pairs; i++) append(level + 1, items[2 * i + offset]);
+        Arrays.fill(items, 0, size, null);
+        sizes[level] = 0;
+        if (leftover != null) items[sizes[level]++] = leftover;
+    }
+}
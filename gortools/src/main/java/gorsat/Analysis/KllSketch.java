@@ -0,0 +1,165 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Arrays;
+
+/**
+ * KLL quantile sketch over doubles. Items are kept in a hierarchy of compactors where an item on level h stands for
+ * 2^h input values, so the memory use grows only logarithmically with the number of values. The sketch is exact as
+ * long as fewer than k values have been added. Compaction alternates the kept half deterministically, so the same
+ * input always gives the same answers. Two sketches with the same k can be merged.
+ */
+public class KllSketch {
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private boolean[] keepOdd = new boolean[1];
+    private long count = 0;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k) {
+        if (k < MIN_CAPACITY) throw new IllegalArgumentException("KLL sketch k must be at least " + MIN_CAPACITY);
+        this.k = k;
+        levels[0] = new double[MIN_CAPACITY];
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(double v) {
+        append(0, v);
+        count++;
+        compress();
+    }
+
+    public void merge(KllSketch other) {
+        if (other.k != k) throw new IllegalArgumentException("Cannot merge KLL sketches with different k");
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) append(h, other.levels[h][i]);
+        }
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * @return the smallest retained value whose cumulative weight exceeds the fraction q of all values, which for an
+     * exact sketch is the value at index floor(q * count) in sorted order
+     */
+    public double quantile(double q) {
+        if (count == 0) return Double.NaN;
+        int total = 0;
+        for (int size : sizes) total += size;
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        long totalWeight = 0;
+        for (long w : weights) totalWeight += w;
+        double rank = q * totalWeight;
+        long cumulative = 0;
+        for (int i = 0; i < total; i++) {
+            cumulative += weights[order[i]];
+            if (cumulative > rank) return values[order[i]];
+        }
+        return values[order[total - 1]];
+    }
+
+    public void clear() {
+        levels = new double[1][];
+        levels[0] = new double[MIN_CAPACITY];
+        sizes = new int[1];
+        keepOdd = new boolean[1];
+        count = 0;
+    }
+
+    private int capacity(int level) {
+        return capacity(k, levels.length - 1 - level);
+    }
+
+    /**
+     * @return the capacity of a compactor at the given depth below the top level
+     */
+    static int capacity(int k, int depth) {
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void append(int level, double v) {
+        while (level >= levels.length) addLevel();
+        if (sizes[level] == levels[level].length) levels[level] = Arrays.copyOf(levels[level], 2 * sizes[level]);
+        levels[level][sizes[level]++] = v;
+    }
+
+    private void addLevel() {
+        int n = levels.length;
+        levels = Arrays.copyOf(levels, n + 1);
+        levels[n] = new double[MIN_CAPACITY];
+        sizes = Arrays.copyOf(sizes, n + 1);
+        keepOdd = Arrays.copyOf(keepOdd, n + 1);
+    }
+
+    private void compress() {
+        boolean compacted = true;
+        while (compacted) {
+            compacted = false;
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] >= capacity(h) && sizes[h] >= 2) {
+                    compact(h);
+                    compacted = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // an odd item out stays on this level
+        int pairs = size / 2;
+        int offset = keepOdd[level] ? 1 : 0;
+        keepOdd[level] = !keepOdd[level];
+        double leftover = size % 2 == 1 ? items[size - 1] : 0.0;
+        for (int i = 0; i < pairs; i++) append(level + 1, levels[level][2 * i + offset]);
+        sizes[level] = 0;
+        if (size % 2 == 1) levels[level][sizes[level]++] = leftover;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Comparator;
+
+/**
+ * Tournament tree of losers for k-way merging of sorted sources. Each element taken from the tree is replaced by the
+ * next element of its source in log(k) comparisons against the losers stored on the path to the root. Equal elements
+ * are taken from the source with the lowest index first, so the merge is stable when the sources are in input order.
+ */
+public class LoserTree<T> {
+
+    /**
+     * A sorted source of elements, returns null when exhausted.
+     */
+    public interface Source<T> {
+        T next();
+    }
+
+    private final Source<T>[] sources;
+    private final Comparator<? super T> comparator;
+    private final Object[] heads;
+    private final int[] tree;
+    private final int k;
+
+    public LoserTree(Source<T>[] sources, Comparator<? super T> comparator) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.k = sources.length;
+        this.heads = new Object[k];
+        this.tree = new int[Math.max(1, k)];
+        for (int i = 0; i < k; i++) heads[i] = sources[i].next();
+        if (k > 0) tree[0] = build(1);
+    }
+
+    /**
+     * @return the smallest element of all the sources or null when all the sources are exhausted
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (k == 0) return null;
+        int winner = tree[0];
+        T head = (T) heads[winner];
+        if (head == null) return null;
+        heads[winner] = sources[winner].next();
+        replay(winner);
+        return head;
+    }
+
+    private int build(int node) {
+        if (node >= k) return node - k;
+        int left = build(2 * node);
+        int right = build(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        }
+        tree[node] = left;
+        return right;
+    }
+
+    private void replay(int source) {
+        int winner = source;
+        for (int node = (source + k) >> 1; node >= 1; node >>= 1) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean beats(int a, int b) {
+        Object x = heads[a];
+        Object y = heads[b];
+        if (x == null) return y == null && a < b;
+        if (y == null) return true;
+        int cmp = comparator.compare((T) x, (T) y);
+        return cmp < 0 || cmp == 0 && a < b;
+    }
+}
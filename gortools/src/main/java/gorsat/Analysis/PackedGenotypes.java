@@ -0,0 +1,158 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+package gorsat.Analysis;
+
+/**
+ * Genotype values of many samples stored as bit planes, one plane per genotype, 64 samples to a word. A sample has its
+ * bit set in the plane of its genotype, '0' (hom-ref), '1' (het), '2' (hom-alt) or '3' (missing), and in none of them
+ * for any other value. Counting genotypes, or pairs of genotypes of two variants, is then a matter of and-ing words and
+ * counting bits instead of comparing characters one sample at a time.
+ */
+public class PackedGenotypes {
+    public static final int HOM_REF = 0;
+    public static final int HET = 1;
+    public static final int HOM_ALT = 2;
+    public static final int MISSING = 3;
+
+    private static final int PLANES = 4;
+
+    private final int size;
+    private final long[][] planes;
+
+    public PackedGenotypes(int size) {
+        this.size = size;
+        this.planes = new long[PLANES][(size + 63) >>> 6];
+    }
+
+    /**
+     * @return the genotypes of a values column with one character per sample
+     */
+    public static PackedGenotypes of(CharSequence values) {
+        return of(values, 0, values.length());
+    }
+
+    /**
+     * @return the genotypes of the characters from offset, one character per sample
+     */
+    public static PackedGenotypes of(CharSequence values, int offset, int size) {
+        PackedGenotypes genotypes = new PackedGenotypes(size);
+        int i = 0;
+        for (int w = 0; i < size; w++) {
+            long p0 = 0, p1 = 0, p2 = 0, p3 = 0;
+            int end = Math.min(size, i + 64);
+            for (long bit = 1; i < end; i++, bit <<= 1) {
+                switch (values.charAt(offset + i)) {
+                    case '0': p0 |= bit; break;
+                    case '1': p1 |= bit; break;
+                    case '2': p2 |= bit; break;
+                    case '3': p3 |= bit; break;
+                    default: break;
+                }
+            }
+            genotypes.planes[HOM_REF][w] = p0;
+            genotypes.planes[HET][w] = p1;
+            genotypes.planes[HOM_ALT][w] = p2;
+            genotypes.planes[MISSING][w] = p3;
+        }
+        return genotypes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets the genotype of a sample, a value other than '0' to '3' clears it.
+     */
+    public void set(int sample, char value) {
+        int w = sample >>> 6;
+        long bit = 1L << sample;
+        for (long[] plane : planes) plane[w] &= ~bit;
+        int plane = value - '0';
+        if (plane >= 0 && plane < PLANES) planes[plane][w] |= bit;
+    }
+
+    /**
+     * @return the genotype of a sample, '0' to '3', or the given value if the sample has none
+     */
+    public char get(int sample, char none) {
+        int w = sample >>> 6;
+        long bit = 1L << sample;
+        for (int p = 0; p < PLANES; p++) {
+            if ((planes[p][w] & bit) != 0) return (char) ('0' + p);
+        }
+        return none;
+    }
+
+    /**
+     * @return the number of samples with the genotype, one of {@link #HOM_REF}, {@link #HET}, {@link #HOM_ALT} or
+     * {@link #MISSING}
+     */
+    public int count(int genotype) {
+        int n = 0;
+        for (long word : planes[genotype]) n += Long.bitCount(word);
+        return n;
+    }
+
+    /**
+     * @return the number of samples in the mask with the genotype
+     */
+    public int count(int genotype, long[] mask) {
+        long[] plane = planes[genotype];
+        int words = Math.min(plane.length, mask.length);
+        int n = 0;
+        for (int w = 0; w < words; w++) n += Long.bitCount(plane[w] & mask[w]);
+        return n;
+    }
+
+    /**
+     * Counts the haplotypes of two variants over the samples where both have a hom-ref, het or hom-alt genotype, each
+     * sample contributing four haplotype pairs, with a het/het sample split evenly between the four.
+     *
+     * @return the counts x11, x12, x21 and x22, where 1 is the reference and 2 the alternative allele
+     */
+    public static int[] ldCounts(PackedGenotypes a, PackedGenotypes b) {
+        int words = Math.min(a.planes[0].length, b.planes[0].length);
+        long[] a0 = a.planes[HOM_REF], a1 = a.planes[HET], a2 = a.planes[HOM_ALT];
+        long[] b0 = b.planes[HOM_REF], b1 = b.planes[HET], b2 = b.planes[HOM_ALT];
+        int n00 = 0, n01 = 0, n02 = 0, n10 = 0, n11 = 0, n12 = 0, n20 = 0, n21 = 0, n22 = 0;
+        for (int w = 0; w < words; w++) {
+            long x0 = a0[w], x1 = a1[w], x2 = a2[w];
+            long y0 = b0[w], y1 = b1[w], y2 = b2[w];
+            n00 += Long.bitCount(x0 & y0);
+            n01 += Long.bitCount(x0 & y1);
+            n02 += Long.bitCount(x0 & y2);
+            n10 += Long.bitCount(x1 & y0);
+            n11 += Long.bitCount(x1 & y1);
+            n12 += Long.bitCount(x1 & y2);
+            n20 += Long.bitCount(x2 & y0);
+            n21 += Long.bitCount(x2 & y1);
+            n22 += Long.bitCount(x2 & y2);
+        }
+        return new int[]{
+                4 * n00 + 2 * n01 + 2 * n10 + n11,
+                2 * n01 + 4 * n02 + n11 + 2 * n12,
+                2 * n10 + n11 + 4 * n20 + 2 * n21,
+                n11 + 2 * n12 + 2 * n21 + 4 * n22
+        };
+    }
+}
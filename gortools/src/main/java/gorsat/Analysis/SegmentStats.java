@@ -0,0 +1,242 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Segment length statistics of a gor file, the row count, maximum, 99th percentile and a histogram of lengths in
+ * power of two buckets. They are used by the joins to decide how far back to seek in a segment file and are persisted
+ * in a {@code .segstats} sidecar in the segstats folder of the project cache directory, keyed by the path, size and
+ * modification time of the file, so they are only computed once per file. A sidecar holds one line per measure, e.g.
+ * {@code stop2} for the length given by the stop in the third column or {@code ref2} for the length of the reference
+ * allele in the third column. Only statistics of whole files are persisted.
+ * <p>
+ * Sidecars are neither read nor written when the gor.segstats property is set to false.
+ */
+public class SegmentStats {
+    private static final Logger log = LoggerFactory.getLogger(SegmentStats.class);
+
+    public static final String SUFFIX = ".segstats";
+    private static final String DIRECTORY = "segstats";
+    private static final String SIGNATURE = "#signature";
+    private static final int BUCKETS = 33;
+
+    private final long count;
+    private final int max;
+    private final long[] histogram;
+
+    private SegmentStats(long count, int max, long[] histogram) {
+        this.count = count;
+        this.max = max;
+        this.histogram = histogram;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    /**
+     * @return an upper bound of the 99th percentile of the lengths, the top of its histogram bucket
+     */
+    public int p99() {
+        long rank = (long) Math.ceil(0.99 * count);
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= rank && seen > 0) return (int) Math.min(max, bucketTop(b));
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of lengths in each bucket, bucket 0 holds the non positive lengths and bucket b the lengths
+     * from 2^(b-1) to 2^b-1
+     */
+    public long[] histogram() {
+        return histogram.clone();
+    }
+
+    private static long bucketTop(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    private static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("gor.segstats", "true"));
+    }
+
+    public static String stopMeasure(int stopColumn) {
+        return "stop" + stopColumn;
+    }
+
+    public static String refMeasure(int refColumn) {
+        return "ref" + refColumn;
+    }
+
+    /**
+     * Accumulates the lengths of the segments in a file.
+     */
+    public static class Collector {
+        private long count = 0;
+        private int max = 0;
+        private final long[] histogram = new long[BUCKETS];
+
+        public void add(int length) {
+            count++;
+            if (length > max) max = length;
+            histogram[length <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(length)]++;
+        }
+
+        public SegmentStats stats() {
+            return new SegmentStats(count, max, histogram.clone());
+        }
+    }
+
+    /**
+     * @return the local path of a file relative to the project root, or null if the file is not on the local file
+     * system
+     */
+    public static Path localPath(String file, String root) {
+        if (file == null || !enabled() || file.contains("://") || file.contains(" ")) return null;
+        try {
+            Path path = Paths.get(file);
+            if (!path.isAbsolute() && root != null && !root.isEmpty() && !root.contains("://")) {
+                path = Paths.get(root).resolve(path);
+            }
+            return Files.isRegularFile(path) ? path : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the folder of the sidecars in the project cache directory, or null if the project has no cache directory
+     * on the local file system
+     */
+    public static Path directory(String cacheDir, String root) {
+        if (cacheDir == null || cacheDir.isEmpty() || !enabled() || cacheDir.contains("://")) return null;
+        try {
+            Path dir = Paths.get(cacheDir);
+            if (!dir.isAbsolute() && root != null && !root.isEmpty() && !root.contains("://")) {
+                dir = Paths.get(root.split("[ \t]+")[0]).resolve(dir);
+            }
+            return Files.isDirectory(dir) ? dir.resolve(DIRECTORY) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Path sidecar(Path file, Path directory) {
+        String path = file.toAbsolutePath().normalize().toString();
+        return directory.resolve(file.getFileName() + "." + Integer.toHexString(path.hashCode()) + SUFFIX);
+    }
+
+    private static String signature(Path file) throws IOException {
+        return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis() + ":" + file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return the persisted statistics for the measure, or null if there are none for the current content of the file
+     */
+    public static SegmentStats read(Path file, Path directory, String measure) {
+        if (file == null || directory == null) return null;
+        Path sidecar = sidecar(file, directory);
+        if (!Files.exists(sidecar)) return null;
+        try {
+            return readAll(sidecar, signature(file)).get(measure);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to read segment statistics from " + sidecar, e);
+            return null;
+        }
+    }
+
+    private static Map<String, SegmentStats> readAll(Path sidecar, String signature) throws IOException {
+        Map<String, SegmentStats> all = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(sidecar, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(SIGNATURE + "\t" + signature)) return all;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] cols = line.split("\t");
+                long[] histogram = Arrays.stream(cols[3].split(",")).mapToLong(Long::parseLong).toArray();
+                all.put(cols[0], new SegmentStats(Long.parseLong(cols[1]), Integer.parseInt(cols[2]),
+                        Arrays.copyOf(histogram, BUCKETS)));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Persists the statistics of the whole file for the measure, keeping the other measures of an up to date sidecar.
+     * This is best effort, a cache directory which can not be written to simply gets no sidecar.
+     */
+    public static void write(Path file, Path directory, String measure, SegmentStats stats) {
+        if (file == null || directory == null) return;
+        Path sidecar = sidecar(file, directory);
+        try {
+            String signature = signature(file);
+            Map<String, SegmentStats> all = Files.exists(sidecar) ? readAll(sidecar, signature) : new LinkedHashMap<>();
+            all.put(measure, stats);
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, "." + file.getFileName(), SUFFIX);
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    writer.write(SIGNATURE + "\t" + signature + "\n");
+                    writer.write("#measure\tcount\tmax\thistogram\n");
+                    for (Map.Entry<String, SegmentStats> e : all.entrySet()) {
+                        SegmentStats s = e.getValue();
+                        StringBuilder line = new StringBuilder();
+                        line.append(e.getKey()).append('\t').append(s.count).append('\t').append(s.max).append('\t');
+                        for (int b = 0; b < s.histogram.length; b++) {
+                            if (b > 0) line.append(',');
+                            line.append(s.histogram[b]);
+                        }
+                        writer.write(line.append('\n').toString());
+                    }
+                }
+                Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to write segment statistics to " + sidecar, e);
+        }
+    }
+}
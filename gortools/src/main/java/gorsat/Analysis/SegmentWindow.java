@@ -0,0 +1,187 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import java.util.Arrays;
+
+/**
+ * The segments of the right source of a join that can still overlap rows of the left source. Segments are added in
+ * source order, i.e. ordered by chromosome and start, and are kept in an array with an implicit augmented interval
+ * tree holding the maximum stop of each subtree. Finding the segments overlapping a query costs O(log n + k) no matter
+ * how long the segments are, and the overlapping segments are reported in the order they were added.
+ * <p>
+ * Segments that end before a given position are evicted lazily, when the array is compacted as it fills up.
+ */
+public class SegmentWindow<T> {
+
+    /**
+     * Receives the overlapping segments, returns true to remove the segment from the window.
+     */
+    public interface Visitor<T> {
+        boolean visit(T segment);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] chrs = new String[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] stops = new int[INITIAL_CAPACITY];
+    private Object[] segments = new Object[INITIAL_CAPACITY];
+    private int[] maxStop = new int[2 * INITIAL_CAPACITY];
+    private int capacity = INITIAL_CAPACITY;
+    private int size = 0;
+    private int live = 0;
+    private boolean sorted = true;
+
+    private String evictChr = null;
+    private int evictStop = Integer.MIN_VALUE;
+
+    public SegmentWindow() {
+        Arrays.fill(maxStop, Integer.MIN_VALUE);
+    }
+
+    public int size() {
+        return live;
+    }
+
+    public void add(String chr, int start, int stop, T segment) {
+        if (size == capacity) compact();
+        if (size > 0) {
+            int cmp = chr.compareTo(chrs[size - 1]);
+            if (cmp < 0 || cmp == 0 && start < starts[size - 1]) sorted = false;
+        }
+        chrs[size] = chr;
+        starts[size] = start;
+        stops[size] = stop;
+        segments[size] = segment;
+        setStop(size, stop);
+        size++;
+        live++;
+    }
+
+    /**
+     * Segments on earlier chromosomes or ending before the given position on the chromosome can be dropped.
+     */
+    public void evictBefore(String chr, int stop) {
+        evictChr = chr;
+        evictStop = stop;
+    }
+
+    /**
+     * Drops the evictable segments now.
+     */
+    public void evict() {
+        compact();
+    }
+
+    /**
+     * Visits the segments on the chromosome with start before {@code to} and stop after {@code from}.
+     */
+    public void forEachOverlap(String chr, int from, int to, Visitor<T> visitor) {
+        if (live == 0) return;
+        int lo = 0;
+        int hi = size;
+        if (sorted) {
+            lo = lowerBound(chr, Integer.MIN_VALUE);
+            hi = lowerBound(chr, to);
+        }
+        if (lo < hi) visit(1, 0, capacity, lo, hi, chr, from, to, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void visit(int node, int nodeLo, int nodeHi, int lo, int hi, String chr, int from, int to,
+                       Visitor<T> visitor) {
+        if (nodeHi <= lo || nodeLo >= hi || maxStop[node] <= from) return;
+        if (node >= capacity) {
+            int i = node - capacity;
+            if (starts[i] < to && chr.equals(chrs[i]) && visitor.visit((T) segments[i])) {
+                segments[i] = null;
+                setStop(i, Integer.MIN_VALUE);
+                live--;
+            }
+            return;
+        }
+        int mid = (nodeLo + nodeHi) >>> 1;
+        visit(2 * node, nodeLo, mid, lo, hi, chr, from, to, visitor);
+        visit(2 * node + 1, mid, nodeHi, lo, hi, chr, from, to, visitor);
+    }
+
+    /**
+     * @return the first index with chromosome and start not less than the given ones
+     */
+    private int lowerBound(String chr, int start) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = chrs[mid].compareTo(chr);
+            if (cmp < 0 || cmp == 0 && starts[mid] < start) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void setStop(int i, int stop) {
+        int node = capacity + i;
+        maxStop[node] = stop;
+        for (node >>= 1; node >= 1; node >>= 1) {
+            maxStop[node] = Math.max(maxStop[2 * node], maxStop[2 * node + 1]);
+        }
+    }
+
+    private boolean evictable(int i) {
+        if (segments[i] == null) return true;
+        if (evictChr == null) return false;
+        int cmp = chrs[i].compareTo(evictChr);
+        return cmp < 0 || cmp == 0 && stops[i] < evictStop;
+    }
+
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (evictable(i)) continue;
+            chrs[kept] = chrs[i];
+            starts[kept] = starts[i];
+            stops[kept] = stops[i];
+            segments[kept] = segments[i];
+            kept++;
+        }
+        Arrays.fill(segments, kept, size, null);
+        Arrays.fill(chrs, kept, size, null);
+        size = kept;
+        live = kept;
+        if (size > capacity / 2) {
+            capacity *= 2;
+            chrs = Arrays.copyOf(chrs, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            maxStop = new int[2 * capacity];
+        }
+        Arrays.fill(maxStop, Integer.MIN_VALUE);
+        System.arraycopy(stops, 0, maxStop, capacity, size);
+        for (int node = capacity - 1; node >= 1; node--) {
+            maxStop[node] = Math.max(maxStop[2 * node], maxStop[2 * node + 1]);
+        }
+    }
+}
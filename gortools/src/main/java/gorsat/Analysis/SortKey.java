@@ -0,0 +1,140 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.util.Arrays;
+
+/**
+ * Order preserving binary encoding of the position and the sort columns of a row, so that comparing the encoded keys
+ * byte by byte as unsigned values orders rows at the same chromosome as {@link Row#advancedCompare} does.
+ * <p>
+ * The position is encoded as a big endian int with the sign bit flipped and numeric columns as the bits of the
+ * double, flipped so that the order is the one of {@link Double#compare}. Strings are encoded character by character
+ * with a variable length code followed by a zero terminator, so no encoded string is a prefix of another. Reversed
+ * columns have all their bytes inverted. Without sort columns the rest of the row after the position is encoded as a
+ * string. Keys of rows that only have numeric sort columns have a fixed width.
+ */
+public class SortKey {
+    private final Row.SortInfo[] sortInfo;
+    private final boolean fixedWidth;
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    public SortKey(Row.SortInfo[] sortInfo) {
+        this.sortInfo = sortInfo == null ? new Row.SortInfo[0] : sortInfo;
+        this.fixedWidth = this.sortInfo.length > 0 && Arrays.stream(this.sortInfo)
+                .allMatch(info -> info.getSortType() == Row.SortType.NUMBERIC);
+    }
+
+    /**
+     * @return true if all keys have the same length
+     */
+    public boolean isFixedWidth() {
+        return fixedWidth;
+    }
+
+    /**
+     * @return the key of the row, or null if a numeric sort column of the row can not be parsed
+     */
+    public byte[] encode(Row r) {
+        length = 0;
+        putInt(r.pos);
+        if (sortInfo.length == 0) {
+            putString(r.otherCols(), false);
+        } else {
+            for (Row.SortInfo info : sortInfo) {
+                boolean reverse = info.getSortOrder() == Row.SortOrder.REVERSE;
+                if (info.getSortType() == Row.SortType.NUMBERIC) {
+                    double value;
+                    try {
+                        value = r.colAsDouble(info.getSortColumn());
+                    } catch (Exception e) {
+                        return null;
+                    }
+                    putDouble(value, reverse);
+                } else {
+                    putString(r.colAsString(info.getSortColumn()), reverse);
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Compares the keys as unsigned bytes.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i]) return (a[i] & 0xff) - (b[i] & 0xff);
+        }
+        return a.length - b.length;
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        int bits = value ^ Integer.MIN_VALUE;
+        buffer[length++] = (byte) (bits >>> 24);
+        buffer[length++] = (byte) (bits >>> 16);
+        buffer[length++] = (byte) (bits >>> 8);
+        buffer[length++] = (byte) bits;
+    }
+
+    private void putDouble(double value, boolean reverse) {
+        ensure(8);
+        long bits = Double.doubleToLongBits(value);
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        if (reverse) bits = ~bits;
+        for (int shift = 56; shift >= 0; shift -= 8) buffer[length++] = (byte) (bits >>> shift);
+    }
+
+    private void putString(CharSequence value, boolean reverse) {
+        int start = length;
+        int n = value.length();
+        ensure(3 * n + 1);
+        for (int i = 0; i < n; i++) {
+            // Shift by one to keep zero for the terminator, the code length is ordered by the first byte
+            int c = value.charAt(i) + 1;
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x4000) {
+                buffer[length++] = (byte) (0x80 | c >>> 8);
+                buffer[length++] = (byte) c;
+            } else {
+                buffer[length++] = (byte) (0xc0 | c >>> 16);
+                buffer[length++] = (byte) (c >>> 8);
+                buffer[length++] = (byte) c;
+            }
+        }
+        buffer[length++] = 0;
+        if (reverse) {
+            for (int i = start; i < length; i++) buffer[i] = (byte) ~buffer[i];
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + bytes));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.MemoryBudget;
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Temporary gzipped file of tab separated lines used by analysis steps that spill their state to disk when it
+ * outgrows the memory budget. The file is written once, then read back one or more times, and deleted when closed.
+ */
+public class SpillFile implements AutoCloseable {
+    private static final int BUFFER_SIZE = 32 * 1024;
+    // Shared by the in-memory state of all the spilling analysis steps of the process
+    private static final MemoryBudget SHARED_MEMORY = new MemoryBudget(memoryBudget(), 0, 1.0, 0);
+
+    private final File file;
+    private Writer writer;
+    private long lines = 0;
+
+    public SpillFile(String prefix) {
+        try {
+            file = File.createTempFile(prefix, ".tmp.gz");
+            file.deleteOnExit();
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new GorSystemException("Unable to create spill file", e);
+        }
+    }
+
+    /**
+     * The memory budget of a spilling analysis step, from the gor.spill.memory.mb property and by default a quarter
+     * of the maximum heap.
+     */
+    public static long memoryBudget() {
+        String mb = System.getProperty("gor.spill.memory.mb");
+        if (mb != null) return Long.parseLong(mb.trim()) * 1024 * 1024;
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * A reservation on the memory budget shared by all the spilling analysis steps, bin states and steps in the same
+     * or other pipes draw from it so that together they stay within the budget.
+     */
+    public static MemoryBudget.Reservation sharedReservation() {
+        return SHARED_MEMORY.reservation(null);
+    }
+
+    public void write(Row r) {
+        try {
+            r.writeRow(writer);
+            writer.write('\n');
+            lines++;
+        } catch (IOException e) {
+            throw new GorSystemException("Unable to write to spill file " + file, e);
+        }
+    }
+
+    public void write(CharSequence line) {
+        try {
+            writer.append(line);
+            writer.write('\n');
+            lines++;
+        } catch (IOException e) {
+            throw new GorSystemException("Unable to write to spill file " + file, e);
+        }
+    }
+
+    public long lineCount() {
+        return lines;
+    }
+
+    /**
+     * @return iterator over the lines written to the file, the file must not be written to after this
+     */
+    public LineIterator lines() {
+        finish();
+        return new LineIterator();
+    }
+
+    private void finish() {
+        if (writer == null) return;
+        try {
+            writer.close();
+            writer = null;
+        } catch (IOException e) {
+            throw new GorSystemException("Unable to close spill file " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (writer != null) writer.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        writer = null;
+        if (file.exists() && !file.delete()) file.deleteOnExit();
+    }
+
+    public class LineIterator implements Iterator<String>, AutoCloseable {
+        private final BufferedReader reader;
+        private String next;
+
+        private LineIterator() {
+            try {
+                reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+                next = reader.readLine();
+            } catch (IOException e) {
+                throw new GorSystemException("Unable to read spill file " + file, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) throw new NoSuchElementException();
+            String line = next;
+            try {
+                next = reader.readLine();
+                if (next == null) reader.close();
+            } catch (IOException e) {
+                throw new GorSystemException("Unable to read spill file " + file, e);
+            }
+            return line;
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.gor.MemoryBudget;
+import org.gorpipe.model.genome.files.gor.Row;
+import org.gorpipe.model.gor.RowObj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hybrid hash aggregation of the rows of a bin under a memory budget. Rows are aggregated in an
+ * {@link AggregationTable} until its estimated size exceeds the budget. From then on rows of groups already in the
+ * table are still aggregated in memory while rows of new groups are hash partitioned into {@link SpillFile}s. When
+ * the bin is flushed the partitions are aggregated one at a time, recursively spilling again if a partition is still
+ * too large, and the sorted outputs of the table and the partitions are merged by group key.
+ * <p>
+ * Tables beyond the first megabyte are also reserved from the memory shared by the spilling steps, see
+ * {@link SpillFile#sharedReservation()}, and from the process {@link MemoryBudget}. The aggregation starts spilling
+ * when either reservation can not grow.
+ */
+public class SpillingAggregation {
+    private static final int PARTITION_BITS = 4;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    private static final int MAX_DEPTH = 3;
+    private static final long UNRESERVED_BYTES = 1 << 20;
+
+    /**
+     * Appends the output line of a group of the table to the builder.
+     */
+    public interface Formatter {
+        void append(AggregationTable table, int group, StringBuilder sb);
+    }
+
+    private final Supplier<AggregationTable> tableFactory;
+    private final Formatter formatter;
+    private final long budget;
+    private final int depth;
+    private final String query;
+    private final MemoryBudget.Reservation sharedReservation = SpillFile.sharedReservation();
+    private final MemoryBudget.Reservation reservation;
+    private final StringBuilder lineBuilder = new StringBuilder();
+    private AggregationTable table;
+    private SpillFile[] partitions;
+
+    public SpillingAggregation(Supplier<AggregationTable> tableFactory, Formatter formatter, long budget) {
+        this(tableFactory, formatter, budget, null);
+    }
+
+    /**
+     * @param query the request id of the query the aggregation runs in, its tables are reserved from the process
+     *              {@link MemoryBudget} on behalf of that query, may be null
+     */
+    public SpillingAggregation(Supplier<AggregationTable> tableFactory, Formatter formatter, long budget, String query) {
+        this(tableFactory, formatter, budget, query, 0);
+    }
+
+    private SpillingAggregation(Supplier<AggregationTable> tableFactory, Formatter formatter, long budget, String query,
+                                int depth) {
+        this.tableFactory = tableFactory;
+        this.formatter = formatter;
+        this.budget = budget;
+        this.query = query;
+        this.depth = depth;
+        this.reservation = MemoryBudget.global().reservation(query);
+        this.table = tableFactory.get();
+    }
+
+    public void add(Row r) {
+        if (partitions == null) {
+            table.add(r);
+            if (depth < MAX_DEPTH && !fits(table.estimatedBytes())) {
+                partitions = new SpillFile[PARTITIONS];
+            }
+        } else if (table.keys().find(r) >= 0) {
+            table.add(r);
+        } else {
+            int p = partition(table.keys().hash(r));
+            if (partitions[p] == null) partitions[p] = new SpillFile("gorgroup");
+            partitions[p].write(r);
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return bytes <= budget && (bytes <= UNRESERVED_BYTES || sharedReservation.ensure(bytes) && reservation.ensure(bytes));
+    }
+
+    private void releaseReservations() {
+        sharedReservation.release();
+        reservation.release();
+    }
+
+    public boolean isSpilling() {
+        return partitions != null;
+    }
+
+    /**
+     * Sends the output lines of all the groups to the consumer in group key order and clears the state.
+     */
+    public void flush(Consumer<String> out) {
+        if (partitions == null) {
+            for (int g : table.keys().sortedGroups()) out.accept(line(table, g));
+            table.clear();
+            releaseReservations();
+        } else {
+            emit((key, line) -> out.accept(line));
+        }
+    }
+
+    public void clear() {
+        table.clear();
+        releaseReservations();
+        if (partitions != null) {
+            for (SpillFile partition : partitions) {
+                if (partition != null) partition.close();
+            }
+            partitions = null;
+        }
+    }
+
+    private interface KeyLineConsumer {
+        void accept(String key, String line);
+    }
+
+    private void emit(KeyLineConsumer out) {
+        if (partitions == null) {
+            for (int g : table.keys().sortedGroups()) {
+                out.accept(table.keys().key(g), line(table, g));
+            }
+            table.clear();
+            releaseReservations();
+            return;
+        }
+
+        List<SpillFile> results = new ArrayList<>();
+        try {
+            SpillFile memoryResult = new SpillFile("gorgroupresult");
+            results.add(memoryResult);
+            for (int g : table.keys().sortedGroups()) {
+                memoryResult.write(table.keys().key(g));
+                memoryResult.write(line(table, g));
+            }
+            // The table of a spilling aggregation has reached the budget, release it before the partitions are read
+            table = tableFactory.get();
+            releaseReservations();
+
+            for (int p = 0; p < PARTITIONS; p++) {
+                SpillFile partition = partitions[p];
+                if (partition == null) continue;
+                SpillingAggregation child = new SpillingAggregation(tableFactory, formatter, budget, query, depth + 1);
+                try (SpillFile.LineIterator rows = partition.lines()) {
+                    while (rows.hasNext()) child.add(RowObj.apply(rows.next()));
+                }
+                partition.close();
+                partitions[p] = null;
+
+                SpillFile result = new SpillFile("gorgroupresult");
+                results.add(result);
+                child.emit((key, line) -> {
+                    result.write(key);
+                    result.write(line);
+                });
+            }
+            partitions = null;
+            merge(results, out);
+        } finally {
+            for (SpillFile result : results) result.close();
+            clear();
+        }
+    }
+
+    private String line(AggregationTable aggregates, int group) {
+        lineBuilder.setLength(0);
+        formatter.append(aggregates, group, lineBuilder);
+        return lineBuilder.toString();
+    }
+
+    private int partition(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return (mixed >>> (32 - PARTITION_BITS * (depth + 1))) & (PARTITIONS - 1);
+    }
+
+    private static void merge(List<SpillFile> results, KeyLineConsumer out) {
+        PriorityQueue<MergeSource> queue = new PriorityQueue<>();
+        try {
+            for (SpillFile result : results) {
+                MergeSource source = new MergeSource(result.lines());
+                if (source.advance()) queue.add(source);
+                else source.lines.close();
+            }
+            while (!queue.isEmpty()) {
+                MergeSource source = queue.poll();
+                out.accept(source.key, source.line);
+                if (source.advance()) queue.add(source);
+                else source.lines.close();
+            }
+        } finally {
+            for (MergeSource source : queue) source.lines.close();
+        }
+    }
+
+    private static class MergeSource implements Comparable<MergeSource> {
+        final SpillFile.LineIterator lines;
+        String key;
+        String line;
+
+        MergeSource(SpillFile.LineIterator lines) {
+            this.lines = lines;
+        }
+
+        boolean advance() {
+            if (!lines.hasNext()) return false;
+            key = lines.next();
+            line = lines.next();
+            return true;
+        }
+
+        @Override
+        public int compareTo(MergeSource other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -36,7 +36,7 @@ import java.util.*;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.stream.IntStream;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -54,7 +54,7 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
     private final Duration batchOfferTimeout;
     private final Duration timeout;
     private final Duration logInterval;
-    private ReaderThread readerThread;
+    private volatile ReaderThread readerThread;
     private boolean throwOnExit = true;
 
     private double avgSeekTimeMilliSecond = 0.0;
@@ -67,20 +67,52 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
     private int bavgCount = 0;
 
     private long est = Long.MAX_VALUE;
-    private boolean nosplit = false;
-    private String currentChrom;
-    private static Map<String,String> nextChromMap = new HashMap<>();
+    private ContigSplits splits;
+    private int firstSplit;
+    private int lastSplit;
+    private Supplier<BatchedPipeStepIteratorAdaptor> splitFactory;
 
     private BatchedReadSourceConfig brsConfig;
     private boolean autoclose;
+    private String requestId;
 
-    public void setCurrentChrom(String chrom) {
-        this.currentChrom = chrom;
+    /**
+     * Sets the request id of the query, the row buffers of the reader thread are reserved from the process memory
+     * budget on its behalf.
+     */
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Allows the spliterator to be split along the given genomic ranges. Each split runs on an adaptor from the
+     * factory, which must run the same query on a fresh source and pipe, restricted to the split's ranges. Without
+     * splits trySplit returns null, so they must only be set for queries whose steps give the same rows on each range
+     * as on the whole input, see SplitManager.isPartitionSafe.
+     */
+    public void setSplits(ContigSplits splits, Supplier<BatchedPipeStepIteratorAdaptor> splitFactory) {
+        setRange(splits, 0, splits.count() - 1, splitFactory);
+    }
+
+    private void setRange(ContigSplits splits, int firstSplit, int lastSplit, Supplier<BatchedPipeStepIteratorAdaptor> splitFactory) {
+        this.splits = splits;
+        this.firstSplit = firstSplit;
+        this.lastSplit = lastSplit;
+        this.splitFactory = splitFactory;
+    }
+
+    private boolean beforeRange(Row r) {
+        return splits != null && splits.precedes(r, firstSplit);
     }
 
-    static {
-        String[] chroms = {"chr1","chr10","chr11","chr12","chr13","chr14","chr15","chr16","chr17","chr18","chr19","chr20","chr21","chr22","chrM","chrX","chrY"};
-        IntStream.range(0,chroms.length-1).forEach(i -> nextChromMap.put(chroms[i],chroms[i+1]));
+    private boolean pastRange(Row r) {
+        return splits != null && !splits.precedes(r, lastSplit);
+    }
+
+    private void seekToRange() {
+        if (splits != null && firstSplit > 0 && sourceIterator instanceof RowSource) {
+            ((RowSource) sourceIterator).setPosition(splits.getChr(firstSplit), splits.getPos(firstSplit));
+        }
     }
 
     @Override
@@ -154,30 +186,29 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
     @Override
     public BatchedPipeStepIteratorAdaptor clone() {
         RowSource cl = ((RowSource) sourceIterator).clone();
-        return new BatchedPipeStepIteratorAdaptor(cl, pipeStep.clone(), getHeader(), brsConfig);
+        BatchedPipeStepIteratorAdaptor adaptor = new BatchedPipeStepIteratorAdaptor(cl, pipeStep.clone(), getHeader(), brsConfig);
+        adaptor.setRequestId(requestId);
+        return adaptor;
     }
 
+    /**
+     * Hands the first half of the remaining ranges to a new adaptor, so the splits stay in genomic order.
+     */
     @Override
     public Spliterator<Row> trySplit() {
-        if( !nosplit && sourceIterator != null && nextChromMap.containsKey(currentChrom) ) {
-            String nextChrom = nextChromMap.get(currentChrom);
-            BatchedPipeStepIteratorAdaptor splitbpia = clone();
-            splitbpia.setPosition(currentChrom, 0);
-            currentChrom = nextChrom;
-            return splitbpia;
-        }
-
-        if( !nosplit ) {
-            this.setPosition(currentChrom, 0);
-            nosplit = true;
+        if (splits == null || splitFactory == null || readerThread != null || lastSplit - firstSplit < 2) {
+            return null;
         }
-
-        return null;
+        int midSplit = (firstSplit + lastSplit) >>> 1;
+        BatchedPipeStepIteratorAdaptor prefix = splitFactory.get();
+        prefix.setRange(splits, firstSplit, midSplit, splitFactory);
+        firstSplit = midSplit;
+        return prefix;
     }
 
     @Override
     public long estimateSize() {
-        return est;
+        return splits != null ? splits.bases(firstSplit, lastSplit) : est;
     }
 
     @Override
@@ -237,8 +268,7 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
 
         @Override
         public void process(Row r) {
-            if (nosplit && !currentChrom.equals(r.chr)) reportWantsNoMore();
-            else cns.accept(r);
+            cns.accept(r);
         }
 
         @Override
@@ -315,7 +345,7 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
         private RowBuffer rowBuffer2 = new RowBuffer(rowBuffer1);
         private Analysis bufferedPipeStep;
         private BufferAdaptor bufferAdaptor;
-        private boolean stopProcessing = false;
+        private volatile boolean stopProcessing = false;
         private boolean didStart = false;
 
         private long numberOfPollsBeforeLog;
@@ -337,6 +367,8 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
         private void init() {
             this.setName(Thread.currentThread().getName() + "::ReaderThread");
             rowBuffer1.setNextRowBuffer(rowBuffer2);
+            rowBuffer1.setRequestId(requestId);
+            rowBuffer2.setRequestId(requestId);
             numberOfPollsBeforeLog = logInterval.toMillis() / batchOfferTimeout.toMillis();
             numberOfPollsBeforeTimeout = timeout.toMillis() / batchOfferTimeout.toMillis();
         }
@@ -371,10 +403,13 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
             didStart = true;
             Row r = null;
             try {
-                while (sourceIterator.hasNext() && !bufferedPipeStep.wantsNoMore()) {
+                while (!stopProcessing && sourceIterator.hasNext() && !bufferedPipeStep.wantsNoMore()) {
                     r = sourceIterator.next();
-                    bufferedPipeStep.process(r);
+                    if (pastRange(r)) break;
+                    if (!beforeRange(r)) bufferedPipeStep.process(r);
                 }
+                // Stop nested reader threads before the pipe steps finish, e.g. after top
+                if (stopProcessing || bufferedPipeStep.wantsNoMore()) terminateSource();
             } catch (Throwable e) {
                 setEx(e);
                 stopProcessing("Stop processinng cause error " + e.getMessage() + " last row " + r);
@@ -445,14 +480,15 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
     @Override
     public boolean hasNext() {
         try {
-            if (rowBuffer == null) {
+            if (readerThread == null) {
+                seekToRange();
                 readerThread = new ReaderThread();
                 readerThread.setUncaughtExceptionHandler((tt, e) -> {
                     // THis is just so that the default handler does not write to std.err
                 });
                 readerThread.start();
                 rowBuffer = readerThread.pollBatch();
-            } else if (!rowBuffer.available()) {
+            } else if (rowBuffer != null && !rowBuffer.available()) {
                 rowBuffer = readerThread.pollBatch();
             }
 
@@ -491,9 +527,11 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
         Exception ex = null;
         bufferedPipeStep.securedSetup(ex);
         try {
+            seekToRange();
             while (sourceIterator.hasNext() && !bufferedPipeStep.wantsNoMore()) {
                 Row r = sourceIterator.next();
-                bufferedPipeStep.process(r);
+                if (pastRange(r)) break;
+                if (!beforeRange(r)) bufferedPipeStep.process(r);
             }
         } catch(Exception e) {
             ex = e;
@@ -533,6 +571,25 @@ public class BatchedPipeStepIteratorAdaptor extends RowSource implements Spliter
         seekCount++;
     }
 
+    /**
+     * Stops the reader thread and the reading ahead of the sources, the iterator then ends after at most the
+     * current batch
+     */
+    @Override
+    public void terminateReading() {
+        ReaderThread thread = readerThread;
+        if (thread != null) {
+            thread.stopProcessing("Stop processing terminate reading");
+            // Release the reader thread if it is waiting to offer a batch
+            thread.poll();
+        }
+        terminateSource();
+    }
+
+    private void terminateSource() {
+        if (sourceIterator instanceof RowSource) ((RowSource) sourceIterator).terminateReading();
+    }
+
     private void closeSourceIterator() {
         if (sourceIterator instanceof RowSource) ((RowSource)sourceIterator).close();
     }
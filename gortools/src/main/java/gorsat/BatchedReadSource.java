@@ -46,7 +46,7 @@ public class BatchedReadSource extends RowSource {
 
     private Row endRow = RowObj.StoR("chrN\t-1");
     private Iterator<? extends Row> sourceIterator;
-    private PollingThread readerThread;
+    private volatile PollingThread readerThread;
     private final Duration timeTriggerBufferFlush;
     private final Duration batchOfferTimeout;
     private final Duration timeout;
@@ -62,6 +62,7 @@ public class BatchedReadSource extends RowSource {
     private int bavgCount = 0;
 
     private GorMonitor gorMonitor;
+    private String requestId;
 
     public void updateTimeMeasurement(long deltaTimeNs, RowBuffer current) {
         ++avgCount;
@@ -82,7 +83,7 @@ public class BatchedReadSource extends RowSource {
         SynchronousQueue<RowBuffer> rowQueue = new SynchronousQueue<>();
         RowBuffer rowBuffer1 = new RowBuffer();
         RowBuffer rowBuffer2 = new RowBuffer(rowBuffer1);
-        boolean stopProcessingThread = false;
+        volatile boolean stopProcessingThread = false;
         boolean didStart = false;
 
         long numberOfPollsBeforeLog;
@@ -90,6 +91,8 @@ public class BatchedReadSource extends RowSource {
 
         PollingThread() {
             rowBuffer1.setNextRowBuffer(rowBuffer2);
+            rowBuffer1.setRequestId(requestId);
+            rowBuffer2.setRequestId(requestId);
 
             numberOfPollsBeforeLog = logInterval.toMillis() / batchOfferTimeout.toMillis();
             numberOfPollsBeforeTimeout = timeout.toMillis() / batchOfferTimeout.toMillis();
@@ -116,8 +119,6 @@ public class BatchedReadSource extends RowSource {
             }
         }
 
-        int lastCount = 0;
-        int pollCount = 0;
         RowBuffer pollBatch() throws InterruptedException {
             RowBuffer rowBuffer = rowQueue.poll(batchOfferTimeout.toMillis(), TimeUnit.MILLISECONDS);
             int count = 0;
@@ -128,15 +129,15 @@ public class BatchedReadSource extends RowSource {
                 if (count++ % numberOfPollsBeforeLog == 0) {
                     log.debug("BatchedReadSource polling for" + batchOfferTimeout.getSeconds() * count + ", threadid: " + Thread.currentThread().getId());
                 }
+                if (gorMonitor != null && isCancelled()) {
+                    stopProcessing();
+                    break;
+                }
                 rowBuffer = rowQueue.poll(batchOfferTimeout.toMillis(), TimeUnit.MILLISECONDS);
             }
-            pollCount += count+1;
 
-            if( gorMonitor != null && rowBuffer != null && pollCount-lastCount > 200 ) {
-                if (isCancelled()) {
-                    stopProcessing();
-                }
-                lastCount = pollCount;
+            if (gorMonitor != null && rowBuffer != null && isCancelled()) {
+                stopProcessing();
             }
 
             return rowBuffer;
@@ -229,6 +230,14 @@ public class BatchedReadSource extends RowSource {
         this.setHeader(header);
     }
 
+    /**
+     * Sets the request id of the query, the row buffers of the reader thread are reserved from the process memory
+     * budget on its behalf.
+     */
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
     @Override
     public double getAvgRowsPerMilliSecond() {
         return avgRowsPerMilliSecond;
@@ -270,12 +279,12 @@ public class BatchedReadSource extends RowSource {
     @Override
     public boolean hasNext() {
         try {
-            if (rowBuffer == null) {
+            if (readerThread == null) {
                 readerThread = new ReaderThread();
                 rowBuffer = readerThread.rowBuffer1;
                 readerThread.start();
                 rowBuffer = readerThread.pollBatch();
-            } else if (!rowBuffer.available()) {
+            } else if (rowBuffer != null && !rowBuffer.available()) {
                 rowBuffer = readerThread.pollBatch();
             }
             Throwable exception = getEx();
@@ -326,6 +335,17 @@ public class BatchedReadSource extends RowSource {
         return gorMonitor.isCancelled();
     }
 
+    @Override
+    public void terminateReading() {
+        PollingThread thread = readerThread;
+        if (thread != null) {
+            thread.stopProcessing();
+            // Release the reader thread if it is waiting to offer a batch
+            thread.poll();
+        }
+        if (sourceIterator instanceof RowSource) ((RowSource) sourceIterator).terminateReading();
+    }
+
     private void closeSourceIterator() {
         if (sourceIterator instanceof RowSource) ((RowSource) sourceIterator).close();
     }
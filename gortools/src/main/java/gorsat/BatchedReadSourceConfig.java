@@ -41,6 +41,36 @@ public interface BatchedReadSourceConfig extends Config {
     String CONNECTIONRETRIES_KEY = "gor.cmd.connection.retries";
     String CONNECTIONRETRYTIME_KEY = "gor.cmd.connection.retry.time";
     String CONNECTIONRETRYEXPONENT_KEY = "gor.cmd.connection.retry.exponent";
+    String PIPELINESTAGES_KEY = "gor.pipeline.stages";
+    String PIPELINESTAGECOMMANDS_KEY = "gor.pipeline.stage.commands";
+    String PIPELINEBATCHSIZE_KEY = "gor.pipeline.batch.size";
+    String PIPELINEBATCHES_KEY = "gor.pipeline.batches";
+    String SPLITRANGESIZE_KEY = "gor.split.range.size";
+
+    @Config.Key(SPLITRANGESIZE_KEY)
+    @Config.DefaultValue("0")
+    @Documentation("Maximum number of bases in a range when a query is split for parallel streaming, also cutting at the build split points. 0 splits at whole contigs only")
+    Integer getSplitRangeSize();
+
+    @Config.Key(PIPELINESTAGES_KEY)
+    @Config.DefaultValue("0")
+    @Documentation("Maximum number of extra threads a pipe is cut into, 0 runs all pipe steps on one thread")
+    Integer getPipelineStages();
+
+    @Config.Key(PIPELINESTAGECOMMANDS_KEY)
+    @Config.DefaultValue("GROUP,JOIN,MAP,MULTIMAP,VARJOIN,REGRESSION,WRITE")
+    @Documentation("Comma separated commands the pipe is cut in front of, after the first cut behind the input source")
+    String getPipelineStageCommands();
+
+    @Config.Key(PIPELINEBATCHSIZE_KEY)
+    @Config.DefaultValue("1024")
+    @Documentation("Number of rows in each batch handed between pipe stages")
+    Integer getPipelineBatchSize();
+
+    @Config.Key(PIPELINEBATCHES_KEY)
+    @Config.DefaultValue("4")
+    @Documentation("Number of batches buffered between pipe stages")
+    Integer getPipelineBatches();
 
     @Config.Key(CONNECTIONRETRIES_KEY)
     @Config.DefaultValue("10")
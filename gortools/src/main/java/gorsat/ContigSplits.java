@@ -0,0 +1,128 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Boundaries splitting the genome into consecutive ranges in GOR order, used to run parts of a query in parallel.
+ * <p>
+ * Range i holds the rows from boundary i up to, but not including, boundary i + 1. The first boundary lies before
+ * and the last one after all rows, so contigs missing from the build still fall into one of the ranges. The
+ * boundaries are the starts of the build contigs, the build split points and, if a maximum range size is given,
+ * cuts at multiples of that size within longer contigs.
+ */
+public class ContigSplits {
+    private final String[] chrs;
+    private final int[] positions;
+    private final long[] offsets;
+
+    private ContigSplits(String[] chrs, int[] positions, long[] offsets) {
+        this.chrs = chrs;
+        this.positions = positions;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param buildSize    contig lengths of the reference build
+     * @param buildSplit   split point within each contig, may be null or miss contigs
+     * @param maxRangeSize maximum number of bases in a range, 0 or less for no limit
+     */
+    public static ContigSplits fromBuild(Map<String, Integer> buildSize, Map<String, Integer> buildSplit, int maxRangeSize) {
+        List<String> chrList = new ArrayList<>();
+        List<Integer> posList = new ArrayList<>();
+        List<Long> offsetList = new ArrayList<>();
+
+        chrList.add(null);
+        posList.add(0);
+        offsetList.add(0L);
+
+        long offset = 0;
+        boolean first = true;
+        for (Map.Entry<String, Integer> contig : new TreeMap<>(buildSize).entrySet()) {
+            String chr = contig.getKey();
+            int length = contig.getValue();
+
+            TreeSet<Integer> cuts = new TreeSet<>();
+            if (!first) cuts.add(0);
+            Integer split = buildSplit != null ? buildSplit.get(chr) : null;
+            if (split != null && split > 0 && split < length) cuts.add(split);
+            if (maxRangeSize > 0) {
+                for (long p = maxRangeSize; p < length; p += maxRangeSize) cuts.add((int) p);
+            }
+            for (int cut : cuts) {
+                chrList.add(chr);
+                posList.add(cut);
+                offsetList.add(offset + cut);
+            }
+            offset += length;
+            first = false;
+        }
+
+        chrList.add(null);
+        posList.add(Integer.MAX_VALUE);
+        offsetList.add(offset);
+
+        return new ContigSplits(chrList.toArray(new String[0]),
+                posList.stream().mapToInt(Integer::intValue).toArray(),
+                offsetList.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * @return the number of boundaries, one more than the number of ranges
+     */
+    public int count() {
+        return chrs.length;
+    }
+
+    public String getChr(int i) {
+        return chrs[i];
+    }
+
+    public int getPos(int i) {
+        return positions[i];
+    }
+
+    /**
+     * @return true if the row comes before boundary i
+     */
+    public boolean precedes(Row r, int i) {
+        if (i == 0) return false;
+        if (i == chrs.length - 1) return true;
+        int c = r.chr.compareTo(chrs[i]);
+        return c < 0 || (c == 0 && r.pos < positions[i]);
+    }
+
+    /**
+     * @return the number of build bases between boundaries from and to
+     */
+    public long bases(int from, int to) {
+        return offsets[to] - offsets[from];
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Regression;
+
+import java.util.Arrays;
+
+import static gorsat.Regression.LinearAlgebra.*;
+import static gorsat.Regression.RegressionUtilities.computePValues;
+import static gorsat.Regression.RegressionUtilities.getTriangularMatrix;
+
+/**
+ * Linear regression of a fixed dependent variable on a genotype and a fixed set of covariates, for many genotypes.
+ *
+ * The covariate matrix, with a column of ones for the intercept, is QR factorized once and y is projected onto it
+ * when the object is created. By the Frisch-Waugh-Lovell theorem the genotype coefficient is the regression
+ * coefficient of the residual of y on the residual of the genotype, both after projecting out the covariates, and
+ * the remaining coefficients and the standard errors follow from a rank one update of the covariate solution. Each
+ * genotype therefore costs one application of the Householder reflectors, O(mk), instead of a new factorization,
+ * O(mk^2).
+ *
+ * The results are those of {@link LinearRegression} with the columns (genotype, c_1, ..., c_k), written in the same
+ * order: intercept, genotype, covariates.
+ */
+public class CovariateAdjustedLinearRegression {
+    final private int numberOfSamples;
+    final private int k; //Number of covariate columns, including the intercept.
+    final private int n;
+    final private double[][] C;
+    final private double[] rDiag;
+    final private double[] covariateVariance;
+    final private double[] yProjected;
+    final private double yResidual2;
+    final private double[] b;
+    final private double[] w;
+
+    final public double[][] beta;
+    final public double[][] betaError;
+    final public double[][] tStats;
+    final public double[][] pValues;
+
+    /**
+     * @param covariates        The covariates, indexed (covariate, sample).
+     * @param y                 The dependent variable.
+     * @param numberOfSamples   The number of samples, the first numberOfSamples entries of each vector are used.
+     * @param maxBatchSize      The maximum number of genotypes regressed in one call to
+     *                          {@link #runRegressions(double[][], int)}.
+     */
+    public CovariateAdjustedLinearRegression(double[][] covariates, double[] y, int numberOfSamples, int maxBatchSize) {
+        if (numberOfSamples <= covariates.length + 1) {
+            throw new IllegalArgumentException("Number of samples must be greater than the number of covariates.");
+        }
+        this.numberOfSamples = numberOfSamples;
+        this.k = covariates.length + 1;
+        this.n = this.k + 1;
+        this.C = new double[this.k][];
+        this.C[0] = new double[numberOfSamples];
+        Arrays.fill(this.C[0], 1);
+        for (int i = 1; i < this.k; ++i) {
+            this.C[i] = Arrays.copyOf(covariates[i - 1], numberOfSamples);
+        }
+        this.rDiag = new double[this.k];
+        QRFactorize(this.C, this.rDiag, numberOfSamples);
+
+        this.covariateVariance = new double[this.k];
+        computeCovariateVariance();
+
+        this.yProjected = Arrays.copyOf(y, numberOfSamples);
+        project(this.yProjected);
+        this.yResidual2 = dotProd(this.yProjected, this.yProjected, this.k, numberOfSamples);
+
+        this.b = new double[this.k];
+        this.w = new double[this.k];
+        this.beta = new double[maxBatchSize][this.n];
+        this.betaError = new double[maxBatchSize][this.n];
+        this.tStats = new double[maxBatchSize][this.n];
+        this.pValues = new double[maxBatchSize][this.n];
+    }
+
+    /**
+     * Regresses y on each of the first {@code count} genotypes and the covariates. The results for genotypes[i] are
+     * written to beta[i], betaError[i], tStats[i] and pValues[i]. The genotype vectors are overwritten.
+     */
+    public void runRegressions(double[][] genotypes, int count) {
+        //The reflectors are applied to the whole batch, Q^T G, one reflector at a time.
+        for (int j = 0; j < this.k; ++j) {
+            final double[] C_j = this.C[j];
+            final double denominator = this.rDiag[j] * C_j[j];
+            for (int i = 0; i < count; ++i) {
+                final double[] g = genotypes[i];
+                addMultipleOf(g, dotProd(g, C_j, j, this.numberOfSamples) / denominator, C_j, j, this.numberOfSamples);
+            }
+        }
+        for (int i = 0; i < count; ++i) {
+            computeResults(genotypes[i], this.beta[i], this.betaError[i], this.tStats[i], this.pValues[i]);
+        }
+    }
+
+    private void computeResults(double[] g, double[] beta, double[] betaError, double[] tStats, double[] pValues) {
+        //The residuals of g and y are orthogonal to the covariates so only the coordinates from k on contribute.
+        final double g2 = dotProd(g, g, this.k, this.numberOfSamples);
+        final double gy = dotProd(g, this.yProjected, this.k, this.numberOfSamples);
+        final double betaG = gy / g2;
+
+        //The covariate coefficients solve Rb = Q^T(y - betaG * g) and w = R^{-1}Q^Tg gives their variance update.
+        for (int i = 0; i < this.k; ++i) {
+            this.b[i] = this.yProjected[i] - betaG * g[i];
+            this.w[i] = g[i];
+        }
+        solveR(this.b);
+        solveR(this.w);
+
+        final double error2 = Math.max(this.yResidual2 - gy * betaG, 0);
+        final double errorVar = error2 / (this.numberOfSamples - this.n);
+
+        beta[0] = this.b[0];
+        betaError[0] = Math.sqrt(errorVar * (this.covariateVariance[0] + this.w[0] * this.w[0] / g2));
+        beta[1] = betaG;
+        betaError[1] = Math.sqrt(errorVar / g2);
+        for (int i = 1; i < this.k; ++i) {
+            beta[i + 1] = this.b[i];
+            betaError[i + 1] = Math.sqrt(errorVar * (this.covariateVariance[i] + this.w[i] * this.w[i] / g2));
+        }
+        for (int i = 0; i < this.n; ++i) {
+            tStats[i] = beta[i] / betaError[i];
+        }
+        computePValues(tStats, pValues);
+    }
+
+    /**
+     * Applies the Householder reflectors to v, after which v[0..k) is Q^Tv and |v[k..m)| is the norm of the residual.
+     */
+    private void project(double[] v) {
+        for (int j = 0; j < this.k; ++j) {
+            final double[] C_j = this.C[j];
+            addMultipleOf(v, dotProd(v, C_j, j, this.numberOfSamples) / (this.rDiag[j] * C_j[j]), C_j, j, this.numberOfSamples);
+        }
+    }
+
+    /**
+     * Solves Rx = v in place. The entries of R above the diagonal are stored in C, column by column.
+     */
+    private void solveR(double[] v) {
+        for (int j = this.k - 1; j != -1; --j) {
+            final double v_j = (v[j] /= this.rDiag[j]);
+            final double[] C_j = this.C[j];
+            for (int i = j - 1; i != -1; --i) {
+                v[i] -= C_j[i] * v_j;
+            }
+        }
+    }
+
+    /**
+     * Computes the diagonal of (C^TC)^{-1} = R^{-1}R^{-T}.
+     */
+    private void computeCovariateVariance() {
+        final double[][] Rinv = getTriangularMatrix(this.k);
+        Rinv[0][0] = this.rDiag[0];
+        for (int i = 1; i < this.k; ++i) {
+            System.arraycopy(this.C[i], 0, Rinv[i], 0, i);
+            Rinv[i][i] = this.rDiag[i];
+        }
+        invertUpperTriangular(Rinv, Rinv, this.k);
+        for (int j = 0; j < this.k; ++j) {
+            final double[] Rinv_j = Rinv[j];
+            for (int i = 0; i <= j; ++i) {
+                this.covariateVariance[i] += Rinv_j[i] * Rinv_j[i];
+            }
+        }
+    }
+}
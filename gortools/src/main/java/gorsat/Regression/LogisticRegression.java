@@ -83,13 +83,31 @@ abstract public class LogisticRegression {
     }
 
     public boolean runRegression(double[][] x, boolean[] y, int numberOfSamples, double tol, int maxIter) {
-        this.numberOfSamples = numberOfSamples;
-        boolean converged;
         if (!betaClean) {
             Arrays.fill(beta, 0);
         }
+        return fit(x, y, numberOfSamples, tol, maxIter, true);
+    }
+
+    /**
+     * Runs the regression starting Newton's method from {@code initialBeta} instead of zero. Starting from a nearby
+     * point, such as the fit of the model without the genotype, usually saves most of the iterations. The result only
+     * agrees with the fit started from zero to within the tolerance, so the statistics may differ in the last digits.
+     */
+    public boolean runRegression(double[][] x, boolean[] y, int numberOfSamples, double tol, int maxIter, double[] initialBeta) {
+        System.arraycopy(initialBeta, 0, beta, 0, dim);
+        return fit(x, y, numberOfSamples, tol, maxIter, false);
+    }
+
+    private boolean fit(double[][] x, boolean[] y, int numberOfSamples, double tol, int maxIter, boolean fromZero) {
+        this.numberOfSamples = numberOfSamples;
+        boolean converged;
         try {
-            updateGradientAndHessianFirstRun(x, y);
+            if (fromZero) {
+                updateGradientAndHessianFirstRun(x, y);
+            } else {
+                updateGradientAndHessian(x, y);
+            }
             updateBeta();
             converged = error < tol;
             numberOfIterations = 1;
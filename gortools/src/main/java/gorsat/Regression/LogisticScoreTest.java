@@ -0,0 +1,153 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Regression;
+
+import static gorsat.Regression.LinearAlgebra.choleskyFactorize;
+import static gorsat.Regression.LinearAlgebra.solveUpper;
+import static gorsat.Regression.RegressionUtilities.computePValue;
+import static gorsat.Regression.RegressionUtilities.getTriangularMatrix;
+
+/**
+ * Score test for adding a genotype to a fitted logistic regression model without the genotype (the null model).
+ *
+ * With mu the fitted probabilities of the null model, W = diag(mu(1 - mu)) and C the covariate matrix with a column
+ * of ones, the score is U = g^T(y - mu) and its variance is V = g^TWg - g^TWC(C^TWC)^{-1}C^TWg. Everything that does
+ * not depend on the genotype is computed in the constructor, so each genotype costs a single pass over its vector.
+ * The statistic U/sqrt(V) is asymptotically equivalent to the Wald statistic of the full model under the null
+ * hypothesis and U/V is the first Newton step for the genotype coefficient from the null model.
+ */
+public class LogisticScoreTest {
+    final private int numberOfSamples;
+    final private int k; //Number of covariate columns, including the intercept.
+    final private double[][] covariates;
+    final private double[] residual;
+    final private double[] weight;
+    final private double[][] U; //Cholesky factor of C^TWC.
+    final private double[] b;
+
+    final public double[] nullZStats;
+    final public double[] nullPValues;
+
+    public double score;
+    public double variance;
+    public double beta;
+    public double zStat;
+    public double pValue;
+
+    /**
+     * @param covariates        The covariates, indexed (covariate, sample).
+     * @param y                 The dependent variable.
+     * @param numberOfSamples   The number of samples, the first numberOfSamples entries of each vector are used.
+     * @param nullBeta          The coefficients of the fitted null model, intercept first.
+     */
+    public LogisticScoreTest(double[][] covariates, boolean[] y, int numberOfSamples, double[] nullBeta) {
+        this.numberOfSamples = numberOfSamples;
+        this.k = covariates.length + 1;
+        this.covariates = covariates;
+        this.residual = new double[numberOfSamples];
+        this.weight = new double[numberOfSamples];
+        this.U = getTriangularMatrix(this.k);
+        this.b = new double[this.k];
+        this.nullZStats = new double[this.k];
+        this.nullPValues = new double[this.k];
+
+        for (int i = 0; i < numberOfSamples; ++i) {
+            double eta = nullBeta[0];
+            for (int j = 1; j < this.k; ++j) {
+                eta += nullBeta[j] * covariates[j - 1][i];
+            }
+            final double mu = 1 / (1 + Math.exp(-eta));
+            this.residual[i] = (y[i] ? 1 : 0) - mu;
+            this.weight[i] = mu * (1 - mu);
+        }
+
+        for (int j = 0; j < this.k; ++j) {
+            for (int l = 0; l <= j; ++l) {
+                double s = 0;
+                for (int i = 0; i < numberOfSamples; ++i) {
+                    s += this.weight[i] * column(j, i) * column(l, i);
+                }
+                this.U[j][l] = s;
+            }
+        }
+        choleskyFactorize(this.U, this.k);
+
+        //The variances of the null coefficients are the diagonal of (C^TWC)^{-1} = U^{-T}U^{-1}.
+        for (int j = 0; j < this.k; ++j) {
+            final double variance = inverseQuadraticForm(j);
+            this.nullZStats[j] = nullBeta[j] / Math.sqrt(variance);
+            this.nullPValues[j] = computePValue(this.nullZStats[j]);
+        }
+    }
+
+    /**
+     * Tests the genotype g and writes the results to the public fields.
+     */
+    public void test(double[] g) {
+        double s = 0;
+        double gwg = 0;
+        for (int j = 0; j < this.k; ++j) {
+            this.b[j] = 0;
+        }
+        for (int i = 0; i < this.numberOfSamples; ++i) {
+            final double g_i = g[i];
+            final double wg = this.weight[i] * g_i;
+            s += g_i * this.residual[i];
+            gwg += wg * g_i;
+            this.b[0] += wg;
+            for (int j = 1; j < this.k; ++j) {
+                this.b[j] += wg * this.covariates[j - 1][i];
+            }
+        }
+        solveUpper(this.U, this.b, this.b, this.k);
+        double projected = 0;
+        for (int j = 0; j < this.k; ++j) {
+            projected += this.b[j] * this.b[j];
+        }
+
+        this.score = s;
+        this.variance = gwg - projected;
+        this.beta = s / this.variance;
+        this.zStat = s / Math.sqrt(this.variance);
+        this.pValue = computePValue(this.zStat);
+    }
+
+    private double column(int j, int i) {
+        return j == 0 ? 1 : this.covariates[j - 1][i];
+    }
+
+    /**
+     * Computes e_j^T(C^TWC)^{-1}e_j.
+     */
+    private double inverseQuadraticForm(int j) {
+        for (int l = 0; l < this.k; ++l) {
+            this.b[l] = l == j ? 1 : 0;
+        }
+        solveUpper(this.U, this.b, this.b, this.k);
+        double s = 0;
+        for (int l = 0; l < this.k; ++l) {
+            s += this.b[l] * this.b[l];
+        }
+        return s;
+    }
+}
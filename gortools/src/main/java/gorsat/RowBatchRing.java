@@ -0,0 +1,164 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.gorpipe.model.genome.files.gor.Row;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free single producer/single consumer ring of reusable row batches.
+ * <p>
+ * The producer claims the batch at the tail, fills it and publishes it, the consumer takes the batch at the
+ * head, processes it and releases it, which hands the batch back to the producer. The batch arrays are allocated
+ * once and reused, and a full ring blocks the producer, which gives back-pressure without any locks.
+ * Waiting threads spin briefly, then yield and finally park with an increasing timeout.
+ */
+public class RowBatchRing {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long MAX_PARK_NS = 1000000L;
+
+    private final Row[][] batches;
+    private final int[] sizes;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile boolean cancelled = false;
+
+    // Producer side only
+    private long producerHeadCache = 0;
+    // Consumer side only
+    private long consumerTailCache = 0;
+
+    /**
+     * @param numberOfBatches number of batches in the ring, rounded up to a power of two
+     * @param batchSize       number of rows in each batch
+     */
+    public RowBatchRing(int numberOfBatches, int batchSize) {
+        if (numberOfBatches < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Ring needs at least one batch of at least one row");
+        }
+        int capacity = Integer.highestOneBit(numberOfBatches);
+        if (capacity < numberOfBatches) capacity <<= 1;
+        batches = new Row[capacity][batchSize];
+        sizes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return batches.length;
+    }
+
+    public int getBatchSize() {
+        return batches[0].length;
+    }
+
+    /**
+     * Returns the next free batch, waiting while the ring is full, or null if the ring has been cancelled.
+     */
+    public Row[] claim() {
+        long t = tail.get();
+        int tries = 0;
+        while (t - producerHeadCache >= batches.length) {
+            producerHeadCache = head.get();
+            if (t - producerHeadCache < batches.length) break;
+            if (cancelled) return null;
+            tries = idle(tries);
+        }
+        return cancelled ? null : batches[(int) t & mask];
+    }
+
+    /**
+     * Hands the batch returned by the last {@link #claim()} over to the consumer.
+     */
+    public void publish(int size) {
+        long t = tail.get();
+        sizes[(int) t & mask] = size;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Marks the end of the stream, the consumer sees it once it has taken all published batches.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Stops both sides, waiting producers and consumers return immediately.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Waits for the next published batch and returns its number of rows, or -1 when the ring is closed and drained
+     * or cancelled. The rows are read with {@link #current()} and the batch is handed back with {@link #release()}.
+     */
+    public int take() {
+        long h = head.get();
+        int tries = 0;
+        while (h >= consumerTailCache) {
+            consumerTailCache = tail.get();
+            if (h < consumerTailCache) break;
+            if (cancelled) return -1;
+            if (closed) {
+                // The producer may have published right before closing
+                consumerTailCache = tail.get();
+                if (h < consumerTailCache) break;
+                return -1;
+            }
+            tries = idle(tries);
+        }
+        return cancelled ? -1 : sizes[(int) h & mask];
+    }
+
+    public Row[] current() {
+        return batches[(int) head.get() & mask];
+    }
+
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    private int idle(int tries) {
+        if (Thread.currentThread().isInterrupted()) {
+            cancel();
+        } else if (tries < SPIN_TRIES) {
+            // busy spin
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NS, 1000L << Math.min(tries - SPIN_TRIES - YIELD_TRIES, 10)));
+        }
+        return tries + 1;
+    }
+}
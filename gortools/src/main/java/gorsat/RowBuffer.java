@@ -22,6 +22,7 @@
 
 package gorsat;
 
+import org.gorpipe.gor.MemoryBudget;
 import org.gorpipe.model.genome.files.gor.Row;
 
 import java.util.Iterator;
@@ -30,12 +31,16 @@ import java.util.Iterator;
  * An array of GOR row objects implementing iterator interface
  * The user class, BatchedReadSource, ensures thread safety
  * <p>
+ * Buffered bytes beyond the first megabyte are reserved from the process {@link MemoryBudget}, when the reservation
+ * can not grow the buffer reports itself full instead of growing further.
+ * <p>
  * Created by sigmar on 24/11/2016.
  */
 public class RowBuffer implements Iterator<Row> {
     static final int MAX_NUMBER_OF_ROWS = Integer.parseInt(System.getProperty("gor.rowbuffer.max_rows_buffered", "1024"));
     private static final int DEFAULT_MAX_BYTES_IN_BUFFER = Integer.parseInt(System.getProperty("gor.rowbuffer.max_bytes_buffered", "1073741824"));  // Default 1 GB
     private static final int NUM_LINES_TO_ESTIMATE_LINE_SIZE = Integer.parseInt(System.getProperty("gor.rowbuffer.lines_for_size_estimation", "100"));
+    private static final int UNRESERVED_BYTES = 1 << 20;
 
     private Row[] rowArray;
     private int count;
@@ -44,6 +49,8 @@ public class RowBuffer implements Iterator<Row> {
     private int capacity;
     private int maxBytes;              // Maximum bytes used for buffering.
     private int byteCount;             // Used bytes (or currently an estimate of the used bytes).
+    private MemoryBudget.Reservation reservation = MemoryBudget.global().reservation(null);
+    private boolean limited;           // The memory budget could not cover more bytes.
 
     private int estimatedAvgLineSize;
 
@@ -83,6 +90,14 @@ public class RowBuffer implements Iterator<Row> {
         return count > 0 && rowArray[count-1].pos == -1;
     }
 
+    /**
+     * Reserves the buffered bytes on behalf of the query with the given request id, must be set before rows are added.
+     */
+    public void setRequestId(String query) {
+        reservation.release();
+        reservation = MemoryBudget.global().reservation(query);
+    }
+
     public void setNextRowBuffer(RowBuffer buffer) {
         this.next = buffer;
     }
@@ -92,12 +107,13 @@ public class RowBuffer implements Iterator<Row> {
         next.byteCount = 0;
         next.idx = 0;
         next.estimatedAvgLineSize = 0;
+        next.releaseReservation();
         return next;
     }
 
     public boolean enlarge(int newsize) {
         int oldcapacity = capacity;
-        if( byteCount < maxBytes ) capacity = Math.min(newsize, rowArray.length);
+        if( byteCount < maxBytes && !limited ) capacity = Math.min(newsize, rowArray.length);
         return capacity != oldcapacity;
     }
 
@@ -119,6 +135,12 @@ public class RowBuffer implements Iterator<Row> {
         } else {
             byteCount += estimatedAvgLineSize;
         }
+        if (byteCount > UNRESERVED_BYTES && !limited) limited = !reservation.ensure(byteCount);
+    }
+
+    private void releaseReservation() {
+        limited = false;
+        reservation.release();
     }
 
     public Row pop() { return rowArray[--count]; }
@@ -136,6 +158,7 @@ public class RowBuffer implements Iterator<Row> {
         byteCount = 0;
         idx = 0;
         estimatedAvgLineSize = 0;
+        releaseReservation();
     }
 
     public int getIndex() {
@@ -151,7 +174,7 @@ public class RowBuffer implements Iterator<Row> {
     }
 
     public boolean isFull() {
-        return count == capacity || byteCount >= maxBytes;
+        return count == capacity || byteCount >= maxBytes || limited;
     }
 
     public boolean isEmpty() {
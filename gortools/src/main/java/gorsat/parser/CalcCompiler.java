@@ -317,32 +317,55 @@ public class CalcCompiler extends GorScriptBaseVisitor<TypedCalcLambda> {
 
     @Override
     public TypedCalcLambda visitRel_term(GorScriptParser.Rel_termContext ctx) {
-        TypedCalcLambda accumulator = ctx.getChild(0).accept(this);
+        List<TypedCalcLambda> terms = new ArrayList<>();
+        terms.add(ctx.getChild(0).accept(this));
         int childCount = ctx.getChildCount();
         for (int i = 1; i < childCount; i += 2) {
             int op = ((TerminalNode) ctx.getChild(i)).getSymbol().getType();
             TypedCalcLambda nextTerm = ctx.getChild(i + 1).accept(this);
             if (op == GorScriptParser.AND) {
-                TypedCalcLambda acc = accumulator;
-                accumulator = new CalcLambdaBoolean(cvp -> acc.evaluateBoolean(cvp) && nextTerm.evaluateBoolean(cvp));
+                terms.add(nextTerm);
             }
         }
-        return accumulator;
+        if (terms.size() == 1) {
+            return terms.get(0);
+        }
+        // A flat loop over the terms rather than a chain of nested lambdas, one per AND
+        TypedCalcLambda[] all = terms.toArray(new TypedCalcLambda[0]);
+        return new CalcLambdaBoolean(cvp -> {
+            for (TypedCalcLambda term : all) {
+                if (!term.evaluateBoolean(cvp)) {
+                    return false;
+                }
+            }
+            return true;
+        });
     }
 
     @Override
     public TypedCalcLambda visitRel_expr(GorScriptParser.Rel_exprContext ctx) {
-        TypedCalcLambda accumulator = ctx.getChild(0).accept(this);
+        List<TypedCalcLambda> terms = new ArrayList<>();
+        terms.add(ctx.getChild(0).accept(this));
         int childCount = ctx.getChildCount();
         for (int i = 1; i < childCount; i += 2) {
             int op = ((TerminalNode) ctx.getChild(i)).getSymbol().getType();
             TypedCalcLambda nextTerm = ctx.getChild(i + 1).accept(this);
             if (op == GorScriptParser.OR) {
-                TypedCalcLambda acc = accumulator;
-                accumulator = new CalcLambdaBoolean(cvp -> acc.evaluateBoolean(cvp) || nextTerm.evaluateBoolean(cvp));
+                terms.add(nextTerm);
             }
         }
-        return accumulator;
+        if (terms.size() == 1) {
+            return terms.get(0);
+        }
+        TypedCalcLambda[] any = terms.toArray(new TypedCalcLambda[0]);
+        return new CalcLambdaBoolean(cvp -> {
+            for (TypedCalcLambda term : any) {
+                if (term.evaluateBoolean(cvp)) {
+                    return true;
+                }
+            }
+            return false;
+        });
     }
 
     @Override
@@ -354,6 +377,12 @@ public class CalcCompiler extends GorScriptBaseVisitor<TypedCalcLambda> {
         TypedCalcLambda left = leftCtx.accept(this);
         TypedCalcLambda right = rightCtx.accept(this);
 
+        if (left instanceof CalcLambdaVariable && right instanceof CalcLambdaNumeric && right instanceof Constant) {
+            TypedCalcLambda direct = ((CalcLambdaVariable) left).compareToConstant(right.evaluateDouble(null), op);
+            if (direct != null) {
+                return direct;
+            }
+        }
         return left.compare(right, op);
     }
 
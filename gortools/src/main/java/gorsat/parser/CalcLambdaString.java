@@ -26,6 +26,8 @@ import org.gorpipe.exceptions.GorParsingException;
 import org.gorpipe.gor.ColumnValueProvider;
 import org.gorpipe.gor.GorScriptParser;
 
+import java.util.regex.Pattern;
+
 public class CalcLambdaString implements StringType, TypedCalcLambda {
     private CvpStringLambda lambda;
 
@@ -286,8 +288,8 @@ public class CalcLambdaString implements StringType, TypedCalcLambda {
                 return (new CalcLambdaBoolean((ColumnValueProvider cvp) -> evaluateString(cvp).compareTo(other.evaluateString(cvp)) <= 0));
             case GorScriptParser.LIKE:
                 if (other instanceof CalcLambdaStringConstant) {
-                    final String pattern = other.evaluateString(null).replace("*", ".*").replace("?", ".");
-                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> evaluateString(cvp).matches(pattern));
+                    final Pattern pattern = Pattern.compile(other.evaluateString(null).replace("*", ".*").replace("?", "."));
+                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> pattern.matcher(evaluateString(cvp)).matches());
                 } else {
                     return new CalcLambdaBoolean((ColumnValueProvider cvp) -> {
                         final String pattern = other.evaluateString(cvp).replace("*", ".*").replace("?", ".");
@@ -296,8 +298,8 @@ public class CalcLambdaString implements StringType, TypedCalcLambda {
                 }
             case GorScriptParser.RLIKE:
                 if (other instanceof CalcLambdaStringConstant) {
-                    final String pattern = other.evaluateString(null);
-                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> evaluateString(cvp).matches(pattern));
+                    final Pattern pattern = Pattern.compile(other.evaluateString(null));
+                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> pattern.matcher(evaluateString(cvp)).matches());
                 } else {
                     return new CalcLambdaBoolean((ColumnValueProvider cvp) -> {
                         final String pattern = other.evaluateString(cvp);
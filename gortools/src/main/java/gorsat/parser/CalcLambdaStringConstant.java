@@ -26,6 +26,8 @@ import org.gorpipe.exceptions.GorParsingException;
 import org.gorpipe.gor.ColumnValueProvider;
 import org.gorpipe.gor.GorScriptParser;
 
+import java.util.regex.Pattern;
+
 public class CalcLambdaStringConstant implements StringType, Constant, TypedCalcLambda {
     private String value;
 
@@ -265,8 +267,8 @@ public class CalcLambdaStringConstant implements StringType, Constant, TypedCalc
                 return (new CalcLambdaBoolean((ColumnValueProvider cvp) -> value.compareTo(other.evaluateString(cvp)) <= 0));
             case GorScriptParser.LIKE:
                 if (other instanceof CalcLambdaStringConstant) {
-                    final String pattern = other.evaluateString(null).replace("*", ".*").replace("?", ".");
-                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> evaluateString(cvp).matches(pattern));
+                    final Pattern pattern = Pattern.compile(other.evaluateString(null).replace("*", ".*").replace("?", "."));
+                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> pattern.matcher(evaluateString(cvp)).matches());
                 } else {
                     return new CalcLambdaBoolean((ColumnValueProvider cvp) -> {
                         final String pattern = other.evaluateString(cvp).replace("*", ".*").replace("?", ".");
@@ -275,8 +277,8 @@ public class CalcLambdaStringConstant implements StringType, Constant, TypedCalc
                 }
             case GorScriptParser.RLIKE:
                 if (other instanceof CalcLambdaStringConstant) {
-                    final String pattern = other.evaluateString(null);
-                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> evaluateString(cvp).matches(pattern));
+                    final Pattern pattern = Pattern.compile(other.evaluateString(null));
+                    return new CalcLambdaBoolean((ColumnValueProvider cvp) -> pattern.matcher(evaluateString(cvp)).matches());
                 } else {
                     return new CalcLambdaBoolean((ColumnValueProvider cvp) -> {
                         final String pattern = other.evaluateString(cvp);
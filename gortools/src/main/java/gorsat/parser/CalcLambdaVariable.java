@@ -24,6 +24,7 @@ package gorsat.parser;
 
 import org.gorpipe.exceptions.GorSystemException;
 import org.gorpipe.gor.ColumnValueProvider;
+import org.gorpipe.gor.GorScriptParser;
 
 public class CalcLambdaVariable implements TypedCalcLambda {
     private final int columnIndex;
@@ -344,6 +345,47 @@ public class CalcLambdaVariable implements TypedCalcLambda {
         return toLambda().negate();
     }
 
+    /**
+     * Compares a numeric column directly with a numeric constant, reading the column value straight from the row
+     * instead of through the lambdas of the column and the constant. Compares as doubles, like the general numeric
+     * comparison.
+     *
+     * @return the comparison, or null if the column is not numeric or the operator is not a plain comparison
+     */
+    TypedCalcLambda compareToConstant(double value, int op) {
+        CvpDoubleLambda column;
+        switch (columnType) {
+            case "D":
+                column = cvp -> cvp.doubleValue(columnIndex);
+                break;
+            case "L":
+                column = cvp -> cvp.longValue(columnIndex);
+                break;
+            case "I":
+                column = cvp -> cvp.intValue(columnIndex);
+                break;
+            default:
+                return null;
+        }
+        switch (op) {
+            case GorScriptParser.EQ:
+            case GorScriptParser.S_EQ:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) == value);
+            case GorScriptParser.NE:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) != value);
+            case GorScriptParser.GT:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) > value);
+            case GorScriptParser.GE:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) >= value);
+            case GorScriptParser.LT:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) < value);
+            case GorScriptParser.LE:
+                return new CalcLambdaBoolean(cvp -> column.evaluate(cvp) <= value);
+            default:
+                return null;
+        }
+    }
+
     @Override
     public TypedCalcLambda compare(TypedCalcLambda other, int op) {
         if (other instanceof StringType) {
@@ -51,6 +51,8 @@ public class GenericGorRunner extends GorRunner {
             while (brs.hasNext() && !processor.wantsNoMore()) {
                 processor.process(brs.next());
             }
+            // Stop reading ahead before the processor finishes, e.g. after top
+            if (processor.wantsNoMore()) brs.terminateReading();
         } catch (Exception ex) {
             brs.setEx(ex);
             throw ex;
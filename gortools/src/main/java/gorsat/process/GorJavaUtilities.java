@@ -32,6 +32,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -58,6 +61,8 @@ public class GorJavaUtilities {
     public static String[] prArray = Arrays.stream(pArray).mapToObj(p -> fd3.format(p)).toArray(String[]::new);
     public static PRPRValue prprFunction = new PRPRValue();
     public static PRPRPRValue prprprFunction = new PRPRPRValue();
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
 
     public static class PRPRValue {
         String[][] prprArray;
@@ -391,4 +396,80 @@ public class GorJavaUtilities {
     public static String[] mergeArrays(String[] array1, String[] array2) {
         return Stream.concat(Arrays.stream(array1), Arrays.stream(array2)).toArray(String[]::new);
     }
+
+    /**
+     * Appends {@code value} to {@code sb} exactly as {@code String.format(Locale.ROOT, "%.<precision>g", value)} would
+     * write it. Values that are not close to a rounding tie are formatted with double arithmetic, which is an order of
+     * magnitude faster than going through {@link java.util.Formatter}.
+     */
+    public static void appendGeneral(StringBuilder sb, double value, int precision) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        if (Double.compare(value, 0.0) < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        if (value == 0.0) {
+            appendDigits(sb, "0", 0, precision);
+            return;
+        }
+        if (precision <= 15) {
+            int exponent = (int) Math.floor(Math.log10(value));
+            final int shift = precision - 1 - exponent;
+            if (Math.abs(shift) < POWERS_OF_TEN.length) {
+                final double scaled = shift >= 0 ? value * POWERS_OF_TEN[shift] : value / POWERS_OF_TEN[-shift];
+                final double floor = Math.floor(scaled);
+                final long lowest = (long) POWERS_OF_TEN[precision - 1];
+                // Ties are left to the exact path, which rounds the shortest representation of value like Formatter
+                if (Math.abs(scaled - floor - 0.5) > 1e-6 && floor >= lowest && floor < 10 * lowest) {
+                    long digits = (long) floor + (scaled - floor > 0.5 ? 1 : 0);
+                    if (digits == 10 * lowest) {
+                        digits = lowest;
+                        exponent++;
+                    }
+                    appendDigits(sb, Long.toString(digits), exponent, precision);
+                    return;
+                }
+            }
+        }
+        final BigDecimal rounded = new BigDecimal(Double.toString(value)).round(new MathContext(precision, RoundingMode.HALF_UP));
+        appendDigits(sb, rounded.unscaledValue().toString(), rounded.precision() - rounded.scale() - 1, precision);
+    }
+
+    private static void appendDigits(StringBuilder sb, String digits, int exponent, int precision) {
+        if (exponent >= -4 && exponent < precision) {
+            if (exponent < 0) {
+                sb.append("0.");
+                for (int i = -1; i > exponent; --i) sb.append('0');
+                appendPadded(sb, digits, 0, precision);
+            } else {
+                appendPadded(sb, digits, 0, exponent + 1);
+                if (exponent + 1 < precision) {
+                    sb.append('.');
+                    appendPadded(sb, digits, exponent + 1, precision);
+                }
+            }
+        } else {
+            appendPadded(sb, digits, 0, 1);
+            if (precision > 1) {
+                sb.append('.');
+                appendPadded(sb, digits, 1, precision);
+            }
+            sb.append(exponent < 0 ? "e-" : "e+");
+            final int absExponent = Math.abs(exponent);
+            if (absExponent < 10) sb.append('0');
+            sb.append(absExponent);
+        }
+    }
+
+    /**
+     * Appends the characters of digits from begin to end, treating the missing trailing digits as zeros.
+     */
+    private static void appendPadded(StringBuilder sb, String digits, int begin, int end) {
+        for (int i = begin; i < end; ++i) {
+            sb.append(i < digits.length() ? digits.charAt(i) : '0');
+        }
+    }
 }
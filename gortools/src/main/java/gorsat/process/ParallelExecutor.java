@@ -22,61 +22,230 @@
 
 package gorsat.process;
 
+import org.gorpipe.gor.WorkerBudget;
 import scala.Function0;
 import scala.Unit;
 
-import java.util.Arrays;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class encapsulates a general execution in parallel of the pgor command when a
  * standard parallel query handler is not used.
+ * Tasks are executed in order of decreasing estimated cost so the expensive partitions do not end up running alone
+ * at the end. When there are fewer tasks left than workers to run them, the task being started is asked to split
+ * itself so the idle workers can share its work.
+ * The calling thread always takes part in the execution, additional workers run on a shared thread pool and are only
+ * started for queued tasks and split parts, and only for worker slots that can be reserved from the shared worker
+ * budget.
  * Written cooperatively by Joi & Gummi
  */
 public class ParallelExecutor {
 
-    private Throwable firstException;
-    private Thread[] threads;
-    private Function0<Unit>[] commands;
+    /**
+     * Unit of work for the parallel executor.
+     */
+    public interface Task {
+        void run();
+
+        /**
+         * @return estimated cost of the task, tasks with higher cost are started first
+         */
+        default long cost() {
+            return 0;
+        }
+
+        /**
+         * Splits a task that has not been started into smaller tasks that together do the same work.
+         *
+         * @param parts requested number of parts
+         * @return the parts or null if the task can not be split
+         */
+        default Task[] split(int parts) {
+            return null;
+        }
+    }
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+    private static final ExecutorService sharedPool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ParallelExecutorThread-" + threadCounter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Throwable firstException;
+    private final List<Future<?>> workers = new ArrayList<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final WorkerBudget workerBudget;
+    private final PriorityQueue<QueuedTask> queue = new PriorityQueue<>();
+    private int workerCount = 1;
+    private long sequence = 0;
 
     public ParallelExecutor(int workers, Function0<Unit>[] commands) {
-        this.commands = commands;
-        this.threads = new Thread[workers];
+        this(new WorkerBudget(workers), commands);
+    }
+
+    public ParallelExecutor(WorkerBudget workerBudget, Function0<Unit>[] commands) {
+        this(workerBudget, toTasks(commands));
+    }
+
+    public ParallelExecutor(WorkerBudget workerBudget, Task[] tasks) {
+        this.workerBudget = workerBudget;
         this.firstException = null;
+        for (Task task : tasks) {
+            enqueue(task);
+        }
     }
 
     @SuppressWarnings("squid:S00112") // We need to handle Throwable here, sorry
     public void parallelExecute() throws Throwable {
-        ConcurrentLinkedQueue<Function0<Unit>> clq = new ConcurrentLinkedQueue<>(Arrays.asList(commands));
-        for( int i = 0; i < threads.length; i++ ) {
-            Thread t = new Thread(() -> {
-                Function0<Unit> func = clq.poll();
-                while( func != null ) {
-                    func.apply();
-                    func = clq.poll();
-                }
-            }, "ParallelExecutorThread-" + i);
-            t.setUncaughtExceptionHandler(this::parallelExcecuteUncaughtExceptionHandler);
-            t.start();
-            threads[i] = t;
+        // Workers are only reserved for queued tasks, more are added when a task is split for them
+        synchronized (this) {
+            addWorkers(queue.size() - 1);
+        }
+        try {
+            runTasks();
+        } catch (Throwable e) {
+            parallelExcecuteUncaughtExceptionHandler(e);
+        }
+        // No workers are added once the queue has run empty
+        List<Future<?>> started;
+        synchronized (this) {
+            started = new ArrayList<>(workers);
         }
-        for( Thread t : threads ) {
-            t.join();
+        for (Future<?> worker : started) {
             if (firstException != null) {
-                throw firstException;
+                break;
+            }
+            try {
+                worker.get();
+            } catch (Exception e) {
+                // Failures are reported through the exception handler
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    private synchronized void addWorkers(int count) {
+        for (int i = 0; i < count && workerCount < workerBudget.getMaxWorkers() && workerBudget.tryAcquire(); i++) {
+            workerCount++;
+            workers.add(sharedPool.submit(() -> {
+                try {
+                    registerWorkerThread();
+                    runTasks();
+                } catch (Throwable e) {
+                    parallelExcecuteUncaughtExceptionHandler(e);
+                } finally {
+                    unregisterWorkerThread();
+                    workerBudget.release();
+                }
+            }));
+        }
+    }
+
+    private void runTasks() {
+        Task task = nextTask();
+        while (task != null && firstException == null) {
+            task.run();
+            task = nextTask();
+        }
+    }
+
+    private Task nextTask() {
+        QueuedTask next;
+        int parts = 0;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                // The worker stops when there is nothing left to take
+                workerCount--;
+                return null;
+            }
+            // Split the task if other workers would otherwise run out of work, or if free worker slots could take parts
+            int idleWorkers = Math.max(0, workerCount - 1 - queue.size());
+            int spareWorkers = Math.min(workerBudget.getAvailableWorkers(), workerBudget.getMaxWorkers() - workerCount);
+            if (idleWorkers + spareWorkers > 0) {
+                parts = idleWorkers + spareWorkers + 1;
+            }
+        }
+        if (parts == 0) {
+            return next.task;
+        }
+        // Splitting may do IO, e.g. cache lookups of the parts, so the other workers are not held up by it
+        Task[] split = next.task.split(parts);
+        if (split == null || split.length < 2) {
+            return next.task;
+        }
+        synchronized (this) {
+            // Parts are not queued once the execution has failed, the queue has then been cleared
+            if (firstException == null) {
+                int idleWorkers = Math.max(0, workerCount - 1 - queue.size());
+                for (int i = 1; i < split.length; i++) {
+                    enqueue(split[i]);
+                }
+                addWorkers(split.length - 1 - idleWorkers);
             }
         }
+        return split[0];
+    }
+
+    private synchronized void registerWorkerThread() {
+        workerThreads.add(Thread.currentThread());
     }
 
-    private synchronized void parallelExcecuteUncaughtExceptionHandler(Thread thread, Throwable throwable) {
+    private synchronized void unregisterWorkerThread() {
+        workerThreads.remove(Thread.currentThread());
+        // Clear a pending interrupt so it does not leak to the next user of the pooled thread
+        Thread.interrupted();
+    }
+
+    private void enqueue(Task task) {
+        queue.add(new QueuedTask(task, task.cost(), sequence++));
+    }
+
+    private synchronized void parallelExcecuteUncaughtExceptionHandler(Throwable throwable) {
         if (firstException == null) {
             firstException = throwable;
-            for (Thread t : threads) {
-                if (t != thread) {
+            queue.clear();
+            for (Thread t : workerThreads) {
+                if (t != Thread.currentThread()) {
                     t.interrupt();
                 }
             }
         }
     }
 
+    private static Task[] toTasks(Function0<Unit>[] commands) {
+        Task[] tasks = new Task[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            Function0<Unit> command = commands[i];
+            tasks[i] = command::apply;
+        }
+        return tasks;
+    }
+
+    private static class QueuedTask implements Comparable<QueuedTask> {
+        final Task task;
+        final long cost;
+        final long sequence;
+
+        QueuedTask(Task task, long cost, long sequence) {
+            this.task = task;
+            this.cost = cost;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedTask o) {
+            int c = Long.compare(o.cost, cost);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
 }
@@ -0,0 +1,326 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.clients;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Size, cost and access book keeping for the entries of a bounded local file cache. Entries are evicted in order of
+ * their GreedyDual-Size priority, inflation + cost / size, so results that are cheap to recompute, large or have not
+ * been used for a while are removed first. The inflation value is raised to the priority of each evicted entry which
+ * ages entries that are not accessed. The index is persisted as a tab separated file in the cache root so it survives
+ * restarts, entries written by other processes sharing the cache are merged in when saving.
+ * <p>
+ * Entries looked up within the pin time, by this or another process sharing the cache, are not evicted as their
+ * files may be about to be read. Lookups are only recorded on the lookup path and applied to the index when it is
+ * next used for storing, evicting or saving, and the index is saved in the background. Eviction starts when the
+ * total size is above the maximum size and then removes entries until it is below the low water mark, so the
+ * candidates are not ranked on every store.
+ */
+class CacheEntryIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheEntryIndex.class);
+
+    static final String INDEX_FILE_NAME = ".gorcacheindex";
+    private static final String INFLATION_HEADER = "#inflation";
+    private static final long SAVE_INTERVAL_MS = 10000;
+    private static final double LOW_WATER_RATIO = 0.9;
+
+    /**
+     * Time in milliseconds an entry is kept from eviction after it was looked up.
+     */
+    static final long PIN_MS = Long.parseLong(System.getProperty("gor.cache.local.pin.seconds", "300")) * 1000;
+
+    static class Entry {
+        final String fingerprint;
+        String path;
+        long size;
+        long cost;
+        long lastAccess;
+        long lastLookup;
+        double priority;
+
+        Entry(String fingerprint, String path, long size, long cost, long lastAccess, double priority) {
+            this.fingerprint = fingerprint;
+            this.path = path;
+            this.size = size;
+            this.cost = cost;
+            this.lastAccess = lastAccess;
+            this.priority = priority;
+        }
+    }
+
+    private static class Lookup {
+        final String path;
+        final long time;
+
+        Lookup(String path, long time) {
+            this.path = path;
+            this.time = time;
+        }
+    }
+
+    private final Path indexFile;
+    private final long maxSize;
+    private final long pinMillis;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Lookup> lookups = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private double inflation = 0;
+    private long totalSize = 0;
+    private boolean dirty = false;
+    private volatile long lastSave = 0;
+
+    CacheEntryIndex(Path rootPath, long maxSize) {
+        this(rootPath, maxSize, PIN_MS);
+    }
+
+    CacheEntryIndex(Path rootPath, long maxSize, long pinMillis) {
+        this.indexFile = rootPath.resolve(INDEX_FILE_NAME);
+        this.maxSize = maxSize;
+        this.pinMillis = pinMillis;
+        load();
+    }
+
+    synchronized void add(String fingerprint, String path, long size, long cost) {
+        applyLookups();
+        Entry entry = entries.get(fingerprint);
+        long lastLookup = 0;
+        if (entry != null) {
+            totalSize -= entry.size;
+            lastLookup = entry.lastLookup;
+        }
+        entry = new Entry(fingerprint, path, size, cost, System.currentTimeMillis(), 0);
+        entry.lastLookup = lastLookup;
+        entry.priority = priority(entry);
+        entries.put(fingerprint, entry);
+        totalSize += size;
+        dirty = true;
+    }
+
+    /**
+     * Adds the size of a file stored alongside the result of the fingerprint, e.g. an index file.
+     */
+    synchronized void addSize(String fingerprint, long size) {
+        applyLookups();
+        Entry entry = entries.get(fingerprint);
+        if (entry != null) {
+            entry.size += size;
+            entry.priority = priority(entry);
+            totalSize += size;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Registers a lookup of the fingerprint. The lookup is applied to the index later, entries not yet in the index
+     * are then added with no known cost. Does not block on the index or on saving it.
+     */
+    void touch(String fingerprint, String path) {
+        lookups.put(fingerprint, new Lookup(path, System.currentTimeMillis()));
+        if (System.currentTimeMillis() - lastSave > SAVE_INTERVAL_MS && saveScheduled.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    save();
+                } finally {
+                    saveScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes entries with the lowest priority until the total size is below the low water mark, if it is above the
+     * maximum size. Entries looked up within the pin time are kept, so the total size may stay above the maximum.
+     *
+     * @param keep Fingerprint that should not be evicted, i.e. the entry just stored
+     * @return The evicted entries, the caller is responsible for deleting their files
+     */
+    synchronized List<Entry> evict(String keep) {
+        applyLookups();
+        List<Entry> evicted = new ArrayList<>();
+        if (maxSize <= 0 || totalSize <= maxSize) {
+            return evicted;
+        }
+
+        // Pick up lookups by other processes sharing the cache, they pin entries as well
+        mergeFromDisk();
+        long lowWater = (long) (maxSize * LOW_WATER_RATIO);
+        long now = System.currentTimeMillis();
+        PriorityQueue<Entry> candidates = new PriorityQueue<>(Math.max(1, entries.size()),
+                Comparator.comparingDouble((Entry e) -> e.priority).thenComparingLong(e -> e.lastAccess));
+        candidates.addAll(entries.values());
+        while (totalSize > lowWater && !candidates.isEmpty()) {
+            Entry entry = candidates.poll();
+            if (entry.fingerprint.equals(keep) || now - entry.lastLookup < pinMillis) continue;
+            entries.remove(entry.fingerprint);
+            totalSize -= entry.size;
+            inflation = Math.max(inflation, entry.priority);
+            evicted.add(entry);
+        }
+        dirty = true;
+        return evicted;
+    }
+
+    /**
+     * Forgets an entry whose files were removed outside of this index, e.g. evicted by another process.
+     */
+    synchronized void remove(String fingerprint) {
+        lookups.remove(fingerprint);
+        Entry entry = entries.remove(fingerprint);
+        if (entry != null) {
+            totalSize -= entry.size;
+            dirty = true;
+        }
+    }
+
+    synchronized Entry get(String fingerprint) {
+        applyLookups();
+        return entries.get(fingerprint);
+    }
+
+    synchronized long getTotalSize() {
+        applyLookups();
+        return totalSize;
+    }
+
+    synchronized void save() {
+        applyLookups();
+        if (!dirty) return;
+        try {
+            mergeFromDisk();
+            Path tempFile = indexFile.resolveSibling(INDEX_FILE_NAME + "." + UUID.randomUUID());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(INFLATION_HEADER + "\t" + inflation + "\n");
+                for (Entry entry : entries.values()) {
+                    writer.write(String.join("\t", entry.fingerprint, entry.path, Long.toString(entry.size),
+                            Long.toString(entry.cost), Long.toString(entry.lastAccess), Double.toString(entry.priority),
+                            Long.toString(entry.lastLookup)));
+                    writer.write('\n');
+                }
+            }
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException am) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+            lastSave = System.currentTimeMillis();
+        } catch (IOException ioe) {
+            log.warn("Unable to save file cache index {}", indexFile, ioe);
+        }
+    }
+
+    /**
+     * Applies the lookups registered since the index was last used.
+     */
+    private void applyLookups() {
+        if (lookups.isEmpty()) return;
+        Iterator<Map.Entry<String, Lookup>> it = lookups.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Lookup> next = it.next();
+            it.remove();
+            String fingerprint = next.getKey();
+            Lookup lookup = next.getValue();
+            Entry entry = entries.get(fingerprint);
+            if (entry == null) {
+                entry = new Entry(fingerprint, lookup.path, fileSize(lookup.path), 0, lookup.time, 0);
+                entries.put(fingerprint, entry);
+                totalSize += entry.size;
+            }
+            entry.lastAccess = Math.max(entry.lastAccess, lookup.time);
+            entry.lastLookup = Math.max(entry.lastLookup, lookup.time);
+            entry.priority = priority(entry);
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        for (Entry entry : readIndexFile()) {
+            entries.put(entry.fingerprint, entry);
+            totalSize += entry.size;
+        }
+        lastSave = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds entries stored by other processes sharing the cache directory, as long as their files still exist, and
+     * takes their lookups of the entries known to both.
+     */
+    private void mergeFromDisk() {
+        for (Entry entry : readIndexFile()) {
+            Entry existing = entries.get(entry.fingerprint);
+            if (existing != null) {
+                existing.lastLookup = Math.max(existing.lastLookup, entry.lastLookup);
+            } else if (Files.exists(Paths.get(entry.path))) {
+                entries.put(entry.fingerprint, entry);
+                totalSize += entry.size;
+            }
+        }
+    }
+
+    private List<Entry> readIndexFile() {
+        List<Entry> result = new ArrayList<>();
+        if (!Files.exists(indexFile)) return result;
+
+        try {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] cols = line.split("\t");
+                if (cols.length == 2 && cols[0].equals(INFLATION_HEADER)) {
+                    inflation = Math.max(inflation, Double.parseDouble(cols[1]));
+                } else if (cols.length == 6 || cols.length == 7) {
+                    Entry entry = new Entry(cols[0], cols[1], Long.parseLong(cols[2]), Long.parseLong(cols[3]),
+                            Long.parseLong(cols[4]), Double.parseDouble(cols[5]));
+                    if (cols.length == 7) entry.lastLookup = Long.parseLong(cols[6]);
+                    result.add(entry);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Unable to read file cache index {}, ignoring it", indexFile, e);
+        }
+        return result;
+    }
+
+    private double priority(Entry entry) {
+        // Cost is in milliseconds, one is added so entries without a known cost are still ordered by size
+        return inflation + (entry.cost + 1.0) / Math.max(1, entry.size);
+    }
+
+    private static long fileSize(String path) {
+        try {
+            return Files.size(Paths.get(path));
+        } catch (IOException | InvalidPathException e) {
+            return 0;
+        }
+    }
+}
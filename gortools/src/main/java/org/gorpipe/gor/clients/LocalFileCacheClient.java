@@ -42,16 +42,23 @@ import java.nio.file.*;
 
 /**
  * Local implementation of file cache client working directly against the file system. This can be used for non server
- * implementations of file cache.
+ * implementations of file cache. If a maximum size is set the cache is bounded, least valuable results are then
+ * evicted based on their size, cost and last access, results looked up recently are kept (see {@link CacheEntryIndex}).
  */
 public class LocalFileCacheClient implements FileCache {
 
     private static final Logger log = LoggerFactory.getLogger(LocalFileCacheClient.class);
 
+    /**
+     * Maximum size of the local cache in bytes, zero or less means the cache is not bounded.
+     */
+    public static final long MAX_CACHE_SIZE = Long.parseLong(System.getProperty("gor.cache.local.maxsize", "0"));
+
     private Path rootPath;
     private boolean useSubFolders;
     private int subFolderSize;
     private Cache<String, String> cache;
+    private CacheEntryIndex entryIndex;
 
     /**
      * Constructs an instance of local file cache. If sub folders are used the first subFolderSize letters of the
@@ -60,12 +67,18 @@ public class LocalFileCacheClient implements FileCache {
      * @param rootPath      File cache location
      * @param useSubFolders Inserts sub folders for fingerprints.
      * @param subFolderSize Insers sub folders for fingerprints.
+     * @param maxSize       Maximum size of the cache in bytes, zero or less for no limit.
      */
-    public LocalFileCacheClient(Path rootPath, boolean useSubFolders, int subFolderSize) {
+    public LocalFileCacheClient(Path rootPath, boolean useSubFolders, int subFolderSize, long maxSize) {
         this.rootPath = rootPath;
         this.useSubFolders = useSubFolders;
         this.subFolderSize = subFolderSize;
         this.cache = createCache();
+        this.entryIndex = maxSize > 0 ? new CacheEntryIndex(rootPath, maxSize) : null;
+    }
+
+    public LocalFileCacheClient(Path rootPath, boolean useSubFolders, int subFolderSize) {
+        this(rootPath, useSubFolders, subFolderSize, MAX_CACHE_SIZE);
     }
 
     public LocalFileCacheClient(Path rootPath) {
@@ -76,8 +89,24 @@ public class LocalFileCacheClient implements FileCache {
     public String lookupFile(String fingerprint) {
         try {
             // Note we do not touch the file here when it is already cached. As the local cache only survives a
-            // single run.
-            return cache.get(fingerprint, () -> findFileFromFingerPrint(fingerprint));
+            // single run. The file is checked though as other processes may share and evict from the cache folder.
+            String file = cache.get(fingerprint, () -> findFileFromFingerPrint(fingerprint));
+            if (!Files.exists(Paths.get(file))) {
+                // Another process sharing the cache directory has evicted the file, look for it again
+                cache.invalidate(fingerprint);
+                if (entryIndex != null) {
+                    entryIndex.remove(fingerprint);
+                }
+                file = cache.get(fingerprint, () -> findFileFromFingerPrint(fingerprint));
+                if (!Files.exists(Paths.get(file))) {
+                    cache.invalidate(fingerprint);
+                    return null;
+                }
+            }
+            if (entryIndex != null) {
+                entryIndex.touch(fingerprint, file);
+            }
+            return file;
         } catch (Exception ex) {
             /* Do nothing */
         }
@@ -109,6 +138,11 @@ public class LocalFileCacheClient implements FileCache {
                 FileUtils.writeStringToFile(md5File, resultPath, Charset.defaultCharset());
             }
 
+            if (entryIndex != null && !StringUtils.isEmpty(resultPath)) {
+                entryIndex.add(fingerprint, resultPath, Files.size(cacheFile), cost);
+                evictEntries(fingerprint);
+            }
+
             return resultPath;
         } catch (IOException ioe) {
             log.error("Error when attempting to store file in cache", ioe);
@@ -129,6 +163,9 @@ public class LocalFileCacheClient implements FileCache {
                     && !lookupFileName.equalsIgnoreCase(fromNewName)) {
                 Path to = Paths.get(parentFilePath, fromNewName);
                 moveFile(path, to);
+                if (entryIndex != null) {
+                    entryIndex.addSize(fingerprint, Files.size(to));
+                }
                 return to.toString();
             }
 
@@ -161,6 +198,30 @@ public class LocalFileCacheClient implements FileCache {
         return results;
     }
 
+    private void evictEntries(String keepFingerprint) {
+        for (CacheEntryIndex.Entry entry : entryIndex.evict(keepFingerprint)) {
+            log.debug("Evicting file from cache, fingerprint: {}, file: {}, size: {}, cost: {}", entry.fingerprint,
+                    entry.path, entry.size, entry.cost);
+            cache.invalidate(entry.fingerprint);
+            try {
+                File dir = getFolderFromFingerprint(entry.fingerprint, false).toFile();
+                File[] files = dir.listFiles((FileFilter) new WildcardFileFilter(entry.fingerprint + "*"));
+                if (files != null) {
+                    for (File file : files) {
+                        Files.deleteIfExists(file.toPath());
+                    }
+                }
+                Path resultFile = Paths.get(entry.path);
+                if (resultFile.toAbsolutePath().startsWith(rootPath.toAbsolutePath())) {
+                    Files.deleteIfExists(resultFile);
+                }
+            } catch (IOException | InvalidPathException e) {
+                log.warn("Unable to delete evicted cache file {}", entry.path, e);
+            }
+        }
+        entryIndex.save();
+    }
+
     private Path getFolderFromFingerprint(String fingerprint, boolean createSubFolder) throws IOException {
 
         if (fingerprint.length() < this.subFolderSize) {
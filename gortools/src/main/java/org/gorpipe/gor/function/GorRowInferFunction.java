@@ -55,6 +55,7 @@ public class GorRowInferFunction implements BinaryOperator<Row>, Serializable {
             } catch (Exception e) {
                 colval = "D";
                 ((StringBuilder) row.getAllCols()).setCharAt(i * 2, 'D');
+                row.columnsChanged();
             }
         }
         if (colval.equals("D")) {
@@ -62,6 +63,7 @@ public class GorRowInferFunction implements BinaryOperator<Row>, Serializable {
                 t1.doubleValue(i);
             } catch (Exception e) {
                 ((StringBuilder) row.getAllCols()).setCharAt(i * 2, 'S');
+                row.columnsChanged();
             }
         }
     }
@@ -70,6 +72,7 @@ public class GorRowInferFunction implements BinaryOperator<Row>, Serializable {
         for( int i = 0; i < row.numCols(); i++ ) {
             if( t1.colAsString(i).length() > 16 ) {
                 ((StringBuilder)row.getAllCols()).setCharAt(i*2, 'S');
+                row.columnsChanged();
             } else {
                 checkNumericTypes(row, t1, i);
             }
@@ -99,6 +102,7 @@ public class GorRowInferFunction implements BinaryOperator<Row>, Serializable {
                     String duo = row.stringValue(i)+t1.stringValue(i);
                     if( convMap.containsKey(duo) ) {
                         ((StringBuilder) row.getAllCols()).setCharAt(i*2, convMap.get(duo));
+                        row.columnsChanged();
                     }
                 }
             } else inferOther((RowBase)row, t1);
@@ -22,7 +22,7 @@
 
 package gorsat.Analysis
 import gorsat.Commands.RowHeader
-import gorsat.parser.ParseArith
+import gorsat.parser.{ExpressionCache, ParseArith}
 import org.gorpipe.exceptions.{GorDataException, GorParsingException}
 import org.gorpipe.gor.{ColumnValueProvider, GorContext}
 
@@ -33,11 +33,19 @@ import org.gorpipe.gor.{ColumnValueProvider, GorContext}
 trait Expressions {
   var expressionTypes: Array[Char] = _
   var expressions: Array[ParseArith] = _
+  var expressionCache: ExpressionCache = _
+
+  def setExpressionCache(cache: ExpressionCache): Unit = {
+    expressionCache = cache
+  }
 
   def prepareExpressions(n: Int, context: GorContext, forNor: Boolean): Unit = {
     expressionTypes = Array.fill(n)('S')
     expressions = Array.fill(n)(new ParseArith())
-    expressions.foreach(ex => ex.setContext(context, forNor))
+    expressions.foreach(ex => {
+      ex.setContext(context, forNor)
+      ex.setExpressionCache(expressionCache)
+    })
   }
 
   def compileExpressions(rowHeader: RowHeader, exprSrc: Seq[String], cmd: String, newColumns: String): Unit = {
@@ -22,11 +22,15 @@
 
 package gorsat.Analysis
 import gorsat.Commands.RowHeader
-import gorsat.parser.ParseArith
+import gorsat.parser.{ExpressionCache, ParseArith}
 
 trait Filtering {
   val filter: ParseArith = new ParseArith()
 
+  def setExpressionCache(cache: ExpressionCache): Unit = {
+    filter.setExpressionCache(cache)
+  }
+
   def compileFilter(rowHeader: RowHeader, expression: String): Unit = {
     filter.setColumnNamesAndTypes(rowHeader.columnNames, rowHeader.columnTypes)
     filter.compileFilter(expression)
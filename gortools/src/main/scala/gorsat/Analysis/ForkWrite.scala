@@ -28,6 +28,8 @@ import org.gorpipe.exceptions.GorResourceException
 import org.gorpipe.model.genome.files.binsearch.GorIndexType
 import org.gorpipe.model.genome.files.gor.Row
 
+import java.nio.file.Path
+
 import scala.collection.mutable
 import scala.collection.mutable.ArrayBuffer
 
@@ -36,7 +38,8 @@ case class ForkWriteOptions(remove: Boolean,
                             md5: Boolean,
                             idx: GorIndexType,
                             tags: Array[String],
-                            prefixFile: Option[String]
+                            prefixFile: Option[String],
+                            segStatsDir: Option[Path] = None
                            )
 
 case class ForkWrite(forkCol: Int,
@@ -54,6 +57,8 @@ case class ForkWrite(forkCol: Int,
     var headerWritten = false
     var rowBuffer = new ArrayBuffer[Row]
     var out: Output = _
+    val stopStats = new SegmentStats.Collector
+    val refStats = new SegmentStats.Collector
   }
 
   var useFork: Boolean = if (forkCol >= 0) true else false
@@ -84,6 +89,31 @@ case class ForkWrite(forkCol: Int,
     header = headerBuilder.toString
   }
 
+  // Segment length statistics are collected while writing and persisted in the cache directory for the joins
+  val headerCols: Array[String] = header.split("\t", -1)
+  var stopCol: Int = if (!nor && headerCols.length > 2 && headerCols(2).toLowerCase.matches(".*(stop|end)")) 2 else -1
+  var refCol: Int = if (nor) -1 else headerCols.indexWhere(x => x.toUpperCase == "REF" || x.toUpperCase == "REFERENCE")
+
+  def collectStats(sh: FileHolder, r: Row): Unit = {
+    if (stopCol >= 0) {
+      try {
+        sh.stopStats.add(r.colAsInt(stopCol) - r.pos)
+      } catch {
+        case _: Exception => stopCol = -1
+      }
+    }
+    if (refCol >= 0 && refCol < r.numCols) sh.refStats.add(r.colAsString(refCol).length)
+  }
+
+  def writeStats(sh: FileHolder): Unit = {
+    val path = SegmentStats.localPath(sh.fileName, null)
+    val dir = options.segStatsDir.orNull
+    val stopStats = sh.stopStats.stats
+    val refStats = sh.refStats.stats
+    if (stopCol >= 0 && stopStats.count > 0) SegmentStats.write(path, dir, SegmentStats.stopMeasure(stopCol), stopStats)
+    if (refCol >= 0 && refStats.count > 0) SegmentStats.write(path, dir, SegmentStats.refMeasure(refCol), refStats)
+  }
+
   def openFile(sh: FileHolder) {
     val name = sh.fileName
     if (!sh.headerWritten) {
@@ -118,6 +148,7 @@ case class ForkWrite(forkCol: Int,
     if (options.remove) {
       r.removeColumn(forkCol)
     }
+    collectStats(sh, r)
 
     if (sh.fileOpen) {
       sh.out.process(r)
@@ -151,6 +182,7 @@ case class ForkWrite(forkCol: Int,
         if (sh.out != null) sh.out.finish()
         sh.fileOpen = false
       }
+      if (!isInErrorState) writeStats(sh)
     })
     if (!somethingToWrite && !useFork) {
       val out = OutFile(fullFileName, header, skipHeader = false, columnCompress = options.columnCompress, nor = nor, md5 = options.md5, options.idx, options.prefixFile)
@@ -71,6 +71,7 @@ object GorCsvCC {
 
     case class ColHolder() {
       var buckRows: Array[CharSequence] = _
+      var packedRows: Array[PackedGenotypes] = _
       var splitArr: Array[SaHolder] = _
       var phenoStatusCounter: Array[Array[Int]] = _
       var phenoStatusFloatCounter: Array[Array[Double]] = _
@@ -98,6 +99,7 @@ object GorCsvCC {
     def initColHolder(sh: ColHolder) {
       if (sh.buckRows == null) {
         sh.buckRows = new Array[CharSequence](maxUsedBuckets)
+        sh.packedRows = new Array[PackedGenotypes](maxUsedBuckets)
         sh.splitArr = new Array[SaHolder](maxUsedBuckets)
         sh.phenoStatusCounter = new Array[Array[Int]](maxPhenoStats)
         sh.phenoStatusFloatCounter = new Array[Array[Double]](maxPhenoStats)
@@ -111,6 +113,7 @@ object GorCsvCC {
       var i = 0
       while (i < sh.buckRows.length) {
         sh.buckRows(i) = null
+        sh.packedRows(i) = null
         if (valSize == -1) sh.splitArr(i) = SaHolder(new scala.collection.mutable.ArrayBuffer[Int](100))
         i += 1
       }
@@ -155,11 +158,83 @@ object GorCsvCC {
           sh.buckRows(buckNo) = line
           if (valSize == -1) {
             splitArray(line, 0, sh.splitArr(buckNo), sepval)
+          } else if (genotypeMasks != null && genotypeMasks.bucketSizes(buckNo) <= line.length) {
+            sh.packedRows(buckNo) = PackedGenotypes.of(line, 0, genotypeMasks.bucketSizes(buckNo))
           }
         case None => /* Do nothing - a row representing unused bucket */
       }
     }
 
+    /**
+      * The samples of each phenotype status in each bucket, as masks over the packed genotypes of the bucket rows.
+      * Only used for single character genotypes, and not if a tag appears twice with the same status.
+      */
+    case class GenotypeMasks(masks: Array[Array[Array[Long]]], maskSizes: Array[Array[Int]], bucketSizes: Array[Int])
+
+    lazy val genotypeMasks: GenotypeMasks = if (valSize != 1 || sepSize != 0 || use_prob) null else {
+      val masks = Array.ofDim[Array[Long]](maxPhenoStats, maxUsedBuckets)
+      val maskSizes = Array.ofDim[Int](maxPhenoStats, maxUsedBuckets)
+      val bucketSizes = new Array[Int](maxUsedBuckets)
+      bui.phenorowsLeft.indices.foreach(phenorow => {
+        val buckNo = bui.outputBucketID(bui.phenorowsLeft(phenorow))
+        bucketSizes(buckNo) = bucketSizes(buckNo).max(bui.outputBucketPos(bui.phenorowsLeft(phenorow)) + 1)
+      })
+      var unique = true
+      bui.phenorowsLeft.indices.foreach(phenorow => {
+        val tag = bui.phenorowsLeft(phenorow)
+        val phenostatus = bui.phenorowsRight(phenorow)
+        val buckNo = bui.outputBucketID(tag)
+        val buckPos = bui.outputBucketPos(tag)
+        if (masks(phenostatus)(buckNo) == null) masks(phenostatus)(buckNo) = new Array[Long]((bucketSizes(buckNo) + 63) >>> 6)
+        val mask = masks(phenostatus)(buckNo)
+        if ((mask(buckPos >>> 6) & (1L << buckPos)) != 0) unique = false
+        mask(buckPos >>> 6) |= 1L << buckPos
+        maskSizes(phenostatus)(buckNo) += 1
+      })
+      if (unique) GenotypeMasks(masks, maskSizes, bucketSizes) else null
+    }
+
+    /**
+      * Counts the genotypes of the packed bucket rows with the phenotype status masks.
+      *
+      * @return false if the rows can not be counted this way, e.g. if a row is missing or too short
+      */
+    def countPacked(sh: ColHolder): Boolean = {
+      val gm = genotypeMasks
+      if (gm == null) return false
+      var buckNo = 0
+      while (buckNo < maxUsedBuckets) {
+        if (gm.bucketSizes(buckNo) > 0 && sh.packedRows(buckNo) == null && (sh.buckRows(buckNo) != null || !unknown)) return false
+        buckNo += 1
+      }
+      var phenostatus = 0
+      while (phenostatus < maxPhenoStats) {
+        val counter = sh.phenoStatusCounter(phenostatus)
+        buckNo = 0
+        while (buckNo < maxUsedBuckets) {
+          val mask = gm.masks(phenostatus)(buckNo)
+          if (mask != null) {
+            val size = gm.maskSizes(phenostatus)(buckNo)
+            val packed = sh.packedRows(buckNo)
+            if (packed == null) {
+              counter(uc) += size
+            } else {
+              val c0 = packed.count(PackedGenotypes.HOM_REF, mask)
+              val c1 = packed.count(PackedGenotypes.HET, mask)
+              val c2 = packed.count(PackedGenotypes.HOM_ALT, mask)
+              counter(0) += c0
+              counter(1) += c1
+              counter(2) += c2
+              counter(3) += size - c0 - c1 - c2
+            }
+          }
+          buckNo += 1
+        }
+        phenostatus += 1
+      }
+      true
+    }
+
     def sendToNextProcessor(bi: BinInfo, nextProcessor: Processor) {
       var p0: Double = 0.0
       var p1: Double = 0.0
@@ -172,6 +247,7 @@ object GorCsvCC {
         var rstr: CharSequence = null
         var theTag = 0
         try {
+          if (countPacked(sh)) phenorow = bui.phenorowsLeft.length
           while (phenorow < bui.phenorowsLeft.length && !nextProcessor.wantsNoMore) {
             val tag = bui.phenorowsLeft(phenorow)
             val phenostatus = bui.phenorowsRight(phenorow)
@@ -206,6 +206,7 @@ object GorCsvSel {
     }
 
     var lastSize = 0
+    var gathered: Array[Char] = _
     def sendToNextProcessor(bi: BinInfo, nextProcessor: Processor) {
       for (key <- groupMap.keys.toList.sorted) {
         var sh: ColHolder = null
@@ -300,6 +301,37 @@ object GorCsvSel {
                 nextProcessor.process(new RowBase(bi.chr, bi.sta+1, ladd, sa, null))
               }
             }
+          } else if (!outputRows && valSize > 0) {
+            ladd.append('\t')
+            // Fixed size values, gather the values of the output columns straight from the bucket rows
+            val out = if (gathered != null && gathered.length == bui.outputBucketPos.length * valSize) gathered
+                      else new Array[Char](bui.outputBucketPos.length * valSize)
+            gathered = out
+            var o = 0
+            while (outCol < bui.outputBucketPos.length) {
+              val buckNo = bui.outputBucketID(outCol)
+              r = sh.buckRows(buckNo)
+              if (r == null) {
+                if (!unknown) throw new GorDataException("Problem with input data when generating row: " + line + "\n\n")
+                unknownVal.getChars(0, unknownVal.length, out, o)
+                o += unknownVal.length
+              } else {
+                val start = sh.offsetArray(buckNo) + bui.outputBucketPos(outCol) * valSize
+                var j = 0
+                while (j < valSize) {
+                  out(o + j) = r.charAt(start + j)
+                  j += 1
+                }
+                o += valSize
+              }
+              outCol += 1
+            }
+            if (!nextProcessor.wantsNoMore) {
+              ladd.append(out, 0, o)
+              if( i < sa.length ) sa(i) = ladd.length()
+              lastSize = Math.max(lastSize, ladd.length())
+              nextProcessor.process(new RowBase(bi.chr, bi.sta+1, ladd, sa, null))
+            }
           } else {
             ladd.append('\t')
             while (outCol < bui.outputBucketPos.length && !nextProcessor.wantsNoMore) {
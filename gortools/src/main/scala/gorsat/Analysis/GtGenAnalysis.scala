@@ -39,7 +39,7 @@ object GtGenAnalysis {
   case class GtGenState(session: GorSession, lookupSignature: String, GtCol: Int, PNCol: Int, grCols: List[Int]) extends BinState {
 
     case class ColHolder() {
-      var buckValueCols: Array[mutable.StringBuilder] = _
+      var buckValueCols: Array[Array[Char]] = _
     }
 
     val useGroup: Boolean = if (grCols.nonEmpty) true else false
@@ -52,17 +52,17 @@ object GtGenAnalysis {
 
 
     def initColHolder(sh: ColHolder) {
-      sh.buckValueCols = new Array[mutable.StringBuilder](tagi.buckIDbuckSize.length)
-      var i = 0
-      while (i < tagi.buckIDbuckSize.length) {
-        val buckSize = tagi.buckIDbuckSize(i)
-        sh.buckValueCols(i) = new mutable.StringBuilder(buckSize)
-        sh.buckValueCols(i).setLength(buckSize)
-        var j = 0
-        while (j < buckSize) {
-          sh.buckValueCols(i).setCharAt(j, '4') // Unspecified, only 4 will possibly be changed to 0 and not 3.
-          j += 1
+      if (sh.buckValueCols == null) {
+        sh.buckValueCols = new Array[Array[Char]](tagi.buckIDbuckSize.length)
+        var i = 0
+        while (i < tagi.buckIDbuckSize.length) {
+          sh.buckValueCols(i) = new Array[Char](tagi.buckIDbuckSize(i))
+          i += 1
         }
+      }
+      var i = 0
+      while (i < sh.buckValueCols.length) {
+        java.util.Arrays.fill(sh.buckValueCols(i), '4') // Unspecified, only 4 will possibly be changed to 0 and not 3.
         i += 1
       }
     }
@@ -91,7 +91,7 @@ object GtGenAnalysis {
 
       tagi.tagBuckPosMap.get(PNtag) match {
         case Some((buckID, buckPos)) =>
-          sh.buckValueCols(buckID).setCharAt(buckPos, r.colAsString(GtCol).charAt(0)) // Set the GT into the values col
+          sh.buckValueCols(buckID)(buckPos) = r.colAsString(GtCol).charAt(0) // Set the GT into the values col
         case None =>
           if (PNtag != "") throw new GorDataException("No bucket information found for tag value: " + PNtag + "\n")
       }
@@ -104,7 +104,9 @@ object GtGenAnalysis {
         val linestart: String = bi.chr + "\t" + (bi.sta + 1) + (if (useGroup) "\t" + key else "")
         var i = 0
         while (i < sh.buckValueCols.length) {
-          val line = linestart + '\t' + tagi.buckIDbuckName(i) + '\t' + sh.buckValueCols(i)
+          val values = sh.buckValueCols(i)
+          val line = new java.lang.StringBuilder(linestart.length + values.length + 32)
+          line.append(linestart).append('\t').append(tagi.buckIDbuckName(i)).append('\t').append(values)
           nextProcessor.process(RowObj(line))
           i += 1
         }
@@ -22,7 +22,7 @@
 
 package gorsat.Analysis
 
-import gorsat.AnalysisUtilities.{ParameterHolder, SEGinfo}
+import gorsat.AnalysisUtilities.ParameterHolder
 import gorsat.Commands._
 import gorsat.Iterators.{ChromBoundedIteratorSource, RowListIterator}
 import gorsat.process.GenericGorRunner
@@ -40,7 +40,7 @@ object GtLDAnalysis {
 
     var rightSource = new ChromBoundedIteratorSource(inRightSource)
 
-    type myRowBufferType = scala.collection.mutable.ArrayBuffer[SEGinfo]
+    type myRowBufferType = scala.collection.mutable.ArrayBuffer[LDSEGinfo]
     var lastRightChr = "chr"
     var lastRightPos = 0
     var maxLeftStop = -1
@@ -162,7 +162,7 @@ object GtLDAnalysis {
               case e: Exception => throw new GorDataException("Illegal stop position in column #" + (rstop + 1) + " in the JOIN right-source.", rstop + 1, "", rr.toString(), e);
             }
           }
-          val rSeg = SEGinfo(rightStart, rightStop, rr)
+          val rSeg = LDSEGinfo(rightStart, rightStop, rr)
 
           if (useGroup) {
             val groupKeyRight = rr.selectedColumns(req)
@@ -185,7 +185,7 @@ object GtLDAnalysis {
         }
 
       }
-      val lSeg = SEGinfo(leftStart, leftStop, lr)
+      val lSeg = LDSEGinfo(leftStart, leftStop, lr)
       var ovlaps = 0
 
       var groupKeyLeft = null
@@ -207,7 +207,7 @@ object GtLDAnalysis {
         val rSeg = gr.rowBuffer(gr.buffer)(i)
         val rr = rSeg.r
         if (lr.chr == rr.chr && lSeg.start - fuzzFactor < rSeg.stop && lSeg.stop + fuzzFactor > rSeg.start) {
-          val LDs = LDstatCalc(lr.colAsString(valuesCol).toString,rr.colAsString(valuesCol).toString)
+          val LDs = LDstatCalc(genotypes(lSeg, valuesCol), genotypes(rSeg, valuesCol))
           nextProcessor.process(RowObj(lr.chr+"\t"+lr.pos+"\t"+lr.selectedColumns(otherCols)+"\t"+((rr.pos - lr.pos) - (if (rr.pos - lr.pos > 0) 1 else 0) + "\t"
             + rr.pos+"\t"+rr.selectedColumns(otherCols))+"\t"
             + LDs.x11 + "\t" + LDs.x12 + "\t" + LDs.x21 + "\t" + LDs.x22 ))
@@ -268,45 +268,23 @@ object GtLDAnalysis {
 
   case class LDstats(x11 : Int, x12 : Int, x21 : Int, x22 : Int)
 
-  def LDstatCalc(a : String, b : String) : LDstats = {
-    var i = 0
-    var x11 = 0; var x12 = 0; var x21 = 0; var x22 = 0
-    while (i < a.length) {
-      if (a(i) == '0') {
-        if (b(i) == '0') {
-          x11 += 4
-        } else if (b(i)=='1') {
-          x11 += 2
-          x12 += 2
-        } else if (b(i)=='2') {
-          x12 += 4
-        }
-      } else if (a(i)=='1') {
-        if (b(i) == '0') {
-          x11 += 2
-          x21 += 2
-        } else if (b(i)=='1') {
-          x11 += 1
-          x12 += 1
-          x21 += 1
-          x22 += 1
-        } else if (b(i)=='2') {
-          x12 += 2
-          x22 += 2
-        }
-      } else if (a(i)=='2') {
-        if (b(i) == '0') {
-          x21 += 4
-        } else if (b(i)=='1') {
-          x21 += 2
-          x22 += 2
-        } else if (b(i)=='2') {
-          x22 += 4
-        }
-      }
-      i += 1
-    }
-    return LDstats(x11,x12,x21,x22)
+  def LDstatCalc(a : String, b : String) : LDstats = LDstatCalc(PackedGenotypes.of(a), PackedGenotypes.of(b))
+
+  def LDstatCalc(a : PackedGenotypes, b : PackedGenotypes) : LDstats = {
+    val x = PackedGenotypes.ldCounts(a, b)
+    LDstats(x(0), x(1), x(2), x(3))
+  }
+
+  /**
+    * Segment of the right source holding the genotypes of its row, packed the first time they are needed.
+    */
+  case class LDSEGinfo(start: Int, stop: Int, r: Row) {
+    var genotypes: PackedGenotypes = _
+  }
+
+  def genotypes(seg: LDSEGinfo, valuesCol: Int): PackedGenotypes = {
+    if (seg.genotypes == null) seg.genotypes = PackedGenotypes.of(seg.r.colAsString(valuesCol))
+    seg.genotypes
   }
 
 
@@ -355,12 +333,23 @@ object GtLDAnalysis {
     val req = lreq.toArray
     val otherCols = iotherCols.toArray
     val noEquijoin = if (lreq == Nil) true else false
+    // The same row is usually both a left and a right row of the bin so its genotypes are packed once
+    val packed = new java.util.IdentityHashMap[Row, PackedGenotypes]
 
     def initialize(bi: BinInfo) = {
       lRows = Nil
       rRows = Nil
     }
 
+    def genotypes(r: Row): PackedGenotypes = {
+      var g = packed.get(r)
+      if (g == null) {
+        g = PackedGenotypes.of(r.colAsString(valuesCol))
+        packed.put(r, g)
+      }
+      g
+    }
+
     def process(r: Row) {
       val leftOrRight = r.bH.asInstanceOf[typeHolder]
       if (leftOrRight.rowType == 'L' && (useOnlyAsLeftVar == -1 || r.colAsInt(useOnlyAsLeftVar) > 0)) lRows ::= r
@@ -371,7 +360,7 @@ object GtLDAnalysis {
       if (rRows.nonEmpty && lRows.length * rRows.length < 400) {
         for (lr <- lRows.reverse) {
           for (rr <- rRows.reverse) if (!nextProcessor.wantsNoMore && rr.pos - fuzz - 1 < lr.pos && lr.pos <= rr.pos + fuzz && (noEquijoin || rr.selectedColumns(req) == lr.selectedColumns(req))) {
-            val LDs = LDstatCalc(lr.colAsString(valuesCol).toString,rr.colAsString(valuesCol).toString)
+            val LDs = LDstatCalc(genotypes(lr), genotypes(rr))
             val r = RowObj(lr.chr+"\t"+lr.pos+"\t"+lr.selectedColumns(otherCols)+"\t"+((rr.pos - lr.pos) - (if (rr.pos - lr.pos > 0) 1 else 0) + "\t"
               + rr.pos+"\t"+rr.selectedColumns(otherCols))+"\t"
               + LDs.x11 + "\t" + LDs.x12 + "\t" + LDs.x21 + "\t" + LDs.x22 )
@@ -387,6 +376,7 @@ object GtLDAnalysis {
           Forwarder(nextProcessor)
         runner.run(itLeft, pipe)
       }
+      packed.clear()
       lRows = Nil
       rRows = Nil
     }
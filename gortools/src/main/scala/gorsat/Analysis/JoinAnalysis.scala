@@ -49,7 +49,6 @@ object  JoinAnalysis {
 
     var rightSource = new ChromBoundedIteratorSource(inRightSource)
     var rightSourceMonitorUtil: MemoryMonitorUtil = if (MemoryMonitorUtil.memoryMonitorActive) new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler) else null
-    type myRowBufferType = scala.collection.mutable.ArrayBuffer[SEGinfo]
     var lastRightChr: String = GorConstants.FIRST_POSSIBLE_CHROMOSOME_VALUE
     var lastRightPos = 0
     var maxLeftStop: Int = -1
@@ -104,11 +103,7 @@ object  JoinAnalysis {
     var ovlaps = 0
 
     case class GroupHolder() {
-      val rowBuffer = new Array[myRowBufferType](2)
-      rowBuffer(0) = new myRowBufferType
-      rowBuffer(1) = new myRowBufferType
-      var buffer = 0
-      var bufferSize = 0
+      val window = new SegmentWindow[SEGinfo]
     }
 
     var singleGroupHolder = GroupHolder()
@@ -182,31 +177,12 @@ object  JoinAnalysis {
         gr = singleGroupHolder
       }
 
-      val nextBuffer = (gr.buffer + 1) % 2
-      var nextBufferSize = 0
-      var i = 0
-      while (i < gr.bufferSize) {
-        val rSeg = gr.rowBuffer(gr.buffer)(i)
-        val rr = rSeg.r
-        var use_row_again = true
-        if (lr.chr == rr.chr && lSeg.start - fuzzFactor < rSeg.stop && lSeg.stop + fuzzFactor > rSeg.start) {
-          output_row(lSeg, rSeg)
-          if (ir) use_row_again = false
-        }
-        if (!((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr) && use_row_again) {
-          if (gr.rowBuffer(nextBuffer).size <= nextBufferSize) {
-            gr.rowBuffer(nextBuffer) += gr.rowBuffer(gr.buffer)(i)
-          } else {
-            gr.rowBuffer(nextBuffer)(nextBufferSize) = gr.rowBuffer(gr.buffer)(i)
-          }
-          gr.rowBuffer(gr.buffer)(i) = null
-          nextBufferSize += 1
-        }
-        i += 1
-      }
-
-      gr.buffer = nextBuffer
-      gr.bufferSize = nextBufferSize
+      // Rows used with -ir are not used again, segments ending before the left row will not overlap later rows
+      gr.window.forEachOverlap(lr.chr, lSeg.start - fuzzFactor, lSeg.stop + fuzzFactor, rSeg => {
+        output_row(lSeg, rSeg)
+        ir
+      })
+      gr.window.evictBefore(lr.chr, lSeg.start - fuzzFactor)
 
 
       //##########
@@ -292,8 +268,7 @@ object  JoinAnalysis {
 
           if (use_row_again && (next_lr != null && ((rr.chr == next_lr.chr && rightStop >= next_leftStart - fuzzFactor) || rr.chr >= next_lr.chr))) {
             // Only insert row to buffer if overlap with next row
-            if (gr.rowBuffer(gr.buffer).size <= gr.bufferSize) gr.rowBuffer(gr.buffer) += rSeg else gr.rowBuffer(gr.buffer)(gr.bufferSize) = rSeg
-            gr.bufferSize += 1
+            gr.window.add(rr.chr, rightStart, rightStop, rSeg)
           }
           if (rr.chr > lr.chr || (rr.chr == lr.chr && rightStart > leftStop + fuzzFactor)) keepOn = false // Continue until there is no overlap with the left-seg
         }
@@ -319,26 +294,9 @@ object  JoinAnalysis {
       if (groupClean == 100000 && useGroup && groupMap.size > 1) {
         groupMap.keys.foreach(k => {
           val gr = groupMap(k)
-          val nextBuffer = (gr.buffer + 1) % 2
-          var nextBufferSize = 0
-          var i = 0
-          while (i < gr.bufferSize) {
-            val rSeg = gr.rowBuffer(gr.buffer)(i)
-            val rr = rSeg.r
-            if (!((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr)) {
-              if (gr.rowBuffer(nextBuffer).size <= nextBufferSize) {
-                gr.rowBuffer(nextBuffer) += gr.rowBuffer(gr.buffer)(i)
-              } else {
-                gr.rowBuffer(nextBuffer)(nextBufferSize) = gr.rowBuffer(gr.buffer)(i)
-              }
-              gr.rowBuffer(gr.buffer)(i) = null
-              nextBufferSize += 1
-            }
-            i += 1
-          }
-          gr.buffer = nextBuffer
-          gr.bufferSize = nextBufferSize
-          if (nextBufferSize == 0) {
+          gr.window.evictBefore(lr.chr, lSeg.start - fuzzFactor)
+          gr.window.evict()
+          if (gr.window.size == 0) {
             groupMap.remove(k)
           }
         })
@@ -730,23 +688,36 @@ object  JoinAnalysis {
     Option(context.getSession.getCache.getFileSegMap.get(extFilename)) match {
       case Some(theSize) => return theSize
       case None =>
-        var maxSegSize = 0
-        val segSource = new SingleFileSource(extFilename, context.getSession.getProjectContext.getRoot, context)
-        try {
-          var counter = 0
-          while (segSource.hasNext && counter < 10000000) {
-            val r = segSource.next()
-            val segSize = r.colAsInt(lStop) - r.pos
-            maxSegSize = maxSegSize.max(segSize)
-            counter += 1
+        // Use the statistics persisted in the cache directory, otherwise compute them and persist them if the whole
+        // file was scanned
+        val projectContext = context.getSession.getProjectContext
+        val localPath = SegmentStats.localPath(extFilename, projectContext.getRoot)
+        val statsDir = SegmentStats.directory(projectContext.getCacheDir, projectContext.getRoot)
+        val measure = SegmentStats.stopMeasure(lStop)
+        var stats = SegmentStats.read(localPath, statsDir, measure)
+        if (stats == null) {
+          val collector = new SegmentStats.Collector
+          var complete = false
+          val segSource = new SingleFileSource(extFilename, context.getSession.getProjectContext.getRoot, context)
+          try {
+            var counter = 0
+            while (segSource.hasNext && counter < 10000000) {
+              val r = segSource.next()
+              collector.add(r.colAsInt(lStop) - r.pos)
+              counter += 1
+            }
+            complete = !segSource.hasNext
+          } catch {
+            case e: Exception =>
+              throw new RuntimeException("Error in estimating the segment size in file: " + extFilename, e)
           }
-        } catch {
-          case e: Exception =>
-            throw new RuntimeException("Error in estimating the segment size in file: " + extFilename, e)
-        }
-        finally {
-          segSource.close()
+          finally {
+            segSource.close()
+          }
+          stats = collector.stats()
+          if (complete) SegmentStats.write(localPath, statsDir, measure, stats)
         }
+        val maxSegSize = stats.max
         context.getSession.getCache.getFileSegMap.put(extFilename, maxSegSize)
         return maxSegSize
     }
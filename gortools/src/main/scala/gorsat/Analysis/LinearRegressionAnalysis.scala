@@ -22,7 +22,7 @@
 
 package gorsat.Analysis
 
-import gorsat.Regression.LinearRegression
+import gorsat.Regression.CovariateAdjustedLinearRegression
 import org.gorpipe.gor.GorSession
 import org.gorpipe.model.genome.files.gor.Row
 import org.gorpipe.model.gor.RowObj
@@ -30,53 +30,62 @@ import org.gorpipe.model.gor.RowObj
 class LinearRegressionAnalysis(lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String])
   extends RegressionAnalysis[Double](lookUpSignature, session, valCol, sepVal, imputed, phenoFile, covarFile) {
 
-  var linRegObjects: Array[LinearRegression] =_
+  var phenotypeSamples: Array[PhenotypeSamples] =_
+  var linRegObjects: Array[CovariateAdjustedLinearRegression] =_
+  //The compacted genotypes of a block, one buffer per thread rather than per phenotype.
+  val genotypeBuffers: ThreadLocal[Array[Array[Double]]] = ThreadLocal.withInitial(() => Array.ofDim[Double](blockCapacity, ri.size))
 
   override def setup(): Unit = {
     super.setup()
-    linRegObjects = Array.tabulate(ri.phenoNames.length)(_ => new LinearRegression(ri.size, ri.betaLength - 1))
+    phenotypeSamples = Array.tabulate(ri.phenoNames.length)(idx => new PhenotypeSamples(idx))
+    linRegObjects = Array.ofDim(ri.phenoNames.length)
   }
 
-  override def process(r: Row) {
-    val values = r.colAsString(valCol).toString
-    r.removeColumn(valCol)
-    val baseColumnsAsString = r.toString
-
-    val genoType = ri.genos
-    val filter = ri.genoFilter
-
-    setGenotypesAndFilter(values, genoType, filter)
-
-    ri.phenoTable.zipWithIndex.par.map({ case (phenos, idx) =>
-      val (x, y, numberOfSamples) = setupRegressionData(genoType, filter, phenos, idx)
-
+  /**
+    * The covariates are factorized once per phenotype and set of samples, and consecutive variants with the same
+    * samples are regressed together.
+    */
+  override protected def regressBlock(idx: Int, count: Int): Array[Array[Row]] = {
+    val samples = phenotypeSamples(idx)
+    val genotypes = genotypeBuffers.get()
+    val out = Array.ofDim[Array[Row]](count)
+    var start = 0
+    var samplesChanged = samples.select(blockFilters(0))
+    while (start < count) {
+      if (samplesChanged || linRegObjects(idx) == null) {
+        linRegObjects(idx) = new CovariateAdjustedLinearRegression(samples.covariates, samples.phenotypes, samples.numberOfSamples, blockCapacity)
+      }
+      var end = start
+      do {
+        samples.compact(blockGenotypes(end), genotypes(end - start))
+        end += 1
+        samplesChanged = end < count && samples.select(blockFilters(end))
+      } while (end < count && !samplesChanged)
       val linRegObj = linRegObjects(idx)
-      linRegObj.setData(x, numberOfSamples)
-      linRegObj.runRegression(y)
-
-      val baseAndPhenoColumns = baseColumnsAsString + "\t" + ri.phenoNames(idx)
-      writeOut(baseAndPhenoColumns, linRegObj)
-    }).seq.foreach(outRows => outRows.foreach(outRow => nextProcessor.process(outRow)))
+      linRegObj.runRegressions(genotypes, end - start)
+      var variant = start
+      while (variant < end) {
+        out(variant) = writeOut(blockBaseColumns(variant) + "\t" + ri.phenoNames(idx), linRegObj, variant - start)
+        variant += 1
+      }
+      start = end
+    }
+    out
   }
 
-  private def writeOut(baseAndPhenoColumns: String, linRegObj: LinearRegression): Traversable[Row] = {
+  private def writeOut(baseAndPhenoColumns: String, linRegObj: CovariateAdjustedLinearRegression, batchIdx: Int): Array[Row] = {
     ri.betaNames.zipWithIndex.map({
       case (name, idx) =>
-        val lineBuilder = new StringBuilder(baseAndPhenoColumns)
+        val lineBuilder = new java.lang.StringBuilder(baseAndPhenoColumns)
         lineBuilder.append('\t')
         lineBuilder.append(name)
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.beta(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.betaError(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.tStats(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.pValues(idx)))
+        appendValue(lineBuilder, linRegObj.beta(batchIdx)(idx))
+        appendValue(lineBuilder, linRegObj.betaError(batchIdx)(idx))
+        appendValue(lineBuilder, linRegObj.tStats(batchIdx)(idx))
+        appendValue(lineBuilder, linRegObj.pValues(batchIdx)(idx))
         RowObj.apply(lineBuilder)
     })
   }
-
   override def parsePhenoValue(s: String): (Double, Boolean) = {
     val sNumOpt = try {
       Some(s.toDouble)
@@ -22,59 +22,157 @@
 
 package gorsat.Analysis
 
-import gorsat.Regression.LogisticRegression
+import gorsat.Regression.{LogisticRegression, LogisticScoreTest}
 import org.gorpipe.gor.GorSession
 import org.gorpipe.model.genome.files.gor.Row
 import org.gorpipe.model.gor.RowObj
 
-class LogisticRegressionAnalysis(lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String])
+/**
+  * @param scoreThreshold If given, each variant is first tested with a score test against the null model and the full
+  *                       regression is only run for variants with a score test p-value below the threshold. The rows
+  *                       then have a Test column telling whether their statistics come from the Score or Wald test.
+  * @param warmStart If true, the regressions of the variants start from the fit of the null model instead of zero. The
+  *                  results then only agree with the default to within the tolerance.
+  */
+class LogisticRegressionAnalysis(lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String], scoreThreshold: Option[Double] = None, warmStart: Boolean = false)
   extends RegressionAnalysis[Boolean](lookUpSignature, session, valCol, sepVal, imputed, phenoFile, covarFile) {
   val maxIter = 20
   val tol = 1e-5
   var logRegObjects: Array[LogisticRegression] =_
+  var phenotypeFits: Array[PhenotypeFit] =_
 
   override def setup(): Unit = {
     super.setup()
     logRegObjects = Array.tabulate(ri.phenoNames.length)(_ => LogisticRegression.getGorLogisticRegressionObject(ri.betaLength - 1, ri.size))
+    phenotypeFits = Array.ofDim(ri.phenoNames.length)
   }
 
-  override def process(r: Row) {
-    val values = r.colAsString(valCol).toString
-    r.removeColumn(valCol)
-    val baseColumnsAsString = r.toString
+  /**
+    * The fit of the model without the genotype for the current samples of a phenotype. It is the starting point of
+    * the regressions of the variants, where the genotype usually has a small effect.
+    */
+  class PhenotypeFit(idx: Int) {
+    val samples = new PhenotypeSamples(idx)
+    val genotypes: Array[Double] = Array.ofDim(ri.size)
+    val x: Array[Array[Double]] = genotypes +: samples.covariates
+    private val nullRegObj = if (ri.covars.isEmpty) null else LogisticRegression.getGorLogisticRegressionObject(ri.covars.length, ri.size)
+    private val initialBeta: Array[Double] = Array.ofDim(ri.betaLength)
+    private var hasInitialBeta = false
+    private var nullModelFitted = false
+    val nullBeta: Array[Double] = Array.ofDim(ri.betaLength - 1)
+    var scoreTest: LogisticScoreTest = _
 
-    val genoType = ri.genos
-    val filter = ri.genoFilter
+    def select(genoFilter: Array[Boolean]): Unit = {
+      if ((samples.select(genoFilter) || !nullModelFitted) && (warmStart || scoreThreshold.isDefined)) {
+        fitNullModel()
+        nullModelFitted = true
+      }
+    }
 
-    setGenotypesAndFilter(values, genoType, filter)
+    private def fitNullModel(): Unit = {
+      val n = samples.numberOfSamples
+      if (nullRegObj == null) {
+        var cases = 0
+        var i = 0
+        while (i < n) {
+          if (samples.phenotypes(i)) cases += 1
+          i += 1
+        }
+        hasInitialBeta = cases > 0 && cases < n
+        if (hasInitialBeta) initialBeta(0) = math.log(cases.toDouble / (n - cases))
+      } else {
+        hasInitialBeta = n > ri.covars.length + 1 && nullRegObj.runRegression(samples.covariates, samples.phenotypes, n, tol, maxIter)
+        if (hasInitialBeta) {
+          initialBeta(0) = nullRegObj.beta(0)
+          System.arraycopy(nullRegObj.beta, 1, initialBeta, 2, ri.covars.length)
+        }
+      }
+      scoreTest = if (hasInitialBeta && scoreThreshold.isDefined) createScoreTest() else null
+    }
 
-    ri.phenoTable.zipWithIndex.par.map({ case (phenos, idx) =>
-      val (x, y, numberOfSamples) = setupRegressionData(genoType, filter, phenos, idx)
+    private def createScoreTest(): LogisticScoreTest = {
+      nullBeta(0) = initialBeta(0)
+      System.arraycopy(initialBeta, 2, nullBeta, 1, ri.covars.length)
+      try {
+        new LogisticScoreTest(samples.covariates, samples.phenotypes, samples.numberOfSamples, nullBeta)
+      } catch {
+        case _: IllegalArgumentException => null //The information matrix is singular, only the full regression is run.
+      }
+    }
 
-      val logRegObj = logRegObjects(idx)
-      val converged = logRegObj.runRegression(x, y, numberOfSamples, tol, maxIter)
+    /**
+      * Regresses the phenotype on the genotypes. With a warm start it starts from the null model and falls back to a
+      * start from zero.
+      */
+    def run(logRegObj: LogisticRegression): Boolean = {
+      val n = samples.numberOfSamples
+      (warmStart && hasInitialBeta && logRegObj.runRegression(x, samples.phenotypes, n, tol, maxIter, initialBeta)) ||
+        logRegObj.runRegression(x, samples.phenotypes, n, tol, maxIter)
+    }
+  }
 
-      val baseAndPhenoColumns = baseColumnsAsString + "\t" + ri.phenoNames(idx)
-      writeOut(baseAndPhenoColumns, logRegObj, converged)
-    }).seq.foreach(outRows => outRows.foreach(outRow => nextProcessor.process(outRow)))
+  override protected def regressBlock(idx: Int, count: Int): Array[Array[Row]] = {
+    if (phenotypeFits(idx) == null) phenotypeFits(idx) = new PhenotypeFit(idx)
+    val fit = phenotypeFits(idx)
+    val logRegObj = logRegObjects(idx)
+    val out = Array.ofDim[Array[Row]](count)
+    var variant = 0
+    while (variant < count) {
+      fit.select(blockFilters(variant))
+      fit.samples.compact(blockGenotypes(variant), fit.genotypes)
+      val baseAndPhenoColumns = blockBaseColumns(variant) + "\t" + ri.phenoNames(idx)
+      val scoreTest = fit.scoreTest
+      if (scoreTest != null) scoreTest.test(fit.genotypes)
+      if (scoreTest != null && scoreTest.pValue >= scoreThreshold.get) {
+        out(variant) = writeScoreOut(baseAndPhenoColumns, fit.nullBeta, scoreTest)
+      } else {
+        val converged = fit.run(logRegObj)
+        out(variant) = writeOut(baseAndPhenoColumns, logRegObj, converged)
+      }
+      variant += 1
+    }
+    out
   }
 
-  private def writeOut(baseAndPhenoColumns: String, logRegObj: LogisticRegression, converged: Boolean): Traversable[Row] = {
+  private def writeOut(baseAndPhenoColumns: String, logRegObj: LogisticRegression, converged: Boolean): Array[Row] = {
     ri.betaNames.zipWithIndex.map({
       case (name, idx) =>
-        val lineBuilder = new StringBuilder(baseAndPhenoColumns)
+        val lineBuilder = new java.lang.StringBuilder(baseAndPhenoColumns)
         lineBuilder.append('\t')
         lineBuilder.append(name)
         if (converged) {
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.beta(idx)))
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.zStats(idx)))
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.pValues(idx)))
+          appendValue(lineBuilder, logRegObj.beta(idx))
+          appendValue(lineBuilder, logRegObj.zStats(idx))
+          appendValue(lineBuilder, logRegObj.pValues(idx))
         } else {
           lineBuilder.append("\t\t\t")
         }
+        if (scoreThreshold.isDefined) lineBuilder.append("\tWald")
+        RowObj.apply(lineBuilder)
+    })
+  }
+
+  /**
+    * Writes the score test result in the genotype row and the null model in the other rows, all marked as Score in
+    * the Test column. The genotype beta is the first Newton step from the null model.
+    */
+  private def writeScoreOut(baseAndPhenoColumns: String, nullBeta: Array[Double], scoreTest: LogisticScoreTest): Array[Row] = {
+    ri.betaNames.zipWithIndex.map({
+      case (name, idx) =>
+        val lineBuilder = new java.lang.StringBuilder(baseAndPhenoColumns)
+        lineBuilder.append('\t')
+        lineBuilder.append(name)
+        if (idx == 1) {
+          appendValue(lineBuilder, scoreTest.beta)
+          appendValue(lineBuilder, scoreTest.zStat)
+          appendValue(lineBuilder, scoreTest.pValue)
+        } else {
+          val nullIdx = if (idx == 0) 0 else idx - 1
+          appendValue(lineBuilder, nullBeta(nullIdx))
+          appendValue(lineBuilder, scoreTest.nullZStats(nullIdx))
+          appendValue(lineBuilder, scoreTest.nullPValues(nullIdx))
+        }
+        lineBuilder.append("\tScore")
         RowObj.apply(lineBuilder)
     })
   }
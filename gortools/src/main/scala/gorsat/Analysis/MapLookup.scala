@@ -45,7 +45,8 @@ case class MapLookup(session: GorSession,
                      inSet: Boolean,
                      inSetCol: Boolean,
                      cartesian: Boolean,
-                     skipEmpty: Boolean) extends Analysis {
+                     skipEmpty: Boolean,
+                     sourceSignature: String = null) extends Analysis {
   val returnMissing: Boolean = if (returnMiss && !inSet || inSetCol) true else false
   val singleCol: Boolean = if (columns.length == 1) true else false
   var key: String = _
@@ -56,7 +57,7 @@ case class MapLookup(session: GorSession,
   override def setup() {
     val useSet = inSet || (cartesian && outCols.length == 1)
     if (iteratorCommand != "") colMap = MapAndListUtilities.getSingleHashMap(iteratorCommand, iterator,
-      caseInsensitive, columns.length, outCols, useSet, skipEmpty,session)
+      caseInsensitive, columns.length, outCols, useSet, skipEmpty, session, sourceSignature)
     else colMap = MapAndListUtilities.getSingleHashMap(fileName, caseInsensitive, columns.length,
       outCols, useSet, skipEmpty, session)
   }
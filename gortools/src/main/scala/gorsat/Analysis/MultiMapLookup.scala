@@ -32,7 +32,7 @@ import org.gorpipe.model.gor.iterators.LineIterator
 
 import scala.collection.JavaConverters._
 
-case class MultiMapLookup(session: GorSession, iteratorCommand: String, iterator: LineIterator, fileName: String, columns: Array[Int], caseInsensitive: Boolean, outCols: Array[Int], missingVal: String, returnMiss: Boolean, cartesian: Boolean) extends Analysis {
+case class MultiMapLookup(session: GorSession, iteratorCommand: String, iterator: LineIterator, fileName: String, columns: Array[Int], caseInsensitive: Boolean, outCols: Array[Int], missingVal: String, returnMiss: Boolean, cartesian: Boolean, sourceSignature: String = null) extends Analysis {
   val returnMissing: Boolean = if (returnMiss) true else false
   val singleCol: Boolean = if (columns.length == 1) true else false
   var key: String = _
@@ -42,7 +42,7 @@ case class MultiMapLookup(session: GorSession, iteratorCommand: String, iterator
 
   override def setup() {
     if (iteratorCommand != "") colMap = MapAndListUtilities.getMultiHashMap(iteratorCommand, iterator,
-      caseInsensitive, columns.length, outCols, session)
+      caseInsensitive, columns.length, outCols, session, sourceSignature)
     else colMap = MapAndListUtilities.getMultiHashMap(fileName, caseInsensitive, columns.length, outCols,
       session)
   }
@@ -23,13 +23,16 @@
 package gorsat.Analysis
 
 import gorsat.Commands._
-import org.gorpipe.gor.GorSession
+import org.gorpipe.gor.{GorSession, MemoryBudget}
 import org.gorpipe.model.genome.files.gor.Row
+import org.gorpipe.model.gor.RowObj
 
 import scala.collection.mutable.ArrayBuffer
 
 object RankAnalysis {
 
+  val UNRESERVED_BYTES: Long = 1L << 20
+
   case class Parameters() {
     var asc = false
     var useZ = false
@@ -39,101 +42,140 @@ object RankAnalysis {
     var maxRank: Int = Int.MaxValue
   }
 
-  // Aggregate the columns per bin in the stream
-  case class RankState(binSize: Int, rankCol: Int, grCols: List[Int], pa: Parameters) extends BinState {
-
-    case class StatHolder() {
-      var fList: List[(Int, Double)] = _
-    }
-
-    case class RankInfoHolder() {
-      var rank: Int = -1
-      var cum: Int = 0
-      var freq: Int = 0
-      var count: Int = 0
-      var z: Double = 0.0
-      var rOne: Int = -1
-    }
-
-    val useGroup: Boolean = if (grCols.nonEmpty) true else false
+  // Rank the rows within each group of a bin. Only the group and the value of each row are kept in primitive arrays,
+  // the rows themselves are buffered in memory until they exceed the memory budget, or beyond the first megabyte can
+  // not be reserved from the memory shared by the spilling steps or the process memory budget, and are then spilled
+  // to disk
+  case class RankState(binSize: Int, rankCol: Int, grCols: List[Int], pa: Parameters, requestId: String = null)
+    extends BinState {
 
-    var groupMap = Map.empty[String, StatHolder]
-    val grColsArray: Array[Int] = grCols.toArray
+    val groups = new GroupKeyTable(grCols.toArray)
+    val budget: Long = SpillFile.memoryBudget()
+    val sharedReservation: MemoryBudget.Reservation = SpillFile.sharedReservation()
+    val reservation: MemoryBudget.Reservation = MemoryBudget.global().reservation(requestId)
 
     var rownum = 0
-    var allRows = new ArrayBuffer[(Row, RankInfoHolder)]
+    var rowGroup = new Array[Int](1024)
+    var rowValue = new Array[Double](1024)
+    var rows = new ArrayBuffer[Row]
+    var rowBytes = 0L
+    var spill: SpillFile = _
 
     def formatDouble(d: Double): String = (d formatted "%1.4f").replace(',', '.')
 
-    def initStatHolder(sh: StatHolder) {
-      sh.fList = Nil
-    }
-
     def initialize(binInfo: BinInfo): Unit = {
-      groupMap = Map.empty[String, StatHolder]
+      groups.clear()
       rownum = 0
-      allRows = new ArrayBuffer[(Row, RankInfoHolder)]
+      rows = new ArrayBuffer[Row]
+      rowBytes = 0L
+      releaseReservations()
+      if (spill != null) spill.close()
+      spill = null
     }
 
     def process(r: Row) {
-      var sh: StatHolder = null
-
-      val groupID = if (useGroup) r.selectedColumns(grColsArray) else ""
+      val theValue = r.colAsDouble(rankCol)
+      if (rownum == rowGroup.length) {
+        rowGroup = java.util.Arrays.copyOf(rowGroup, 2 * rownum)
+        rowValue = java.util.Arrays.copyOf(rowValue, 2 * rownum)
+      }
+      rowGroup(rownum) = groups.group(r)
+      rowValue(rownum) = theValue
+      rownum += 1
 
-      groupMap.get(groupID) match {
-        case Some(x) => sh = x
-        case None =>
-          sh = StatHolder()
-          initStatHolder(sh)
-          groupMap += (groupID -> sh)
+      if (spill != null) {
+        spill.write(r)
+      } else {
+        rows += r
+        rowBytes += 64 + 2L * r.length + 4L * r.numCols
+        if (rowBytes > budget || (rowBytes > RankAnalysis.UNRESERVED_BYTES && !reserved(rowBytes))) {
+          spill = new SpillFile("gorrank")
+          rows.foreach(spill.write)
+          rows = new ArrayBuffer[Row]
+          releaseReservations()
+        }
       }
+    }
 
-      val xx = (r, RankInfoHolder())
-      allRows += xx
-      val theValue = r.colAsDouble(rankCol)
-      sh.fList ::= (rownum, theValue)
-      rownum += 1
+    def reserved(bytes: Long): Boolean = sharedReservation.ensure(bytes) && reservation.ensure(bytes)
+
+    def releaseReservations(): Unit = {
+      sharedReservation.release()
+      reservation.release()
     }
 
     def sendToNextProcessor(bi: BinInfo, nextProcessor: Processor) {
-      for (key <- groupMap.keys.toList) {
-        val sh = groupMap(key)
+      val numGroups = groups.size
+      val rank = new Array[Int](rownum)
+      val cum = if (pa.useDistr) new Array[Int](rownum) else null
+      val freq = if (pa.useDistr) new Array[Int](rownum) else null
+      val z = if (pa.useZ) new Array[Double](rownum) else null
+      val rankOneRow = if (pa.useRankOne) new Array[Int](numGroups) else null
+
+      // The rows of each group, latest row first, so that ties are ordered as before by the stable sort
+      val groupStart = new Array[Int](numGroups + 1)
+      var i = 0
+      while (i < rownum) {
+        groupStart(rowGroup(i) + 1) += 1
+        i += 1
+      }
+      var g = 0
+      while (g < numGroups) {
+        groupStart(g + 1) += groupStart(g)
+        g += 1
+      }
+      val groupRows = new Array[Integer](rownum)
+      val fill = java.util.Arrays.copyOf(groupStart, numGroups)
+      i = rownum - 1
+      while (i >= 0) {
+        val group = rowGroup(i)
+        groupRows(fill(group)) = i
+        fill(group) += 1
+        i -= 1
+      }
 
-        val oArr = if (pa.asc) {
-          sh.fList.toArray.sortWith((x, y) => x._2 < y._2)
-        } else {
-          sh.fList.toArray.sortWith((x, y) => x._2 > y._2)
-        }
+      val lessThan: (Double, Double) => Boolean = if (pa.asc) (x, y) => x < y else (x, y) => x > y
+      val ordering: java.util.Comparator[Integer] = (x: Integer, y: Integer) => {
+        val vx = rowValue(x)
+        val vy = rowValue(y)
+        if (lessThan(vx, vy)) -1 else if (lessThan(vy, vx)) 1 else 0
+      }
+
+      g = 0
+      while (g < numGroups) {
+        val from = groupStart(g)
+        val to = groupStart(g + 1)
+        val count = to - from
+        java.util.Arrays.sort(groupRows, from, to, ordering)
 
-        var i = 0
         var maxRank = 1
         val rankHist = new ArrayBuffer[Int]
-        while (i < oArr.length) {
-          if (i == 0) {
+        i = from
+        while (i < to) {
+          if (i == from) {
             rankHist += 0
-          } else if (i > 0 && oArr(i - 1)._2 != oArr(i)._2) {
+          } else if (rowValue(groupRows(i - 1)) != rowValue(groupRows(i))) {
             rankHist += 0
             maxRank += 1
           }
-          allRows(oArr(i)._1)._2.rank = maxRank
-          allRows(oArr(i)._1)._2.count = oArr.length
+          rank(groupRows(i)) = maxRank
           rankHist(maxRank - 1) += 1
           i += 1
         }
         if (pa.useDistr) {
           val rankCumHist = new Array[Int](maxRank)
           var sum = 0
-          var i = 0
-          while (i < maxRank) {
-            sum += rankHist(i)
-            rankCumHist(i) = sum
-            i += 1
+          var r = 0
+          while (r < maxRank) {
+            sum += rankHist(r)
+            rankCumHist(r) = sum
+            r += 1
           }
-
-          i = 0
-          while (i < oArr.length) {
-            allRows(oArr(i)._1)._2.cum = rankCumHist(allRows(oArr(i)._1)._2.rank - 1)
-            allRows(oArr(i)._1)._2.freq = rankHist(allRows(oArr(i)._1)._2.rank - 1)
+          i = from
+          while (i < to) {
+            val row = groupRows(i)
+            cum(row) = rankCumHist(rank(row) - 1)
+            freq(row) = rankHist(rank(row) - 1)
             i += 1
           }
         }
@@ -141,79 +183,98 @@ object RankAnalysis {
           var sq_sum = 0.0
           var r_sum = 0.0
           var allEqual = true
-          var i = 0
-          while (i < oArr.length) {
-            val v = oArr(i)._2
+          i = from
+          while (i < to) {
+            val v = rowValue(groupRows(i))
             sq_sum += v * v
             r_sum += v
-            if (i > 0) if (oArr(i)._2 != oArr(i - 1)._2) allEqual = false
+            if (i > from) if (v != rowValue(groupRows(i - 1))) allEqual = false
             i += 1
           }
-          val mean = r_sum / oArr.length
-          val variance = if (oArr.length == 1) 1.0 else (sq_sum - oArr.length * mean * mean) / (oArr.length - 1)
+          val mean = r_sum / count
+          val variance = if (count == 1) 1.0 else (sq_sum - count * mean * mean) / (count - 1)
           val stdev = scala.math.sqrt(variance)
-          i = 0
-          while (i < oArr.length) {
-            if (allEqual) allRows(oArr(i)._1)._2.z = 0.0 else allRows(oArr(i)._1)._2.z = (oArr(i)._2 - mean) / stdev
-            i += 1
-          }
-        }
-        if (pa.useRankOne) {
-          i = 0
-          while (i < oArr.length) {
-            allRows(oArr(i)._1)._2.rOne = oArr(0)._1
+          i = from
+          while (i < to) {
+            val row = groupRows(i)
+            z(row) = if (allEqual) 0.0 else (rowValue(row) - mean) / stdev
             i += 1
           }
         }
-      } // groups
+        if (pa.useRankOne) rankOneRow(g) = groupRows(from)
+        g += 1
+      }
 
-      var i = 0
-      while (i < allRows.size) {
-        val x = allRows(i)
-        if (x._2.rank <= pa.maxRank) {
+      val rankOne = if (pa.useRankOne) new Array[String](numGroups) else null
+      if (pa.useRankOne) {
+        // The top ranked row of a group can come after the rows it is reported with, so collect the values first
+        val isRankOne = new java.util.BitSet(rownum)
+        rankOneRow.foreach(row => isRankOne.set(row))
+        i = 0
+        forEachRow(r => {
+          if (isRankOne.get(i)) rankOne(rowGroup(i)) = r.colAsString(rankCol).toString
+          i += 1
+        })
+      }
+
+      i = 0
+      forEachRow(r => {
+        if (rank(i) <= pa.maxRank) {
+          val groupCount = groupStart(rowGroup(i) + 1) - groupStart(rowGroup(i))
           val sBuilder = new StringBuilder
-          sBuilder.append(x._2.rank)
+          sBuilder.append(rank(i))
           if (pa.useDistr) {
             sBuilder.append('\t')
-            sBuilder.append(formatDouble((x._2.cum + 0.0) / x._2.count))
+            sBuilder.append(formatDouble((cum(i) + 0.0) / groupCount))
             sBuilder.append('\t')
-            sBuilder.append(formatDouble((x._2.freq + 0.0) / x._2.count))
+            sBuilder.append(formatDouble((freq(i) + 0.0) / groupCount))
           }
           if (pa.useZ) {
             sBuilder.append('\t')
-            sBuilder.append(formatDouble(x._2.z))
+            sBuilder.append(formatDouble(z(i)))
           }
           if (pa.useCount) {
             sBuilder.append('\t')
-            sBuilder.append(x._2.count)
+            sBuilder.append(groupCount)
           }
           if (pa.useRankOne) {
             sBuilder.append('\t')
-            sBuilder.append(allRows(x._2.rOne)._1.colAsString(rankCol))
+            sBuilder.append(rankOne(rowGroup(i)))
           }
 
-          nextProcessor.process(x._1.rowWithAddedColumn(sBuilder.toString))
+          nextProcessor.process(r.rowWithAddedColumn(sBuilder.toString))
         }
-        allRows(i) = null
         i += 1
-      }
-
-      allRows = null
+      })
 
+      initialize(bi)
     }
 
-    groupMap = null
+    private def forEachRow(f: Row => Unit): Unit = {
+      if (spill == null) {
+        rows.foreach(f)
+      } else {
+        val lines = spill.lines()
+        try {
+          while (lines.hasNext) f(RowObj(lines.next()))
+        } finally {
+          lines.close()
+        }
+      }
+    }
   }
 
 
-  case class RankFactory(binSize: Int, rc: Int, grCols: List[Int], pa: Parameters) extends BinFactory {
+  case class RankFactory(binSize: Int, rc: Int, grCols: List[Int], pa: Parameters, requestId: String = null)
+    extends BinFactory {
     def create: BinState =
-      RankState(binSize, rc, grCols, pa)
+      RankState(binSize, rc, grCols, pa, requestId)
   }
 
-  case class Rank(binSize: Int, rc: Int, grCols: List[Int], pa: Parameters, outgoingHeader: RowHeader) extends
+  case class Rank(binSize: Int, rc: Int, grCols: List[Int], pa: Parameters, outgoingHeader: RowHeader,
+                  requestId: String = null) extends
     BinAnalysis(RegularRowHandler(binSize), BinAggregator(
-      RankFactory(binSize, rc, grCols, pa), 2, 1))
+      RankFactory(binSize, rc, grCols, pa, requestId), 2, 1))
   {
     override def isTypeInformationMaintained: Boolean = outgoingHeader != null
 
@@ -226,9 +287,9 @@ object RankAnalysis {
   }
 
   case class ChromRank(session: GorSession, rc: Int, grCols: List[Int], pa: Parameters,
-                       outgoingHeader: RowHeader) extends
+                       outgoingHeader: RowHeader, requestId: String = null) extends
     BinAnalysis(ChromRowHandler(session), BinAggregator(
-      RankFactory(1, rc, grCols, pa), 2, 1))
+      RankFactory(1, rc, grCols, pa, requestId), 2, 1))
   {
     override def isTypeInformationMaintained: Boolean = outgoingHeader != null
 
@@ -240,9 +301,10 @@ object RankAnalysis {
     }
   }
 
-  case class GenomeRank(rc: Int, grCols: List[Int], pa: Parameters, outgoingHeader: RowHeader) extends
+  case class GenomeRank(rc: Int, grCols: List[Int], pa: Parameters, outgoingHeader: RowHeader,
+                        requestId: String = null) extends
     BinAnalysis(GenomeRowHandler(), BinAggregator(
-      RankFactory(1, rc, grCols, pa), 2, 1))
+      RankFactory(1, rc, grCols, pa, requestId), 2, 1))
   {
     override def isTypeInformationMaintained: Boolean = outgoingHeader != null
 
@@ -22,16 +22,37 @@
 
 package gorsat.Analysis
 
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ExecutionException, ExecutorService, Future, LinkedBlockingQueue, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+
 import gorsat.Commands.Analysis
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.process.GorJavaUtilities
 import org.gorpipe.exceptions.GorDataException
-import org.gorpipe.gor.GorSession
+import org.gorpipe.gor.{GorSession, MemoryBudget, WorkerBudget}
+import org.gorpipe.model.genome.files.gor.Row
 
+/**
+  * Base class of the regression analyses. The variants are buffered and regressed in blocks, each phenotype is
+  * regressed on a whole block by a single task. The tasks run on the calling thread and on as many threads of a pool
+  * shared by all regressions as the worker budget of the system context allows. The samples of a
+  * phenotype, and whatever the subclass derives from them, are kept between variants as long as the same genotypes
+  * are missing.
+  */
 abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String]) extends Analysis {
 
   var ri: RegressionInfo =_
 
+  protected var blockCapacity: Int = _
+  protected var blockSize: Int = 0
+  protected var blockBaseColumns: Array[String] = _
+  protected var blockGenotypes: Array[Array[Double]] = _
+  protected var blockFilters: Array[Array[Boolean]] = _
+  private var workerBudget: WorkerBudget = _
+  // Pool threads reserved from the worker budget, in addition to the calling thread
+  private var workers = 0
+  private val reservation: MemoryBudget.Reservation = MemoryBudget.global().reservation(if (session != null) session.getRequestId else null)
+
   override def setup(): Unit = {
     ri = session.getCache.getObjectHashMap.computeIfAbsent(lookUpSignature, _ => {
       val phenoFileTrav = MapAndListUtilities.getStringTraversable(phenoFile, session)
@@ -43,6 +64,108 @@ abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session:
 
       RegressionInfo(phenoValuesTable, phenoNames, phenoFilter, covarNames, covars, size)
     }).asInstanceOf[RegressionInfo]
+
+    blockCapacity = math.max(1, math.min(RegressionAnalysis.MAX_BLOCK_SIZE, RegressionAnalysis.BLOCK_ENTRIES / math.max(ri.size, 1)))
+    // Smaller blocks when the memory budget can not cover the genotypes and filters of a full one
+    while (blockCapacity > 1 && !reservation.ensure(blockCapacity.toLong * ri.size * RegressionAnalysis.ENTRY_BYTES)) {
+      blockCapacity /= 2
+    }
+    blockBaseColumns = Array.ofDim(blockCapacity)
+    blockGenotypes = Array.ofDim(blockCapacity, ri.size)
+    blockFilters = Array.ofDim(blockCapacity, ri.size)
+
+    val wanted = math.min(ri.phenoNames.length, RegressionAnalysis.poolSize) - 1
+    workerBudget = if (session != null && session.getSystemContext != null) session.getSystemContext.getWorkerBudget else null
+    if (workerBudget == null) {
+      workers = wanted
+    } else {
+      while (workers < wanted && workerBudget.tryAcquire()) workers += 1
+    }
+  }
+
+  override def process(r: Row) {
+    val values = r.colAsString(valCol).toString
+    r.removeColumn(valCol)
+    blockBaseColumns(blockSize) = r.toString
+    setGenotypesAndFilter(values, blockGenotypes(blockSize), blockFilters(blockSize))
+    blockSize += 1
+    if (blockSize == blockCapacity) flushBlock()
+  }
+
+  override def finish() {
+    try {
+      if (!isInErrorState && blockSize > 0) flushBlock()
+    } finally {
+      if (workerBudget != null) (0 until workers).foreach(_ => workerBudget.release())
+      workers = 0
+      reservation.release()
+    }
+  }
+
+  private def flushBlock(): Unit = {
+    val count = blockSize
+    val numberOfPhenotypes = ri.phenoNames.length
+    val results = if (workers == 0) {
+      Array.tabulate(numberOfPhenotypes)(idx => regressBlock(idx, count))
+    } else {
+      regressInParallel(numberOfPhenotypes, count)
+    }
+    var variant = 0
+    while (variant < count) {
+      var idx = 0
+      while (idx < numberOfPhenotypes) {
+        results(idx)(variant).foreach(nextProcessor.process)
+        idx += 1
+      }
+      variant += 1
+    }
+    blockSize = 0
+  }
+
+  /**
+    * Regresses the phenotypes on the calling thread and the reserved pool threads, each taking the next phenotype
+    * until none are left. Pool tasks which have not started when the calling thread runs out of phenotypes are
+    * cancelled, so a busy pool never holds the block back.
+    */
+  private def regressInParallel(numberOfPhenotypes: Int, count: Int): Array[Array[Array[Row]]] = {
+    val results = new Array[Array[Array[Row]]](numberOfPhenotypes)
+    val next = new AtomicInteger(0)
+    val regressPhenotypes: Runnable = () => {
+      var idx = next.getAndIncrement()
+      while (idx < numberOfPhenotypes) {
+        results(idx) = regressBlock(idx, count)
+        idx = next.getAndIncrement()
+      }
+    }
+    val futures = Array.fill[Future[_]](math.min(workers, numberOfPhenotypes - 1))(RegressionAnalysis.pool.submit(regressPhenotypes))
+    var error: Throwable = null
+    try {
+      regressPhenotypes.run()
+    } catch {
+      case e: Throwable =>
+        error = e
+        next.set(numberOfPhenotypes)
+    }
+    futures.foreach(future => if (!future.cancel(false)) {
+      try {
+        future.get()
+      } catch {
+        case e: ExecutionException => if (error == null) error = e.getCause
+      }
+    })
+    if (error != null) throw error
+    results
+  }
+
+  /**
+    * Regresses the phenotype with index idx on the first count variants of the block and returns the output rows of
+    * each variant. Called concurrently for different phenotypes.
+    */
+  protected def regressBlock(idx: Int, count: Int): Array[Array[Row]]
+
+  protected def appendValue(lineBuilder: java.lang.StringBuilder, value: Double): Unit = {
+    lineBuilder.append('\t')
+    GorJavaUtilities.appendGeneral(lineBuilder, value, 5)
   }
 
   private def getIdentitiesAndPhenoFileTransposed(phenoTable: Traversable[String]) = {
@@ -150,16 +273,49 @@ abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session:
       }
     }
 
-  protected def setupRegressionData(genoType: Array[Double], filter: Array[Boolean], phenos: Array[T], idx: Int): (Array[Array[Double]], Array[T], Int) = {
-    val x = ri.xs(idx)
-    val y = ri.ys(idx)
-    val phenoFilter = ri.phenoFilter(idx)
-    val numberOfSamples = doubleFilter(genoType, filter, phenoFilter, x.head)
-    x.tail zip ri.covars foreach { case (xc, cc) =>
-      doubleFilter(cc, filter, phenoFilter, xc)
+  /**
+    * The samples used for one phenotype, those with both a phenotype value and a genotype. The covariates and
+    * phenotype values of the samples are compacted when the missing genotypes differ from those of the previous
+    * variant.
+    */
+  protected class PhenotypeSamples(idx: Int) {
+    private val phenoFilter = ri.phenoFilter(idx)
+    private var pattern: Array[Boolean] = _
+    val covariates: Array[Array[Double]] = Array.ofDim(ri.covars.length, ri.size)
+    val phenotypes: Array[T] = Array.ofDim[T](ri.size)
+    var numberOfSamples: Int = 0
+
+    /**
+      * Selects the samples for the given genotype filter. Returns true if they differ from the previous selection.
+      */
+    def select(genoFilter: Array[Boolean]): Boolean = {
+      if (pattern != null && java.util.Arrays.equals(pattern, genoFilter)) {
+        false
+      } else {
+        if (pattern == null) pattern = Array.ofDim(ri.size)
+        System.arraycopy(genoFilter, 0, pattern, 0, ri.size)
+        numberOfSamples = doubleFilter(ri.phenoTable(idx), genoFilter, phenoFilter, phenotypes)
+        covariates zip ri.covars foreach { case (xc, cc) =>
+          doubleFilter(cc, genoFilter, phenoFilter, xc)
+        }
+        true
+      }
+    }
+
+    /**
+      * Writes the genotypes of the selected samples to out.
+      */
+    def compact(genotypes: Array[Double], out: Array[Double]): Unit = {
+      var i = 0
+      var j = 0
+      while (i < genotypes.length) {
+        if (pattern(i) && phenoFilter(i)) {
+          out(j) = genotypes(i)
+          j += 1
+        }
+        i += 1
+      }
     }
-    doubleFilter(phenos, filter, phenoFilter, y)
-    (x, y, numberOfSamples)
   }
 
   case class RegressionInfo(
@@ -175,10 +331,32 @@ abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session:
     betaNames(0) = "Intercept"
     betaNames(1) = "Genotype"
     if (covarNames.length > 0) System.arraycopy(covarNames, 0, betaNames, 2, covarNames.length)
+  }
+}
+
+object RegressionAnalysis {
+  //The genotypes of a block are limited to about 8MB.
+  val BLOCK_ENTRIES: Int = 1 << 20
+  val MAX_BLOCK_SIZE: Int = 64
+  // A double genotype and a boolean filter per sample
+  val ENTRY_BYTES: Int = 9
+
+  private val threadCounter = new AtomicInteger(0)
+
+  private val poolSize: Int = Runtime.getRuntime.availableProcessors()
+
+  private val threadFactory = new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val thread = new Thread(r, "RegressionThread-" + threadCounter.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
 
-    val xs: Array[Array[Array[Double]]] = Array.ofDim(phenoNames.length, betaLength - 1, size)
-    val ys: Array[Array[T]] = Array.ofDim[T](phenoNames.length, size)
-    val genoFilter: Array[Boolean] = Array.ofDim(size)
-    val genos: Array[Double] = Array.ofDim(size)
+  // One pool for all regressions, its threads end when idle
+  private lazy val pool: ExecutorService = {
+    val executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue[Runnable], threadFactory)
+    executor.allowCoreThreadTimeOut(true)
+    executor
   }
 }
@@ -0,0 +1,106 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis
+
+import gorsat.Commands.Analysis
+import gorsat.parser.ExpressionCache
+import org.gorpipe.model.genome.files.gor.Row
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Starts each row on the expression cache shared by the adjacent CALC and WHERE steps that follow it.
+  */
+case class SharedExpressions(cache: ExpressionCache) extends Analysis {
+  override def isTypeInformationMaintained: Boolean = true
+
+  override def process(r: Row): Unit = {
+    cache.startRow()
+    super.process(r)
+  }
+}
+
+object SharedExpressions {
+
+  /**
+    * Merges each run of adjacent CALC and WHERE steps in the pipe into one evaluation unit, so that a function
+    * call which appears in more than one of the steps is evaluated once per row. The steps themselves are kept,
+    * errors are still reported against the step that failed.
+    *
+    * @param pipe the first step of the pipe
+    * @return the first step of the pipe, with a SharedExpressions step in front of each run
+    */
+  def link(pipe: Analysis): Analysis = {
+    var first = pipe
+    var previous: Analysis = null
+    var step = pipe
+    while (step != null) {
+      val run = runFrom(step)
+      if (run.length > 1) {
+        val cache = new ExpressionCache
+        run.foreach {
+          case calc: CalcAnalysis => calc.setExpressionCache(cache)
+          case where: WhereAnalysis => where.setExpressionCache(cache)
+        }
+        val shared = SharedExpressions(cache)
+        shared.pipeTo = step
+        shared.nextProcessor = step
+        step.from(shared)
+        if (previous == null) {
+          first = shared
+        } else {
+          previous.pipeTo = shared
+          previous.nextProcessor = shared
+          shared.from(previous)
+        }
+        previous = run.last
+      } else {
+        previous = step
+      }
+      step = previous.pipeTo
+    }
+    first
+  }
+
+  private def runFrom(step: Analysis): Seq[Analysis] = {
+    val run = ArrayBuffer.empty[Analysis]
+    var next = step
+    var open = true
+    while (open && next != null) {
+      next match {
+        case calc: CalcAnalysis =>
+          run += calc
+          // A column added under an existing name hides the earlier one in the steps that follow, so the
+          // same call text would no longer refer to the same column
+          val existing = calc.header.split('\t').map(_.toUpperCase).toSet
+          open = !calc.newColumns.exists(c => existing.contains(c.toUpperCase))
+        case where: WhereAnalysis =>
+          run += where
+        case _ =>
+          open = false
+      }
+      next = next.pipeTo
+    }
+    run
+  }
+}
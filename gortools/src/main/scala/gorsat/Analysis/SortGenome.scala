@@ -22,27 +22,19 @@
 
 package gorsat.Analysis
 
-import java.util
-
 import gorsat.Commands.Analysis
-import gorsat.Iterators.{MultiFileSource, RowArrayIterator}
-import gorsat.Outputs.OutFile
-import gorsat.process.{GenericGorRunner, GenericSessionFactory}
 import org.gorpipe.exceptions.custom.GorWriteQuotaExceededException
-import org.gorpipe.gor.GorSession
+import org.gorpipe.gor.{GorSession, MemoryBudget}
 import org.gorpipe.model.genome.files.gor.Row
-import org.gorpipe.model.gor.iterators.RowSource
 
 case class SortGenome(header: String, session: GorSession, sortInfo: Array[Row.SortInfo], div: Int = 1) extends Analysis {
-  var lines = 0
-  var batch: Int = System.getProperty("gor.sort.batchSize", "2000000").toInt / div
-  var maxBufferSize: Int = batch * 100
-  var bufferSize = 0
-  var alreadySorted = true
+  // The memory budget is shared by the bins of a sliding sort, gor.sort.batchSize optionally caps the rows per run
+  val memoryBudget: Long = ExternalSorter.memoryBudget() / div
+  val batch: Int = System.getProperty("gor.sort.batchSize", Int.MaxValue.toString).toInt / div
 
-  var inputArray = new Array[Row](batch)
-  var ordFileList: List[String] = List()
-  var wroteBuffer = false
+  // The buffered rows are also reserved from the process memory budget, against the quota of the query
+  val reservation: MemoryBudget.Reservation = MemoryBudget.global().reservation(if (session != null) session.getRequestId else null)
+  val sorter = new ExternalSorter(sortInfo, memoryBudget, batch, reservation)
   // If no quota is set we default to 0 and do not deal with write quotas
   val writeQuota: Long = System.getProperty("gor.querylimits.writequota.mb", "0").toLong * 1024 * 1024
   var writeQuotaUsed = 0l
@@ -50,30 +42,10 @@ case class SortGenome(header: String, session: GorSession, sortInfo: Array[Row.S
   override def isTypeInformationMaintained: Boolean = true
 
   def reinit() {
-    inputArray = new Array[Row](batch)
-    ordFileList = List()
-    lines = 0
-    bufferSize = 0
-    alreadySorted = true
-    wroteBuffer = false
+    sorter.close()
     writeQuotaUsed = 0l
   }
 
-  def sortBuffer(inputArray: Array[Row], length: Int) {
-    if (!alreadySorted) util.Arrays.parallelSort(inputArray, 0, length, (o1: Row, o2: Row) => o1.advancedCompare(o2, sortInfo))
-    val f = java.io.File.createTempFile("gorsort", ".gorz")
-    f.deleteOnExit()
-    val outputFile = f.getAbsolutePath
-
-    lines = 0
-    bufferSize = 0
-    alreadySorted = true
-    ordFileList = outputFile :: ordFileList
-    wroteBuffer = true
-    val runner = new GenericGorRunner
-    runner.run(RowArrayIterator(inputArray, length), OutFile(outputFile, header))
-  }
-
   override def process(r: Row) {
     if (writeQuota > 0) {
       writeQuotaUsed += r.getAllCols.length
@@ -81,52 +53,14 @@ case class SortGenome(header: String, session: GorSession, sortInfo: Array[Row.S
         throw new GorWriteQuotaExceededException(s"Write quota exceeded. Write quota is set to ${writeQuota / (1024 * 1024)} MB")
       }
     }
-    if (alreadySorted && lines > 0 && r.advancedCompare(inputArray(lines - 1), sortInfo) < 0) {
-      alreadySorted = false
-    }
-    inputArray(lines) = r
-    bufferSize += r.getAllCols.length
-    lines += 1
-    if (lines == batch || bufferSize > maxBufferSize) {
-      sortBuffer(inputArray, lines)
-    }
+    sorter.add(r)
   }
 
   override def finish() {
-    if (wroteBuffer) {
-      var rSource: RowSource = null
-      try {
-        if (lines > 0) sortBuffer(inputArray, lines)
-        inputArray = null
-        val gorString = ordFileList.mkString(" ")
-        val sessionFactory = new GenericSessionFactory()
-        rSource = new MultiFileSource(gorString.split(' ').toList, null, "", sortInfo, sessionFactory.create().getGorContext)
-        rSource.setPosition("chr", 0)
-
-        while (rSource.hasNext) super.process(rSource.next())
-      } finally {
-        if (rSource != null) {
-          try {
-            rSource.close()
-          } catch {
-            case _: Exception =>
-              // Do nothing
-          }
-        }
-        ordFileList.foreach(x => {
-          try {
-            val f = new java.io.File(x)
-            f.delete
-          } catch {
-            case _: Exception =>
-              // Do nothing
-          }
-        })
-      }
+    if (isInErrorState) {
+      sorter.close()
     } else {
-      if (!alreadySorted) util.Arrays.parallelSort(inputArray, 0, lines, (o1: Row, o2: Row) => o1.advancedCompare(o2, sortInfo))
-      inputArray.take(lines).foreach(r => super.process(r))
-      inputArray = null
+      sorter.finish(r => super.process(r))
     }
   }
 }
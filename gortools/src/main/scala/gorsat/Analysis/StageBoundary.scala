@@ -0,0 +1,157 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis
+
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+import gorsat.Commands.Analysis
+import gorsat.RowBatchRing
+import org.gorpipe.model.genome.files.gor.Row
+
+/**
+  * Cuts the pipe into two stages running on separate threads. The rows are handed from the upstream thread to a
+  * stage thread, which runs the rest of the pipe, in reusable batches through a bounded single producer/single
+  * consumer ring, so a slow downstream step holds the upstream steps back. Errors in the stage thread are
+  * rethrown on the upstream thread, the downstream steps are finished from the upstream thread once the stage
+  * thread has drained the ring.
+  *
+  * @param name       name of the step following the boundary, used for the thread name
+  * @param batchSize  number of rows in each batch
+  * @param batches    number of batches in the ring
+  */
+case class StageBoundary(name: String, batchSize: Int = 1024, batches: Int = 4) extends Analysis {
+  private var ring = new RowBatchRing(batches, batchSize)
+  private var batch: Array[Row] = _
+  private var count = 0
+  private var stageThread: Thread = _
+  @volatile private var downstreamDone = false
+  @volatile private var stageError: Throwable = _
+
+  override def isTypeInformationMaintained: Boolean = true
+
+  override def reportWantsNoMore(): Unit = {
+    // Called on the stage thread, the upstream steps are told on the upstream thread
+    downstreamDone = true
+    ring.cancel()
+  }
+
+  override def process(r: Row): Unit = {
+    if (downstreamDone) {
+      stopUpstream()
+    } else {
+      if (batch == null) {
+        batch = ring.claim()
+        if (batch == null) {
+          stopUpstream()
+          return
+        }
+      }
+      batch(count) = r
+      count += 1
+      if (count == batch.length) flush()
+    }
+  }
+
+  override def finish(): Unit = {
+    if (isInErrorState) {
+      ring.cancel()
+    } else if (batch != null && !downstreamDone) {
+      flush()
+    }
+    ring.close()
+    if (stageThread != null) {
+      try {
+        stageThread.join()
+      } catch {
+        case e: InterruptedException =>
+          ring.cancel()
+          Thread.currentThread().interrupt()
+          throw e
+      }
+    }
+    val error = stageError
+    restart()
+    if (!isInErrorState && error != null) throw error
+  }
+
+  // The pipe is run again after a seek, rows following finish go through a fresh ring and stage thread
+  private def restart(): Unit = {
+    ring = new RowBatchRing(batches, batchSize)
+    stageThread = null
+    batch = null
+    count = 0
+    downstreamDone = false
+    stageError = null
+  }
+
+  private def flush(): Unit = {
+    ring.publish(count)
+    batch = null
+    count = 0
+    if (stageThread == null) {
+      stageThread = StageBoundary.threadFactory.newThread(new Runnable {
+        override def run(): Unit = drain()
+      })
+      stageThread.setName(stageThread.getName + "-" + name)
+      stageThread.start()
+    }
+  }
+
+  private def stopUpstream(): Unit = {
+    if (stageError != null) throw stageError
+    if (!wantsNoMore) super.reportWantsNoMore()
+  }
+
+  private def drain(): Unit = {
+    try {
+      var n = ring.take()
+      while (n >= 0) {
+        val rows = ring.current()
+        var i = 0
+        while (i < n && !downstreamDone) {
+          nextProcessor.process(rows(i))
+          i += 1
+        }
+        ring.release()
+        n = if (downstreamDone) -1 else ring.take()
+      }
+    } catch {
+      case e: Throwable =>
+        stageError = e
+        ring.cancel()
+    }
+  }
+}
+
+object StageBoundary {
+  private val threadCounter = new AtomicInteger(0)
+
+  private val threadFactory = new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val thread = new Thread(r, "PipeStage-" + threadCounter.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
@@ -31,8 +31,8 @@ import org.gorpipe.gor.GorContext
 import scala.collection.mutable.ListBuffer
 
 class Group extends CommandInfo("GROUP",
-  CommandArguments("-count -cdist -min -med -max -dis -set -lis -avg -std -sum -h", "-gc -sc -ac -ic -fc -len -steps " +
-    "-s", 0, 1),
+  CommandArguments("-count -cdist -min -med -max -dis -set -lis -avg -std -sum -approx -h", "-gc -sc -ac -ic -fc -len " +
+    "-steps -s -quantiles", 0, 1),
   CommandOptions(gorCommand = true, norCommand = true, memoryMonitorCommand = true, verifyCommand = true,
     cancelCommand = true, ignoreSplitCommand = true)) {
   override def processArguments(context: GorContext, argString: String, iargs: Array[String],
@@ -74,6 +74,21 @@ class Group extends CommandInfo("GROUP",
     if (hasOption(args, "-avg")) useAvg = true
     if (hasOption(args, "-std")) useStd = true
     if (hasOption(args, "-sum")) useSum = true
+    val approximate = hasOption(args, "-approx")
+    val quantileValues: List[String] = if (hasOption(args, "-quantiles")) {
+      stringValueOfOption(args, "-quantiles").split(',').map(_.trim).toList
+    } else {
+      Nil
+    }
+    val quantiles = quantileValues.map { label =>
+      val q = try {
+        label.toDouble
+      } catch {
+        case _: NumberFormatException => throw new GorParsingException(s"Invalid quantile $label in -quantiles")
+      }
+      if (q < 0.0 || q > 1.0) throw new GorParsingException(s"Quantile $label in -quantiles is not between 0 and 1")
+      q
+    }
 
     if (hasOption(args, "-len")) setLen = intValueOfOptionWithRangeCheck(args, "-len", 10, 1000000)
 
@@ -112,7 +127,7 @@ class Group extends CommandInfo("GROUP",
     acCols = acCols filterNot (x => icCols.contains(x) || fcCols.contains(x))
     icCols = icCols filterNot (x => fcCols.contains(x))
 
-    if (useMax || useMin || useMed || useDis || useSet || useLis || useAvg || useStd || useSum) {
+    if (useMax || useMin || useMed || useDis || useSet || useLis || useAvg || useStd || useSum || quantiles.nonEmpty) {
       if (gcCols.length + acCols.length + icCols.length + fcCols.length == 0) {
         throw new GorParsingException("No columns selected for aggregation. Use -gc, -sc, -ic, or -fc to specify " +
           "which columns should be aggregated.")
@@ -150,6 +165,11 @@ class Group extends CommandInfo("GROUP",
         if (useMed) {
           columns += ColumnHeader("med_" + hcol(i), i.toString)
         }
+        if (icCols.contains(i) || fcCols.contains(i)) {
+          for (q <- quantileValues) {
+            columns += ColumnHeader(percentileLabel(q) + "_" + hcol(i), i.toString)
+          }
+        }
         if (useMax) {
           columns += ColumnHeader("max_" + hcol(i), i.toString)
         }
@@ -181,23 +201,28 @@ class Group extends CommandInfo("GROUP",
 
     if (hasOption(args, "-h")) combinedHeader = null
 
+    val requestId = if (context.getSession != null) context.getSession.getRequestId else null
     var pipeStep: Analysis = null
     var overwriteValidtion = false
 
     if (chrGen.startsWith("CHR")) {
       pipeStep = GroupAnalysis.ChromAggregate(context.getSession, useCount, useCdist, useMax, useMin, useMed, useDis, useSet,
-        useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header)
+        useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header, approximate, quantiles,
+        requestId)
     } else if (chrGen.startsWith("GEN")) {
       overwriteValidtion = true
       pipeStep = GroupAnalysis.GenomeAggregate(useCount, useCdist, useMax, useMin, useMed, useDis, useSet, useLis,
-        useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header)
+        useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header, approximate, quantiles,
+        requestId)
     } else {
       if (slideSteps > 1) {
         pipeStep = GroupAnalysis.SlideAggregate(slideSteps, binSize, useCount, useCdist, useMax, useMin, useMed,
-          useDis, useSet, useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header)
+          useDis, useSet, useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header,
+          approximate, quantiles, requestId)
       } else {
         pipeStep = GroupAnalysis.Aggregate(binSize, useCount, useCdist, useMax, useMin, useMed, useDis, useSet,
-          useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header)
+          useLis, useAvg, useStd, useSum, acCols, icCols, fcCols, gcCols, setLen, sepVal, header, approximate, quantiles,
+          requestId)
       }
     }
 
@@ -205,4 +230,9 @@ class Group extends CommandInfo("GROUP",
     results.excludeValidation = overwriteValidtion
     results
   }
+
+  // Quantile 0.05 gives the column prefix p5, 0.975 gives p97_5
+  private def percentileLabel(q: String): String = {
+    "p" + (BigDecimal(q) * 100).bigDecimal.stripTrailingZeros.toPlainString.replace('.', '_')
+  }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import gorsat.Analysis.{MapLookup, MultiMapLookup}
 import gorsat.Commands.CommandParseUtilities._
 import gorsat.DynIterator.DynamicNorSource
 import gorsat.IteratorUtilities.validHeader
+import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.process.SourceProvider
 import org.gorpipe.exceptions.{GorParsingException, GorResourceException}
 import org.gorpipe.gor.GorContext
@@ -156,13 +157,17 @@ object MapCommand {
 
       combinedHeader = validHeader(combinedHeader)
 
+      // Only maps read directly from files can be shared, nested queries need not give the same result each time
+      val sourceSignature = if (mapFileName.slice(0, 2) == "<(") null
+        else MapAndListUtilities.getSourceSignature(List(mapFileName), context.getSession)
       if (hasOption(args, "-l") && !(cartesian && actualOutCols.length == 1) || (cartesian && actualOutCols.length > 1)) {
         pipeStep = MultiMapLookup(context.getSession, iteratorCommand, dsource, mapFileName, mCols.toArray,
-          caseInsensitive, actualOutCols.toArray, missingVal, returnMissing, cartesian)
+          caseInsensitive, actualOutCols.toArray, missingVal, returnMissing, cartesian, sourceSignature)
       }
       else {
         pipeStep = MapLookup(context.getSession, iteratorCommand, dsource, mapFileName, mCols.toArray, negate,
-          caseInsensitive, actualOutCols.toArray, missingVal, returnMissing, inSet, inSetCol, cartesian, skipEmpty)
+          caseInsensitive, actualOutCols.toArray, missingVal, returnMissing, inSet, inSetCol, cartesian, skipEmpty,
+          sourceSignature)
       }
 
       CommandParsingResult(pipeStep, combinedHeader)
@@ -98,14 +98,15 @@ class Rank extends CommandInfo("RANK",
     // INFO: Undocumented command, seems to remove the header??
     if (hasOption(args,"-h")) combinedHeader = null
 
+    val requestId = if (context.getSession != null) context.getSession.getRequestId else null
     var pipeStep: Analysis = null
 
     if (chrGen.startsWith("CHR")) {
-      pipeStep = ChromRank(context.getSession, rankColumn, gcCols, pa, header)
+      pipeStep = ChromRank(context.getSession, rankColumn, gcCols, pa, header, requestId)
     } else if (chrGen.startsWith("GEN")) {
-      pipeStep = GenomeRank(rankColumn, gcCols, pa, header)
+      pipeStep = GenomeRank(rankColumn, gcCols, pa, header, requestId)
     } else {
-      pipeStep = Rank(binSize, rankColumn, gcCols, pa, header)
+      pipeStep = Rank(binSize, rankColumn, gcCols, pa, header, requestId)
     }
 
     CommandParsingResult(pipeStep, combinedHeader)
@@ -29,7 +29,7 @@ import org.gorpipe.exceptions.GorParsingException
 import org.gorpipe.gor.GorContext
 
 class Regression extends CommandInfo("REGRESSION",
-  CommandArguments("-logistic -linear -imp", "-covar -s", 1, 1),
+  CommandArguments("-logistic -linear -imp -warm", "-covar -s -score", 1, 1),
   CommandOptions(gorCommand = true, cancelCommand = true))
 {
   override def processArguments(context: GorContext, argString: String, iargs: Array[String], args: Array[String], executeNor: Boolean, forcedInputHeader: String): CommandParsingResult = {
@@ -53,8 +53,6 @@ class Regression extends CommandInfo("REGRESSION",
         builder.append('\t')
       })
 
-    if (linear) headerBuilder.append("Phenotype\tCovariate\tbeta\tStd_Error\tZ_stat\tP_value")
-    else headerBuilder.append("Phenotype\tCovariate\tbeta\tZ_stat\tP_value")
 
     val phenoFile = iargs(0)
 
@@ -69,9 +67,22 @@ class Regression extends CommandInfo("REGRESSION",
       case _=> //Ok.
     }
 
+    val scoreThreshold = if (hasOption(args, "-score")) {
+      if (linear) throw new GorParsingException("The option -score can only be used with -logistic")
+      Some(doubleValueOfOptionWithRangeCheck(args, "-score", 0, 1))
+    } else None
+
+    val warmStart = hasOption(args, "-warm")
+    if (warmStart && linear) throw new GorParsingException("The option -warm can only be used with -logistic")
+
+    if (linear) headerBuilder.append("Phenotype\tCovariate\tbeta\tStd_Error\tZ_stat\tP_value")
+    else headerBuilder.append("Phenotype\tCovariate\tbeta\tZ_stat\tP_value")
+    //With -score the statistics of a variant come from either the score test or the Wald test of the full regression
+    if (scoreThreshold.isDefined) headerBuilder.append("\tTest")
+
     val combinedHeader = validHeader(headerBuilder.toString)
 
-    val pipeStep = if (linear) new LinearRegressionAnalysis(lookupSignature, context.getSession, valCol, sep, imputed, phenoFile, covarFile) else new LogisticRegressionAnalysis(lookupSignature, context.getSession, valCol, sep, imputed, phenoFile, covarFile)
+    val pipeStep = if (linear) new LinearRegressionAnalysis(lookupSignature, context.getSession, valCol, sep, imputed, phenoFile, covarFile) else new LogisticRegressionAnalysis(lookupSignature, context.getSession, valCol, sep, imputed, phenoFile, covarFile, scoreThreshold, warmStart)
     CommandParsingResult(pipeStep, combinedHeader)
   }
 }
@@ -22,7 +22,7 @@
 
 package gorsat.Commands
 
-import gorsat.Analysis.SortAnalysis
+import gorsat.Analysis.{SegmentStats, SortAnalysis}
 import gorsat.Analysis.VarJoinAnalysis.{ParameterHolder, SegVarJoinSegOverlap, SegVarJoinSegOverlapInclusOnly}
 import gorsat.Commands.CommandParseUtilities._
 import gorsat.IteratorUtilities
@@ -184,6 +184,15 @@ class VarJoin extends CommandInfo("VARJOIN",
       var allShare = -1
       if (hasOption(args,"-as")) allShare = intValueOfOptionWithRangeCheck(args,"-as", 0)
 
+      // Seek back far enough for the longest variant in the right file if its length statistics have been persisted
+      val rightMaxSegSize = if (hasOption(args, "-maxseg")) maxSegSize else {
+        val projectContext = context.getSession.getProjectContext
+        val rightPath = SegmentStats.localPath(rightFile, projectContext.getRoot)
+        val statsDir = SegmentStats.directory(projectContext.getCacheDir, projectContext.getRoot)
+        val stats = SegmentStats.read(rightPath, statsDir, SegmentStats.refMeasure(rRef))
+        if (stats != null) maxSegSize.max(stats.max) else maxSegSize
+      }
+
       rightHeader = rightHeader.split("\t",-1).map(x => if (prefix != "") prefix+"_"+x else x).mkString("\t")
 
       if (inclusOnly || hasOption(args,"-n")) rightHeader = ""
@@ -223,17 +232,17 @@ class VarJoin extends CommandInfo("VARJOIN",
         combinedHeader = leftHeader
         doLeftJoin = true
 
-        aPipeStep = SegVarJoinSegOverlap(context.getSession, ph,segSource, missPatt, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, maxSegSize,
+        aPipeStep = SegVarJoinSegOverlap(context.getSession, ph,segSource, missPatt, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, rightMaxSegSize,
           lRef, lAlt, rRef, rAlt, allShare, null, negjoin)  // | NegFilter(noCols, missPatt)
 
       } // end non-overlap
       else { // overlap
 
         if (inclusOnly) {
-          aPipeStep = SegVarJoinSegOverlapInclusOnly(context.getSession, ph, segSource, missingSEG, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, maxSegSize,
+          aPipeStep = SegVarJoinSegOverlapInclusOnly(context.getSession, ph, segSource, missingSEG, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, rightMaxSegSize,
             lRef, lAlt, rRef, rAlt, allShare, null, negjoin)
         } else {
-          aPipeStep = SegVarJoinSegOverlap(context.getSession, ph,segSource, missingSEG, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, maxSegSize,
+          aPipeStep = SegVarJoinSegOverlap(context.getSession, ph,segSource, missingSEG, exactJoin, doLeftJoin, fuzzFactor, leq, req, caseInsensitive, rightMaxSegSize,
             lRef, lAlt, rRef, rAlt, allShare, plainCols, negjoin)
         }
 
@@ -22,7 +22,7 @@
 
 package gorsat.Commands
 
-import gorsat.Analysis.{ForkWrite, ForkWriteOptions}
+import gorsat.Analysis.{ForkWrite, ForkWriteOptions, SegmentStats}
 import gorsat.Commands.CommandParseUtilities._
 import org.gorpipe.exceptions.{GorParsingException, GorResourceException}
 import org.gorpipe.gor.GorContext
@@ -72,6 +72,9 @@ class Write extends CommandInfo("WRITE",
       case "FULL" => idx = GorIndexType.FULLINDEX
     }
 
-    CommandParsingResult(ForkWrite(forkCol, fileName, forcedInputHeader, executeNor, ForkWriteOptions(remove, columnCompress, md5, idx, tagArray, prefixFile)), forcedInputHeader)
+    val projectContext = context.getSession.getProjectContext
+    val segStatsDir = Option(SegmentStats.directory(projectContext.getCacheDir, projectContext.getRoot))
+
+    CommandParsingResult(ForkWrite(forkCol, fileName, forcedInputHeader, executeNor, ForkWriteOptions(remove, columnCompress, md5, idx, tagArray, prefixFile, segStatsDir)), forcedInputHeader)
   }
 }
@@ -25,16 +25,18 @@ package gorsat.Macros
 import gorsat.Commands.{CommandArguments, CommandParseUtilities}
 import gorsat.Script
 import gorsat.Script._
+import org.gorpipe.exceptions.GorParsingException
 import org.gorpipe.gor.GorContext
 
 /***
   * PGOR macro used to preprocess standalone pgor commands into create statement plus gor query. Also performs expansion
   * based on active build and splits. Also if a custom split options are used it performs a split based on input chromosome,
   * start and stop positions. pgor expansions will always result in gor queries in the form of 'gor -p [position and range]
-  * <([original query])'.
+  * <([original query])'. With -balanced the partitions are chosen so they hold roughly equal amount of data from the
+  * input sources, the number of partitions is then controlled with the -split option.
   */
 
-class PGor extends MacroInfo("PGOR", CommandArguments("-nowithin", "", 1, -1, ignoreIllegalArguments = true)) {
+class PGor extends MacroInfo("PGOR", CommandArguments("-nowithin -balanced", "", 1, -1, ignoreIllegalArguments = true)) {
 
   override protected def processArguments(createKey: String,
                                           create: ExecutionBlock,
@@ -44,6 +46,11 @@ class PGor extends MacroInfo("PGOR", CommandArguments("-nowithin", "", 1, -1, ig
                                           options: Array[String]): MacroParsingResult = {
 
 
+    if (SplitManager.hasGenomeWideApproximateGroup(create.query)) {
+      throw new GorParsingException("GROUP genome -approx is not supported in pgor, the sketches of the partitions " +
+        "are not merged. Use GROUP genome -approx outside of pgor or GROUP chrom -approx.")
+    }
+
     var partitionedGorCommands = Map.empty[String, ExecutionBlock]
     var theDependencies: List[String] = Nil
 
@@ -25,6 +25,7 @@ package gorsat.QueryHandlers
 import java.io.File
 import java.lang
 import java.nio.file.{Files, Paths}
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicIntegerArray}
 
 import org.gorpipe.exceptions.{GorException, GorSystemException}
 import org.gorpipe.model.genome.files.gor.GorParallelQueryHandler
@@ -48,49 +49,127 @@ class GeneralQueryHandler(context: GorContext, header: Boolean) extends GorParal
   def executeBatch(commandSignatures: Array[String], commandsToExecute: Array[String], batchGroupNames: Array[String], gorMonitor: GorMonitor): Array[String] = {
     val fileNames = new Array[String](commandSignatures.length)
     val fileCache = context.getSession.getProjectContext.getFileCache
-    var commandList: List[() => Unit] = Nil
     val useMd5 = System.getProperty("gor.caching.md5.enabled", "false").toBoolean
+    val costs = QueryCostEstimator.estimateCosts(commandsToExecute)
 
-    for (i <- commandSignatures.indices) {
-      val executeFunction = block2Function {
+    val tasks: Array[ParallelExecutor.Task] = commandSignatures.indices.map { i =>
+      new CommandTask(i, commandSignatures(i), commandsToExecute(i), batchGroupNames(i), costs(i), fileNames, fileCache, useMd5)
+    }.toArray
 
-        val (commandSignature, commandToExecute, batchGroupName) = (commandSignatures(i), commandsToExecute(i), batchGroupNames(i))
-        val nested = context.createNestedContext(batchGroupName, commandSignature, commandToExecute)
+    if (tasks.nonEmpty) parallelExecution(tasks)
+    fileNames
+  }
 
-        try {
-          var cacheFile: String = fileCache.lookupFile(commandSignature)
-
-          // Do this if we have result cache active or if we are running locally and the local cacheFile does not exist.
-          if (cacheFile == null) {
-            val startTime = System.currentTimeMillis
-            cacheFile = findCacheFile(commandSignature, commandToExecute, header, fileCache, AnalysisUtilities.theCacheDirectory(context.getSession))
-            val resultFileName = runCommand(nested, commandToExecute, cacheFile, useMd5)
-            if (fileCache != null) {
-              val extension = CommandParseUtilities.getExtensionForQuery(commandToExecute, header)
-              val overheadTime = findOverheadTime(commandToExecute)
-              cacheFile = fileCache.store(Paths.get(resultFileName), commandSignature, extension, overheadTime + System.currentTimeMillis - startTime)
-            }
-          } else {
-            nested.cached(cacheFile)
-          }
-          fileNames(i) = cacheFile
-        } catch {
-          case gue: GorUserException =>
-            gue.setQuerySource(batchGroupName)
-            gue.setContext(nested)
-            throw gue
+  /**
+    * Executes a single command of a batch and stores the result in the file cache. Partitions of pgor queries which
+    * have not started can be split into sub ranges that are executed separately and then merged into the result.
+    */
+  private class CommandTask(index: Int, commandSignature: String, commandToExecute: String, batchGroupName: String,
+                            estimatedCost: Long, fileNames: Array[String], fileCache: FileCache, useMd5: Boolean)
+    extends ParallelExecutor.Task {
+
+    private lazy val nested = context.createNestedContext(batchGroupName, commandSignature, commandToExecute)
+
+    override def cost(): Long = estimatedCost
+
+    override def run(): Unit = {
+      withQuerySource {
+        var cacheFile: String = fileCache.lookupFile(commandSignature)
+
+        // Do this if we have result cache active or if we are running locally and the local cacheFile does not exist.
+        if (cacheFile == null) {
+          val startTime = System.currentTimeMillis
+          cacheFile = findCacheFile(commandSignature, commandToExecute, header, fileCache, AnalysisUtilities.theCacheDirectory(context.getSession))
+          val resultFileName = runCommand(nested, commandToExecute, cacheFile, useMd5)
+          cacheFile = storeResult(resultFileName, System.currentTimeMillis - startTime)
+        } else {
+          nested.cached(cacheFile)
         }
+        fileNames(index) = cacheFile
       }
-      commandList ::= executeFunction
     }
 
-    if (commandList != Nil) parallelExecution(commandList.reverse.toArray)
-    fileNames
-  }
+    override def split(parts: Int): Array[ParallelExecutor.Task] = {
+      if (useMd5 || header || fileCache == null || fileCache.lookupFile(commandSignature) != null) return null
+
+      QueryCostEstimator.splitPartition(commandToExecute, parts) match {
+        case Some(partQueries) =>
+          val startTime = System.currentTimeMillis
+          val cacheFile = findCacheFile(commandSignature, commandToExecute, header, fileCache, AnalysisUtilities.theCacheDirectory(context.getSession))
+          // Part files must not start with the signature, they would otherwise be found by cache lookups
+          val cachePath = Paths.get(cacheFile)
+          val partFiles = partQueries.indices.map(p => cachePath.resolveSibling("part" + p + "_" + cachePath.getFileName).toString).toArray
+          val remaining = new AtomicInteger(partQueries.length)
+          val running = new AtomicIntegerArray(partQueries.length)
+          val failed = new AtomicBoolean(false)
+
+          // Parts that are still running remove their own file when they finish
+          def deletePartFiles(): Unit = partFiles.indices.foreach { i =>
+            if (running.get(i) == 0) Files.deleteIfExists(Paths.get(partFiles(i)))
+          }
+
+          partQueries.indices.map { p =>
+            new ParallelExecutor.Task {
+              override def cost(): Long = estimatedCost / partQueries.length
+
+              override def run(): Unit = {
+                withQuerySource {
+                  running.set(p, 1)
+                  var done = false
+                  try {
+                    val partContext = nested.createNestedContext(null, null, partQueries(p))
+                    runCommand(partContext, partQueries(p), partFiles(p), useMd5 = false)
+                    done = true
+                  } finally {
+                    running.set(p, 0)
+                    if (!done) failed.set(true)
+                    // Once a part has failed there is no merge, the part files are removed by the failed part and
+                    // by any part that finishes after it
+                    if (failed.get) deletePartFiles()
+                  }
+
+                  // The last part to finish merges the parts, their ranges do not overlap so this is a concatenation
+                  if (remaining.decrementAndGet() == 0) {
+                    try {
+                      val resultFileName = runCommand(nested, "gor " + partFiles.mkString(" "), cacheFile, useMd5 = false)
+                      fileNames(index) = storeResult(resultFileName, System.currentTimeMillis - startTime)
+                    } finally {
+                      partFiles.foreach(f => Files.deleteIfExists(Paths.get(f)))
+                    }
+                  }
+                }
+              }
+            }: ParallelExecutor.Task
+          }.toArray
+        case None => null
+      }
+    }
 
+    private def storeResult(resultFileName: String, runTime: Long): String = {
+      QueryCostEstimator.recordRunTime(commandToExecute, runTime)
+      if (fileCache != null) {
+        val extension = CommandParseUtilities.getExtensionForQuery(commandToExecute, header)
+        val overheadTime = findOverheadTime(commandToExecute)
+        fileCache.store(Paths.get(resultFileName), commandSignature, extension, overheadTime + runTime)
+      } else {
+        resultFileName
+      }
+    }
 
-  def parallelExecution(commands: Array[() => Unit]): Unit = {
-    val pe = new ParallelExecutor(context.getSession.getSystemContext.getWorkers, commands)
+    private def withQuerySource(block: => Unit): Unit = {
+      try {
+        block
+      } catch {
+        case gue: GorUserException =>
+          gue.setQuerySource(batchGroupName)
+          gue.setContext(nested)
+          throw gue
+      }
+    }
+  }
+
+  def parallelExecution(tasks: Array[ParallelExecutor.Task]): Unit = {
+    val pe = new ParallelExecutor(context.getSession.getSystemContext.getWorkerBudget, tasks)
     try
       pe.parallelExecute()
     catch {
@@ -101,12 +180,6 @@ class GeneralQueryHandler(context: GorContext, header: Boolean) extends GorParal
     }
   }
 
-  def block2Function(block: => Unit): () => Unit = {
-    () => block
-  }
-
-
-
   override def setForce(force: Boolean): Unit = {
 
   }
@@ -0,0 +1,105 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.QueryHandlers
+
+import com.google.common.cache.{Cache, CacheBuilder}
+import gorsat.Commands.CommandParseUtilities
+
+/**
+  * Estimates the relative cost of the queries in a batch so the parallel executor can start the most expensive ones
+  * first. Run times of previously executed queries are used when they are known for the whole batch, otherwise the
+  * size of the genomic range of pgor partitions is used.
+  */
+object QueryCostEstimator {
+
+  // Pgor partitions smaller than this are never split further
+  val MINIMUM_SPLIT_RANGE: Int = System.getProperty("gor.pgor.split.minrange", "1000000").toInt
+
+  // Commands which only look at one row at a time, partitions consisting of these can be split at any position
+  private val ROW_LOCAL_COMMANDS = Set("CALC", "COLUMNSORT", "HIDE", "REPLACE", "RENAME", "SELECT", "WHERE")
+
+  private val partitionPattern = "(?s)gor -p (\\S+):(\\d+)-(\\d+) (<\\(.*\\))".r
+
+  private val runTimes: Cache[String, java.lang.Long] = CacheBuilder.newBuilder().maximumSize(10000).build()
+
+  def recordRunTime(query: String, millis: Long): Unit = {
+    runTimes.put(query, millis)
+  }
+
+  def estimateCosts(queries: Array[String]): Array[Long] = {
+    val knownRunTimes = queries.map(q => Option(runTimes.getIfPresent(q)))
+
+    if (knownRunTimes.forall(_.nonEmpty)) {
+      knownRunTimes.map(_.get.longValue())
+    } else {
+      // Queries without a range are not partitions and have no known size, start them first
+      queries.map(q => partitionRange(q).map(r => r._3.toLong - r._2 + 1).getOrElse(Long.MaxValue))
+    }
+  }
+
+  /**
+    * @return chromosome, start and end of a pgor partition query in the form 'gor -p chr:start-end <(query)'
+    */
+  def partitionRange(query: String): Option[(String, Int, Int)] = {
+    query.trim match {
+      case partitionPattern(chr, start, end, _) => Some((chr, start.toInt, end.toInt))
+      case _ => None
+    }
+  }
+
+  /**
+    * Splits a pgor partition query into queries over consecutive sub ranges. Only partitions where the nested query
+    * reads files directly and all pipe steps are row local can be split, as the result of other steps depends on the
+    * partition boundaries.
+    *
+    * @param query  Partition query in the form 'gor -p chr:start-end <(query)'
+    * @param parts  Requested number of parts
+    * @return Queries for the sub ranges in genomic order, None if the query can not be split
+    */
+  def splitPartition(query: String, parts: Int): Option[Array[String]] = {
+    query.trim match {
+      case partitionPattern(chr, start, end, nested) if parts > 1 && isRowLocal(nested) =>
+        val (begin, stop) = (start.toLong, end.toLong)
+        val actualParts = Math.min(parts.toLong, (stop - begin + 1) / MINIMUM_SPLIT_RANGE).toInt
+        if (actualParts > 1) {
+          val step = (stop - begin + 1) / actualParts
+          Some((0 until actualParts).map { i =>
+            val partStart = begin + i * step
+            val partEnd = if (i == actualParts - 1) stop else partStart + step - 1
+            s"gor -p $chr:$partStart-$partEnd $nested"
+          }.toArray)
+        } else None
+      case _ => None
+    }
+  }
+
+  private def isRowLocal(nested: String): Boolean = {
+    try {
+      val steps = CommandParseUtilities.quoteSafeSplitAndTrim(CommandParseUtilities.parseNestedCommand(nested), '|')
+      !steps.head.contains("<(") && !steps.head.contains("[") &&
+        steps.tail.forall(step => ROW_LOCAL_COMMANDS.contains(CommandParseUtilities.quoteSafeSplitAndTrim(step, ' ').head.toUpperCase))
+    } catch {
+      case _: Exception => false
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Script
+
+import java.io.{BufferedInputStream, ByteArrayOutputStream, InputStream}
+import java.nio.channels.Channels
+import java.nio.file.{Files, Path, StandardOpenOption}
+
+import gorsat.Commands.CommandParseUtilities
+import org.gorpipe.gor.GorContext
+import org.slf4j.LoggerFactory
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Data size balanced splits for pgor. The input sources of the partitioned query are sampled to estimate how many
+  * bytes fall into each genomic region and the genome is then split into partitions of roughly equal byte volume.
+  * Gor and gorz files are sampled at evenly spaced file offsets (using the .gori index when present), dictionaries
+  * contribute the size of their files over the range of each dictionary line.
+  */
+object BalancedSplit {
+
+  private val log = LoggerFactory.getLogger(this.getClass)
+
+  val BALANCED_SPLIT_OPTION = "-balanced"
+  val DEFAULT_PARTITIONS: Int = System.getProperty("gor.pgor.balanced.partitions", "100").toInt
+  val NUMBER_OF_SAMPLES: Int = System.getProperty("gor.pgor.balanced.samples", "1000").toInt
+  private val MAX_KEY_LENGTH = 256
+
+  /**
+    * Estimated number of bytes within a genomic range, the bytes are assumed to be evenly spread over the range.
+    */
+  case class DensitySegment(chr: String, start: Int, end: Int, bytes: Double)
+
+  def isBalanced(command: String): Boolean = {
+    CommandParseUtilities.quoteSafeSplit(nestedQuery(command), ' ').exists(_.trim == BALANCED_SPLIT_OPTION)
+  }
+
+  /**
+    * Removes the balanced option from the gor and pgor steps of command, and from nested queries that start with
+    * options, e.g. the partition query of pgor. Quoted text, file names and the other steps are left untouched.
+    */
+  def removeOption(command: String): String = {
+    // The splits drop a trailing separator, it is added back so the rest of the command is unchanged
+    val steps = CommandParseUtilities.quoteSafeSplit(command, '|').map(step => {
+      val words = CommandParseUtilities.quoteSafeSplit(step, ' ')
+      val first = words.find(_.nonEmpty).getOrElse("")
+      val hasOption = first.startsWith("-") || first.equalsIgnoreCase("gor") || first.equalsIgnoreCase("pgor")
+      words.filterNot(word => hasOption && word == BALANCED_SPLIT_OPTION).map(word => {
+        if (word.startsWith("<(") && word.endsWith(")")) "<(" + removeOption(word.substring(2, word.length - 1)) + ")"
+        else word
+      }).mkString(" ") + (if (step.endsWith(" ")) " " else "")
+    })
+    steps.mkString("|") + (if (command.endsWith("|")) "|" else "")
+  }
+
+  /**
+    * Creates splits of roughly equal byte volume for the sources of the nested query in command.
+    *
+    * @param context      Gor context used to resolve the source files
+    * @param command      Partitioned gor command, e.g. gor -p ##SPLIT_CHR_REPLACE## <(...)
+    * @param partitions   Requested number of partitions
+    * @param splitOverlap Overlap added to both sides of each partition range
+    * @return Balanced splits or null if no data was found to balance on
+    */
+  def parseBalancedSplit(context: GorContext, command: String, partitions: Int, splitOverlap: Int): Map[String, SplitEntry] = {
+    val buildSizes = context.getSession.getProjectContext.getReferenceBuild.getBuildSize.asScala.map(x => (x._1, x._2.intValue())).toMap
+    val root = context.getSession.getProjectContext.getRealProjectRootPath
+    val segments = sourceFiles(command).flatMap(file => {
+      try {
+        sampleSource(if (file.contains("://")) null else root.resolve(file), buildSizes)
+      } catch {
+        case e: Exception =>
+          log.debug(s"Unable to sample $file for balanced split", e)
+          Nil
+      }
+    })
+
+    if (segments.isEmpty || segments.map(_.bytes).sum <= 0) null
+    else createSplits(segments, buildSizes, partitions, splitOverlap)
+  }
+
+  /**
+    * Splits each chromosome in the build into partitions with roughly equal bytes. Every chromosome gets at least one
+    * partition so all of the build is covered, the remaining partitions are distributed based on the data in each
+    * chromosome.
+    */
+  def createSplits(segments: Seq[DensitySegment], buildSizes: Map[String, Int], partitions: Int, splitOverlap: Int): Map[String, SplitEntry] = {
+    val segmentsByChr = segments.filter(x => buildSizes.contains(x.chr)).groupBy(_.chr)
+    val totalBytes = segmentsByChr.values.flatten.map(_.bytes).sum
+    val extraPartitions = 0.max(partitions.min(SplitManager.MAXIMUM_NUMBER_OF_SPLITS) - buildSizes.size)
+    var chromosomeSplits = Map.empty[String, SplitEntry]
+
+    buildSizes.foreach { case (chr, size) =>
+      val chrSegments = segmentsByChr.getOrElse(chr, Nil).sortBy(_.start)
+      val chrBytes = chrSegments.map(_.bytes).sum
+      val chrPartitions = 1 + (if (totalBytes > 0) (extraPartitions * chrBytes / totalBytes).toInt else 0)
+      val cuts = cutPositions(chrSegments, chrBytes, chrPartitions, size)
+      val bounds = (0 +: cuts) :+ (size + 1)
+
+      bounds.sliding(2).zipWithIndex.foreach { case (Seq(beginBp, endBp), i) =>
+        chromosomeSplits += ((chr + "_" + (i + 1)) -> SplitEntry(chr + ":" + 0.max(beginBp - splitOverlap) + "-" + (endBp - 1 + splitOverlap),
+          beginBp + "<= #2i and #2i < " + endBp))
+      }
+    }
+
+    chromosomeSplits
+  }
+
+  private def cutPositions(segments: Seq[DensitySegment], totalBytes: Double, partitions: Int, size: Int): Seq[Int] = {
+    val cuts = ArrayBuffer.empty[Int]
+    if (partitions > 1 && totalBytes > 0) {
+      val target = totalBytes / partitions
+      var cumulative = 0.0
+      var next = target
+      segments.foreach(segment => {
+        while (cuts.length < partitions - 1 && cumulative + segment.bytes >= next) {
+          val fraction = if (segment.bytes > 0) (next - cumulative) / segment.bytes else 0.0
+          val pos = segment.start + ((segment.end - segment.start) * fraction).toLong.toInt + 1
+          if (pos > 0 && pos <= size && (cuts.isEmpty || pos > cuts.last)) cuts += pos
+          next += target
+        }
+        cumulative += segment.bytes
+      })
+    }
+    cuts
+  }
+
+  /**
+    * Finds the gor, gorz and gord sources in the first step of the nested query.
+    */
+  def sourceFiles(command: String): Seq[String] = {
+    val firstStep = CommandParseUtilities.quoteSafeSplit(nestedQuery(command), '|').head
+    CommandParseUtilities.quoteSafeSplit(firstStep, ' ').map(_.trim).filter(x => {
+      val lower = x.toLowerCase
+      !x.startsWith("-") && !x.startsWith("<(") && (lower.endsWith(".gor") || lower.endsWith(".gorz") || lower.endsWith(".gord"))
+    }).toSeq
+  }
+
+  private def nestedQuery(command: String): String = {
+    CommandParseUtilities.quoteSafeSplit(command, ' ').map(_.trim).find(_.startsWith("<(")) match {
+      case Some(nested) => CommandParseUtilities.parseNestedCommand(nested)
+      case None => command
+    }
+  }
+
+  def sampleSource(path: Path, buildSizes: Map[String, Int]): Seq[DensitySegment] = {
+    if (path == null || !Files.exists(path)) {
+      Nil
+    } else if (path.toString.toLowerCase.endsWith(".gord")) {
+      sampleDictionary(path, buildSizes)
+    } else {
+      val indexPath = path.resolveSibling(path.getFileName.toString + ".gori")
+      val points = if (Files.exists(indexPath)) readIndex(indexPath) else sampleFile(path)
+      segmentsFromPoints(points, Files.size(path))
+    }
+  }
+
+  /**
+    * Converts (chromosome, position, file offset) points, ordered by offset, into segments. The bytes between two
+    * points are spread between their positions, or from the start of the chromosome when the chromosome changes.
+    */
+  def segmentsFromPoints(points: Seq[(String, Int, Long)], fileSize: Long): Seq[DensitySegment] = {
+    val segments = ArrayBuffer.empty[DensitySegment]
+    var lastChr = ""
+    var lastPos = 0
+    var lastOffset = 0L
+    points.foreach { case (chr, pos, offset) =>
+      val start = if (chr == lastChr) lastPos else 0
+      segments += DensitySegment(chr, start, pos, (offset - lastOffset).toDouble)
+      lastChr = chr
+      lastPos = pos
+      lastOffset = offset
+    }
+    if (points.nonEmpty && fileSize > lastOffset) {
+      segments += DensitySegment(lastChr, lastPos, lastPos, (fileSize - lastOffset).toDouble)
+    }
+    segments
+  }
+
+  private def readIndex(indexPath: Path): Seq[(String, Int, Long)] = {
+    Files.readAllLines(indexPath).asScala.filter(x => x.nonEmpty && !x.startsWith("#")).map(line => {
+      val cols = line.split('\t')
+      (cols(0), cols(1).toInt, cols(2).toLong)
+    })
+  }
+
+  /**
+    * Reads the chromosome and position of the first line following each of evenly spaced file offsets. The lines of
+    * both gor and gorz files start with the chromosome and position.
+    */
+  private def sampleFile(path: Path): Seq[(String, Int, Long)] = {
+    val size = Files.size(path)
+    val channel = Files.newByteChannel(path, StandardOpenOption.READ)
+    val points = ArrayBuffer.empty[(String, Int, Long)]
+    try {
+      var i = 0
+      while (i < NUMBER_OF_SAMPLES) {
+        val offset = size * i / NUMBER_OF_SAMPLES
+        if (points.isEmpty || offset > points.last._3) {
+          channel.position(offset)
+          val in = new BufferedInputStream(Channels.newInputStream(channel))
+          val lineStart = offset + skipLine(in)
+          if (lineStart < size && (points.isEmpty || lineStart > points.last._3)) {
+            val chr = readField(in)
+            val pos = readField(in)
+            if (chr.nonEmpty && pos.nonEmpty && pos.forall(Character.isDigit)) points += ((chr, pos.toInt, lineStart))
+          }
+        }
+        i += 1
+      }
+    } finally {
+      channel.close()
+    }
+    points
+  }
+
+  private def skipLine(in: InputStream): Long = {
+    var count = 0L
+    var c = in.read()
+    while (c >= 0 && c != '\n') {
+      count += 1
+      c = in.read()
+    }
+    count + 1
+  }
+
+  private def readField(in: InputStream): String = {
+    val buffer = new ByteArrayOutputStream()
+    var c = in.read()
+    while (c >= 0 && c != '\t' && c != '\n' && buffer.size() < MAX_KEY_LENGTH) {
+      buffer.write(c)
+      c = in.read()
+    }
+    buffer.toString
+  }
+
+  /**
+    * Each dictionary line contributes the size of its file, spread over the range of the line if it is within a single
+    * chromosome and otherwise over the whole build.
+    */
+  private def sampleDictionary(path: Path, buildSizes: Map[String, Int]): Seq[DensitySegment] = {
+    val buildLength = buildSizes.values.map(_.toLong).sum.toDouble
+    Files.readAllLines(path).asScala.filter(x => x.nonEmpty && !x.startsWith("#")).flatMap(line => {
+      val cols = line.split('\t')
+      val file = path.resolveSibling(cols(0))
+      val bytes = if (Files.exists(file)) Files.size(file).toDouble else 0.0
+      if (bytes <= 0) {
+        Nil
+      } else if (cols.length >= 6 && cols(2) == cols(4) && buildSizes.contains(cols(2))) {
+        List(DensitySegment(cols(2), cols(3).toInt, cols(5).toInt, bytes))
+      } else {
+        buildSizes.map { case (chr, size) => DensitySegment(chr, 0, size, bytes * size / buildLength) }
+      }
+    })
+  }
+}
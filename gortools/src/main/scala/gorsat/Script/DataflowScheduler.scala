@@ -0,0 +1,234 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Script
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ExecutorService, LinkedBlockingQueue, SynchronousQueue, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+
+import gorsat.MacroUtilities
+import gorsat.Script.ScriptExecutionEngine.ExecutionBlocks
+import org.gorpipe.exceptions.{GorException, GorSystemException}
+import org.gorpipe.gor.WorkerBudget
+
+import scala.collection.JavaConverters._
+
+object DataflowScheduler {
+
+  /**
+    * Computes the critical path length of each execution block, i.e. the number of blocks on the longest chain of
+    * blocks that depend on it, including the block itself. Blocks on long chains should be started first as they
+    * determine the total run time of the script.
+    *
+    * @param executionBlocks  Execution blocks of a script
+    * @return Map of virtual file group names to critical path length
+    */
+  def criticalPathLengths(executionBlocks: ExecutionBlocks): Map[String, Int] = {
+    val names = executionBlocks.map(b => b._1 -> MacroUtilities.getVirtualFileGroupName(b._1))
+    var dependents = Map.empty[String, List[String]]
+    executionBlocks.foreach { case (key, block) =>
+      block.dependencies.map(MacroUtilities.getVirtualFileGroupName).distinct.foreach { d =>
+        dependents += (d -> (names(key) :: dependents.getOrElse(d, Nil)))
+      }
+    }
+
+    var lengths = Map.empty[String, Int]
+
+    def pathLength(name: String, visiting: Set[String]): Int = {
+      lengths.get(name) match {
+        case Some(length) => length
+        case None =>
+          // Cyclic references are reported by the script engine, here we just stop following them
+          val downstream = dependents.getOrElse(name, Nil).filter(d => !visiting.contains(d))
+          val length = 1 + (if (downstream.isEmpty) 0 else downstream.map(d => pathLength(d, visiting + name)).max)
+          lengths += (name -> length)
+          length
+      }
+    }
+
+    names.values.foreach(name => pathLength(name, Set.empty))
+    lengths
+  }
+
+  private val threadCounter = new AtomicInteger(0)
+
+  private val threadFactory = new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val thread = new Thread(r, "ScriptExecutionThread-" + threadCounter.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+
+  private val executors = new java.util.WeakHashMap[WorkerBudget, ExecutorService]()
+
+  /**
+    * Executor shared by the schedulers of all scripts using the worker budget. It keeps as many threads as the budget
+    * has workers and adds threads beyond that for schedulers running without a slot, so a batch never waits for a
+    * thread.
+    */
+  private def executor(workerBudget: WorkerBudget): ExecutorService = executors.synchronized {
+    var executor = executors.get(workerBudget)
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(workerBudget.getMaxWorkers, Int.MaxValue, 60L, TimeUnit.SECONDS,
+        new SynchronousQueue[Runnable](), threadFactory)
+      executors.put(workerBudget, executor)
+    }
+    executor
+  }
+}
+
+/**
+  * Event driven scheduler for the commands of a gor script. The commands submitted since the last scheduling round
+  * are started together as one batch as soon as a worker slot can be reserved from the shared worker budget, there
+  * are no barriers between dependency levels. The commands of a batch are passed on in critical path order, longest
+  * first. The scheduler always allows one batch to run, even when the budget is exhausted by other executions, so
+  * the script keeps making progress.
+  *
+  * The scheduler is driven from a single thread, which submits commands, starts them with dispatch and collects their
+  * results with awaitCompletions.
+  *
+  * @param workerBudget   Worker budget shared with the query handlers
+  * @param runCommands    Function executing a batch of commands and returning their result files in the same order
+  */
+class DataflowScheduler(workerBudget: WorkerBudget, runCommands: Array[ExecutionCommand] => Array[String]) {
+
+  private case class PendingCommand(command: ExecutionCommand, priority: Int, order: Long)
+  private case class Completion(commands: Array[ExecutionCommand], resultFiles: Array[String], error: Throwable)
+
+  private val pendingOrdering = new java.util.Comparator[PendingCommand] {
+    override def compare(a: PendingCommand, b: PendingCommand): Int = {
+      val c = Integer.compare(b.priority, a.priority)
+      if (c != 0) c else java.lang.Long.compare(a.order, b.order)
+    }
+  }
+
+  private val pending = new java.util.PriorityQueue[PendingCommand](11, pendingOrdering)
+  private val completions = new LinkedBlockingQueue[Completion]()
+  private val executor = DataflowScheduler.executor(workerBudget)
+  private val batchThreads = new java.util.HashSet[Thread]()
+  private var running = 0
+  private var submitted = 0L
+
+  /**
+    * Submits a command for execution in the next scheduling round
+    *
+    * @param command    Command to execute
+    * @param priority   Critical path length of the command, larger values are started first
+    */
+  def submit(command: ExecutionCommand, priority: Int): Unit = {
+    pending.add(PendingCommand(command, priority, submitted))
+    submitted += 1
+  }
+
+  def isIdle: Boolean = pending.isEmpty && running == 0
+
+  /**
+    * @return the number of batches running
+    */
+  def runningCount: Int = running
+
+  def pendingCount: Int = pending.size
+
+  /**
+    * Waits until at least one running batch has completed and returns all completed commands with their result
+    * files. Rethrows the first failure of any command.
+    */
+  def awaitCompletions(): List[(ExecutionCommand, String)] = {
+    if (running == 0) dispatch()
+    if (running == 0) return Nil
+
+    var completion = completions.poll(100, TimeUnit.MILLISECONDS)
+    while (completion == null) {
+      // Worker slots may have been released by other executions sharing the budget
+      dispatch()
+      completion = completions.poll(100, TimeUnit.MILLISECONDS)
+    }
+
+    var completed: List[(ExecutionCommand, String)] = Nil
+    while (completion != null) {
+      running -= 1
+      if (completion.error != null) {
+        shutdown()
+        completion.error match {
+          case ge: GorException => throw ge
+          case e => throw new GorSystemException(e)
+        }
+      }
+      completed = completed ::: completion.commands.zip(completion.resultFiles).toList
+      completion = completions.poll()
+    }
+
+    dispatch()
+    completed
+  }
+
+  /**
+    * Starts all pending commands as one batch, if a worker slot can be reserved or no batch is running
+    */
+  def dispatch(): Unit = {
+    if (!pending.isEmpty) {
+      val hasSlot = workerBudget.tryAcquire()
+      if (hasSlot || running == 0) {
+        val commands = new Array[ExecutionCommand](pending.size)
+        var i = 0
+        while (!pending.isEmpty) {
+          commands(i) = pending.poll().command
+          i += 1
+        }
+        start(commands, hasSlot)
+      }
+    }
+  }
+
+  /**
+    * Drops the pending commands and interrupts the running batches of this scheduler
+    */
+  def shutdown(): Unit = {
+    pending.clear()
+    batchThreads.synchronized {
+      batchThreads.asScala.foreach(_.interrupt())
+    }
+  }
+
+  private def start(commands: Array[ExecutionCommand], hasSlot: Boolean): Unit = {
+    running += 1
+    executor.execute(new Runnable {
+      override def run(): Unit = {
+        val thread = Thread.currentThread()
+        batchThreads.synchronized(batchThreads.add(thread))
+        val completion = try {
+          Completion(commands, runCommands(commands), null)
+        } catch {
+          case e: Throwable => Completion(commands, null, e)
+        } finally {
+          batchThreads.synchronized(batchThreads.remove(thread))
+          // The pooled thread must not carry an interrupt into the next batch it runs
+          Thread.interrupted()
+        }
+        // Release the slot before reporting so the next batch can take it right away
+        if (hasSlot) workerBudget.release()
+        completions.add(completion)
+      }
+    })
+  }
+}
@@ -25,6 +25,7 @@ package gorsat.Script
 import gorsat.AnalysisUtilities.getSignature
 import gorsat.Commands.CommandParseUtilities
 import gorsat.MacroUtilities._
+import gorsat.QueryHandlers.QueryCostEstimator
 import gorsat.Script.ScriptExecutionEngine.ExecutionBlocks
 import gorsat.gorsatGorIterator.MapAndListUtilities.singleHashMap
 import gorsat.process.{GorPipeMacros, GorPrePipe, PipeInstance}
@@ -43,6 +44,9 @@ object ScriptExecutionEngine {
 
   val GOR_FINAL = "gorfinal"
 
+  // Start each create as soon as its own dependencies are ready instead of executing the script level by level
+  val DATAFLOW_SCHEDULING: Boolean = System.getProperty("gor.script.dataflow", "true").toBoolean
+
   def parseScript(commands: Array[String]): Map[String, ExecutionBlock] = {
     var creates = Map.empty[String, ExecutionBlock]
 
@@ -83,11 +87,14 @@ object ScriptExecutionEngine {
   * @param headerQueryHandler   Local query handler for executing local queries such as dictionary and header queries
   * @param context              Current gor pipe session
   * @param listener             Interface for monitoring internal state of the execution engine
+  * @param dataflowScheduling   Execute creates as soon as their dependencies are ready, otherwise the script is
+  *                             executed in batches of dependency levels
   */
 class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
                             headerQueryHandler: GorParallelQueryHandler,
                             context: GorContext,
-                            listener: ScriptExecutionListener = new DefaultListener()
+                            listener: ScriptExecutionListener = new DefaultListener(),
+                            dataflowScheduling: Boolean = ScriptExecutionEngine.DATAFLOW_SCHEDULING
                            ) {
 
   private var executionBlocks: ExecutionBlocks = Map.empty[String, ExecutionBlock]
@@ -96,6 +103,8 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
   private var fileSignatureMap = Map.empty[String, String]
   private var singleFileSignatureMap = Map.empty[String, String]
   private val virtualFileManager = new VirtualFileManager
+  private var blockPriorities = Map.empty[String, Int]
+  private var inFlight = Set.empty[String]
 
   private val eventLogger = context.getSession.getEventLogger
 
@@ -186,89 +195,142 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
     // left at the end of execution
     virtualFileManager.setAllAsOriginal()
 
+    // Blocks on the longest dependency chains are executed first when scheduling is dataflow driven
+    blockPriorities = DataflowScheduler.criticalPathLengths(executionBlocks)
+
+    val scheduler = if (dataflowScheduling && !suggestName) {
+      new DataflowScheduler(context.getSession.getSystemContext.getWorkerBudget, runCommands(_, doHeader))
+    } else null
+
     var gorCommand = ""
     var level = 0
     var executionBatch: ExecutionBatch = null
+    var hasProgress = false
 
-    do {
-      level += 1
+    try {
+      do {
+        level += 1
 
-      // Create a new batch of execution blocks which are independent from each other
-      executionBatch = getNextBatch(level)
-      listener.beforeExecuteBatch(executionBatch)
+        // Create a new batch of execution blocks which are independent from each other
+        executionBatch = getNextBatch(level)
 
-      executionBatch.getBlocks.foreach(firstLevelBlock => {
-        // Replace any virtual file in the current query
-        firstLevelBlock.query = virtualFileManager.replaceVirtualFiles(firstLevelBlock.query)
+        if (scheduler == null || executionBatch.hasBlocks) {
+          listener.beforeExecuteBatch(executionBatch)
 
-        // Expand the executionBlock with macros
-        val newExecutionBlocks = expandMacros(Map(firstLevelBlock.groupName -> firstLevelBlock), doHeader)
+          val finalCommand = expandBatch(executionBatch, suggestName, doHeader)
+          if (finalCommand != null) gorCommand = finalCommand
 
-        // We need to determine if there is any dependency in the new executions, remove dependent blocks and
-        // add them to the executionBlocks map
-        val (activeExecutionBlocks, dependentExecutionBlocks) = splitBasedOnDependencies(newExecutionBlocks)
+          if (scheduler == null) {
+            // Execute the current batch
+            executeBatch(executionBatch, suggestName, doHeader)
+          } else {
+            submitBatch(scheduler, executionBatch)
+          }
 
-        virtualFileManager.addRange(activeExecutionBlocks)
+          listener.afterExecuteBatch(executionBatch)
+        }
 
-        activeExecutionBlocks.foreach {newExecutionBlock =>
-          listener.beforeVirtualFileReplacement(firstLevelBlock.query, virtualFileManager)
-          // Get the command to finally execute
-          val commandToExecute = getCommandToExecute(suggestName, doHeader, newExecutionBlock._2.query)
-          listener.afterVirtualFileReplacement(commandToExecute)
+        hasProgress = executionBatch.hasBlocks
 
-          // Extract used files from the final gor command
-          val usedFiles = getUsedFiles(commandToExecute)
+        // Wait for any running command to finish as it may make new blocks ready
+        if (scheduler != null && !executionBatch.hasBlocks && !scheduler.isIdle) {
+          scheduler.awaitCompletions().foreach(x => commandCompleted(x._1.createName, x._2))
+          hasProgress = true
+        }
 
-          // Create the split manager to use from the query (might contain -split option)
-          val splitManager = SplitManager.createFromCommand(newExecutionBlock._1, commandToExecute, context)
+      } while (hasProgress)
+    } finally {
+      if (scheduler != null) scheduler.shutdown()
+    }
 
-          // Expand execution blocks based on the active split
-          listener.beforeSplitExpand(commandToExecute, splitManager)
-          val commandGroup = splitManager.expandCommand(commandToExecute, newExecutionBlock._1)
-          listener.afterSplitExpand(commandToExecute, commandGroup, splitManager)
+    // We'll need to validate the current execution and throw exception if there are still execution blocks available
+    // IN the final execution list
+    postValidateExecution(suggestName, doHeader)
 
-          // Remove this command from the execution blocks if needed
-          if (commandGroup.removeFromCreate) {
-            executionBlocks -= firstLevelBlock.groupName
-          }
+    if (suggestName) gorCommand = StringUtilities.createMD5(igorCommands.mkString(" ") + allUsedFiles.distinct.sorted.map(x => fileFingerPrint(x, context.getSession)).mkString(" "))
 
-          // Update gorcommand and add new queries if needed
-          commandGroup.commandEntries.foreach(cte => {
-            if (cte.createName == "[]") {
-              // This is the final command, we apply it and remove it from the execution blocks
-              gorCommand = cte.query
-              executionBlocks -= firstLevelBlock.groupName
-            } else {
-              // We need to create a new dictionary query to the batch to get the results from expanded queries
-              val fileSignature = getFileSignatureAndUpdateSignatureMap(commandToExecute, usedFiles)
-              val querySignature = StringUtilities.createMD5(cte.query + fileSignature)
-              executionBatch.createNewCommand(querySignature, cte.query, cte.batchGroupName, cte.createName)
-              eventLogger.commandCreated(cte.createName, firstLevelBlock.groupName, querySignature, cte.query);
-            }
-          })
+    (gorCommand, virtualFileManager.getCreatedFiles)
+  }
 
-          // Collect files if we are suggesting virtual file name
-          if (suggestName) allUsedFiles :::= usedFiles.filter(x => !x.startsWith("["))
-        }
+  private def expandBatch(executionBatch: ExecutionBatch, suggestName: Boolean, doHeader: Boolean): String = {
+    var gorCommand: String = null
 
-        // Add dictionary entries back to the execution blocks lists but process other entries
-        executionBlocks ++= dependentExecutionBlocks
-      })
+    executionBatch.getBlocks.foreach(firstLevelBlock => {
+      // Replace any virtual file in the current query
+      firstLevelBlock.query = virtualFileManager.replaceVirtualFiles(firstLevelBlock.query)
 
-      // Execute the current batch
-      executeBatch(executionBatch, suggestName, doHeader)
+      // Expand the executionBlock with macros
+      val newExecutionBlocks = expandMacros(Map(firstLevelBlock.groupName -> firstLevelBlock), doHeader)
 
-      listener.afterExecuteBatch(executionBatch)
+      // We need to determine if there is any dependency in the new executions, remove dependent blocks and
+      // add them to the executionBlocks map
+      val (activeExecutionBlocks, dependentExecutionBlocks) = splitBasedOnDependencies(newExecutionBlocks)
 
-    } while (executionBatch.hasBlocks)
+      virtualFileManager.addRange(activeExecutionBlocks)
+      inheritPriority(firstLevelBlock.groupName, activeExecutionBlocks, dependentExecutionBlocks)
 
-    // We'll need to validate the current execution and throw exception if there are still execution blocks available
-    // IN the final execution list
-    postValidateExecution(suggestName, doHeader)
+      activeExecutionBlocks.foreach {newExecutionBlock =>
+        listener.beforeVirtualFileReplacement(firstLevelBlock.query, virtualFileManager)
+        // Get the command to finally execute
+        val commandToExecute = getCommandToExecute(suggestName, doHeader, newExecutionBlock._2.query)
+        listener.afterVirtualFileReplacement(commandToExecute)
 
-    if (suggestName) gorCommand = StringUtilities.createMD5(igorCommands.mkString(" ") + allUsedFiles.distinct.sorted.map(x => fileFingerPrint(x, context.getSession)).mkString(" "))
+        // Extract used files from the final gor command
+        val usedFiles = getUsedFiles(commandToExecute)
 
-    (gorCommand, virtualFileManager.getCreatedFiles)
+        // Create the split manager to use from the query (might contain -split option)
+        val splitManager = SplitManager.createFromCommand(newExecutionBlock._1, commandToExecute, context)
+
+        // Expand execution blocks based on the active split
+        listener.beforeSplitExpand(commandToExecute, splitManager)
+        val commandGroup = splitManager.expandCommand(commandToExecute, newExecutionBlock._1)
+        listener.afterSplitExpand(commandToExecute, commandGroup, splitManager)
+
+        // Remove this command from the execution blocks if needed
+        if (commandGroup.removeFromCreate) {
+          executionBlocks -= firstLevelBlock.groupName
+        }
+
+        // Update gorcommand and add new queries if needed
+        commandGroup.commandEntries.foreach(cte => {
+          if (cte.createName == "[]") {
+            // This is the final command, we apply it and remove it from the execution blocks
+            gorCommand = cte.query
+            executionBlocks -= firstLevelBlock.groupName
+          } else {
+            // We need to create a new dictionary query to the batch to get the results from expanded queries
+            val fileSignature = if (commandGroup.removeFromCreate) getPartitionFileSignature(commandToExecute, cte.query, usedFiles)
+              else getFileSignatureAndUpdateSignatureMap(commandToExecute, usedFiles)
+            val querySignature = StringUtilities.createMD5(cte.query + fileSignature)
+            executionBatch.createNewCommand(querySignature, cte.query, cte.batchGroupName, cte.createName)
+            eventLogger.commandCreated(cte.createName, firstLevelBlock.groupName, querySignature, cte.query);
+          }
+        })
+
+        // Collect files if we are suggesting virtual file name
+        if (suggestName) allUsedFiles :::= usedFiles.filter(x => !x.startsWith("["))
+      }
+
+      // Add dictionary entries back to the execution blocks lists but process other entries
+      executionBlocks ++= dependentExecutionBlocks
+    })
+
+    gorCommand
+  }
+
+  /**
+    * Blocks created by macro expansion inherit the critical path length of the block they were expanded from, blocks
+    * that the remaining dependent blocks wait for are one step further from the end of the script.
+    */
+  private def inheritPriority(parentName: String, activeExecutionBlocks: ExecutionBlocks, dependentExecutionBlocks: ExecutionBlocks): Unit = {
+    val priority = blockPriority(parentName)
+    val activePriority = if (dependentExecutionBlocks.nonEmpty) priority + 1 else priority
+    activeExecutionBlocks.keys.foreach(name => blockPriorities += (MacroUtilities.getVirtualFileGroupName(name) -> activePriority))
+    dependentExecutionBlocks.keys.foreach(name => blockPriorities += (MacroUtilities.getVirtualFileGroupName(name) -> priority))
+  }
+
+  private def blockPriority(name: String): Int = {
+    blockPriorities.getOrElse(MacroUtilities.getVirtualFileGroupName(name), 1)
   }
 
   private def preValidateExecution(): Unit = {
@@ -305,7 +367,7 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
 
   private def getNextBatch(level: Int): ExecutionBatch = {
     val executionBatch = ExecutionBatch(level)
-    executionBlocks.foreach(e => {
+    executionBlocks.filter(e => !inFlight.contains(e._1)).foreach(e => {
       virtualFileManager.get(e._1) match {
         case Some(x) =>
           if (x.fileName == null) {
@@ -397,6 +459,36 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
     fileSignature
   }
 
+  /**
+    * File signature for a single partition of a split query. Dictionaries read by the source of the partition only
+    * contribute their lines overlapping the partition range, so when files are added to a dictionary only the
+    * partitions they overlap get a new signature and the rest are served from the result cache.
+    */
+  def getPartitionFileSignature(commandToExecute: String, partitionQuery: String, usedFiles: List[String]): String = {
+    QueryCostEstimator.partitionRange(partitionQuery) match {
+      case Some((chr, start, stop)) if !CommandParseUtilities.isDictionaryQuery(commandToExecute) =>
+        val sourceFiles = BalancedSplit.sourceFiles(partitionQuery).toSet
+        val signatureKey = getSignature(commandToExecute)
+        val fileListKey = usedFiles.mkString(" ") + signatureKey + " " + chr + ":" + start + "-" + stop
+        fileSignatureMap.get(fileListKey) match {
+          case Some(signature) =>
+            signature
+          case None =>
+            val signature = StringUtilities.createMD5(usedFiles.map(x => {
+              if (x.startsWith("#gordict#") && sourceFiles.contains(parseDictionaryFileName(x)._1)) {
+                dictionaryRangeFingerPrint(x, chr, start, stop, context.getSession)
+              } else {
+                fileFingerPrint(x, context.getSession)
+              }
+            }).mkString(" ") + signatureKey)
+            fileSignatureMap += (fileListKey -> signature)
+            signature
+        }
+      case _ =>
+        getFileSignatureAndUpdateSignatureMap(commandToExecute, usedFiles)
+    }
+  }
+
   private def executeBatch(executionBatch: ExecutionBatch, suggestName: Boolean, doHeader: Boolean): Unit = {
     val dictionaryExecutions = executionBatch.getCommands.filter(x => CommandParseUtilities.isDictionaryQuery(x.query))
     val regularExecutions = executionBatch.getCommands.filter(x => !CommandParseUtilities.isDictionaryQuery(x.query))
@@ -422,9 +514,7 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
 
         try {
           if (fileName.startsWith("#gordict#")) {
-            val hasTags = fileName.contains("#gortags#")
-            val dictFile = fileName.substring("#gordict#".length, if (hasTags) fileName.indexOf("#gortags#") else fileName.length())
-            val dictTags = if (hasTags) fileName.substring(fileName.indexOf("#gortags#") + "#gortags#".length, fileName.length).split(',') else null
+            val (dictFile, dictTags) = parseDictionaryFileName(fileName)
             val tmp = if (dictTags != null && dictTags.length > 9) fileReader.getFileSignature(dictFile) else fileReader.getDictionarySignature(dictFile, dictTags)
 
             singleFileSignatureMap += (fileName -> tmp)
@@ -451,6 +541,73 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
     }
   }
 
+  private def dictionaryRangeFingerPrint(fileName: String, chr: String, start: Int, stop: Int, gorPipeSession: GorSession): String = {
+    val signatureKey = fileName + "#" + chr + ":" + start + "-" + stop
+    singleFileSignatureMap.get(signatureKey) match {
+      case Some(signature) =>
+        signature
+      case None =>
+        val (dictFile, dictTags) = parseDictionaryFileName(fileName)
+        try {
+          val tmp = gorPipeSession.getProjectContext.getFileReader.getDictionaryRangeSignature(dictFile, dictTags, chr, start, stop)
+          singleFileSignatureMap += (signatureKey -> tmp)
+          tmp
+        } catch {
+          case e: Exception => throw new GorResourceException("In fileFingerPrint: file " + dictFile + " does not exist!", dictFile, e)
+        }
+    }
+  }
+
+  private def parseDictionaryFileName(fileName: String): (String, Array[String]) = {
+    val hasTags = fileName.contains("#gortags#")
+    val dictFile = fileName.substring("#gordict#".length, if (hasTags) fileName.indexOf("#gortags#") else fileName.length())
+    val dictTags = if (hasTags) fileName.substring(fileName.indexOf("#gortags#") + "#gortags#".length, fileName.length).split(',') else null
+    (dictFile, dictTags)
+  }
+
+  private def commandCompleted(createName: String, cacheFile: String): Unit = {
+    virtualFileManager.add(createName)
+    virtualFileManager.updateCreatedFile(createName, cacheFile)
+    executionBlocks -= createName
+    inFlight -= createName
+  }
+
+  private def submitBatch(scheduler: DataflowScheduler, executionBatch: ExecutionBatch): Unit = {
+    val dictionaryExecutions = executionBatch.getCommands.filter(x => CommandParseUtilities.isDictionaryQuery(x.query))
+    val regularExecutions = executionBatch.getCommands.filter(x => !CommandParseUtilities.isDictionaryQuery(x.query))
+
+    listener.beforeExecuteQueryHandler(executionBatch, dictionaryExecutions, regularExecutions)
+    (dictionaryExecutions ++ regularExecutions).foreach { command =>
+      inFlight += command.createName
+      scheduler.submit(command, blockPriority(command.createName))
+    }
+    scheduler.dispatch()
+    listener.afterExecuteQueryHandler(executionBatch, dictionaryExecutions, regularExecutions)
+  }
+
+  /**
+    * Executes the commands of a scheduling round with one query handler batch for the dictionary queries and one for
+    * the regular queries, so the query handler can order and split them together.
+    */
+  private def runCommands(commands: Array[ExecutionCommand], doHeader: Boolean): Array[String] = {
+    val resultFiles = new Array[String](commands.length)
+    val (dictionaryIndices, regularIndices) = commands.indices.partition(i => CommandParseUtilities.isDictionaryQuery(commands(i).query))
+
+    List(dictionaryIndices -> true, regularIndices -> false).foreach { case (indices, isDictionary) =>
+      if (indices.nonEmpty) {
+        val activeQueryHandler = if (doHeader || isDictionary) headerQueryHandler else queryHandler
+        val batch = indices.map(i => commands(i)).toArray
+        val cacheFiles = activeQueryHandler.executeBatch(batch.map(x => x.signature),
+          batch.map(x => x.query),
+          batch.map(x => x.createName),
+          context.getSession.getSystemContext.getMonitor)
+        indices.zip(cacheFiles).foreach { case (i, cacheFile) => resultFiles(i) = cacheFile }
+      }
+    }
+
+    resultFiles
+  }
+
   private def runQueryHandler(executionCommands: Array[ExecutionCommand], doHeader: Boolean) {
     if (executionCommands != null && !executionCommands.isEmpty) {
       val activeQueryHandler = if (doHeader || CommandParseUtilities.isDictionaryQuery(executionCommands.head.query)) headerQueryHandler else queryHandler
@@ -460,11 +617,7 @@ class ScriptExecutionEngine(queryHandler: GorParallelQueryHandler,
         executionCommands.map(x => x.createName),
         context.getSession.getSystemContext.getMonitor).toList
 
-      executionCommands.map(x => x.createName).zip(cacheFiles).foreach(x => {
-        virtualFileManager.add(x._1)
-        virtualFileManager.updateCreatedFile(x._1, x._2)
-        executionBlocks -= x._1
-      })
+      executionCommands.map(x => x.createName).zip(cacheFiles).foreach(x => commandCompleted(x._1, x._2))
 
       if (ScriptExecutionEngine.log.isDebugEnabled) {
         executionCommands.foreach { x =>
@@ -25,7 +25,7 @@ package gorsat.Script
 import gorsat.Commands.CommandParseUtilities
 import gorsat.DynIterator.DynamicRowSource
 import gorsat.Script.SplitManager.{MAXIMUM_NUMBER_OF_SPLITS, WHERE_SPLIT_WINDOW}
-import gorsat.process.GorPipeCommands
+import gorsat.process.{GorInputSources, GorPipeCommands}
 import org.gorpipe.exceptions.GorParsingException
 import org.gorpipe.gor.GorContext
 
@@ -63,6 +63,7 @@ case class SplitManager( groupName: String, chromosomeSplits:Map[String,SplitEnt
           val repstr = if (splitOverlap != "") "-" + splitOpt + splits + ":" + splitOverlap + " " else "-" + splitOpt + splits + " "
           mc = mc.replace(repstr, "")
         }
+        mc = BalancedSplit.removeOption(mc)
         expandedCommands ::= CommandEntry(n, mc, g)
       })
 
@@ -101,6 +102,17 @@ object SplitManager {
 
       if (CommandParseUtilities.isNestedCommand(splits)) {
         splitManager = SplitManager(groupName, parseNestedSplit(context, splits), splitManager.replacementPattern)
+      } else if (commandToExecute.contains(SPLIT_REPLACEMENT_PATTERN) && BalancedSplit.isBalanced(commandToExecute)) {
+        val overlap = if (splitOverlap == "") 0 else splitOverlap.toInt
+        val partitions = if (splitOpt == "") BalancedSplit.DEFAULT_PARTITIONS
+          else balancedPartitionCount(context.getSession.getProjectContext.getReferenceBuild.getBuildSize, splits.toInt, overlap)
+        val balancedSplits = BalancedSplit.parseBalancedSplit(context, commandToExecute, partitions, overlap)
+        if (balancedSplits != null) {
+          splitManager = SplitManager(groupName, balancedSplits, splitManager.replacementPattern)
+        } else if (splitOpt != "") {
+          splitManager = SplitManager(groupName, parseArbitrarySplit(context.getSession.getProjectContext.getReferenceBuild.getBuildSize,
+            splits.toInt, overlap), splitManager.replacementPattern)
+        }
       } else if (splitOpt != "") {
         splitManager = SplitManager(groupName, parseArbitrarySplit(context.getSession.getProjectContext.getReferenceBuild.getBuildSize, splits.toInt,
           if (splitOverlap == "") 0 else splitOverlap.toInt), splitManager.replacementPattern)
@@ -167,6 +179,15 @@ object SplitManager {
     chromosomeSplits
   }
 
+  /**
+    * Number of partitions for a balanced split, follows the -split semantics where values up to 1000 without overlap are
+    * the number of partitions and other values the split size.
+    */
+  def balancedPartitionCount(buildSizes: java.util.Map[String, Integer], iSplitSize: Int, splitOverlap: Int): Int = {
+    if (iSplitSize <= 1000 && splitOverlap == 0) iSplitSize
+    else 1.max((buildSizes.asScala.values.map(_.longValue()).sum / iSplitSize).toInt)
+  }
+
   def parseNestedSplit(context: GorContext, query: String): Map[String, SplitEntry] = {
     var chromosomeSplits = Map.empty[String, SplitEntry]
 
@@ -208,4 +229,82 @@ object SplitManager {
 
     !commandsOk
   }
+
+  // Steps of a query split into genomic ranges, see partitionSplit
+  private val NO_SPLIT = 0
+  private val CONTIG_SPLIT = 1
+  private val RANGE_SPLIT = 2
+
+  // Sources which only read the rows of the requested range, as do plain files
+  private val RANGE_SOURCES = Set("GOR", "NOR", "GORROW", "GORROWS", "NORROWS")
+
+  // Commands which handle each row on its own
+  private val ROW_COMMANDS = Set("CALC", "CALCIFMISSING", "WHERE", "TRYWHERE", "REPLACE", "RENAME", "PREFIX", "SELECT",
+    "TRYSELECT", "HIDE", "TRYHIDE", "COLUMNSORT", "MAP", "DAGMAP", "MULTIMAP", "INSET", "SPLIT", "COLSPLIT", "SED",
+    "REGSEL", "COLS2LIST", "COLTYPE", "SETCOLTYPE", "VERIFYCOLTYPE", "VALIDATECOLUMNS", "BAMFLAG", "GREP", "UNPIVOT",
+    "VERIFYORDER")
+
+  // Commands comparing rows within a contig, segments overlapping a cut would be missed
+  private val CONTIG_COMMANDS = Set("JOIN", "LEFTJOIN", "VARJOIN", "SEGPROJ", "SEGSPAN", "SPAN", "VARNORM", "VARMERGE")
+
+  // Functions keeping state between rows
+  private val STATEFUL_FUNCTION = "(?i)\\bONCE\\s*\\(".r
+
+  /**
+    * Whether the query gives the same rows when run as independent parts restricted to genomic ranges, with the
+    * results concatenated in genomic order. All steps, also those of nested queries, must handle rows on their own,
+    * within a window that is not genome wide (see useWholeChromosomeSplit) or within a contig. Steps such as TOP,
+    * ROWNUM, WRITE or GROUP genome make the query unsafe, as do unknown commands.
+    */
+  def isPartitionSafe(query: String): Boolean = {
+    pipeSteps(query).forall(step => partitionSplit(step._1, step._2) != NO_SPLIT)
+  }
+
+  /**
+    * Whether each part of a partition safe query must hold whole contigs, because a step groups rows over windows
+    * larger than a position or compares segments within a contig.
+    */
+  def needsWholeContigs(query: String): Boolean = {
+    pipeSteps(query).exists(step => partitionSplit(step._1, step._2) == CONTIG_SPLIT)
+  }
+
+  /**
+    * Whether the query has a GROUP genome step with -approx. The sketches of such a group are not merged across the
+    * parts of a split query, so each part would report its own estimates.
+    */
+  def hasGenomeWideApproximateGroup(query: String): Boolean = {
+    pipeSteps(query).exists { case (words, isSource) =>
+      !isSource && words.headOption.exists(_.equalsIgnoreCase("GROUP")) && words.exists(_.equalsIgnoreCase("genome")) &&
+        words.exists(_.equalsIgnoreCase("-approx"))
+    }
+  }
+
+  /**
+    * The words of each step in the query and of the queries nested in it, with whether the step is the source.
+    */
+  private def pipeSteps(query: String): Seq[(Array[String], Boolean)] = {
+    CommandParseUtilities.quoteSafeSplit(query, '|').toSeq.zipWithIndex.flatMap { case (step, i) =>
+      val words = CommandParseUtilities.quoteSafeSplit(step.trim, ' ').filter(_.nonEmpty)
+      val nested = words.filter(CommandParseUtilities.isNestedCommand)
+        .flatMap(word => pipeSteps(CommandParseUtilities.parseNestedCommand(word)))
+      (words, i == 0) +: nested
+    }
+  }
+
+  private def partitionSplit(words: Array[String], isSource: Boolean): Int = {
+    val command = if (words.isEmpty) "" else words.head.toUpperCase
+    if (isSource) {
+      if (RANGE_SOURCES.contains(command) || !GorInputSources.getInputSources.contains(command)) RANGE_SPLIT else NO_SPLIT
+    } else if (ROW_COMMANDS.contains(command)) {
+      if (words.exists(word => STATEFUL_FUNCTION.findFirstIn(word).isDefined)) NO_SPLIT else RANGE_SPLIT
+    } else if (GorPipeCommands.getWholeChromosomeSplitCommands.contains(command)) {
+      if (words.exists(_.equalsIgnoreCase("genome"))) NO_SPLIT
+      else if (useWholeChromosomeSplit(words.mkString(" ") + " ")) CONTIG_SPLIT
+      else RANGE_SPLIT
+    } else if (CONTIG_COMMANDS.contains(command)) {
+      CONTIG_SPLIT
+    } else {
+      NO_SPLIT
+    }
+  }
 }
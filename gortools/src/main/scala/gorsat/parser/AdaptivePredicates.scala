@@ -0,0 +1,114 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import gorsat.parser.FunctionTypes.bFun
+import org.gorpipe.gor.ColumnValueProvider
+
+object AdaptivePredicates {
+  val WarmUpRows = 1000
+}
+
+/**
+  * A chain of AND (conjunction) or OR conditions which reorders the conditions after a warm-up sample of rows, so
+  * that the ones most likely to decide the outcome at the least cost are evaluated first.
+  *
+  * During the warm-up the conditions are evaluated in written order, which gives the result, and the remaining ones
+  * are evaluated as well to measure how often each passes and how long it takes. If a condition throws on a row where
+  * the written order would not have reached it, e.g. int(x) > 1 guarded by isint(x), the written order is kept.
+  * Should a reordered evaluation still throw, the row is evaluated again in written order.
+  */
+class AdaptivePredicates(written: Array[bFun], conjunction: Boolean, warmUp: Int = AdaptivePredicates.WarmUpRows) extends bFun {
+  private var order: Array[bFun] = written
+  private var rows = 0
+  private var unguarded = true
+  private val passes = new Array[Int](written.length)
+  private val nanos = new Array[Long](written.length)
+
+  def currentOrder: Array[bFun] = order
+
+  override def apply(line: ColumnValueProvider): Boolean = {
+    if (rows < warmUp) {
+      measure(line)
+    } else if (order eq written) {
+      evaluate(written, line)
+    } else {
+      try {
+        evaluate(order, line)
+      } catch {
+        case _: Exception => evaluate(written, line)
+      }
+    }
+  }
+
+  private def evaluate(predicates: Array[bFun], line: ColumnValueProvider): Boolean = {
+    var i = 0
+    if (conjunction) {
+      while (i < predicates.length && predicates(i)(line)) i += 1
+      i == predicates.length
+    } else {
+      while (i < predicates.length && !predicates(i)(line)) i += 1
+      i < predicates.length
+    }
+  }
+
+  private def measure(line: ColumnValueProvider): Boolean = {
+    // Counted up front, so that a row abandoned by an exception never leaves more passes than rows
+    rows += 1
+    var decided = false
+    var result = conjunction
+    var i = 0
+    while (i < written.length) {
+      val start = System.nanoTime()
+      val pass = if (decided) {
+        try {
+          written(i)(line)
+        } catch {
+          case _: Exception =>
+            unguarded = false
+            !conjunction
+        }
+      } else written(i)(line)
+      nanos(i) += System.nanoTime() - start
+      if (pass) passes(i) += 1
+      if (!decided && pass != conjunction) {
+        decided = true
+        result = pass
+      }
+      i += 1
+    }
+    if (rows == warmUp && unguarded) reorder()
+    result
+  }
+
+  private def reorder(): Unit = {
+    // The expected cost of a condition per row that it decides; a condition decides an AND when it fails
+    // and an OR when it passes
+    val rank = written.indices.map(i => {
+      val decides = if (conjunction) rows - passes(i) else passes(i)
+      (nanos(i).toDouble + 1.0) / (decides + 1.0)
+    })
+    order = written.indices.sortBy(i => rank(i)).map(i => written(i)).toArray
+    if (order.sameElements(written)) order = written
+  }
+}
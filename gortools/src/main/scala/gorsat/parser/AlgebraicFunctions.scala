@@ -27,29 +27,31 @@ import gorsat.parser.FunctionSignature._
 
 object AlgebraicFunctions {
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("MAX", getSignatureDoubleDouble2Double(max), max _)
-    functions.register("MAX", getSignatureLongLong2Long(maxLong), maxLong _)
-    functions.register("MAX", getSignatureIntInt2Int(maxInt), maxInt _)
-    functions.register("MAX", getSignatureStringString2String(maxString), maxString _)
-    functions.register("MIN", getSignatureDoubleDouble2Double(min), min _)
-    functions.register("MIN", getSignatureLongLong2Long(minLong), minLong _)
-    functions.register("MIN", getSignatureIntInt2Int(minInt), minInt _)
-    functions.register("MIN", getSignatureStringString2String(minString), minString _)
-    functions.register("POW", getSignatureDoubleDouble2Double(pow), pow _)
-    functions.register("ABS", getSignatureInt2Int(absInt), absInt _)
-    functions.register("CEIL", getSignatureDouble2Int(ceil), ceil _)
-    functions.register("SQRT", getSignatureDouble2Double(sqrt), sqrt _)
-    functions.register("SQR", getSignatureDouble2Double(sqr), sqr _)
-    functions.register("LOG", getSignatureDouble2Double(log), log _)
-    functions.register("LN", getSignatureDouble2Double(ln), ln _)
-    functions.register("EXP", getSignatureDouble2Double(exp), exp _)
-    functions.register("ABS", getSignatureDouble2Double(abs), abs _)
-    functions.register("FLOOR", getSignatureDouble2Int(floor), floor _)
-    functions.register("MOD", getSignatureIntInt2Int(modInt), modInt _)
-    functions.register("DIV", getSignatureIntInt2Int(divInt), divInt _)
+    functions.deterministic {
+      functions.register("MAX", getSignatureDoubleDouble2Double(max), max _)
+      functions.register("MAX", getSignatureLongLong2Long(maxLong), maxLong _)
+      functions.register("MAX", getSignatureIntInt2Int(maxInt), maxInt _)
+      functions.register("MAX", getSignatureStringString2String(maxString), maxString _)
+      functions.register("MIN", getSignatureDoubleDouble2Double(min), min _)
+      functions.register("MIN", getSignatureLongLong2Long(minLong), minLong _)
+      functions.register("MIN", getSignatureIntInt2Int(minInt), minInt _)
+      functions.register("MIN", getSignatureStringString2String(minString), minString _)
+      functions.register("POW", getSignatureDoubleDouble2Double(pow), pow _)
+      functions.register("ABS", getSignatureInt2Int(absInt), absInt _)
+      functions.register("CEIL", getSignatureDouble2Int(ceil), ceil _)
+      functions.register("SQRT", getSignatureDouble2Double(sqrt), sqrt _)
+      functions.register("SQR", getSignatureDouble2Double(sqr), sqr _)
+      functions.register("LOG", getSignatureDouble2Double(log), log _)
+      functions.register("LN", getSignatureDouble2Double(ln), ln _)
+      functions.register("EXP", getSignatureDouble2Double(exp), exp _)
+      functions.register("ABS", getSignatureDouble2Double(abs), abs _)
+      functions.register("FLOOR", getSignatureDouble2Int(floor), floor _)
+      functions.register("MOD", getSignatureIntInt2Int(modInt), modInt _)
+      functions.register("DIV", getSignatureIntInt2Int(divInt), divInt _)
+      functions.register("SEGOVERLAP", getSignatureIntIntIntInt2Int(segOverlap), segOverlap _)
+      functions.register("SEGDIST", getSignatureIntIntIntInt2Int(segDist), segDist _)
+    }
     functions.register("RANDOM", getSignatureEmpty2Double(() => random()), random _)
-    functions.register("SEGOVERLAP", getSignatureIntIntIntInt2Int(segOverlap), segOverlap _)
-    functions.register("SEGDIST", getSignatureIntIntIntInt2Int(segDist), segDist _)
   }
 
   def segDist(ex1: iFun, ex2: iFun, ex3: iFun, ex4: iFun): iFun = {
@@ -0,0 +1,47 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+/**
+  * Keeps the state a function derives from one of its string arguments, e.g. a compiled regular expression or the
+  * items of a list, and derives it again only when the argument changes. Arguments are usually constants, so the
+  * state is derived once per expression rather than once per row.
+  *
+  * An instance belongs to a single compiled expression and is not thread safe.
+  */
+class ArgumentState[T](derive: String => T) {
+  private var lastArgument: String = _
+  private var state: T = _
+
+  def apply(argument: String): T = {
+    if (lastArgument == null || ((lastArgument ne argument) && lastArgument != argument)) {
+      state = derive(argument)
+      lastArgument = argument
+    }
+    state
+  }
+}
+
+object ArgumentState {
+  def apply[T](derive: String => T): ArgumentState[T] = new ArgumentState(derive)
+}
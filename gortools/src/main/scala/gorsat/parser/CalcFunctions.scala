@@ -43,8 +43,10 @@ object CalcFunctions {
     functions.register("ONCE", getSignatureInt2Int(onceInt), onceInt _)
     functions.register("ONCE", getSignatureDouble2Double(onceDouble), onceDouble _)
     functions.register("SLEEP", getSignatureInt2String(sleep), sleep _)
-    functions.register("MD5", getSignatureString2String(md5), md5 _)
-    functions.register("DECODE", getSignatureStringString2String(decode), decode _)
+    functions.deterministic {
+      functions.register("MD5", getSignatureString2String(md5), md5 _)
+      functions.register("DECODE", getSignatureStringString2String(decode), decode _)
+    }
     functions.register("CATCH", getSignatureStringString2String(calccatchString), calccatchString _)
     functions.register("CATCH", getSignatureIntString2String(calccatchInt), calccatchInt _)
     functions.register("CATCH", getSignatureDoubleString2String(calccatchDouble), calccatchDouble _)
@@ -0,0 +1,157 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import org.gorpipe.gor.ColumnValueProvider
+
+import scala.collection.mutable
+import scala.util.control.{ControlThrowable, NonFatal}
+
+object ExpressionCache {
+  private val call = "([A-Za-z_][A-Za-z0-9_]*)\\s*\\(".r
+
+  /**
+    * Whether every function called in the expression, possibly nested or in a string literal, is registered
+    * as deterministic. Only calls of such expressions are folded into constants or shared between expressions.
+    */
+  def isDeterministic(expression: String, functions: FunctionRegistry): Boolean = {
+    call.findAllMatchIn(expression).forall(m => functions.isDeterministic(m.group(1).toUpperCase))
+  }
+
+  /**
+    * The expression text upper cased, outside of quoted strings, and with white space only kept where it
+    * separates two words, so that the same call written in different steps maps to the same key.
+    */
+  def canonical(expression: String): String = {
+    val sb = new mutable.StringBuilder(expression.length)
+    var quote = 0.toChar
+    var space = false
+    expression.trim.foreach(c => {
+      if (quote != 0) {
+        sb.append(c)
+        if (c == quote) quote = 0
+      } else if (Character.isWhitespace(c)) {
+        space = true
+      } else {
+        if (space && isWordChar(c) && isWordChar(sb.last)) sb.append(' ')
+        space = false
+        if (c == '\'' || c == '"') quote = c
+        sb.append(Character.toUpperCase(c))
+      }
+    })
+    sb.toString
+  }
+
+  private def isWordChar(c: Char): Boolean = Character.isLetterOrDigit(c) || c == '_' || c == '#' || c == '$' || c == '.'
+
+  private object NotConstant extends ControlThrowable
+
+  // Column value provider which fails on any column access, an expression evaluated with it does not depend
+  // on the row
+  private object ConstantProbe extends ColumnValueProvider {
+    override def stringValue(col: Int): String = throw NotConstant
+    override def intValue(col: Int): Int = throw NotConstant
+    override def longValue(col: Int): Long = throw NotConstant
+    override def doubleValue(col: Int): Double = throw NotConstant
+  }
+
+  /**
+    * The value of the expression if it does not read any column. An expression which fails when evaluated
+    * without a row is not constant either, so the error is raised for each row as before.
+    */
+  def constantValue(f: ColumnValueProvider => Any): Option[Any] = {
+    try {
+      Some(f(ConstantProbe))
+    } catch {
+      case NotConstant => None
+      case NonFatal(_) => None
+    }
+  }
+}
+
+/**
+  * A function call compiled by the parser. The parser may build a call several times while it backtracks, so
+  * the call is only folded into its value, or bound to a slot of the expression cache, when it is first
+  * evaluated. Calls of abandoned parse alternatives are never evaluated and cost nothing.
+  */
+private[parser] final class OptimizedCall(key: String, f: ColumnValueProvider => Any, cache: ExpressionCache)
+  extends (ColumnValueProvider => Any) {
+  private var resolved: ColumnValueProvider => Any = _
+
+  override def apply(cvp: ColumnValueProvider): Any = {
+    if (resolved == null) resolved = resolve()
+    resolved(cvp)
+  }
+
+  private def resolve(): ColumnValueProvider => Any = {
+    ExpressionCache.constantValue(f) match {
+      case Some(value) =>
+        _ => value
+      case None if cache != null =>
+        val slot = cache.slot(key)
+        cvp => cache(slot, f, cvp)
+      case None =>
+        f
+    }
+  }
+}
+
+/**
+  * Values of function calls computed for the current row, shared by the expressions of adjacent CALC and WHERE
+  * steps so that a call which appears in more than one of them is only evaluated once per row. The steps only
+  * append columns, so the same call text refers to the same columns in each of them.
+  *
+  * Each call is assigned a slot when its expression is compiled, and startRow is called before a row enters
+  * the first of the steps.
+  */
+class ExpressionCache {
+  private val slots = mutable.Map.empty[String, Int]
+  private var values = new Array[AnyRef](16)
+  private var rows = new Array[Long](16)
+  private var row = 1L
+
+  def size: Int = slots.size
+
+  def slot(key: String): Int = slots.getOrElseUpdate(key, {
+    val s = slots.size
+    if (s == values.length) {
+      values = java.util.Arrays.copyOf(values, s * 2)
+      rows = java.util.Arrays.copyOf(rows, s * 2)
+    }
+    s
+  })
+
+  def startRow(): Unit = row += 1
+
+  def apply(slot: Int, f: ColumnValueProvider => Any, cvp: ColumnValueProvider): Any = {
+    // A constant probe never gets a cached value, that would make a call which reads columns look constant
+    if (rows(slot) == row && (cvp ne ExpressionCache.ConstantProbe)) {
+      values(slot)
+    } else {
+      val value = f(cvp)
+      values(slot) = value.asInstanceOf[AnyRef]
+      rows(slot) = row
+      value
+    }
+  }
+}
@@ -44,10 +44,25 @@ import scala.collection.mutable
   * is to use the getSignature helpers from FunctionSignature. There are variants
   * of getSignature for every possible combination of parameters recognized by the
   * parser - using those to generate the signature ensures that it matches the function.
+  * <br><br>
+  * Functions whose value only depends on their arguments should be registered within
+  * a `deterministic { ... }` block, which allows the parser to fold and share their calls.
   */
 class FunctionRegistry {
   // Map of all function names, mapping the base name to a list of types
   private val allFunctions = mutable.Map[String, List[FunctionWrapper]]()
+  private var registeringDeterministic = false
+
+  /**
+    * Registers the functions in the block as deterministic, i.e. their value only depends on their
+    * arguments. Functions with side effects, functions depending on time, randomness, the system or
+    * the calling parser, and functions evaluating expressions of their own must not be registered here.
+    */
+  def deterministic(block: => Unit): Unit = {
+    val previous = registeringDeterministic
+    registeringDeterministic = true
+    try block finally registeringDeterministic = previous
+  }
 
   def register[R](name: String, signature: String, f: () => R): Unit = {
     def helper(owner: ParseArith): R = {
@@ -139,6 +154,20 @@ class FunctionRegistry {
     variants.filter(p => p.mangledName == mangledName).head
   }
 
+  /**
+    * Whether all variants of the function with the given name are deterministic. Names that are not
+    * registered functions, such as IF, are part of the grammar and are deterministic.
+    * @param name The upper case name of the function
+    */
+  def isDeterministic(name: String): Boolean = {
+    allFunctions.get(name).forall(variants => variants.forall(_.deterministic))
+  }
+
+  /**
+    * @return The names of all registered functions
+    */
+  def functionNames: List[String] = allFunctions.keys.toList.sorted
+
   /**
     * Gets a list of the signature variants available for a function with the given name,
     * or an empty list if no such function exists.
@@ -167,7 +196,7 @@ class FunctionRegistry {
 
   private def addFunction(name: String, wrapper: FunctionWrapper): Unit = {
     val existingVariants = allFunctions.getOrElse(name, List[FunctionWrapper]())
-    allFunctions(name) = wrapper :: existingVariants
+    allFunctions(name) = wrapper.copy(deterministic = registeringDeterministic) :: existingVariants
   }
 }
 
@@ -31,8 +31,10 @@ import scala.collection.JavaConverters._
   * A FunctionWrapper wraps a function that can be used in expressions
   * parsed and evaluated by ParseArith.
   * @param name The name of the function
+  * @param deterministic True if the value of a call only depends on its arguments, so that a call which reads no
+  *                      column may be replaced by its value and a repeated call evaluated once per row.
   */
-case class FunctionWrapper(name: String, signature: String, myFunction: Any ) {
+case class FunctionWrapper(name: String, signature: String, myFunction: Any, deterministic: Boolean = false) {
   val expectedArgs = FunctionTypes.getArgumentTypesFromSignature(signature).toList
 
   lazy val mangledName: String = name + "_" + signature
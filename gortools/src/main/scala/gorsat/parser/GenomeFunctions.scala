@@ -30,37 +30,39 @@ import org.gorpipe.exceptions.GorParsingException
 
 object GenomeFunctions {
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("CHARS2PRPRPR", FunctionSignature.getSignatureString2String(chars2prprpr), chars2prprpr _)
-    functions.register("CHARS2PRPR", FunctionSignature.getSignatureString2String(chars2prpr), chars2prpr _)
-    functions.register("CHAR2PR", getSignatureString2String(char2pr), char2pr _)
-    functions.register("PR2CHAR", getSignatureDouble2String(pr2char), pr2char _)
-    functions.register("PRPR2CHARS", getSignatureString2String(prpr2chars), prpr2chars _)
-    functions.register("PRPR2CHARS", getSignatureStringString2String(prpr2charsWithSeparator), prpr2charsWithSeparator _)
-    functions.register("PRPRPR2CHARS", getSignatureString2String(prprpr2chars), prprpr2chars _)
-    functions.register("PRPRPR2CHARS", getSignatureStringString2String(prprpr2charsWithSeparator), prprpr2charsWithSeparator _)
-    functions.register("CHARS2PRHOM", getSignatureString2Double(chars2prhom), chars2prhom _)
-    functions.register("CHARS2PRHET", getSignatureString2Double(chars2prhet), chars2prhet _)
-    functions.register("CHARS2DOSE", getSignatureString2Double(chars2dose), chars2dose _)
-    functions.register("REVCOMPL", getSignatureString2String(revcompl), revcompl _)
-    functions.register("RC", getSignatureString2String(revcompl), revcompl _)
-    functions.register("IUPAC2GT", getSignatureString2String(iupac2gt), iupac2gt _)
-    functions.register("REVCIGAR", getSignatureString2String(revCigar), revCigar _)
-    functions.register("CODONS2AMINOS", getSignatureString2String(codons2aminos), codons2aminos _)
-    functions.register("CODONS2SHORTAMINOS", getSignatureString2String(codons2shortAminos), codons2shortAminos _)
-    functions.register("VCFGTITEM", getSignatureStringString2String(vcfGtItem), vcfGtItem _)
-    functions.register("VARSIG", getSignatureStringString2String(varSignature), varSignature _)
-    functions.register("BAMTAG", getSignatureStringString2String(bamTag), bamTag _)
-    functions.register("GFFTAG", getSignatureStringString2String(gffTag), gffTag _)
-    functions.register("HAPLDIFF", getSignatureStringString2Int(haplDiff), haplDiff _)
-    functions.register("IHA", getSignatureStringString2Int(iha), iha _)
-    functions.register("VCFFORMATTAG", getSignatureStringStringString2String(vcfFormatTag), vcfFormatTag _)
-    functions.register("IUPACGTSTAT", getSignatureStringStringString2String(iupacGtStat), iupacGtStat _)
-    functions.register("TAG", getSignatureStringStringString2String(tag), tag _)
-    functions.register("IUPACMA", getSignatureStringStringStringString2String(iupacma), iupacma _)
-    functions.register("IUPACFA", getSignatureStringStringStringString2String(iupacfa), iupacfa _)
-    functions.register("IOOA", getSignatureString2Int(iooa), iooa _)
-    functions.register("CHARS2GT", getSignatureStringDouble2String(chars2Gt), chars2Gt _)
-    functions.register("CHARSPHASED2GT", getSignatureStringDouble2String(charsPhased2Gt), charsPhased2Gt _)
+    functions.deterministic {
+      functions.register("CHARS2PRPRPR", FunctionSignature.getSignatureString2String(chars2prprpr), chars2prprpr _)
+      functions.register("CHARS2PRPR", FunctionSignature.getSignatureString2String(chars2prpr), chars2prpr _)
+      functions.register("CHAR2PR", getSignatureString2String(char2pr), char2pr _)
+      functions.register("PR2CHAR", getSignatureDouble2String(pr2char), pr2char _)
+      functions.register("PRPR2CHARS", getSignatureString2String(prpr2chars), prpr2chars _)
+      functions.register("PRPR2CHARS", getSignatureStringString2String(prpr2charsWithSeparator), prpr2charsWithSeparator _)
+      functions.register("PRPRPR2CHARS", getSignatureString2String(prprpr2chars), prprpr2chars _)
+      functions.register("PRPRPR2CHARS", getSignatureStringString2String(prprpr2charsWithSeparator), prprpr2charsWithSeparator _)
+      functions.register("CHARS2PRHOM", getSignatureString2Double(chars2prhom), chars2prhom _)
+      functions.register("CHARS2PRHET", getSignatureString2Double(chars2prhet), chars2prhet _)
+      functions.register("CHARS2DOSE", getSignatureString2Double(chars2dose), chars2dose _)
+      functions.register("REVCOMPL", getSignatureString2String(revcompl), revcompl _)
+      functions.register("RC", getSignatureString2String(revcompl), revcompl _)
+      functions.register("IUPAC2GT", getSignatureString2String(iupac2gt), iupac2gt _)
+      functions.register("REVCIGAR", getSignatureString2String(revCigar), revCigar _)
+      functions.register("CODONS2AMINOS", getSignatureString2String(codons2aminos), codons2aminos _)
+      functions.register("CODONS2SHORTAMINOS", getSignatureString2String(codons2shortAminos), codons2shortAminos _)
+      functions.register("VCFGTITEM", getSignatureStringString2String(vcfGtItem), vcfGtItem _)
+      functions.register("VARSIG", getSignatureStringString2String(varSignature), varSignature _)
+      functions.register("BAMTAG", getSignatureStringString2String(bamTag), bamTag _)
+      functions.register("GFFTAG", getSignatureStringString2String(gffTag), gffTag _)
+      functions.register("HAPLDIFF", getSignatureStringString2Int(haplDiff), haplDiff _)
+      functions.register("IHA", getSignatureStringString2Int(iha), iha _)
+      functions.register("VCFFORMATTAG", getSignatureStringStringString2String(vcfFormatTag), vcfFormatTag _)
+      functions.register("IUPACGTSTAT", getSignatureStringStringString2String(iupacGtStat), iupacGtStat _)
+      functions.register("TAG", getSignatureStringStringString2String(tag), tag _)
+      functions.register("IUPACMA", getSignatureStringStringStringString2String(iupacma), iupacma _)
+      functions.register("IUPACFA", getSignatureStringStringStringString2String(iupacfa), iupacfa _)
+      functions.register("IOOA", getSignatureString2Int(iooa), iooa _)
+      functions.register("CHARS2GT", getSignatureStringDouble2String(chars2Gt), chars2Gt _)
+      functions.register("CHARSPHASED2GT", getSignatureStringDouble2String(charsPhased2Gt), charsPhased2Gt _)
+    }
     functions.registerWithOwner("REFBASE", getSignatureStringInt2String(removeOwner(refBase)), refBase _)
     functions.registerWithOwner("REFBASES", getSignatureStringIntInt2String(removeOwner(refBases)), refBases _)
     functions.registerWithOwner("GTFA", "String:Int:String:String:Int:String:String:Int:String:String2String", gtfa _ )
@@ -22,7 +22,7 @@
 
 package gorsat.parser
 
-import java.util.regex.Pattern
+import gorsat.parser.ParseUtilities.compiledPattern
 
 import org.gorpipe.gor.ColumnValueProvider
 import gorsat.parser.FunctionTypes.{bFun, dFun, iFun, sFun}
@@ -35,69 +35,72 @@ object ListFunctions {
   private var dummyCvp: ColumnValueProvider = _
 
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("LISTNUMMIN", getSignatureString2Double(listNumMin), listNumMin _)
-    functions.register("LISTNUMMAX", getSignatureString2Double(listNumMax), listNumMax _)
-    functions.register("LISTNUMSUM", getSignatureString2Double(listNumSum), listNumSum _)
-    functions.register("LISTNUMSTD", getSignatureString2Double(listNumStd), listNumStd _)
-    functions.register("LISTNUMAVG", getSignatureString2Double(listNumAvg), listNumAvg _)
-    functions.register("LISTFIRST", getSignatureString2String(listFirst), listFirst _)
-    functions.register("LISTFIRST", getSignatureStringString2String(listFirstWithDelimiter), listFirstWithDelimiter _)
-    functions.register("LISTSECOND", getSignatureString2String(listSecond), listSecond _)
-    functions.register("LISTSECOND", getSignatureStringString2String(listSecondWithDelimiter), listSecondWithDelimiter _)
-    functions.register("LISTREVERSE", getSignatureString2String(listReverse), listReverse _)
-    functions.register("LISTREVERSE", getSignatureStringString2String(listReverseWithSeparator), listReverseWithSeparator _)
-    functions.register("LISTSORTASC", getSignatureString2String(listSortAsc), listSortAsc _)
-    functions.register("LISTSORTDESC", getSignatureString2String(listSortDesc), listSortDesc _)
-    functions.register("LISTNUMSORTASC", getSignatureString2String(listNumSortAsc), listNumSortAsc _)
-    functions.register("LISTNUMSORTDESC", getSignatureString2String(listNumSortDesc), listNumSortDesc _)
-    functions.register("LISTINDEX", getSignatureStringString2Int(listIndex), listIndex _)
-    functions.register("LISTINDEX", getSignatureStringStringString2Int(listIndexWithDelimiter), listIndexWithDelimiter _)
-    functions.register("LISTLAST", getSignatureString2String(listLast), listLast _)
-    functions.register("LISTLAST", getSignatureStringString2String(listLastWithDelimiter), listLastWithDelimiter _)
-    functions.register("LISTTAIL", getSignatureString2String(listTail), listTail _)
-    functions.register("LISTTAIL", getSignatureStringString2String(listTailWithDelimiter), listTailWithDelimiter _)
+    functions.deterministic {
+      functions.register("LISTNUMMIN", getSignatureString2Double(listNumMin), listNumMin _)
+      functions.register("LISTNUMMAX", getSignatureString2Double(listNumMax), listNumMax _)
+      functions.register("LISTNUMSUM", getSignatureString2Double(listNumSum), listNumSum _)
+      functions.register("LISTNUMSTD", getSignatureString2Double(listNumStd), listNumStd _)
+      functions.register("LISTNUMAVG", getSignatureString2Double(listNumAvg), listNumAvg _)
+      functions.register("LISTFIRST", getSignatureString2String(listFirst), listFirst _)
+      functions.register("LISTFIRST", getSignatureStringString2String(listFirstWithDelimiter), listFirstWithDelimiter _)
+      functions.register("LISTSECOND", getSignatureString2String(listSecond), listSecond _)
+      functions.register("LISTSECOND", getSignatureStringString2String(listSecondWithDelimiter), listSecondWithDelimiter _)
+      functions.register("LISTREVERSE", getSignatureString2String(listReverse), listReverse _)
+      functions.register("LISTREVERSE", getSignatureStringString2String(listReverseWithSeparator), listReverseWithSeparator _)
+      functions.register("LISTSORTASC", getSignatureString2String(listSortAsc), listSortAsc _)
+      functions.register("LISTSORTDESC", getSignatureString2String(listSortDesc), listSortDesc _)
+      functions.register("LISTNUMSORTASC", getSignatureString2String(listNumSortAsc), listNumSortAsc _)
+      functions.register("LISTNUMSORTDESC", getSignatureString2String(listNumSortDesc), listNumSortDesc _)
+      functions.register("LISTINDEX", getSignatureStringString2Int(listIndex), listIndex _)
+      functions.register("LISTINDEX", getSignatureStringStringString2Int(listIndexWithDelimiter), listIndexWithDelimiter _)
+      functions.register("LISTLAST", getSignatureString2String(listLast), listLast _)
+      functions.register("LISTLAST", getSignatureStringString2String(listLastWithDelimiter), listLastWithDelimiter _)
+      functions.register("LISTTAIL", getSignatureString2String(listTail), listTail _)
+      functions.register("LISTTAIL", getSignatureStringString2String(listTailWithDelimiter), listTailWithDelimiter _)
+      functions.register("LISTZIP", getSignatureStringString2String(listZip), listZip _)
+      functions.register("LISTZIP", getSignatureStringStringStringString2String(listZipWithSeparatorAndDelimiter), listZipWithSeparatorAndDelimiter _)
+      functions.register("LISTSIZE", getSignatureString2Int(listSize), listSize _)
+      functions.register("LISTSIZE", getSignatureStringString2Int(listSizeWithDelimiter), listSizeWithDelimiter _)
+      functions.register("LISTDIST", getSignatureString2String(listDist), listDist _)
+      functions.register("LISTMAX", getSignatureString2String(listMax), listMax _)
+      functions.register("LISTMIN", getSignatureString2String(listMin), listMin _)
+      functions.register("LISTTRIM", getSignatureString2String(listTrim), listTrim _)
+      functions.register("LISTNTH", getSignatureStringInt2String(listNth), listNth _)
+      functions.register("LISTNTH", getSignatureStringIntString2String(listNthWithDelimiter), listNthWithDelimiter _)
+      functions.register("LISTCOMB", getSignatureStringInt2String(listComb), listComb _)
+      functions.register("LISTADD", getSignatureStringString2String(listAdd), listAdd _)
+      functions.register("LISTADD", getSignatureStringStringString2String(listAddWithDelimiter), listAddWithDelimiter _)
+      functions.register("LISTCOMB", getSignatureStringIntInt2String(listComb2), listComb2 _)
+      functions.register("LISTHASANY", getSignatureStringString2Boolean(listHasAny), listHasAny _)
+      functions.register("LISTHASANY", getSignatureStringStringList2Boolean(listHasAnyWithStringLiterals), listHasAnyWithStringLiterals _)
+      functions.register("CSLISTHASANY", getSignatureStringString2Boolean(csListHasAny), csListHasAny _)
+      functions.register("CSLISTHASANY", getSignatureStringStringList2Boolean(csListHasAnyWithStringLiterals), csListHasAnyWithStringLiterals _)
+      functions.register("CONTAINSCOUNT", getSignatureStringStringList2Int(containsCount), containsCount _)
+      functions.register("CSCONTAINSCOUNT", getSignatureStringStringList2Int(csContainsCount), csContainsCount _)
+      functions.register("CONTAINS", getSignatureStringStringList2Boolean(contains), contains _)
+      functions.register("CONTAINSALL", getSignatureStringStringList2Boolean(contains), contains _)
+      functions.register("CSCONTAINS", getSignatureStringStringList2Boolean(csContains), csContains _)
+      functions.register("CSCONTAINSALL", getSignatureStringStringList2Boolean(csContains), csContains _)
+      functions.register("CONTAINSANY", getSignatureStringStringList2Boolean(containsAny), containsAny _)
+      functions.register("CSCONTAINSANY", getSignatureStringStringList2Boolean(csContainsAny), csContainsAny _)
+      functions.register("CSCONTAINSANY", getSignatureStringStringList2Boolean(csContainsAny), csContainsAny _)
+      functions.register("LISTHASCOUNT", getSignatureStringStringList2Int(listHasCount), listHasCount _)
+      functions.register("CSLISTHASCOUNT", getSignatureStringStringList2Int(csListHasCount), csListHasCount _)
+    }
     functions.registerWithOwner("LISTMAP", getSignatureStringString2String(removeOwner(listMap)), listMap _)
     functions.registerWithOwner("LISTMAP", getSignatureStringStringString2String(removeOwner(listMapWithDelimiter)), listMapWithDelimiter _)
     functions.registerWithOwner("LISTFILTER", getSignatureStringString2String(removeOwner(listFilter)), listFilter _)
     functions.registerWithOwner("LISTFILTER", getSignatureStringStringString2String(removeOwner(listFilterWithDelimiter)), listFilterWithDelimiter _)
-    functions.register("LISTZIP", getSignatureStringString2String(listZip), listZip _)
-    functions.register("LISTZIP", getSignatureStringStringStringString2String(listZipWithSeparatorAndDelimiter), listZipWithSeparatorAndDelimiter _)
     functions.registerWithOwner("LISTZIPFILTER", getSignatureStringStringString2String(removeOwner(listZipFilter)), listZipFilter _)
     functions.registerWithOwner("LISTZIPFILTER", getSignatureStringStringStringString2String(removeOwner(listZipFilterWithDelimiter)), listZipFilterWithDelimiter _)
-    functions.register("LISTSIZE", getSignatureString2Int(listSize), listSize _)
-    functions.register("LISTSIZE", getSignatureStringString2Int(listSizeWithDelimiter), listSizeWithDelimiter _)
-    functions.register("LISTDIST", getSignatureString2String(listDist), listDist _)
-    functions.register("LISTMAX", getSignatureString2String(listMax), listMax _)
-    functions.register("LISTMIN", getSignatureString2String(listMin), listMin _)
-    functions.register("LISTTRIM", getSignatureString2String(listTrim), listTrim _)
-    functions.register("LISTNTH", getSignatureStringInt2String(listNth), listNth _)
-    functions.register("LISTNTH", getSignatureStringIntString2String(listNthWithDelimiter), listNthWithDelimiter _)
-    functions.register("LISTCOMB", getSignatureStringInt2String(listComb), listComb _)
-    functions.register("LISTADD", getSignatureStringString2String(listAdd), listAdd _)
-    functions.register("LISTADD", getSignatureStringStringString2String(listAddWithDelimiter), listAddWithDelimiter _)
-    functions.register("LISTCOMB", getSignatureStringIntInt2String(listComb2), listComb2 _)
     functions.registerWithOwner("FSVMAP", getSignatureStringIntStringString2String(removeOwner(fsvMap)), fsvMap _)
-    functions.register("LISTHASANY", getSignatureStringString2Boolean(listHasAny), listHasAny _)
-    functions.register("LISTHASANY", getSignatureStringStringList2Boolean(listHasAnyWithStringLiterals), listHasAnyWithStringLiterals _)
-    functions.register("CSLISTHASANY", getSignatureStringString2Boolean(csListHasAny), csListHasAny _)
-    functions.register("CSLISTHASANY", getSignatureStringStringList2Boolean(csListHasAnyWithStringLiterals), csListHasAnyWithStringLiterals _)
-    functions.register("CONTAINSCOUNT", getSignatureStringStringList2Int(containsCount), containsCount _)
-    functions.register("CSCONTAINSCOUNT", getSignatureStringStringList2Int(csContainsCount), csContainsCount _)
-    functions.register("CONTAINS", getSignatureStringStringList2Boolean(contains), contains _)
-    functions.register("CONTAINSALL", getSignatureStringStringList2Boolean(contains), contains _)
-    functions.register("CSCONTAINS", getSignatureStringStringList2Boolean(csContains), csContains _)
-    functions.register("CSCONTAINSALL", getSignatureStringStringList2Boolean(csContains), csContains _)
-    functions.register("CONTAINSANY", getSignatureStringStringList2Boolean(containsAny), containsAny _)
-    functions.register("CSCONTAINSANY", getSignatureStringStringList2Boolean(csContainsAny), csContainsAny _)
-    functions.register("CSCONTAINSANY", getSignatureStringStringList2Boolean(csContainsAny), csContainsAny _)
-    functions.register("LISTHASCOUNT", getSignatureStringStringList2Int(listHasCount), listHasCount _)
-    functions.register("CSLISTHASCOUNT", getSignatureStringStringList2Int(csListHasCount), csListHasCount _)
   }
 
   def listHasCount(ex1: sFun, ex2: List[String]): iFun = {
+    val w = ex2.map(x => x.toUpperCase)
     cvp => {
       val tmp = ex1(cvp).split(",", -1).map(b => b.toUpperCase)
-      ex2.map(x => x.toUpperCase).count(x => tmp.contains(x))
+      w.count(x => tmp.contains(x))
     }
   }
 
@@ -148,29 +151,32 @@ object ListFunctions {
   }
 
   def csListHasAny(ex1: sFun, ex2: sFun): bFun = {
+    val items = ArgumentState(_.split(",", -1).toSet)
     cvp => {
-      val tmp = ex2(cvp).split(",", -1)
-      ex1(cvp).split(",", -1).exists(tmp.contains(_))
+      val tmp = items(ex2(cvp))
+      ex1(cvp).split(",", -1).exists(tmp.contains)
     }
   }
 
   def csListHasAnyWithStringLiterals(ex1: sFun, ex2: List[String]): bFun = {
+    val w = ex2.toSet
     cvp => {
-      ex1(cvp).split(",", -1).exists(ex2.contains(_))
+      ex1(cvp).split(",", -1).exists(w.contains)
     }
   }
 
   def listHasAny(ex1: sFun, ex2: sFun): bFun = {
+    val items = ArgumentState(_.split(",", -1).map(x => x.toUpperCase).toSet)
     cvp => {
-      val tmp = ex2(cvp).split(",", -1).map(x => x.toUpperCase)
-      ex1(cvp).split(",", -1).map(b => b.toUpperCase).exists(tmp.contains(_))
+      val tmp = items(ex2(cvp))
+      ex1(cvp).split(",", -1).exists(b => tmp.contains(b.toUpperCase))
     }
   }
 
   def listHasAnyWithStringLiterals(ex1: sFun, ex2: List[String]): bFun = {
-    val w = ex2.map(x => x.toUpperCase)
+    val w = ex2.map(x => x.toUpperCase).toSet
     cvp => {
-      ex1(cvp).split(",", -1).map(b => b.toUpperCase).exists(w.contains(_))
+      ex1(cvp).split(",", -1).exists(b => w.contains(b.toUpperCase))
     }
   }
 
@@ -312,7 +318,7 @@ object ListFunctions {
       }
     }
     else {
-      val matcher = Pattern.compile(delimiter).matcher(string)
+      val matcher = compiledPattern(delimiter).matcher(string)
       counter = 1
       while (matcher.find(lastIdx)) {
         counter += 1
@@ -540,7 +546,7 @@ object ListFunctions {
       string.substring(idx + del.length)
     }
     else {
-      val matcher = Pattern.compile(del).matcher(string)
+      val matcher = compiledPattern(del).matcher(string)
       if (!matcher.find()) return ""
       string.substring(matcher.end())
     }
@@ -566,7 +572,7 @@ object ListFunctions {
       string.substring(tmp + 2)
     }
     else {
-      val matcher = Pattern.compile(del).matcher(string)
+      val matcher = compiledPattern(del).matcher(string)
       var i = string.length - 1
       while (i >= 0 && !matcher.find(i)) i -= 1
       if (i == -1) string else string.substring(matcher.end())
@@ -605,7 +611,7 @@ object ListFunctions {
       if (string.length - begin == target.length && equalToSubString(string, begin, string.length, target)) return count
     }
     else {
-      val pattern = Pattern.compile(delimiter)
+      val pattern = compiledPattern(delimiter)
       val matcher = pattern.matcher(string)
       var begin = 0
       var end = 0
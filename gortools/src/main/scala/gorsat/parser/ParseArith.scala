@@ -75,6 +75,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
   private var runAntlr = false
   private var compileClassic = true
   private var runClassic = true
+  private var expressionCache: ExpressionCache = _
 
   setMode()
 
@@ -121,6 +122,14 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
     f
   }
 
+  /**
+    * Share the values of function calls with other parsers evaluating the same rows, see ExpressionCache. Must
+    * be set before the expression is compiled.
+    */
+  def setExpressionCache(cache: ExpressionCache): Unit = {
+    expressionCache = cache
+  }
+
   def setContext(ctx: GorContext, executeNor: Boolean) {
     this.context = ctx
     this.executeNor = executeNor
@@ -410,22 +419,27 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
 
   def relexpr: Parser[bFun] =
     relterm ~ rep("OR".ignoreCase ~> relterm) ^^ {
-      case seed ~ fs => fs.foldLeft(seed)((a, f) => {
-        cvp => {
-          a(cvp) || f(cvp)
-        }
-      })
+      case seed ~ Nil => seed
+      case seed ~ fs => anyOf((seed :: fs).toArray)
   }
 
   def relterm: Parser[bFun] =
     predi ~ rep("AND".ignoreCase ~> predi) ^^ {
-      case seed ~ fs => fs.foldLeft(seed)((a, f) => {
-        cvp => {
-          a(cvp) && f(cvp)
-        }
-      })
+      case seed ~ Nil => seed
+      case seed ~ fs => allOf((seed :: fs).toArray)
   }
 
+  /**
+    * The conjunction of the predicates. A long chain of conditions is evaluated in a loop over an array instead of
+    * as many nested closures, with the conditions reordered by how often they fail, see AdaptivePredicates.
+    */
+  def allOf(predicates: Array[bFun]): bFun = new AdaptivePredicates(predicates, true)
+
+  /**
+    * The disjunction of the predicates, reordered by how often they pass.
+    */
+  def anyOf(predicates: Array[bFun]): bFun = new AdaptivePredicates(predicates, false)
+
   def predi: Parser[bFun] =
     spredicomp |||
     dpredicomp |||
@@ -473,86 +487,52 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
         }
       })
 
-  def compareop[R](implicit ev: R => Ordered[R]): Parser[(ColumnValueProvider=>R, ColumnValueProvider=>R, ColumnValueProvider) => Boolean] =
-    ("==" ^^ (_ => {
-      (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) == r(line)
-      }
-    })) |
-      ("<=" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) <= r(line)
-      }
-      })) |
-      (">=" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) >= r(line)
-      }
-      })) |
-      ("<>" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) != r(line)
-      }
-      })) |
-      ("=" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) == r(line)
-      }
-      })) |
-      ("<" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) < r(line)
-      }
-      })) |
-      (">" ^^ (_ => {
-        (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-          l(line) > r(line)
-        }
-      })) |
-      ("!=" ^^ (_ => { (l: ColumnValueProvider=>R, r: ColumnValueProvider=>R, line: ColumnValueProvider) => {
-        l(line) != r(line)
-      }
-      }))
+  def compareop: Parser[String] = "==" | "<=" | ">=" | "<>" | "=" | "<" | ">" | "!="
+
+  // The comparisons are built per type so that the values are compared as primitives, without boxing them into
+  // Ordered wrappers for every row. Double compares with the primitive operators to deal correctly with NaN.
+  def intCompare(l: iFun, op: String, r: iFun): bFun = op match {
+    case "==" | "=" => line => l(line) == r(line)
+    case "<=" => line => l(line) <= r(line)
+    case ">=" => line => l(line) >= r(line)
+    case "<" => line => l(line) < r(line)
+    case ">" => line => l(line) > r(line)
+    case _ => line => l(line) != r(line)
+  }
 
-  // We need to special case Double to deal correctly with NaN
-  def compareopDouble: Parser[(ColumnValueProvider=>Double, ColumnValueProvider=>Double, ColumnValueProvider) => Boolean] =
-    ("==" ^^ (_ => {
-      (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) == r(line)
-      }
-    })) |
-      ("<=" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) <= r(line)
-      }
-      })) |
-      (">=" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) >= r(line)
-      }
-      })) |
-      ("<>" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) != r(line)
-      }
-      })) |
-      ("=" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) == r(line)
-      }
-      })) |
-      ("<" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) < r(line)
-      }
-      })) |
-      (">" ^^ (_ => {
-        (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-          l(line) > r(line)
-        }
-      })) |
-      ("!=" ^^ (_ => { (l: ColumnValueProvider=>Double, r: ColumnValueProvider=>Double, line: ColumnValueProvider) => {
-        l(line) != r(line)
-      }
-      }))
+  def longCompare(l: lFun, op: String, r: lFun): bFun = op match {
+    case "==" | "=" => line => l(line) == r(line)
+    case "<=" => line => l(line) <= r(line)
+    case ">=" => line => l(line) >= r(line)
+    case "<" => line => l(line) < r(line)
+    case ">" => line => l(line) > r(line)
+    case _ => line => l(line) != r(line)
+  }
+
+  def doubleCompare(l: dFun, op: String, r: dFun): bFun = op match {
+    case "==" | "=" => line => l(line) == r(line)
+    case "<=" => line => l(line) <= r(line)
+    case ">=" => line => l(line) >= r(line)
+    case "<" => line => l(line) < r(line)
+    case ">" => line => l(line) > r(line)
+    case _ => line => l(line) != r(line)
+  }
+
+  def stringCompare(l: sFun, op: String, r: sFun): bFun = op match {
+    case "==" | "=" => line => l(line) == r(line)
+    case "<=" => line => l(line).compareTo(r(line)) <= 0
+    case ">=" => line => l(line).compareTo(r(line)) >= 0
+    case "<" => line => l(line).compareTo(r(line)) < 0
+    case ">" => line => l(line).compareTo(r(line)) > 0
+    case _ => line => l(line) != r(line)
+  }
 
   def dpredicomp: Parser[bFun] {
     def apply(in: Input): ParseResult[bFun]
   } = new Parser[bFun] {
     def apply(in: Input): ParseResult[bFun] = {
-      val p = (dexpr ~ compareopDouble ~ dexpr) ^^ {
-        case l ~ cpop ~ r =>
-          (line: ColumnValueProvider) => cpop(l, r, line)
+      val p = (dexpr ~ compareop ~ dexpr) ^^ {
+        case l ~ op ~ r => doubleCompare(l, op, r)
       }
       p(in)
     }
@@ -562,9 +542,8 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
     def apply(in: Input): ParseResult[bFun]
   } = new Parser[bFun] {
     def apply(in: Input): ParseResult[bFun] = {
-      val p = (lexpr ~ compareop[Long] ~ lexpr) ^^ {
-        case l ~ cpop ~ r =>
-          (line: ColumnValueProvider) => cpop(l, r, line)
+      val p = (lexpr ~ compareop ~ lexpr) ^^ {
+        case l ~ op ~ r => longCompare(l, op, r)
       }
       p(in)
     }
@@ -574,9 +553,8 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
     def apply(in: Input): ParseResult[bFun]
   }  = new Parser[bFun] {
     def apply(in: Input): ParseResult[bFun] = {
-      val p = (iexpr ~ compareop[Int] ~ iexpr) ^^ {
-        case l ~ cpop ~ r =>
-          (line: ColumnValueProvider) => cpop(l, r, line)
+      val p = (iexpr ~ compareop ~ iexpr) ^^ {
+        case l ~ op ~ r => intCompare(l, op, r)
       }
       p(in)
     }
@@ -586,33 +564,46 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
     def apply(in: Input): ParseResult[bFun]
   } = new Parser[bFun] {
     def apply(in: Input): ParseResult[bFun] = {
-      val p = sexpr ~ compareop[String] ~ sexpr ^^ {
-        case l ~ cpop ~ r => (line: ColumnValueProvider) => cpop(l, r, line)
+      val p = sexpr ~ compareop ~ sexpr ^^ {
+        case l ~ op ~ r => stringCompare(l, op, r)
       }
       p(in)
     }
   }
 
+  /**
+    * Compiles the pattern of a LIKE, RLIKE or ~ with a literal pattern once, when the expression is compiled.
+    */
+  private def literalPattern(regex: String): java.util.regex.Pattern = {
+    try {
+      compiledPattern(regex)
+    } catch {
+      case e: java.util.regex.PatternSyntaxException =>
+        throw new GorParsingException("Invalid regular expression: " + e.getMessage, e)
+    }
+  }
+
   def spredicomp: Parser[bFun] =
     stringComparison |
     (sexpr ~ "LIKE".ignoreCase ~ myStringLiteral) ^^ {
       case l ~ _ ~ r =>
-        val patt = r.replace("*", ".*").replace("?", ".")
+        val patt = literalPattern(r.replace("*", ".*").replace("?", "."))
         (line: ColumnValueProvider) => {
-          l(line).matches(patt)
+          patt.matcher(l(line)).matches()
         }
     } |
     (sexpr ~ "RLIKE".ignoreCase ~ myStringLiteral) ^^ {
       case l ~ _ ~ r =>
+        val patt = literalPattern(r)
         (line: ColumnValueProvider) => {
-          l(line).matches(r)
+          patt.matcher(l(line)).matches()
         }
     } |
     (sexpr ~ "~" ~ myStringLiteral) ^^ {
       case l ~ _ ~ r =>
-        val patt = r.toUpperCase().replace("*", ".*").replace("?", ".")
+        val patt = literalPattern(r.toUpperCase().replace("*", ".*").replace("?", "."))
         (line: ColumnValueProvider) => {
-          l(line).toUpperCase().matches(patt)
+          patt.matcher(l(line).toUpperCase()).matches()
         }
     } |
     (sexpr ~ "IN".ignoreCase ~ ("(" ~> stringLiteralList <~ ")")) ^^ {
@@ -913,7 +904,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
               case Success(_, in2) =>
                 functionArgs[R](fn.toUpperCase, returnType)(in2) match {
                   case Success(x, in3) =>
-                    Success(x, in3)
+                    Success(optimizeCall(in.source.subSequence(in.offset, in3.offset).toString, returnType, x), in3)
                   case Failure(msg, next) =>
                     Failure(msg, next)
                 }
@@ -927,6 +918,34 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
     }
   }
 
+  /**
+    * A call of deterministic functions which does not read any column is replaced by its value. Other such calls
+    * are evaluated through the expression cache, if there is one, so that a call repeated in this or an adjacent
+    * step is evaluated once per row. This is decided when the call is first evaluated, see OptimizedCall.
+    */
+  private def optimizeCall[R](text: String, returnType: String, f: R): R = {
+    if (ExpressionCache.isDeterministic(text, functions)) {
+      val key = returnType + ":" + ExpressionCache.canonical(text)
+      new OptimizedCall(key, f.asInstanceOf[ColumnValueProvider => Any], expressionCache).asInstanceOf[R]
+    } else {
+      f
+    }
+  }
+
+  /**
+    * The compiled expression replaced by its value if it does not read any column. AND and OR chains are left
+    * as they are, evaluating them would count towards their warm-up sample.
+    */
+  private def foldConstant[R](input: String, f: R): R = f match {
+    case _: AdaptivePredicates => f
+    case _ if !ExpressionCache.isDeterministic(input, functions) => f
+    case _ =>
+      ExpressionCache.constantValue(f.asInstanceOf[ColumnValueProvider => Any]) match {
+        case Some(value) => ((_: ColumnValueProvider) => value).asInstanceOf[R]
+        case None => f
+      }
+  }
+
   def doubleIfMatcher: Parser[dFun] {
     def apply(in: Input): ParseResult[dFun]
   } = new Parser[dFun] {
@@ -1103,7 +1122,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
       val ir = parseAll(iexpr, input)
       ir match {
         case Success(e, _) =>
-          intFunction = e
+          intFunction = foldConstant(input, e)
           outputType = FunctionTypes.IntFun
         case Failure(msg, next) =>
           errorMessage = msg
@@ -1112,7 +1131,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
           val lr = parseAll(lexpr, input)
           lr match {
             case Success(e, _) =>
-              longFunction = e
+              longFunction = foldConstant(input, e)
               outputType = FunctionTypes.LongFun
             case Failure(msg1, next1) =>
               if(next1.offset >= maxLength) {
@@ -1123,7 +1142,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
               val dr = parseAll(dexpr, input)
               dr match {
                 case Success(e, _) =>
-                  doubleFunction = e
+                  doubleFunction = foldConstant(input, e)
                   outputType = FunctionTypes.DoubleFun
                 case Failure(msg2, next2) =>
                   if(next2.offset >= maxLength) {
@@ -1134,7 +1153,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
                   val sr = parseAll(sexpr, input)
                   sr match {
                     case Success(e, _) =>
-                      stringFunction = e
+                      stringFunction = foldConstant(input, e)
                       outputType = FunctionTypes.StringFun
                     case Failure(msg3, next3) =>
                       if(next3.offset >= maxLength) {
@@ -1176,7 +1195,7 @@ class ParseArith(rs: RowSource = null) extends JavaTokenParsers {
       parseAll(relexpr, input) match {
         case Success(e, _) =>
           outputType = FunctionTypes.BooleanFun
-          booleanFunction = e.asInstanceOf[ColumnValueProvider => Boolean]
+          booleanFunction = foldConstant(input, e.asInstanceOf[ColumnValueProvider => Boolean])
         case f: NoSuccess => throw new GorParsingException(f.msg, input)
       }
     }
@@ -27,6 +27,8 @@
 package gorsat.parser
 
 import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.regex.Pattern
 
 import org.gorpipe.exceptions._
 import org.gorpipe.model.util.GChiSquared2by2
@@ -45,6 +47,23 @@ object ParseUtilities {
 
   private val logger = LoggerFactory.getLogger(this.getClass)
 
+  private val patterns = new ConcurrentHashMap[String, Pattern]()
+  private val maxCachedPatterns = 1000
+
+  /**
+    * Compiles a regular expression, or returns it from a cache shared by all expressions. Pattern arguments are mostly
+    * constants, so this saves compiling the same pattern for every row.
+    */
+  def compiledPattern(regex: String): Pattern = {
+    var pattern = patterns.get(regex)
+    if (pattern == null) {
+      pattern = Pattern.compile(regex)
+      if (patterns.size >= maxCachedPatterns) patterns.clear()
+      patterns.put(regex, pattern)
+    }
+    pattern
+  }
+
   /**
     * This method calculates 2-tailed P value
     * @param minCase
@@ -30,29 +30,31 @@ import gorsat.parser.FunctionSignature._
 
 object StatisticalFunctions {
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("NEGBINOMIAL", getSignatureDoubleDoubleDouble2Double(negativeBinomial), negativeBinomial _)
-    functions.register("NEGBINOMIALC", getSignatureDoubleDoubleDouble2Double(negativeBinomialComplemented), negativeBinomialComplemented _)
-    functions.register("BINOMIAL", getSignatureDoubleDoubleDouble2Double(binomial), binomial _)
-    functions.register("BINOMIALC", getSignatureDoubleDoubleDouble2Double(binomialComplemented), binomialComplemented _)
-    functions.register("GAMMA", getSignatureDoubleDoubleDouble2Double(gamma), gamma _)
-    functions.register("GAMMAC", getSignatureDoubleDoubleDouble2Double(gammaComplemented), gammaComplemented _)
-    functions.register("BETAC", getSignatureDoubleDoubleDouble2Double(betaComplemented), betaComplemented _)
-    functions.register("BETA", getSignatureDoubleDoubleDouble2Double(beta), beta _)
-    functions.register("POISSON", getSignatureDoubleDouble2Double(poisson), poisson _)
-    functions.register("POISSONC", getSignatureDoubleDouble2Double(poissonComplemented), poissonComplemented _)
-    functions.register("STUDENT", getSignatureDoubleDouble2Double(studentT), studentT _)
-    functions.register("INVSTUDENT", getSignatureDoubleDouble2Double(studentTInverse), studentTInverse _)
-    functions.register("CHISQUARECOMPL", getSignatureDoubleDouble2Double(chiSquareComplemented), chiSquareComplemented _)
-    functions.register("CHI2", getSignatureDoubleDouble2Double(chiSquareComplemented), chiSquareComplemented _)
-    functions.register("CHISQUARE", getSignatureDoubleDouble2Double(chiSquare), chiSquare _)
-    functions.register("ERF", getSignatureDouble2Double(erf), erf _)
-    functions.register("ERFC", getSignatureDouble2Double(erfc), erfc _)
-    functions.register("NORMAL", getSignatureDouble2Double(normal), normal _)
-    functions.register("INVNORMAL", getSignatureDouble2Double(invnormal), invnormal _)
-    functions.register("PVAL", getSignatureIntIntIntInt2Double(pval), pval _)
-    functions.register("PVALONE", getSignatureIntIntIntInt2Double(pvalOne), pvalOne _)
-    functions.register("CHI", getSignatureIntIntIntInt2Double(chi), chi _)
-    functions.register("INVCHISQUARE", getSignatureDoubleInt2Double(invChiSquare), invChiSquare _)
+    functions.deterministic {
+      functions.register("NEGBINOMIAL", getSignatureDoubleDoubleDouble2Double(negativeBinomial), negativeBinomial _)
+      functions.register("NEGBINOMIALC", getSignatureDoubleDoubleDouble2Double(negativeBinomialComplemented), negativeBinomialComplemented _)
+      functions.register("BINOMIAL", getSignatureDoubleDoubleDouble2Double(binomial), binomial _)
+      functions.register("BINOMIALC", getSignatureDoubleDoubleDouble2Double(binomialComplemented), binomialComplemented _)
+      functions.register("GAMMA", getSignatureDoubleDoubleDouble2Double(gamma), gamma _)
+      functions.register("GAMMAC", getSignatureDoubleDoubleDouble2Double(gammaComplemented), gammaComplemented _)
+      functions.register("BETAC", getSignatureDoubleDoubleDouble2Double(betaComplemented), betaComplemented _)
+      functions.register("BETA", getSignatureDoubleDoubleDouble2Double(beta), beta _)
+      functions.register("POISSON", getSignatureDoubleDouble2Double(poisson), poisson _)
+      functions.register("POISSONC", getSignatureDoubleDouble2Double(poissonComplemented), poissonComplemented _)
+      functions.register("STUDENT", getSignatureDoubleDouble2Double(studentT), studentT _)
+      functions.register("INVSTUDENT", getSignatureDoubleDouble2Double(studentTInverse), studentTInverse _)
+      functions.register("CHISQUARECOMPL", getSignatureDoubleDouble2Double(chiSquareComplemented), chiSquareComplemented _)
+      functions.register("CHI2", getSignatureDoubleDouble2Double(chiSquareComplemented), chiSquareComplemented _)
+      functions.register("CHISQUARE", getSignatureDoubleDouble2Double(chiSquare), chiSquare _)
+      functions.register("ERF", getSignatureDouble2Double(erf), erf _)
+      functions.register("ERFC", getSignatureDouble2Double(erfc), erfc _)
+      functions.register("NORMAL", getSignatureDouble2Double(normal), normal _)
+      functions.register("INVNORMAL", getSignatureDouble2Double(invnormal), invnormal _)
+      functions.register("PVAL", getSignatureIntIntIntInt2Double(pval), pval _)
+      functions.register("PVALONE", getSignatureIntIntIntInt2Double(pvalOne), pvalOne _)
+      functions.register("CHI", getSignatureIntIntIntInt2Double(chi), chi _)
+      functions.register("INVCHISQUARE", getSignatureDoubleInt2Double(invChiSquare), invChiSquare _)
+    }
   }
 
   def chi(ex1: iFun, ex2: iFun, ex3: iFun, ex4: iFun): dFun = {
@@ -28,43 +28,46 @@ import gorsat.parser.FunctionSignature._
 
 object StringFunctions {
   def register(functions: FunctionRegistry): Unit = {
+    functions.deterministic {
+      functions.register("UPPER", getSignatureString2String(upper), upper _)
+      functions.register("LOWER", getSignatureString2String(lower), lower _)
+      functions.register("TRIM", getSignatureString2String(trim), trim _)
+      functions.register("BRACKETS", getSignatureString2String(brackets), brackets _)
+      functions.register("UNBRACKET", getSignatureString2String(unbracket), unbracket _)
+      functions.register("SQUOTE", getSignatureString2String(squote), squote _)
+      functions.register("SUNQUOTE", getSignatureString2String(sunquote), sunquote _)
+      functions.register("DQUOTE", getSignatureString2String(dquote), dquote _)
+      functions.register("DUNQUOTE", getSignatureString2String(dunquote), dunquote _)
+      functions.register("REVERSE", getSignatureString2String(reverse), reverse _)
+      functions.register("STR", getSignatureString2String(str), str _)
+      functions.register("POSOF", getSignatureStringString2Int(posOf), posOf _)
+      functions.register("CONTAINSCOUNT", getSignatureStringString2Int(containsCount), containsCount _)
+      functions.register("CSCONTAINSCOUNT", getSignatureStringString2Int(csContainsCount), csContainsCount _)
+      functions.register("LISTHASCOUNT", getSignatureStringString2Int(listHasCount), listHasCount _)
+      functions.register("CSLISTHASCOUNT", getSignatureStringString2Int(csListHasCount), csListHasCount _)
+      functions.register("REPLACE", getSignatureStringStringString2String(replace), replace _)
+      functions.register("LEN", getSignatureString2Int(len), len _)
+      functions.register("LEFT", getSignatureStringInt2String(left), left _)
+      functions.register("RIGHT", getSignatureStringInt2String(right), right _)
+      functions.register("STR2LIST", getSignatureStringInt2String(str2List), str2List _)
+      functions.register("STR2LIST", getSignatureStringIntString2String(str2ListWithSeparator), str2ListWithSeparator _)
+      functions.register("SUBSTR", getSignatureStringIntInt2String(substr), substr _)
+      functions.register("MID", getSignatureStringIntInt2String(mid), mid _)
+      functions.register("CONTAINS", getSignatureStringString2Boolean(contains), contains _)
+      functions.register("CSCONTAINS", getSignatureStringString2Boolean(cscontains), cscontains _)
+      functions.register("CSCONTAINSALL", getSignatureStringString2Boolean(cscontains), cscontains _)
+      functions.register("CHAR", getSignatureStringInt2Int(char), char _)
+      functions.register("CONTAINSANY", getSignatureStringString2Boolean(containsAny), containsAny _)
+      functions.register("CSCONTAINSANY", getSignatureStringString2Boolean(csContainsAny), csContainsAny _)
+      functions.register("REGSEL", getSignatureStringString2String(regsel), regsel _)
+    }
     functions.register("ONCE", getSignatureString2String(onceString), onceString _)
-    functions.register("UPPER", getSignatureString2String(upper), upper _)
-    functions.register("LOWER", getSignatureString2String(lower), lower _)
-    functions.register("TRIM", getSignatureString2String(trim), trim _)
-    functions.register("BRACKETS", getSignatureString2String(brackets), brackets _)
-    functions.register("UNBRACKET", getSignatureString2String(unbracket), unbracket _)
-    functions.register("SQUOTE", getSignatureString2String(squote), squote _)
-    functions.register("SUNQUOTE", getSignatureString2String(sunquote), sunquote _)
-    functions.register("DQUOTE", getSignatureString2String(dquote), dquote _)
-    functions.register("DUNQUOTE", getSignatureString2String(dunquote), dunquote _)
-    functions.register("REVERSE", getSignatureString2String(reverse), reverse _)
-    functions.register("STR", getSignatureString2String(str), str _)
-    functions.register("POSOF", getSignatureStringString2Int(posOf), posOf _)
-    functions.register("CONTAINSCOUNT", getSignatureStringString2Int(containsCount), containsCount _)
-    functions.register("CSCONTAINSCOUNT", getSignatureStringString2Int(csContainsCount), csContainsCount _)
-    functions.register("LISTHASCOUNT", getSignatureStringString2Int(listHasCount), listHasCount _)
-    functions.register("CSLISTHASCOUNT", getSignatureStringString2Int(csListHasCount), csListHasCount _)
-    functions.register("REPLACE", getSignatureStringStringString2String(replace), replace _)
-    functions.register("LEN", getSignatureString2Int(len), len _)
-    functions.register("LEFT", getSignatureStringInt2String(left), left _)
-    functions.register("RIGHT", getSignatureStringInt2String(right), right _)
-    functions.register("STR2LIST", getSignatureStringInt2String(str2List), str2List _)
-    functions.register("STR2LIST", getSignatureStringIntString2String(str2ListWithSeparator), str2ListWithSeparator _)
-    functions.register("SUBSTR", getSignatureStringIntInt2String(substr), substr _)
-    functions.register("MID", getSignatureStringIntInt2String(mid), mid _)
-    functions.register("CONTAINS", getSignatureStringString2Boolean(contains), contains _)
-    functions.register("CSCONTAINS", getSignatureStringString2Boolean(cscontains), cscontains _)
-    functions.register("CSCONTAINSALL", getSignatureStringString2Boolean(cscontains), cscontains _)
-    functions.register("CHAR", getSignatureStringInt2Int(char), char _)
-    functions.register("CONTAINSANY", getSignatureStringString2Boolean(containsAny), containsAny _)
-    functions.register("CSCONTAINSANY", getSignatureStringString2Boolean(csContainsAny), csContainsAny _)
-    functions.register("REGSEL", getSignatureStringString2String(regsel), regsel _)
   }
 
   def regsel(ex1: sFun, ex2: sFun): sFun = {
+    val regex = ArgumentState(_.r)
     cvp => {
-      val r = ex2(cvp).r
+      val r = regex(ex2(cvp))
       var x = ""
       try {
         val r(m) = ex1(cvp); x = m
@@ -76,14 +79,18 @@ object StringFunctions {
   }
 
   def csContainsAny(ex1: sFun, ex2: sFun): bFun = {
+    val items = ArgumentState(_.split(",", -1))
     cvp => {
-      ex2(cvp).split(",", -1).exists(ex1(cvp).contains(_))
+      val s = ex1(cvp)
+      items(ex2(cvp)).exists(s.contains(_))
     }
   }
 
   def containsAny(ex1: sFun, ex2: sFun): bFun = {
+    val items = ArgumentState(_.split(",", -1).map(x => x.toUpperCase))
     cvp => {
-      ex2(cvp).split(",", -1).map(x => x.toUpperCase).exists(ex1(cvp).toUpperCase.contains(_))
+      val s = ex1(cvp).toUpperCase
+      items(ex2(cvp)).exists(s.contains(_))
     }
   }
 
@@ -155,28 +162,34 @@ object StringFunctions {
   }
 
   def csListHasCount(ex1: sFun, ex2: sFun): iFun = {
+    val items = ArgumentState(_.split(",", -1))
     cvp => {
       val tmp = ex1(cvp).split(",", -1)
-      ex2(cvp).split(",", -1).count(x => tmp.contains(x))
+      items(ex2(cvp)).count(x => tmp.contains(x))
     }
   }
 
   def listHasCount(ex1: sFun, ex2: sFun): iFun = {
+    val items = ArgumentState(_.split(",", -1).map(x => x.toUpperCase))
     cvp => {
       val tmp = ex1(cvp).split(",", -1).map(b => b.toUpperCase)
-      ex2(cvp).split(",", -1).map(x => x.toUpperCase).count(x => tmp.contains(x))
+      items(ex2(cvp)).count(x => tmp.contains(x))
     }
   }
 
   def csContainsCount(ex1: sFun, ex2: sFun): iFun = {
+    val items = ArgumentState(_.split(",", -1))
     cvp => {
-      ex2(cvp).split(",", -1).count(ex1(cvp).contains(_))
+      val s = ex1(cvp)
+      items(ex2(cvp)).count(s.contains(_))
     }
   }
 
   def containsCount(ex1: sFun, ex2: sFun): iFun = {
+    val items = ArgumentState(_.split(",", -1).map(x => x.toUpperCase))
     cvp => {
-      ex2(cvp).split(",", -1).map(x => x.toUpperCase).count(ex1(cvp).toUpperCase.contains(_))
+      val s = ex1(cvp).toUpperCase
+      items(ex2(cvp)).count(s.contains(_))
     }
   }
 
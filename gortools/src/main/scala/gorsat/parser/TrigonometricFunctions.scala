@@ -27,12 +27,14 @@ import gorsat.parser.FunctionSignature._
 
 object TrigonometricFunctions {
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("SIN", getSignatureDouble2Double(sin), sin _)
-    functions.register("COS", getSignatureDouble2Double(cos), cos _)
-    functions.register("ASIN", getSignatureDouble2Double(asin), asin _)
-    functions.register("ACOS", getSignatureDouble2Double(acos), acos _)
-    functions.register("TAN", getSignatureDouble2Double(tan), tan _)
-    functions.register("ATAN", getSignatureDouble2Double(atan), atan _)
+    functions.deterministic {
+      functions.register("SIN", getSignatureDouble2Double(sin), sin _)
+      functions.register("COS", getSignatureDouble2Double(cos), cos _)
+      functions.register("ASIN", getSignatureDouble2Double(asin), asin _)
+      functions.register("ACOS", getSignatureDouble2Double(acos), acos _)
+      functions.register("TAN", getSignatureDouble2Double(tan), tan _)
+      functions.register("ATAN", getSignatureDouble2Double(atan), atan _)
+    }
   }
 
   def sin(ex: dFun): dFun = {
@@ -31,30 +31,32 @@ import scala.math.BigInt
 
 object TypeConversionFunctions {
   def register(functions: FunctionRegistry): Unit = {
-    functions.register("ROUND", getSignatureDouble2Int(round), round _)
-    functions.register("STR", getSignatureDouble2String(double2String), double2String _)
-    functions.register("STR", getSignatureInt2String(int2String), int2String _)
-    functions.register("STRING", getSignatureDouble2String(double2String), double2String _)
-    functions.register("STRING", getSignatureInt2String(int2String), int2String _)
-    functions.register("BASE26", getSignatureInt2String(base26), base26 _)
-    functions.register("BASEPN", getSignatureInt2String(basePn), basePn _)
-    functions.register("FLOAT", getSignatureString2Double(string2Float), string2Float _)
-    functions.register("FLOAT", getSignatureDouble2Double(float2Float), float2Float _)
-    functions.register("FLOAT", getSignatureStringDouble2Double(string2FloatWithDefault), string2FloatWithDefault _)
-    functions.register("NUMBER", getSignatureString2Double(string2Float), string2Float _)
-    functions.register("NUMBER", getSignatureDouble2Double(float2Float), float2Float _)
-    functions.register("INT", getSignatureString2Int(string2Int), string2Int _)
-    functions.register("INT", getSignatureDouble2Int(double2Int), double2Int _)
-    functions.register("INT", getSignatureLong2Int(long2Int), long2Int _)
-    functions.register("LONG", getSignatureDouble2Long(double2Long), double2Long _)
-    functions.register("LONG", getSignatureString2Long(string2Long), string2Long _)
-    functions.register("LONG", getSignatureLong2Long(long2Long), long2Long _)
-    functions.register("LONG", getSignatureInt2Long(int2Long), int2Long _)
-    functions.register("FORM", getSignatureDoubleIntInt2String(form), form _)
-    functions.register("EFORM", getSignatureDoubleIntInt2String(eform), eform _)
-    functions.register("ISINT", getSignatureString2Boolean(isInt), isInt _)
-    functions.register("ISLONG", getSignatureString2Boolean(isLong), isLong _)
-    functions.register("ISFLOAT", getSignatureString2Boolean(isFloat), isFloat _)
+    functions.deterministic {
+      functions.register("ROUND", getSignatureDouble2Int(round), round _)
+      functions.register("STR", getSignatureDouble2String(double2String), double2String _)
+      functions.register("STR", getSignatureInt2String(int2String), int2String _)
+      functions.register("STRING", getSignatureDouble2String(double2String), double2String _)
+      functions.register("STRING", getSignatureInt2String(int2String), int2String _)
+      functions.register("BASE26", getSignatureInt2String(base26), base26 _)
+      functions.register("BASEPN", getSignatureInt2String(basePn), basePn _)
+      functions.register("FLOAT", getSignatureString2Double(string2Float), string2Float _)
+      functions.register("FLOAT", getSignatureDouble2Double(float2Float), float2Float _)
+      functions.register("FLOAT", getSignatureStringDouble2Double(string2FloatWithDefault), string2FloatWithDefault _)
+      functions.register("NUMBER", getSignatureString2Double(string2Float), string2Float _)
+      functions.register("NUMBER", getSignatureDouble2Double(float2Float), float2Float _)
+      functions.register("INT", getSignatureString2Int(string2Int), string2Int _)
+      functions.register("INT", getSignatureDouble2Int(double2Int), double2Int _)
+      functions.register("INT", getSignatureLong2Int(long2Int), long2Int _)
+      functions.register("LONG", getSignatureDouble2Long(double2Long), double2Long _)
+      functions.register("LONG", getSignatureString2Long(string2Long), string2Long _)
+      functions.register("LONG", getSignatureLong2Long(long2Long), long2Long _)
+      functions.register("LONG", getSignatureInt2Long(int2Long), int2Long _)
+      functions.register("FORM", getSignatureDoubleIntInt2String(form), form _)
+      functions.register("EFORM", getSignatureDoubleIntInt2String(eform), eform _)
+      functions.register("ISINT", getSignatureString2Boolean(isInt), isInt _)
+      functions.register("ISLONG", getSignatureString2Boolean(isLong), isLong _)
+      functions.register("ISFLOAT", getSignatureString2Boolean(isFloat), isFloat _)
+    }
   }
 
   def isInt(ex1: sFun): bFun = {
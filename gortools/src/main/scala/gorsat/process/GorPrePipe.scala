@@ -28,7 +28,7 @@ package gorsat.process
 
 import gorsat.Commands.{CommandArguments, CommandParseUtilities}
 import gorsat.MacroUtilities._
-import gorsat.Script.{ScriptEngineFactory, ScriptParsers, SplitManager}
+import gorsat.Script.{BalancedSplit, ScriptEngineFactory, ScriptParsers, SplitManager}
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.gorsatGorIterator.MapAndListUtilities.singleHashMap
 import org.gorpipe.gor.GorSession
@@ -136,6 +136,7 @@ object GorPrePipe {
           val repstr = if (splitOverlap != "") "-" + splitOpt + splitSize + ":" + splitOverlap + " " else "-" + splitOpt + splitSize + " "
           mic = mic.replace(repstr, "").replace(SplitManager.WHERE_SPLIT_WINDOW, "2=2")
         }
+        mic = BalancedSplit.removeOption(mic)
       }
     }
 
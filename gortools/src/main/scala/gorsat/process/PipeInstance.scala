@@ -34,13 +34,13 @@ import gorsat.Commands._
 import gorsat.IteratorUtilities.validHeader
 import gorsat.Iterators.StdInputSourceIterator
 import gorsat.Monitors.{CancelMonitor, MemoryMonitor, TimeoutMonitor}
-import gorsat.Script.{ScriptEngineFactory, ScriptParsers}
+import gorsat.Script.{ScriptEngineFactory, ScriptParsers, SplitManager}
 import gorsat._
 import gorsat.gorsatGorIterator.gorsatGorIterator
 import gorsat.process.GorJavaUtilities.CmdParams
 import gorsat.process.GorPipe.brsConfig
 import org.gorpipe.exceptions.{GorParsingException, GorResourceException, GorUserException}
-import org.gorpipe.gor.GorContext
+import org.gorpipe.gor.{GorContext, MemoryBudget}
 import org.gorpipe.gor.analysis.GorAnalysisModule
 import org.gorpipe.model.genome.files.gor.{DriverBackedFileReader, FileReader, GorFileReaderContext}
 import org.gorpipe.model.gor.{MemoryMonitorUtil, Pipes}
@@ -108,6 +108,19 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
   val availNorCommands: Array[String] = GorPipeCommands.getNorCommands ++ process.GorInputSources.getInputSources
   var availCommands: Array[String] = availGorCommands
 
+  // Pipelined execution, the pipe is cut behind the input source and in front of the stage commands
+  val pipelineStages: Int = math.max(brsConfig.getPipelineStages, 0)
+  val pipelineStageCommands: Set[String] = brsConfig.getPipelineStageCommands.split(',').map(_.trim.toUpperCase).filter(_.nonEmpty).toSet
+  private var pipelineCuts = 0
+
+  // Stops the reader threads as soon as the query is cancelled, not only when the next row reaches a cancel monitor
+  private var cancelListener: Runnable = _
+
+  private def stageBoundary(command: String): Analysis = {
+    pipelineCuts += 1
+    StageBoundary(command, brsConfig.getPipelineBatchSize, brsConfig.getPipelineBatches)
+  }
+
   /**
     * This method takes an argument string, a boolean flag (to execute as a Nor query),
     * a boolean flag (whether this is fromMain or not), and a string header and returns an instance of rowSource.
@@ -176,6 +189,9 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
 
     PipeInstance.consoleLogger.debug("processing: {}", argString)
 
+    // Queue behind the queries already running while the process memory budget is nearly exhausted
+    MemoryBudget.global().admit(context.getSession.getRequestId)
+
     var pipeSteps = CommandParseUtilities.quoteSafeSplitAndTrim(argString, '|')
 
     if (pipeSteps.length == 0) {
@@ -291,6 +307,10 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
           theInputSource = isrc
 
           if (aPipeStep != null) {
+            // Keep one cut for the input source, added when the pipe is complete
+            if (i != firstCommand && pipelineCuts + 1 < pipelineStages && pipelineStageCommands.contains(command)) {
+              aPipeStep = stageBoundary(command) | aPipeStep
+            }
             if (!nowithin && range.chromosome != "" && range.stop >= 0 && i == firstCommand) {
               aPipeStep = WithIn(range.chromosome, range.start, range.stop) | aPipeStep
             }
@@ -322,6 +342,9 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
 
     thePipeStep = PipeInstance.injectTypeInferral(thePipeStep)
 
+    // Adjacent CALC and WHERE steps share the values of the function calls they have in common
+    thePipeStep = SharedExpressions.link(thePipeStep)
+
     PipeInstance.logger.debug("starting to run the pipe ")
 
     // Ensure gor create statements do verify order
@@ -338,6 +361,11 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
     // Add timout monitor
     thePipeStep = thePipeStep | TimeoutMonitor()
 
+    // Read the input source on a thread of its own
+    if (pipelineStages > 0 && pipeSteps.length > firstCommand) {
+      thePipeStep = stageBoundary("SOURCE") | thePipeStep
+    }
+
     // Add cancel monitor
     if (context.getSession.getSystemContext.getMonitor != null) {
       thePipeStep = CancelMonitor(context.getSession.getSystemContext.getMonitor) | thePipeStep | CancelMonitor(context.getSession.getSystemContext.getMonitor)
@@ -346,11 +374,45 @@ class PipeInstance(context: GorContext) extends gorsatGorIterator(context) {
     // todo: get row header from input source, with types if possible
     thePipeStep.setRowHeader(RowHeader(inputHeader))
 
-    theIterator = new BatchedPipeStepIteratorAdaptor(theInputSource, thePipeStep, combinedHeader, brsConfig)
+    val adaptor = new BatchedPipeStepIteratorAdaptor(theInputSource, thePipeStep, combinedHeader, brsConfig)
+    adaptor.setRequestId(context.getSession.getRequestId)
+    if (!isNorContext && !useStdin && SplitManager.isPartitionSafe(argString)) {
+      // Parallel streams run the resolved query on each split, restricted to genomic ranges of the build. Steps
+      // working within a contig, as for pgor, only get splits at contig starts.
+      val splitQuery = argString
+      val build = context.getSession.getProjectContext.getReferenceBuild
+      val rangeSize: Int = if (SplitManager.needsWholeContigs(argString)) 0 else brsConfig.getSplitRangeSize
+      val buildSplit = if (rangeSize > 0) build.getBuildSplit else null
+      adaptor.setSplits(ContigSplits.fromBuild(build.getBuildSize, buildSplit, rangeSize),
+        () => {
+          val split = PipeInstance.createGorIterator(context)
+          split.subProcessArguments(splitQuery, false, null, false, false, forcedInputHeader)
+          split.theIterator.asInstanceOf[BatchedPipeStepIteratorAdaptor]
+        })
+    }
+    theIterator = adaptor
+
+    val monitor = context.getSession.getSystemContext.getMonitor
+    if (monitor != null) {
+      removeCancelListener()
+      cancelListener = () => adaptor.terminateReading()
+      monitor.addCancelListener(cancelListener)
+    }
 
     theInputSource
   }
 
+  private def removeCancelListener(): Unit = {
+    val monitor = context.getSession.getSystemContext.getMonitor
+    if (cancelListener != null && monitor != null) monitor.removeCancelListener(cancelListener)
+    cancelListener = null
+  }
+
+  override def close(): Unit = {
+    removeCancelListener()
+    super.close()
+  }
+
   def checkHeader(forcedInputHeader: String, inputSourceCommand: String, firstCommand: Int, gorString: String): String = {
     var inputHeader = ""
     // TODO: We need to fix this, e.g. move exception handler out from parseCommand
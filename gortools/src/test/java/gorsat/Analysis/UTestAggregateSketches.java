@@ -0,0 +1,138 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class UTestAggregateSketches {
+
+    @Test
+    public void testHyperLogLogSmallSetsAreExact() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            hll.add(i % 50);
+            hll.add("s" + (i % 20));
+        }
+        hll.add(0.0);
+        hll.add(-0.0);
+        Assert.assertEquals(70, hll.estimate());
+    }
+
+    @Test
+    public void testHyperLogLogEstimateAndMerge() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            first.add(i);
+            second.add(i + 50000);
+        }
+        Assert.assertEquals(100000, first.estimate(), 5000);
+
+        first.merge(second);
+        Assert.assertEquals(150000, first.estimate(), 7500);
+
+        HyperLogLog sparse = new HyperLogLog();
+        sparse.add(-1.0);
+        first.merge(sparse);
+        sparse.merge(second);
+        Assert.assertEquals(second.estimate() + 1, sparse.estimate(), 100);
+    }
+
+    @Test
+    public void testKllExactForSmallInput() {
+        KllSketch sketch = new KllSketch();
+        for (int i = 100; i > 0; i--) sketch.add(i);
+        Assert.assertEquals(51.0, sketch.quantile(0.5), 0.0);
+        Assert.assertEquals(1.0, sketch.quantile(0.0), 0.0);
+        Assert.assertEquals(100.0, sketch.quantile(1.0), 0.0);
+        Assert.assertEquals(Double.NaN, new KllSketch().quantile(0.5), 0.0);
+    }
+
+    @Test
+    public void testKllRankError() {
+        Random random = new Random(7);
+        double[] values = new double[200000];
+        KllSketch first = new KllSketch();
+        KllSketch second = new KllSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+            if (i % 2 == 0) first.add(values[i]);
+            else second.add(values[i]);
+        }
+        first.merge(second);
+        Assert.assertEquals(values.length, first.count());
+
+        Arrays.sort(values);
+        for (double q : new double[]{0.01, 0.25, 0.5, 0.75, 0.99}) {
+            double estimate = first.quantile(q);
+            int rank = Arrays.binarySearch(values, estimate);
+            Assert.assertEquals("Rank error for quantile " + q, q, (double) rank / values.length, 0.02);
+        }
+    }
+
+    @Test
+    public void testKllItemsSketch() {
+        KllItemsSketch<String> exact = new KllItemsSketch<>();
+        for (String s : new String[]{"d", "a", "c", "b", "e"}) exact.add(s);
+        Assert.assertEquals("c", exact.quantile(0.5));
+        Assert.assertEquals("a", exact.quantile(0.0));
+        Assert.assertNull(new KllItemsSketch<String>().quantile(0.5));
+
+        KllItemsSketch<String> first = new KllItemsSketch<>();
+        KllItemsSketch<String> second = new KllItemsSketch<>();
+        for (int i = 0; i < 50000; i++) {
+            first.add(String.format("%06d", i));
+            second.add(String.format("%06d", i + 50000));
+        }
+        first.merge(second);
+        Assert.assertEquals(100000, first.count());
+        Assert.assertEquals(50000, Integer.parseInt(first.quantile(0.5)), 2000);
+        Assert.assertEquals(90000, Integer.parseInt(first.quantile(0.9)), 2000);
+    }
+
+    @Test
+    public void testHeavyHitters() {
+        HeavyHitters<String> hitters = new HeavyHitters<>(3);
+        for (int i = 0; i < 1000; i++) {
+            hitters.add("b");
+            if (i % 2 == 0) hitters.add("a");
+            if (i % 10 == 0) hitters.add("c");
+        }
+        Assert.assertTrue(hitters.isExact());
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), hitters.sortedItems());
+
+        for (int i = 0; i < 50; i++) hitters.add("x" + i);
+        Assert.assertFalse(hitters.isExact());
+        Assert.assertTrue(hitters.sortedItems().containsAll(Arrays.asList("a", "b")));
+        Assert.assertEquals(1000, hitters.count("b"));
+
+        HeavyHitters<String> other = new HeavyHitters<>(3);
+        other.add("a", 2000);
+        hitters.merge(other);
+        Assert.assertEquals(2500, hitters.count("a"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.model.genome.files.gor.Row;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UTestAggregationTable {
+
+    private static Row row(String line) {
+        return RowObj.apply(line);
+    }
+
+    private static AggregationTable table(AggregationTable.Style style, int[] groupColumns) {
+        return new AggregationTable(style, groupColumns, new int[]{3, 4}, new char[]{'f', 'a'}, true, false,
+                true, true, true, true, true, false, true, false, true, 100, ",");
+    }
+
+    @Test
+    public void testGroupKeys() {
+        GroupKeyTable keys = new GroupKeyTable(new int[]{2, 4});
+        int bx = keys.group(row("chr1\t1\tb\t0\tx"));
+        int ay = keys.group(row("chr1\t2\ta\t1\ty"));
+        int ax = keys.group(row("chr1\t3\ta\t2\tx"));
+
+        Assert.assertEquals(3, keys.size());
+        Assert.assertEquals(bx, keys.group(row("chr2\t5\tb\t9\tx")));
+        Assert.assertEquals(ay, keys.find(row("chr2\t6\ta\t9\ty")));
+        Assert.assertEquals(-1, keys.find(row("chr2\t6\ta\t9\tz")));
+        Assert.assertEquals("a\ty", keys.key(ay));
+        Assert.assertArrayEquals(new int[]{ax, ay, bx}, keys.sortedGroups());
+    }
+
+    @Test
+    public void testManyGroupsAndRetain() {
+        GroupKeyTable keys = new GroupKeyTable(new int[]{2});
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, keys.group(row("chr1\t" + i + "\tg" + i)));
+        }
+        boolean[] keep = new boolean[1000];
+        for (int i = 0; i < 1000; i += 3) keep[i] = true;
+
+        int[] mapping = keys.retain(keep);
+
+        Assert.assertEquals(334, keys.size());
+        Assert.assertEquals(-1, mapping[1]);
+        Assert.assertEquals(1, mapping[3]);
+        Assert.assertEquals(1, keys.find(row("chr1\t0\tg3")));
+        Assert.assertEquals(-1, keys.find(row("chr1\t0\tg4")));
+        Assert.assertEquals(334, keys.group(row("chr1\t0\tg4")));
+    }
+
+    @Test
+    public void testNoGroupColumns() {
+        GroupKeyTable keys = new GroupKeyTable(new int[0]);
+        Assert.assertEquals(0, keys.group(row("chr1\t1\ta")));
+        Assert.assertEquals(0, keys.group(row("chr2\t2\tb")));
+        Assert.assertEquals("", keys.key(0));
+    }
+
+    @Test
+    public void testGroupStyle() {
+        AggregationTable groups = table(AggregationTable.Style.GROUP, new int[]{2});
+        groups.add(row("chr1\t1\tg\t2.0\tb"));
+        groups.add(row("chr1\t2\tg\t1.0\ta"));
+        groups.add(row("chr1\t3\tg\tNaN\tb"));
+        groups.add(row("chr1\t4\tg\t4.0\tc"));
+        groups.add(row("chr1\t5\tg\t1.0\tb"));
+
+        StringBuilder sb = new StringBuilder();
+        groups.appendAggregates(0, sb);
+        Assert.assertEquals("\t5\t1.0\t1.5\t4.0\t1.0,2.0,4.0\t3\t2.0\t8.0\ta\tb\tc\ta,b,c\t3", sb.toString());
+    }
+
+    @Test
+    public void testRangeStyleRemovesGroups() {
+        AggregationTable groups = table(AggregationTable.Style.RANGE, new int[]{2});
+        groups.add(row("chr1\t1\tg\t2.0\tb"));
+        groups.add(row("chr1\t2\th\t1.0\ta"));
+        groups.add(row("chr1\t10\tg\t1.0\ta"));
+
+        Assert.assertEquals("2\t1.0\t2.0\t2.0\t1.0,2.0\t2\t1.5\t3.0\ta\tb\tb\ta,b\t2", groups.line(0));
+
+        groups.removeGroupsBefore("chr1", 5);
+        Assert.assertEquals(1, groups.size());
+        int g = groups.keys().find(row("chr1\t10\tg\t0\tx"));
+        Assert.assertEquals(0, g);
+        Assert.assertEquals("2\t1.0\t2.0\t2.0\t1.0,2.0\t2\t1.5\t3.0\ta\tb\tb\ta,b\t2", groups.line(g));
+        Assert.assertEquals(-1, groups.keys().find(row("chr1\t2\th\t1.0\ta")));
+    }
+
+    @Test
+    public void testSetLength() {
+        AggregationTable group = new AggregationTable(AggregationTable.Style.GROUP, new int[0], new int[]{2},
+                new char[]{'i'}, false, false, false, false, false, false, true, true, false, false, false, 10, ",");
+        AggregationTable range = new AggregationTable(AggregationTable.Style.RANGE, new int[0], new int[]{2},
+                new char[]{'i'}, false, false, false, false, false, false, true, true, false, false, false, 10, ",");
+        for (int i = 100; i < 110; i++) {
+            group.add(row("chr1\t" + i + "\t" + i));
+            range.add(row("chr1\t" + i + "\t" + i));
+        }
+        Assert.assertEquals("100,101,10...\t100,101,10...", group.line(0));
+        Assert.assertEquals("100,101\t100,101", range.line(0));
+    }
+
+    @Test
+    public void testSignedZeros() {
+        AggregationTable groups = new AggregationTable(AggregationTable.Style.GROUP, new int[0], new int[]{2},
+                new char[]{'f'}, false, false, false, false, false, true, true, false, false, false, false, 100, ",");
+        groups.add(row("chr1\t1\t0.0"));
+        groups.add(row("chr1\t2\t1.0"));
+        groups.add(row("chr1\t3\t-0.0"));
+        Assert.assertEquals("-0.0,1.0\t2", groups.line(0));
+    }
+
+    @Test
+    public void testApproximateStringMedian() {
+        AggregationTable groups = new AggregationTable(AggregationTable.Style.GROUP, new int[0], new int[]{2},
+                new char[]{'a'}, false, false, false, false, true, false, false, false, false, false, false, 100, ",",
+                true, new double[0]);
+        for (int i = 0; i < 5; i++) {
+            groups.add(row("chr1\t" + (i + 1) + "\t" + (char) ('a' + i)));
+        }
+        Assert.assertEquals("c", groups.line(0));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.model.genome.files.gor.Row;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class UTestExternalSorter {
+
+    private static List<String> rows(int count) {
+        Random random = new Random(17);
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add("chr" + (1 + random.nextInt(3)) + "\t" + random.nextInt(100) + "\t" + random.nextInt(20) + "\tr" + i);
+        }
+        return rows;
+    }
+
+    private static List<String> sort(List<String> rows, Row.SortInfo[] sortInfo, int maxRows) {
+        ExternalSorter sorter = new ExternalSorter(sortInfo, 1 << 20, maxRows);
+        for (String row : rows) sorter.add(RowObj.apply(row));
+        if (maxRows < rows.size()) Assert.assertTrue(sorter.hasSpilled());
+        List<String> sorted = new ArrayList<>();
+        sorter.finish(r -> sorted.add(r.getAllCols().toString()));
+        return sorted;
+    }
+
+    private static int column(String row, int column) {
+        return Integer.parseInt(row.split("\t")[column]);
+    }
+
+    @Test
+    public void testSortOnNumericColumnIsStable() {
+        List<String> rows = rows(5000);
+        Row.SortInfo[] sortInfo = {new Row.SortInfo(2, Row.SortOrder.REVERSE, Row.SortType.NUMBERIC)};
+        List<String> expected = new ArrayList<>(rows);
+        expected.sort(Comparator.<String, String>comparing(r -> r.split("\t")[0])
+                .thenComparingInt(r -> column(r, 1))
+                .thenComparing(Comparator.comparingInt((String r) -> column(r, 2)).reversed()));
+
+        Assert.assertEquals(expected, sort(rows, sortInfo, Integer.MAX_VALUE));
+        Assert.assertEquals(expected, sort(rows, sortInfo, 37));
+    }
+
+    @Test
+    public void testSortOnRestOfRow() {
+        List<String> rows = rows(3000);
+        List<String> expected = new ArrayList<>(rows);
+        expected.sort(Comparator.<String, String>comparing(r -> r.split("\t")[0])
+                .thenComparingInt(r -> column(r, 1))
+                .thenComparing(r -> r.substring(r.indexOf('\t', r.indexOf('\t') + 1) + 1)));
+
+        Assert.assertEquals(expected, sort(rows, new Row.SortInfo[0], 11));
+    }
+
+    @Test
+    public void testSorterIsReusable() {
+        ExternalSorter sorter = new ExternalSorter(null, 1 << 20, 2);
+        for (int pass = 0; pass < 2; pass++) {
+            sorter.add(RowObj.apply("chr2\t1\tb"));
+            sorter.add(RowObj.apply("chr1\t5\ta"));
+            sorter.add(RowObj.apply("chr1\t2\tc"));
+            List<String> sorted = new ArrayList<>();
+            sorter.finish(r -> sorted.add(r.getAllCols().toString()));
+            Assert.assertEquals(Arrays.asList("chr1\t2\tc", "chr1\t5\ta", "chr2\t1\tb"), sorted);
+        }
+    }
+
+    @Test
+    public void testSortKeyOrder() {
+        Row.SortInfo[] sortInfo = {new Row.SortInfo(2, Row.SortOrder.FORWARD, Row.SortType.NUMBERIC),
+                new Row.SortInfo(3, Row.SortOrder.REVERSE, Row.SortType.STRING)};
+        SortKey sortKey = new SortKey(sortInfo);
+        String[] values = {"-1e300", "-2.5", "-0.0", "0", "1e-10", "3", "Infinity", "NaN"};
+        String[] strings = {"\u4e00", "b\u00e9", "ba", "b", "a", ""};
+        List<Row> ordered = new ArrayList<>();
+        for (String value : values) {
+            for (String string : strings) ordered.add(RowObj.apply("chr1\t10\t" + value + "\t" + string));
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            for (int j = 0; j < ordered.size(); j++) {
+                Row a = ordered.get(i);
+                Row b = ordered.get(j);
+                Assert.assertEquals(a + " vs " + b, Integer.signum(a.advancedCompare(b, sortInfo)),
+                        Integer.signum(SortKey.compare(sortKey.encode(a), sortKey.encode(b))));
+            }
+        }
+        Assert.assertTrue(sortKey.encode(RowObj.apply("chr1\t9\t5\tb")).length
+                < sortKey.encode(RowObj.apply("chr1\t9\t5\tbb")).length);
+        Assert.assertNull(sortKey.encode(RowObj.apply("chr1\t9\tx\tb")));
+        Assert.assertTrue(SortKey.compare(sortKey.encode(RowObj.apply("chr1\t9\t5\ta")),
+                sortKey.encode(RowObj.apply("chr1\t10\t-5\ta"))) < 0);
+    }
+
+    @Test
+    public void testLoserTreeMerge() {
+        List<List<Integer>> lists = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 7; i++) {
+            List<Integer> list = new ArrayList<>();
+            for (int j = random.nextInt(50); j > 0; j--) list.add(random.nextInt(100));
+            Collections.sort(list);
+            lists.add(list);
+            expected.addAll(list);
+        }
+        Collections.sort(expected);
+
+        @SuppressWarnings("unchecked")
+        LoserTree.Source<Integer>[] sources = new LoserTree.Source[lists.size()];
+        for (int i = 0; i < sources.length; i++) {
+            java.util.Iterator<Integer> it = lists.get(i).iterator();
+            sources[i] = () -> it.hasNext() ? it.next() : null;
+        }
+        LoserTree<Integer> tree = new LoserTree<>(sources, Comparator.naturalOrder());
+        List<Integer> merged = new ArrayList<>();
+        Integer next;
+        while ((next = tree.poll()) != null) merged.add(next);
+
+        Assert.assertEquals(expected, merged);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+package gorsat.Analysis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class UTestPackedGenotypes {
+
+    private static String randomValues(Random random, int size) {
+        String alphabet = "0123456789x ";
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) sb.append(alphabet.charAt(random.nextInt(random.nextBoolean() ? 3 : alphabet.length())));
+        return sb.toString();
+    }
+
+    private static int[] expectedLdCounts(String a, String b) {
+        int[] x = new int[4];
+        for (int i = 0; i < a.length(); i++) {
+            int ga = a.charAt(i) - '0';
+            int gb = b.charAt(i) - '0';
+            if (ga < 0 || ga > 2 || gb < 0 || gb > 2) continue;
+            // Haplotype pairs: ref-allele count of a times ref-allele count of b etc.
+            int ra = 2 - ga, rb = 2 - gb;
+            x[0] += ra * rb;
+            x[1] += ra * gb;
+            x[2] += ga * rb;
+            x[3] += ga * gb;
+        }
+        return x;
+    }
+
+    @Test
+    public void testLdCounts() {
+        Random random = new Random(17);
+        for (int size : new int[]{0, 1, 63, 64, 65, 1000}) {
+            String a = randomValues(random, size);
+            String b = randomValues(random, size);
+            Assert.assertArrayEquals("size " + size, expectedLdCounts(a, b),
+                    PackedGenotypes.ldCounts(PackedGenotypes.of(a), PackedGenotypes.of(b)));
+        }
+    }
+
+    @Test
+    public void testSetGetAndCount() {
+        Random random = new Random(3);
+        String values = randomValues(random, 200);
+        PackedGenotypes genotypes = new PackedGenotypes(values.length());
+        for (int i = 0; i < values.length(); i++) genotypes.set(i, '2');
+        for (int i = 0; i < values.length(); i++) genotypes.set(i, values.charAt(i));
+
+        int[] counts = new int[4];
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            boolean known = c >= '0' && c <= '3';
+            if (known) counts[c - '0']++;
+            Assert.assertEquals(known ? c : '4', genotypes.get(i, '4'));
+        }
+        for (int g = 0; g < 4; g++) Assert.assertEquals(counts[g], genotypes.count(g));
+        Assert.assertEquals(counts[PackedGenotypes.HET], PackedGenotypes.of(values).count(PackedGenotypes.HET));
+    }
+
+    @Test
+    public void testCountWithMask() {
+        Random random = new Random(11);
+        for (int size : new int[]{1, 63, 64, 65, 1000}) {
+            String values = randomValues(random, size);
+            long[] mask = new long[(size + 63) >>> 6];
+            int[] counts = new int[4];
+            for (int i = 0; i < size; i++) {
+                if (!random.nextBoolean()) continue;
+                mask[i >>> 6] |= 1L << i;
+                char c = values.charAt(i);
+                if (c >= '0' && c <= '3') counts[c - '0']++;
+            }
+            PackedGenotypes genotypes = PackedGenotypes.of(values);
+            for (int g = 0; g < 4; g++) Assert.assertEquals("size " + size, counts[g], genotypes.count(g, mask));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class UTestSegmentStats {
+
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private static SegmentStats stats(int... lengths) {
+        SegmentStats.Collector collector = new SegmentStats.Collector();
+        for (int length : lengths) collector.add(length);
+        return collector.stats();
+    }
+
+    @Test
+    public void testCollector() {
+        int[] lengths = new int[200];
+        for (int i = 0; i < lengths.length; i++) lengths[i] = 10;
+        lengths[0] = 0;
+        lengths[1] = 100000;
+        SegmentStats stats = stats(lengths);
+        Assert.assertEquals(200, stats.count());
+        Assert.assertEquals(100000, stats.max());
+        Assert.assertEquals(15, stats.p99());
+        Assert.assertEquals(1, stats.histogram()[0]);
+        Assert.assertEquals(198, stats.histogram()[4]);
+        Assert.assertEquals(1, stats.histogram()[17]);
+    }
+
+    @Test
+    public void testSidecarFollowsTheFile() throws IOException {
+        Path file = workDir.newFile("segs.gor").toPath();
+        Files.write(file, "chrom\tbpStart\tbpStop\nchr1\t1\t10\n".getBytes());
+        Path local = SegmentStats.localPath("segs.gor", workDir.getRoot().toString());
+        Assert.assertEquals(file, local);
+        workDir.newFolder("cache");
+        Path dir = SegmentStats.directory("cache", workDir.getRoot().toString());
+        Assert.assertEquals(workDir.getRoot().toPath().resolve("cache").resolve("segstats"), dir);
+        Assert.assertNull(SegmentStats.read(local, dir, SegmentStats.stopMeasure(2)));
+
+        SegmentStats.write(local, dir, SegmentStats.stopMeasure(2), stats(9, 5000));
+        SegmentStats.write(local, dir, SegmentStats.refMeasure(3), stats(1, 2, 3));
+        Assert.assertFalse(Files.exists(workDir.getRoot().toPath().resolve("segs.gor" + SegmentStats.SUFFIX)));
+        Assert.assertEquals(1, dir.toFile().list().length);
+        Assert.assertEquals(5000, SegmentStats.read(local, dir, SegmentStats.stopMeasure(2)).max());
+        Assert.assertEquals(3, SegmentStats.read(local, dir, SegmentStats.refMeasure(3)).count());
+        Assert.assertNull(SegmentStats.read(local, dir, SegmentStats.stopMeasure(3)));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        Assert.assertNull(SegmentStats.read(local, dir, SegmentStats.stopMeasure(2)));
+    }
+
+    @Test
+    public void testFilesWithTheSameNameHaveTheirOwnSidecar() throws IOException {
+        Path first = workDir.newFolder("a").toPath().resolve("segs.gor");
+        Path second = workDir.newFolder("b").toPath().resolve("segs.gor");
+        Files.write(first, "chrom\tbpStart\tbpStop\nchr1\t1\t10\n".getBytes());
+        Files.write(second, "chrom\tbpStart\tbpStop\nchr1\t1\t10\n".getBytes());
+        Files.setLastModifiedTime(second, Files.getLastModifiedTime(first));
+        Path dir = SegmentStats.directory(workDir.newFolder("cache").toString(), null);
+
+        SegmentStats.write(first, dir, SegmentStats.stopMeasure(2), stats(9));
+        Assert.assertNull(SegmentStats.read(second, dir, SegmentStats.stopMeasure(2)));
+        SegmentStats.write(second, dir, SegmentStats.stopMeasure(2), stats(5000));
+        Assert.assertEquals(9, SegmentStats.read(first, dir, SegmentStats.stopMeasure(2)).max());
+        Assert.assertEquals(5000, SegmentStats.read(second, dir, SegmentStats.stopMeasure(2)).max());
+    }
+
+    @Test
+    public void testRemoteFilesHaveNoSidecar() {
+        Assert.assertNull(SegmentStats.localPath("s3://bucket/segs.gor", null));
+        Assert.assertNull(SegmentStats.localPath("<(gor segs.gor)", null));
+        Assert.assertNull(SegmentStats.read(null, null, SegmentStats.stopMeasure(2)));
+        Assert.assertNull(SegmentStats.directory(null, null));
+        Assert.assertNull(SegmentStats.directory("s3://bucket/cache", null));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class UTestSegmentWindow {
+
+    private static class Seg {
+        final String chr;
+        final int start;
+        final int stop;
+
+        Seg(String chr, int start, int stop) {
+            this.chr = chr;
+            this.start = start;
+            this.stop = stop;
+        }
+    }
+
+    private static List<Seg> overlaps(SegmentWindow<Seg> window, String chr, int from, int to) {
+        List<Seg> result = new ArrayList<>();
+        window.forEachOverlap(chr, from, to, s -> {
+            result.add(s);
+            return false;
+        });
+        return result;
+    }
+
+    @Test
+    public void testOverlapsMatchLinearScan() {
+        Random random = new Random(7);
+        SegmentWindow<Seg> window = new SegmentWindow<>();
+        List<Seg> all = new ArrayList<>();
+        int pos = 0;
+        String chr = "chr1";
+        for (int i = 0; i < 5000; i++) {
+            if (i == 2500) {
+                chr = "chr2";
+                pos = 0;
+            }
+            pos += random.nextInt(10);
+            int length = random.nextInt(100) == 0 ? 100000 : 1 + random.nextInt(20);
+            Seg seg = new Seg(chr, pos, pos + length);
+            window.add(seg.chr, seg.start, seg.stop, seg);
+            all.add(seg);
+
+            int from = pos - random.nextInt(50);
+            int to = from + random.nextInt(30);
+            List<Seg> expected = new ArrayList<>();
+            for (Seg s : all) {
+                if (s.chr.equals(chr) && s.start < to && s.stop > from) expected.add(s);
+            }
+            Assert.assertEquals(expected, overlaps(window, chr, from, to));
+
+            String evictChr = chr;
+            int evictBefore = pos - 200;
+            window.evictBefore(evictChr, evictBefore);
+            all.removeIf(s -> s.chr.compareTo(evictChr) < 0 || s.chr.equals(evictChr) && s.stop < evictBefore);
+        }
+    }
+
+    @Test
+    public void testVisitorRemovesSegments() {
+        SegmentWindow<Seg> window = new SegmentWindow<>();
+        for (int i = 0; i < 10; i++) {
+            Seg seg = new Seg("chr1", i, i + 5);
+            window.add(seg.chr, seg.start, seg.stop, seg);
+        }
+        window.forEachOverlap("chr1", 3, 4, s -> s.start % 2 == 0);
+        Assert.assertEquals(8, window.size());
+        List<Seg> left = overlaps(window, "chr1", 0, 100);
+        Assert.assertEquals(8, left.size());
+        for (Seg s : left) Assert.assertFalse(s.start == 0 || s.start == 2);
+    }
+
+    @Test
+    public void testEvictDropsEndedSegments() {
+        SegmentWindow<Seg> window = new SegmentWindow<>();
+        window.add("chr1", 0, 10, new Seg("chr1", 0, 10));
+        window.add("chr1", 5, 1000, new Seg("chr1", 5, 1000));
+        window.add("chr2", 1, 2, new Seg("chr2", 1, 2));
+        window.evictBefore("chr2", 0);
+        window.evict();
+        Assert.assertEquals(1, window.size());
+        Iterator<Seg> it = overlaps(window, "chr2", 0, 10).iterator();
+        Assert.assertEquals("chr2", it.next().chr);
+        Assert.assertTrue(overlaps(window, "chr1", 0, 2000).isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis;
+
+import org.gorpipe.gor.MemoryBudget;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UTestSpillingAggregation {
+
+    private static SpillingAggregation aggregation(long budget) {
+        return aggregation(budget, null);
+    }
+
+    private static SpillingAggregation aggregation(long budget, String query) {
+        return new SpillingAggregation(() -> new AggregationTable(AggregationTable.Style.GROUP, new int[]{2},
+                new int[]{3}, new char[]{'i'}, true, false, true, true, true, true, false, false, true, false, true,
+                100, ","), (table, group, sb) -> {
+            table.keys().appendKey(group, sb);
+            table.appendAggregates(group, sb);
+        }, budget, query);
+    }
+
+    private static List<String> aggregate(SpillingAggregation aggregation, int rows, int groups) {
+        for (int i = 0; i < rows; i++) {
+            aggregation.add(RowObj.apply("chr1\t" + i + "\tg" + (i * 7919) % groups + "\t" + i % 13));
+        }
+        List<String> lines = new ArrayList<>();
+        aggregation.flush(lines::add);
+        return lines;
+    }
+
+    @Test
+    public void testSpilledAggregationEqualsInMemory() {
+        SpillingAggregation inMemory = aggregation(Long.MAX_VALUE);
+        List<String> expected = aggregate(inMemory, 50000, 3000);
+        Assert.assertFalse(inMemory.isSpilling());
+        Assert.assertEquals(3000, expected.size());
+
+        SpillingAggregation spilling = aggregation(16 * 1024);
+        for (int i = 0; i < 50000; i++) {
+            spilling.add(RowObj.apply("chr1\t" + i + "\tg" + (i * 7919) % 3000 + "\t" + i % 13));
+        }
+        Assert.assertTrue(spilling.isSpilling());
+        List<String> lines = new ArrayList<>();
+        spilling.flush(lines::add);
+        Assert.assertEquals(expected, lines);
+        Assert.assertFalse(spilling.isSpilling());
+    }
+
+    @Test
+    public void testRecursiveSpillWithoutBudget() {
+        List<String> expected = aggregate(aggregation(Long.MAX_VALUE), 5000, 700);
+        Assert.assertEquals(expected, aggregate(aggregation(0), 5000, 700));
+    }
+
+    @Test
+    public void testReuseAfterFlush() {
+        SpillingAggregation aggregation = aggregation(0);
+        List<String> first = aggregate(aggregation, 1000, 50);
+        Assert.assertEquals(first, aggregate(aggregation, 1000, 50));
+        Assert.assertEquals("g0\t20\t0\t6\t12\t13\t5.7\t114", first.get(0));
+    }
+
+    @Test
+    public void testTableIsReservedForTheQuery() {
+        String query = "UTestSpillingAggregation-" + System.nanoTime();
+        SpillingAggregation aggregation = aggregation(Long.MAX_VALUE, query);
+        for (int i = 0; i < 50000; i++) {
+            aggregation.add(RowObj.apply("chr1\t" + i + "\tg" + i + "\t" + i % 13));
+        }
+        Assert.assertFalse(aggregation.isSpilling());
+        Assert.assertTrue(MemoryBudget.global().getQueryBytes(query) > 0);
+
+        List<String> lines = new ArrayList<>();
+        aggregation.flush(lines::add);
+        Assert.assertEquals(50000, lines.size());
+        Assert.assertEquals(0, MemoryBudget.global().getQueryBytes(query));
+    }
+}
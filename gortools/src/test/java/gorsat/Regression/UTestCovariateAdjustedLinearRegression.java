@@ -0,0 +1,87 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Regression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static gorsat.Regression.ComputationTestUtils.getRandomMatrix;
+import static gorsat.Regression.ComputationTestUtils.getRandomVector;
+
+public class UTestCovariateAdjustedLinearRegression {
+
+    @Test
+    public void testConstructor_IllegalArguments() {
+        boolean success = false;
+        try {
+            new CovariateAdjustedLinearRegression(new double[1][2], new double[2], 2, 1);
+        } catch (IllegalArgumentException e) {
+            success = true;
+        }
+        Assert.assertTrue(success);
+    }
+
+    @Test
+    public void testSameAsLinearRegression() {
+        for (int numberOfCovariates = 0; numberOfCovariates < 4; ++numberOfCovariates) {
+            for (int numberOfSamples = numberOfCovariates + 3; numberOfSamples < 60; numberOfSamples += 7) {
+                testSameAsLinearRegression(numberOfSamples, numberOfCovariates, 5);
+            }
+        }
+    }
+
+    private void testSameAsLinearRegression(int numberOfSamples, int numberOfCovariates, int numberOfGenotypes) {
+        final double[][] covariates = getRandomMatrix(numberOfCovariates, numberOfSamples, 0, 10);
+        final double[] y = getRandomVector(numberOfSamples, -10, 10);
+        final double[][] genotypes = getRandomMatrix(numberOfGenotypes, numberOfSamples, 0, 2);
+        final double[][] genotypesCopy = Arrays.stream(genotypes).map(double[]::clone).toArray(double[][]::new);
+
+        final CovariateAdjustedLinearRegression car = new CovariateAdjustedLinearRegression(covariates, y, numberOfSamples, numberOfGenotypes);
+        car.runRegressions(genotypesCopy, numberOfGenotypes);
+
+        for (int i = 0; i < numberOfGenotypes; ++i) {
+            final double[][] x = new double[numberOfCovariates + 1][];
+            x[0] = genotypes[i].clone();
+            for (int j = 0; j < numberOfCovariates; ++j) {
+                x[j + 1] = covariates[j].clone();
+            }
+            final LinearRegression lr = new LinearRegression(numberOfSamples, numberOfCovariates + 1);
+            lr.setData(x, numberOfSamples);
+            lr.runRegression(y.clone());
+
+            assertRelativelyEquals(lr.beta, car.beta[i]);
+            assertRelativelyEquals(lr.betaError, car.betaError[i]);
+            assertRelativelyEquals(lr.tStats, car.tStats[i]);
+            assertRelativelyEquals(lr.pValues, car.pValues[i]);
+        }
+    }
+
+    private static void assertRelativelyEquals(double[] expected, double[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals(expected[i], actual[i], 1e-9 * Math.max(1, Math.abs(expected[i])));
+        }
+    }
+}
@@ -69,6 +69,20 @@ public class UTestLogisticRegression {
         Assert.assertArrayEquals(beta2, beta3, 0);
     }
 
+    @Test
+    public void testInitialBeta() {
+        final double[][] studyHours = {{0.5f, 0.75f, 1, 1.25f, 1.5f, 1.75f, 1.75f, 2, 2.25f, 2.5f, 2.75f, 3, 3.25f, 3.5f, 4, 4.25f, 4.5f, 4.75f, 5, 5.5f}};
+        final boolean[] passOrFail = {false, false, false, false, false, false, true, false, true, false, true, false, true, false, true, true, true, true, true, true};
+        final LogisticRegression cold = LogisticRegression.getGorLogisticRegressionObject(1, passOrFail.length);
+        Assert.assertTrue(cold.runRegression(studyHours, passOrFail, passOrFail.length, 1e-5, 20));
+        final LogisticRegression warm = LogisticRegression.getGorLogisticRegressionObject(1, passOrFail.length);
+        Assert.assertTrue(warm.runRegression(studyHours, passOrFail, passOrFail.length, 1e-5, 20, new double[]{-4, 1.5}));
+        Assert.assertTrue(warm.numberOfIterations < cold.numberOfIterations);
+        Assert.assertArrayEquals(cold.beta, warm.beta, 1e-4);
+        Assert.assertArrayEquals(cold.zStats, warm.zStats, 1e-4);
+        Assert.assertArrayEquals(cold.pValues, warm.pValues, 1e-4);
+    }
+
     @Test
     public void generalTestSingleCovariate() {
         final double[][] x = {{-24.087, 24.363, 5.322, -41.106, 0.861, 6.006, 28.906, 4.990, -2.064, 42.520, -2.360, 21.635, -47.002, -3.236, 19.639, -49.442, 33.665, 25.869, 48.999, 15.649, -13.529, 34.842, 8.851, -17.395, -33.688, -41.427, 7.891, 32.655, -28.831, 20.174, -21.875, -29.408, 27.868, 2.730, -26.620, -21.906, -49.489, -11.146, 33.083, -7.870, -27.778, -32.197, 33.854, 35.251, 32.954, -16.500, 22.687, 49.642, -8.592, -1.581, 49.770, -9.968, 17.438, -21.887, -3.530, 11.940, 12.856, -40.952, 24.545, -48.849, 3.174, 48.457, -43.633, 27.974, 40.554, 19.082, 32.728, 25.508, -40.851, 3.961, -15.235, -14.979, 27.993, -33.181, -0.409, 33.507, -46.259, 22.170, -44.579, 8.579, -4.191, 5.884, -48.713, -25.909, -30.153, -48.238, -41.109, 26.229, 31.984, 12.586, -20.295, -25.746, -44.104, -24.875, -0.895, 42.741, 37.528, -42.259, -8.822, -17.202}};
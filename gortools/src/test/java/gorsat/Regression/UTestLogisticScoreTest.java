@@ -0,0 +1,108 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Regression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class UTestLogisticScoreTest {
+
+    @Test
+    public void testNullModelStatistics() {
+        final Random random = new Random(1);
+        final int numberOfSamples = 500;
+        final double[][] covariates = getCovariates(random, 2, numberOfSamples);
+        final boolean[] y = getPhenotypes(random, covariates, numberOfSamples);
+
+        final LogisticRegression nullModel = LogisticRegression.getGorLogisticRegressionObject(2, numberOfSamples);
+        Assert.assertTrue(nullModel.runRegression(covariates, y, numberOfSamples, 1e-5, 20));
+        final LogisticScoreTest scoreTest = new LogisticScoreTest(covariates, y, numberOfSamples, nullModel.beta);
+        Assert.assertArrayEquals(nullModel.zStats, scoreTest.nullZStats, 1e-6);
+        Assert.assertArrayEquals(nullModel.pValues, scoreTest.nullPValues, 1e-6);
+    }
+
+    @Test
+    public void testScoreCloseToWald() {
+        final Random random = new Random(2);
+        final int numberOfSamples = 2000;
+        final double[][] covariates = getCovariates(random, 1, numberOfSamples);
+        final boolean[] y = getPhenotypes(random, covariates, numberOfSamples);
+        final LogisticRegression nullModel = LogisticRegression.getGorLogisticRegressionObject(1, numberOfSamples);
+        Assert.assertTrue(nullModel.runRegression(covariates, y, numberOfSamples, 1e-5, 20));
+        final LogisticScoreTest scoreTest = new LogisticScoreTest(covariates, y, numberOfSamples, nullModel.beta);
+
+        final LogisticRegression full = LogisticRegression.getGorLogisticRegressionObject(2, numberOfSamples);
+        for (int variant = 0; variant < 10; ++variant) {
+            final double[] g = new double[numberOfSamples];
+            for (int i = 0; i < numberOfSamples; ++i) {
+                g[i] = random.nextInt(3);
+            }
+            scoreTest.test(g);
+            Assert.assertTrue(full.runRegression(new double[][]{g, covariates[0]}, y, numberOfSamples, 1e-5, 20));
+            Assert.assertEquals(full.zStats[1], scoreTest.zStat, 0.05);
+            Assert.assertEquals(full.beta[1], scoreTest.beta, 0.01);
+        }
+    }
+
+    @Test
+    public void testInterceptOnly() {
+        final boolean[] y = {true, false, false, true, false, false, false, true, false, false};
+        final double[] g = {2, 0, 1, 1, 0, 0, 0, 2, 1, 0};
+        final LogisticScoreTest scoreTest = new LogisticScoreTest(new double[0][], y, y.length, new double[]{Math.log(3.0 / 7)});
+        scoreTest.test(g);
+        //With only an intercept the score is sum (g_i - mean(g))y_i and its variance p(1-p) sum (g_i - mean(g))^2.
+        final double meanG = 0.7;
+        double score = 0;
+        double variance = 0;
+        for (int i = 0; i < y.length; ++i) {
+            score += (g[i] - meanG) * (y[i] ? 1 : 0);
+            variance += 0.3 * 0.7 * (g[i] - meanG) * (g[i] - meanG);
+        }
+        Assert.assertEquals(score, scoreTest.score, 1e-10);
+        Assert.assertEquals(variance, scoreTest.variance, 1e-10);
+    }
+
+    private static double[][] getCovariates(Random random, int numberOfCovariates, int numberOfSamples) {
+        final double[][] covariates = new double[numberOfCovariates][numberOfSamples];
+        for (double[] covariate : covariates) {
+            for (int i = 0; i < numberOfSamples; ++i) {
+                covariate[i] = random.nextGaussian();
+            }
+        }
+        return covariates;
+    }
+
+    private static boolean[] getPhenotypes(Random random, double[][] covariates, int numberOfSamples) {
+        final boolean[] y = new boolean[numberOfSamples];
+        for (int i = 0; i < numberOfSamples; ++i) {
+            double eta = -0.5;
+            for (double[] covariate : covariates) {
+                eta += 0.5 * covariate[i];
+            }
+            y[i] = random.nextDouble() < 1 / (1 + Math.exp(-eta));
+        }
+        return y;
+    }
+}
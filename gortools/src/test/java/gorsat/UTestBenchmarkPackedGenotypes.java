@@ -0,0 +1,114 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.gorpipe.test.SlowTests;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+
+public class UTestBenchmarkPackedGenotypes {
+
+    static private final Logger log = LoggerFactory.getLogger(UTestBenchmarkPackedGenotypes.class);
+
+    private static final int SAMPLES = 500000;
+    private static final int BUCKETS = 50;
+    private static final int VARIANTS = 200;
+
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    @Test
+    @Ignore
+    @Category(SlowTests.class)
+    public void runQuery() throws IOException {
+        String buckets = createBuckets();
+        String pheno = createPheno();
+        String values = createValues();
+
+        execute("csvsel", "gor " + values + " | csvsel -vs 1 " + buckets + " <(nor " + buckets + " | select #1 | where random() < 0.5) | group chrom -count", 3);
+        execute("csvcc", "gor " + values + " | csvcc -vs 1 " + buckets + " " + pheno + " | group chrom -count", 3);
+    }
+
+    private String createBuckets() throws IOException {
+        File file = workDir.newFile("buckets.tsv");
+        try (BufferedWriter buf = new BufferedWriter(new FileWriter(file))) {
+            buf.write("#PN\tbucket\n");
+            for (int i = 0; i < SAMPLES; i++) {
+                buf.write("PN" + i + "\tb" + (i % BUCKETS) + "\n");
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    private String createPheno() throws IOException {
+        File file = workDir.newFile("pheno.tsv");
+        Random random = new Random(1);
+        try (BufferedWriter buf = new BufferedWriter(new FileWriter(file))) {
+            buf.write("#PN\tcc\n");
+            for (int i = 0; i < SAMPLES; i++) {
+                buf.write("PN" + i + "\t" + (random.nextBoolean() ? "case" : "ctrl") + "\n");
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    private String createValues() throws IOException {
+        File file = workDir.newFile("values.gor");
+        Random random = new Random(2);
+        char[] row = new char[SAMPLES / BUCKETS];
+        try (BufferedWriter buf = new BufferedWriter(new FileWriter(file))) {
+            buf.write("#chrom\tpos\tref\talt\tbucket\tvalues\n");
+            for (int v = 1; v <= VARIANTS; v++) {
+                for (int b = 0; b < BUCKETS; b++) {
+                    for (int i = 0; i < row.length; i++) row[i] = (char) ('0' + random.nextInt(4));
+                    buf.write("chr1\t" + v + "\tG\tA\tb" + b + "\t");
+                    buf.write(row);
+                    buf.write('\n');
+                }
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    private void execute(String name, String query, int iterations) {
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.currentTimeMillis();
+            TestUtils.runGorPipeCount(query);
+            total += System.currentTimeMillis() - start;
+        }
+        log.info(name + "\t" + SAMPLES + " samples\t" + total / iterations + " ms");
+    }
+}
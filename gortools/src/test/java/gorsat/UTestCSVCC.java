@@ -53,4 +53,25 @@ public class UTestCSVCC {
         int count = TestUtils.runGorPipeCount(args);
         Assert.assertEquals(0, count);
     }
+
+    @Test
+    public void testCsvccFixedValueSize() {
+        String[] args = new String[]{"create #dummy# = gorrow chr1,1,2 | signature -timeres 1 | calc x '0,1,2,3,4,5,6,7,8,9' | calc y x | calc z x | split x | split y | split z | calc rownum int(x)+10*int(y)+100*int(z) | sort 1 -c rownum:n;\n" +
+                "    \n" +
+                "    create #pnbuck# = nor [#dummy#] | select rownum | calc bucket 'bucket'+str(1+div(rownum,100)) | rename rownum PN | select PN,bucket | top 352 | sort -c bucket,pn;\n" +
+                "    \n" +
+                "    create #pheno# = nor [#pnbuck#] | select #1 | where random() < 0.5 | calc pheno if(random()<0.8,'A1,A2','C1,C2') | split pheno;\n" +
+                "    \n" +
+                "    create #gt# = gorrow chr1,1,2 | calc x '1,2,3' | split x | select chrom,x | calc ref 'G' | calc alt 'A'  | select 1-4 | distinct | top 100 | multimap -cartesian -h [#pnbuck#] | calc gt if(mod(pn,7)=0,'x',str(mod(pn,3)));\n" +
+                "    \n" +
+                "    create #hor# = gor [#gt#] | sort 1 -c #3,#4,bucket,PN\n" +
+                "    | group 1 -gc #3,#4,bucket -lis -sc gt -len 100000 | rename lis_gt values;\n" +
+                "    \n" +
+                "    gor [#hor#] | calc values replace(values,',','') | csvcc -gc #3,#4 -vs 1 [#pnbuck#] [#pheno#] | calc method 'fixed'\n" +
+                "    | merge <(gor [#hor#] | csvcc -gc #3,#4 [#pnbuck#] [#pheno#] | calc method 'separated')\n" +
+                "    | group 1 -gc 3-method[-1] -dis -set -sc method | where dis_method != 2\n"};
+
+        int count = TestUtils.runGorPipeCount(args);
+        Assert.assertEquals(0, count);
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import gorsat.process.GenericSessionFactory;
+import gorsat.process.PipeInstance;
+import org.gorpipe.model.genome.files.gor.GorMonitor;
+import org.gorpipe.model.gor.iterators.RowSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UTestCancelReading {
+
+    @Test
+    public void testCancelListenersCalledOnce() {
+        GorMonitor monitor = new GorMonitor();
+        AtomicInteger calls = new AtomicInteger();
+        Runnable listener = calls::incrementAndGet;
+        monitor.addCancelListener(listener);
+
+        monitor.setCancelled(true);
+        monitor.setCancelled(true);
+        Assert.assertEquals(1, calls.get());
+
+        monitor.setCancelled(false);
+        monitor.removeCancelListener(listener);
+        monitor.setCancelled(true);
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCancelStopsReading() throws InterruptedException {
+        GorMonitor monitor = new GorMonitor();
+        try (PipeInstance pipe = PipeInstance.createGorIterator(new GenericSessionFactory().create().getGorContext())) {
+            pipe.init("gorrows -p chr1:0-1000000000 | calc x pos+1", monitor);
+            RowSource iterator = pipe.theIterator();
+            AtomicInteger count = new AtomicInteger();
+            Thread t = new Thread(() -> {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    count.incrementAndGet();
+                }
+            });
+            t.start();
+            for (int i = 0; i < 10000 && count.get() == 0; i++) {
+                Thread.sleep(1);
+            }
+
+            monitor.setCancelled(true);
+            t.join(2000);
+            Assert.assertFalse("Reading continued after cancel", t.isAlive());
+            Assert.assertTrue(count.get() < 1000000000);
+        }
+    }
+}
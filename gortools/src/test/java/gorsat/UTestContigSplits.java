@@ -0,0 +1,84 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class UTestContigSplits {
+
+    private static Map<String, Integer> sizes() {
+        Map<String, Integer> sizes = new HashMap<>();
+        sizes.put("chr2", 200);
+        sizes.put("chr1", 100);
+        sizes.put("chr10", 50);
+        return sizes;
+    }
+
+    @Test
+    public void testWholeContigs() {
+        ContigSplits splits = ContigSplits.fromBuild(sizes(), null, 0);
+
+        // Before all, chr10 start, chr2 start, after all
+        Assert.assertEquals(4, splits.count());
+        Assert.assertEquals("chr10", splits.getChr(1));
+        Assert.assertEquals("chr2", splits.getChr(2));
+        Assert.assertEquals(0, splits.getPos(2));
+        Assert.assertEquals(350, splits.bases(0, 3));
+        Assert.assertEquals(200, splits.bases(2, 3));
+    }
+
+    @Test
+    public void testSplitPointsAndRangeSize() {
+        Map<String, Integer> buildSplit = new HashMap<>();
+        buildSplit.put("chr1", 40);
+        ContigSplits splits = ContigSplits.fromBuild(sizes(), buildSplit, 75);
+
+        // chr1: 40, 75; chr10: 0; chr2: 0, 75, 150
+        Assert.assertEquals(8, splits.count());
+        Assert.assertEquals(40, splits.getPos(1));
+        Assert.assertEquals(75, splits.getPos(2));
+        Assert.assertEquals("chr10", splits.getChr(3));
+        Assert.assertEquals(150, splits.getPos(6));
+        Assert.assertEquals(35, splits.bases(1, 2));
+    }
+
+    @Test
+    public void testPrecedes() {
+        ContigSplits splits = ContigSplits.fromBuild(sizes(), null, 100);
+
+        Assert.assertFalse(splits.precedes(RowObj.StoR("chr1\t1"), 0));
+        Assert.assertTrue(splits.precedes(RowObj.StoR("chrZ\t1"), splits.count() - 1));
+        // chr2 starts at boundary 2 and is cut at 100 by boundary 3
+        Assert.assertEquals(5, splits.count());
+        Assert.assertEquals("chr2", splits.getChr(3));
+        Assert.assertTrue(splits.precedes(RowObj.StoR("chr2\t99"), 3));
+        Assert.assertFalse(splits.precedes(RowObj.StoR("chr2\t100"), 3));
+        Assert.assertTrue(splits.precedes(RowObj.StoR("chr10\t49"), 2));
+        Assert.assertFalse(splits.precedes(RowObj.StoR("chr3\t1"), 3));
+    }
+}
@@ -28,14 +28,18 @@ import gorsat.Commands.Analysis;
 import org.gorpipe.model.gor.iterators.RowSource;
 import gorsat.Analysis.TopN;
 import gorsat.process.GenericSessionFactory;
+import gorsat.process.PipeInstance;
 import gorsat.process.ProcessIteratorAdaptor;
+import org.gorpipe.model.genome.files.gor.Row;
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Created by sigmar on 13/10/15.
@@ -70,4 +74,34 @@ public class UTestGorPipeStepIteratorAdaptor {
         int count = TestUtils.runGorPipeCount(query);
         Assert.assertEquals("Incorrect number of lines received from gor command server", 25, count);
     }
+
+    @Test
+    public void testParallelStreamKeepsGenomicOrder() {
+        String query = "gor ../tests/data/gor/genes.gorz | group chrom -count";
+        List<String> sequential = streamQuery(query, false);
+        List<String> parallel = streamQuery(query, true);
+
+        Assert.assertEquals(25, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testParallelStreamOfGenomeWideSteps() {
+        String[] queries = {
+                "gor ../tests/data/gor/genes.gorz | top 10",
+                "gor ../tests/data/gor/genes.gorz | group genome -count",
+                "gor ../tests/data/gor/genes.gorz | rownum | where rownum <= 3"
+        };
+        for (String query : queries) {
+            Assert.assertEquals(query, streamQuery(query, false), streamQuery(query, true));
+        }
+    }
+
+    private static List<String> streamQuery(String query, boolean parallel) {
+        try (PipeInstance pipe = PipeInstance.createGorIterator(new GenericSessionFactory().create().getGorContext())) {
+            pipe.subProcessArguments(query, false, null, false, false, "");
+            BatchedPipeStepIteratorAdaptor adaptor = (BatchedPipeStepIteratorAdaptor) pipe.theIterator();
+            return adaptor.getStream(parallel).map(Row::toString).collect(Collectors.toList());
+        }
+    }
 }
@@ -25,13 +25,22 @@ package gorsat;
 import org.gorpipe.model.genome.files.gor.Row;
 import org.gorpipe.exceptions.GorParsingException;
 import org.gorpipe.model.gor.iterators.RowSource;
+import org.gorpipe.test.utils.FileTestUtils;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Created by sigmar on 13/06/16.
  */
 public class UTestGorRank {
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
     @Test
     public void testGorRank() {
         String query = "gor ../tests/data/gor/dbsnp_test.gorz | rank 10 POS -rmax 1 | top 10";
@@ -204,4 +213,43 @@ public class UTestGorRank {
             Assert.assertTrue("Should get parsing exception", ex.getMessage().contains("Cannot have binSize"));
         }
     }
+
+    @Test
+    public void testGorRankOneBeforeRankedRows() throws IOException {
+        String contents = "Chrom\tPos\tGroup\tData\n" +
+                "chr1\t1\ta\t5\n" +
+                "chr1\t2\ta\t3\n" +
+                "chr1\t3\tb\t1\n" +
+                "chr1\t4\ta\t5\n" +
+                "chr1\t5\tb\t2\n";
+        File file = FileTestUtils.createTempFile(workDir.getRoot(), "test.gor", contents);
+        String expected = "Chrom\tPos\tGroup\tData\trank_Data\tbinCount\trank1_Data\n" +
+                "chr1\t1\ta\t5\t1\t3\t5\n" +
+                "chr1\t2\ta\t3\t2\t3\t5\n" +
+                "chr1\t3\tb\t1\t2\t2\t2\n" +
+                "chr1\t4\ta\t5\t1\t3\t5\n" +
+                "chr1\t5\tb\t2\t1\t2\t2\n";
+
+        Assert.assertEquals(expected, TestUtils.runGorPipe("gor " + file.getAbsolutePath() + " | rank genome Data -gc Group -c -b"));
+    }
+
+    @Test
+    public void testGorRankSpillsRowsToDisk() throws IOException {
+        StringBuilder contents = new StringBuilder("Chrom\tPos\tGroup\tData\n");
+        for (int i = 0; i < 20000; i++) {
+            contents.append("chr1\t").append(i + 1).append("\tg").append(i % 300).append('\t').append((i * 7919) % 101)
+                    .append('\n');
+        }
+        File file = FileTestUtils.createTempFile(workDir.getRoot(), "test.gor", contents.toString());
+        String query = "gor " + file.getAbsolutePath() + " | rank chrom Data -gc Group -z -c -q -b";
+        String expected = TestUtils.runGorPipe(query);
+
+        System.setProperty("gor.spill.memory.mb", "0");
+        try {
+            Assert.assertEquals(expected, TestUtils.runGorPipe(query));
+        } finally {
+            System.clearProperty("gor.spill.memory.mb");
+        }
+        Assert.assertEquals(20001, expected.split("\n").length);
+    }
 }
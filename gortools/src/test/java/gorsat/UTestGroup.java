@@ -346,6 +346,68 @@ public class UTestGroup {
         Assert.assertEquals(expected, result);
     }
 
+    @Test
+    public void quantiles() throws IOException {
+        StringBuilder contents = new StringBuilder("Chrom\tPos\tData\n");
+        for (int i = 1; i <= 100; i++) {
+            contents.append("chr1\t").append(i).append('\t').append(i).append('\n');
+        }
+        String expected = "Chrom\tbpStart\tbpStop\tmed_Data\tp5_Data\tp97_5_Data\tdis_Data\n" +
+                "chr1\t0\t250000000\t51\t6\t98\t100\n";
+
+        final File file = FileTestUtils.createTempFile(workDir.getRoot(), "test.gor", contents.toString());
+        final String query = "gor " + file.getAbsolutePath() + " | group chrom -ic Data -med -dis -quantiles 0.05,0.975";
+        Assert.assertEquals(expected, TestUtils.runGorPipe(query));
+        // small groups are exact in approximate mode
+        Assert.assertEquals(expected, TestUtils.runGorPipe(query + " -approx"));
+    }
+
+    @Test
+    public void approximateAggregates() throws IOException {
+        StringBuilder contents = new StringBuilder("Chrom\tPos\tData\tName\n");
+        for (int i = 0; i < 20000; i++) {
+            contents.append("chr1\t").append(i + 1).append('\t').append(i % 10000).append("\tn").append(i % 3)
+                    .append('\n');
+        }
+        final File file = FileTestUtils.createTempFile(workDir.getRoot(), "test.gor", contents.toString());
+        final String query = "gor " + file.getAbsolutePath() + " | group chrom -ic Data -sc Name -med -dis -set -approx";
+        String[] lines = TestUtils.runGorPipeLines(query);
+
+        Assert.assertEquals("Chrom\tbpStart\tbpStop\tmed_Data\tset_Data\tdis_Data\tmed_Name\tset_Name\tdis_Name",
+                lines[0].trim());
+        String[] columns = lines[1].trim().split("\t");
+        Assert.assertEquals(5000, Integer.parseInt(columns[3]), 200);
+        Assert.assertEquals(10000, Integer.parseInt(columns[5]), 500);
+        Assert.assertEquals("n1", columns[6]);
+        Assert.assertEquals("n0,n1,n2", columns[7]);
+        Assert.assertEquals("3", columns[8]);
+    }
+
+    @Test
+    public void spillsGroupsToDisk() throws IOException {
+        StringBuilder contents = new StringBuilder("Chrom\tPos\tGroup\tData\n");
+        for (int i = 0; i < 20000; i++) {
+            contents.append("chr1\t").append(i + 1).append("\tg").append((i * 7919) % 5000).append('\t').append(i % 97)
+                    .append('\n');
+        }
+        final File file = FileTestUtils.createTempFile(workDir.getRoot(), "test.gor", contents.toString());
+        final String query = "gor " + file.getAbsolutePath() + " | group chrom -gc Group -ic Data -count -med -set -avg";
+        String expected = TestUtils.runGorPipe(query);
+
+        System.setProperty("gor.spill.memory.mb", "0");
+        try {
+            Assert.assertEquals(expected, TestUtils.runGorPipe(query));
+        } finally {
+            System.clearProperty("gor.spill.memory.mb");
+        }
+        Assert.assertEquals(5001, expected.split("\n").length);
+    }
+
+    @Test(expected = GorParsingException.class)
+    public void quantileOutOfRange() {
+        TestUtils.runGorPipe("gor " + testFileWithIntegerValuesPath + " | group chrom -ic value -quantiles 0.5,1.5");
+    }
+
     private void assertValueArray(String line, int offset, double[] expectedValues, String[] functions) {
         String[] values = line.split("\t", -1);
         int count = 0;
@@ -24,6 +24,7 @@ package gorsat;
 
 import org.gorpipe.gor.clients.LocalFileCacheClient;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -73,6 +74,28 @@ public class UTestLocalFileCacheTest {
         Assert.assertTrue(lookedupFile.contains(fingerPrint));
     }
 
+    @Test
+    public void testLookupAfterFileRemovedByOtherProcess() throws IOException {
+        String fingerPrint = "test123";
+        String extension = ".gor";
+        LocalFileCacheClient client = new LocalFileCacheClient(workDir.getRoot().toPath());
+        LocalFileCacheClient other = new LocalFileCacheClient(workDir.getRoot().toPath());
+        String filePath = client.tempLocation(fingerPrint, extension);
+
+        FileUtils.writeStringToFile(new File(filePath), "This is test", Charset.defaultCharset());
+        String storedFile = client.store(Paths.get(filePath), fingerPrint, extension, 0);
+        Assert.assertEquals(storedFile, client.lookupFile(fingerPrint));
+
+        // The other client evicts the file from the shared folder and then stores a new result
+        Assert.assertTrue(new File(storedFile).delete());
+        Assert.assertNull(client.lookupFile(fingerPrint));
+
+        String otherPath = other.tempLocation(fingerPrint, ".tsv");
+        FileUtils.writeStringToFile(new File(otherPath), "This is test", Charset.defaultCharset());
+        String otherFile = other.store(Paths.get(otherPath), fingerPrint, ".tsv", 0);
+        Assert.assertEquals(otherFile, client.lookupFile(fingerPrint));
+    }
+
     @Test
     public void testStoreAndLookupNotInCache() throws IOException {
         String fingerPrint = "test123";
@@ -172,4 +195,52 @@ public class UTestLocalFileCacheTest {
         Assert.assertNotNull(baseFilesList);
         Assert.assertEquals("Only one directory",2, baseFilesList.length);
     }
+
+    @Test
+    public void testBoundedCacheEvictsCheapAndLargeFirst() throws IOException {
+        LocalFileCacheClient client = new LocalFileCacheClient(workDir.getRoot().toPath(), false, 0, 250);
+        storeFile(client, "expensive", 100, 10000);
+        storeFile(client, "cheap", 100, 10);
+        storeFile(client, "newest", 100, 10);
+
+        Assert.assertNull(client.lookupFile("cheap"));
+        Assert.assertNotNull(client.lookupFile("expensive"));
+        Assert.assertNotNull(client.lookupFile("newest"));
+        Assert.assertFalse(new File(workDir.getRoot(), "cheap.gor").exists());
+    }
+
+    @Test
+    public void testBoundedCacheIndexSurvivesRestart() throws IOException {
+        LocalFileCacheClient client1 = new LocalFileCacheClient(workDir.getRoot().toPath(), false, 0, 250);
+        storeFile(client1, "expensive", 100, 10000);
+        storeFile(client1, "cheap", 100, 10);
+
+        LocalFileCacheClient client2 = new LocalFileCacheClient(workDir.getRoot().toPath(), false, 0, 250);
+        storeFile(client2, "newest", 100, 10);
+
+        Assert.assertNull(client2.lookupFile("cheap"));
+        Assert.assertNotNull(client2.lookupFile("expensive"));
+        Assert.assertNotNull(client2.lookupFile("newest"));
+    }
+
+    @Test
+    public void testBoundedCacheKeepsLookedUpEntries() throws IOException {
+        LocalFileCacheClient client = new LocalFileCacheClient(workDir.getRoot().toPath(), false, 0, 250);
+        storeFile(client, "expensive", 100, 10000);
+        storeFile(client, "cheap", 100, 10);
+        // A script has looked up the cheap result and is about to read it
+        Assert.assertNotNull(client.lookupFile("cheap"));
+        storeFile(client, "newest", 100, 10);
+
+        Assert.assertNotNull(client.lookupFile("cheap"));
+        Assert.assertTrue(new File(workDir.getRoot(), "cheap.gor").exists());
+        Assert.assertNull(client.lookupFile("expensive"));
+        Assert.assertNotNull(client.lookupFile("newest"));
+    }
+
+    private void storeFile(LocalFileCacheClient client, String fingerPrint, int size, long cost) throws IOException {
+        String filePath = client.tempLocation(fingerPrint, ".gor");
+        FileUtils.writeStringToFile(new File(filePath), StringUtils.repeat("x", size), Charset.defaultCharset());
+        client.store(Paths.get(filePath), fingerPrint, ".gor", cost);
+    }
 }
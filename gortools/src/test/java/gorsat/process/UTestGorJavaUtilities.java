@@ -26,6 +26,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
 
 public class UTestGorJavaUtilities {
 
@@ -51,4 +53,28 @@ public class UTestGorJavaUtilities {
         String myCommand1 = GorJavaUtilities.projectReplacement("#{projectid}", "", "", "dbscope=project_id#int#1");
         Assert.assertEquals("1", myCommand1);
     }
+
+    @Test
+    public void testAppendGeneral() {
+        final double[] values = {0.0, -0.0, 1, 0.020582, 9.99995, 0.000099995, 0.0001, 99999.5, 123456, 1.00005, 1e-100,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        final Random random = new Random(1);
+        final StringBuilder sb = new StringBuilder();
+        for (int precision : new int[]{1, 5, 10}) {
+            for (double value : values) {
+                assertAppendGeneral(sb, value, precision);
+                assertAppendGeneral(sb, -value, precision);
+            }
+            for (int i = 0; i < 100000; ++i) {
+                assertAppendGeneral(sb, Math.pow(10, random.nextDouble() * 40 - 20) * random.nextGaussian(), precision);
+                assertAppendGeneral(sb, random.nextInt(200000) / 20.0 + 0.00005 * random.nextInt(3), precision);
+            }
+        }
+    }
+
+    private static void assertAppendGeneral(StringBuilder sb, double value, int precision) {
+        sb.setLength(0);
+        GorJavaUtilities.appendGeneral(sb, value, precision);
+        Assert.assertEquals(String.format(Locale.ROOT, "%." + precision + "g", value), sb.toString());
+    }
 }
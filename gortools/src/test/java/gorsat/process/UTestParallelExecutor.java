@@ -0,0 +1,214 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.process;
+
+import org.gorpipe.gor.WorkerBudget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UTestParallelExecutor {
+
+    private static class RecordingTask implements ParallelExecutor.Task {
+        private final String name;
+        private final long cost;
+        private final List<String> executed;
+
+        RecordingTask(String name, long cost, List<String> executed) {
+            this.name = name;
+            this.cost = cost;
+            this.executed = executed;
+        }
+
+        @Override
+        public void run() {
+            executed.add(name);
+        }
+
+        @Override
+        public long cost() {
+            return cost;
+        }
+    }
+
+    @Test
+    public void testTasksRunInOrderOfDecreasingCost() throws Throwable {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        ParallelExecutor.Task[] tasks = {
+                new RecordingTask("chrY", 50, executed),
+                new RecordingTask("chr1", 250, executed),
+                new RecordingTask("chrM", 1, executed),
+                new RecordingTask("chr2", 240, executed)
+        };
+
+        new ParallelExecutor(new WorkerBudget(1), tasks).parallelExecute();
+
+        Assert.assertEquals("[chr1, chr2, chrY, chrM]", executed.toString());
+    }
+
+    @Test
+    public void testTaskIsNotSplitWithoutOtherWorkers() throws Throwable {
+        ConcurrentLinkedQueue<String> executed = new ConcurrentLinkedQueue<>();
+        AtomicInteger requestedParts = new AtomicInteger();
+
+        ParallelExecutor.Task splittable = new ParallelExecutor.Task() {
+            @Override
+            public void run() {
+                executed.add("whole");
+            }
+
+            @Override
+            public ParallelExecutor.Task[] split(int parts) {
+                requestedParts.set(parts);
+                ParallelExecutor.Task[] result = new ParallelExecutor.Task[parts];
+                for (int i = 0; i < parts; i++) {
+                    String name = "part" + i;
+                    result[i] = () -> executed.add(name);
+                }
+                return result;
+            }
+        };
+
+        WorkerBudget budget = new WorkerBudget(1);
+        new ParallelExecutor(budget, new ParallelExecutor.Task[]{splittable}).parallelExecute();
+
+        // Only the calling thread is a worker so there is no one to share the work with
+        Assert.assertEquals(0, requestedParts.get());
+        Assert.assertEquals("[whole]", executed.toString());
+        Assert.assertEquals(1, budget.getAvailableWorkers());
+    }
+
+    @Test
+    public void testWorkersAreOnlyReservedForQueuedTasks() throws Throwable {
+        WorkerBudget budget = new WorkerBudget(4);
+        AtomicInteger availableWhileRunning = new AtomicInteger();
+        ParallelExecutor.Task[] tasks = {() -> availableWhileRunning.set(budget.getAvailableWorkers())};
+
+        new ParallelExecutor(budget, tasks).parallelExecute();
+
+        // A single task that can not be split is run by the calling thread alone
+        Assert.assertEquals(4, availableWhileRunning.get());
+        Assert.assertEquals(4, budget.getAvailableWorkers());
+    }
+
+    @Test
+    public void testSplitPartsAreAllExecuted() throws Throwable {
+        ConcurrentLinkedQueue<String> executed = new ConcurrentLinkedQueue<>();
+
+        ParallelExecutor.Task small = () -> executed.add("small");
+        ParallelExecutor.Task splittable = new ParallelExecutor.Task() {
+            @Override
+            public void run() {
+                executed.add("whole");
+            }
+
+            @Override
+            public long cost() {
+                return 100;
+            }
+
+            @Override
+            public ParallelExecutor.Task[] split(int parts) {
+                ParallelExecutor.Task[] result = new ParallelExecutor.Task[parts];
+                for (int i = 0; i < parts; i++) {
+                    String name = "part" + i;
+                    result[i] = () -> executed.add(name);
+                }
+                return result;
+            }
+        };
+
+        WorkerBudget budget = new WorkerBudget(2);
+        new ParallelExecutor(budget, new ParallelExecutor.Task[]{small, splittable}).parallelExecute();
+
+        List<String> sorted = new ArrayList<>(executed);
+        Collections.sort(sorted);
+        // Whether the split happens depends on how fast the second worker starts, either way all work is done once
+        if (sorted.contains("whole")) {
+            Assert.assertEquals("[small, whole]", sorted.toString());
+        } else {
+            Assert.assertEquals("[part0, part1, small]", sorted.toString());
+        }
+        Assert.assertEquals(2, budget.getAvailableWorkers());
+    }
+
+    @Test
+    public void testOtherWorkersTakeTasksWhileATaskIsSplit() throws Throwable {
+        CountDownLatch otherTaskStarted = new CountDownLatch(1);
+        AtomicBoolean splitSawOtherTask = new AtomicBoolean();
+
+        ParallelExecutor.Task other = otherTaskStarted::countDown;
+        ParallelExecutor.Task splittable = new ParallelExecutor.Task() {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public long cost() {
+                return 100;
+            }
+
+            @Override
+            public ParallelExecutor.Task[] split(int parts) {
+                // Splitting may do slow IO, the other worker must not wait for it to take its task
+                try {
+                    splitSawOtherTask.set(otherTaskStarted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+
+        WorkerBudget budget = new WorkerBudget(3);
+        new ParallelExecutor(budget, new ParallelExecutor.Task[]{other, splittable}).parallelExecute();
+
+        Assert.assertTrue(splitSawOtherTask.get());
+        Assert.assertEquals(3, budget.getAvailableWorkers());
+    }
+
+    @Test
+    public void testFirstExceptionIsRethrown() {
+        ParallelExecutor.Task[] tasks = {
+                () -> {
+                    throw new IllegalStateException("failed");
+                },
+                () -> { }
+        };
+
+        try {
+            new ParallelExecutor(new WorkerBudget(2), tasks).parallelExecute();
+            Assert.fail("Exception expected");
+        } catch (Throwable e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis
+
+import gorsat.Commands.Analysis
+import org.gorpipe.exceptions.GorDataException
+import org.gorpipe.model.genome.files.gor.Row
+import org.gorpipe.model.gor.RowObj
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UTestStageBoundary extends FlatSpec {
+
+  private def row(i: Int): Row = RowObj("chr1\t" + i + "\tA" + i)
+
+  "process" should "pass all rows through in order" in {
+    val sink = AnalysisSink()
+    val pipe = StageBoundary("test", 16, 2) | sink
+
+    pipe.securedSetup(null)
+    (1 to 2000).foreach(i => pipe.process(row(i)))
+    pipe.securedFinish(null)
+
+    assert(sink.rows.length == 2000)
+    assert(sink.rows.map(_.pos) == (1 to 2000).toList)
+  }
+
+  it should "pass rows through consecutive stages" in {
+    val sink = AnalysisSink()
+    val pipe = StageBoundary("first", 7, 1) | StageBoundary("second", 3, 4) | sink
+
+    pipe.securedSetup(null)
+    (1 to 1000).foreach(i => pipe.process(row(i)))
+    pipe.securedFinish(null)
+
+    assert(sink.rows.map(_.pos) == (1 to 1000).toList)
+  }
+
+  it should "report wants no more upstream when a downstream step is done" in {
+    val sink = AnalysisSink()
+    val pipe = StageBoundary("test", 4, 2) | TopN(5) | sink
+
+    pipe.securedSetup(null)
+    var i = 0
+    while (!pipe.wantsNoMore && i < 1000000) {
+      i += 1
+      pipe.process(row(i))
+    }
+    pipe.securedFinish(null)
+
+    assert(pipe.wantsNoMore)
+    assert(sink.rows.map(_.pos) == (1 to 5).toList)
+  }
+
+  it should "rethrow errors from the stage thread" in {
+    val failing = new Analysis {
+      override def process(r: Row): Unit = throw new GorDataException("stage failure")
+    }
+    val pipe = StageBoundary("test", 4, 2) | failing
+
+    val thrown = intercept[GorDataException] {
+      pipe.securedSetup(null)
+      (1 to 100).foreach(i => pipe.process(row(i)))
+      pipe.securedFinish(null)
+    }
+    assert(thrown.getMessage.contains("stage failure"))
+  }
+
+  "finish" should "flush a partial batch" in {
+    val sink = AnalysisSink()
+    val pipe = StageBoundary("test", 100, 2) | sink
+
+    pipe.securedSetup(null)
+    (1 to 3).foreach(i => pipe.process(row(i)))
+    pipe.securedFinish(null)
+
+    assert(sink.rows.length == 3)
+  }
+}
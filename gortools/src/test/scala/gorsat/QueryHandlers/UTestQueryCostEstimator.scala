@@ -0,0 +1,71 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.QueryHandlers
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSuite
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UTestQueryCostEstimator extends FunSuite {
+
+  test("Partition range is parsed from pgor partition queries") {
+    assert(QueryCostEstimator.partitionRange("gor -p chr1:0-250000000 <(genes.gor | top 10)").contains(("chr1", 0, 250000000)))
+    assert(QueryCostEstimator.partitionRange("gor genes.gor").isEmpty)
+  }
+
+  test("Larger partitions are estimated to cost more") {
+    val costs = QueryCostEstimator.estimateCosts(Array(
+      "gor -p chrY:0-59373566 <(genes.gor)",
+      "gor -p chr1:0-249250621 <(genes.gor)"))
+
+    assert(costs(1) > costs(0))
+  }
+
+  test("Recorded run times are used when known for the whole batch") {
+    val queries = Array("gor -p chr1:0-249250621 <(estimator_test.gor)", "gor -p chrY:0-59373566 <(estimator_test.gor)")
+    QueryCostEstimator.recordRunTime(queries(0), 10)
+    assert(QueryCostEstimator.estimateCosts(queries)(0) > QueryCostEstimator.estimateCosts(queries)(1))
+
+    QueryCostEstimator.recordRunTime(queries(1), 1000)
+    assert(QueryCostEstimator.estimateCosts(queries).toList == List(10, 1000))
+  }
+
+  test("Row local partition is split into consecutive ranges") {
+    val parts = QueryCostEstimator.splitPartition("gor -p chr1:0-9999999 <(genes.gor | where 2=2 | select 1-3)", 2)
+
+    assert(parts.nonEmpty)
+    assert(parts.get.toList == List(
+      "gor -p chr1:0-4999999 <(genes.gor | where 2=2 | select 1-3)",
+      "gor -p chr1:5000000-9999999 <(genes.gor | where 2=2 | select 1-3)"))
+  }
+
+  test("Partition with range dependent steps is not split") {
+    assert(QueryCostEstimator.splitPartition("gor -p chr1:0-9999999 <(genes.gor | top 10)", 2).isEmpty)
+    assert(QueryCostEstimator.splitPartition("gor -p chr1:0-9999999 <(genes.gor | group chrom -count)", 2).isEmpty)
+  }
+
+  test("Small partitions are not split") {
+    assert(QueryCostEstimator.splitPartition("gor -p chr1:0-999 <(genes.gor)", 2).isEmpty)
+  }
+}
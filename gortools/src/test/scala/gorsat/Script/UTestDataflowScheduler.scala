@@ -0,0 +1,181 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Script
+
+import java.nio.file.{Files, Path}
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+
+import gorsat.DynIterator
+import gorsat.process.{GenericRunnerFactory, GorPipeCommands, GorPipeMacros, PipeInstance}
+import org.apache.commons.io.FileUtils
+import org.gorpipe.gor._
+import org.gorpipe.gor.clients.LocalFileCacheClient
+import org.gorpipe.model.genome.files.gor.{DriverBackedFileReader, GorMonitor, GorParallelQueryHandler}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfter, FunSuite}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class UTestDataflowScheduler extends FunSuite with BeforeAndAfter {
+
+  private var tempDirectory: Path = _
+
+  before {
+    DynIterator.createGorIterator = PipeInstance.createGorIterator
+    GorPipeCommands.register()
+    GorPipeMacros.register()
+    tempDirectory = Files.createTempDirectory("dataflow_scheduler")
+  }
+
+  after {
+    FileUtils.deleteDirectory(tempDirectory.toFile)
+  }
+
+  /**
+    * Query handler which writes a tiny gor file for each command and records the create names of each batch.
+    */
+  class RecordingQueryHandler extends GorParallelQueryHandler {
+    val batches = new ConcurrentLinkedQueue[List[String]]()
+
+    override def executeBatch(fingerprints: Array[String], commandsToExecute: Array[String], batchGroupNames: Array[String], cancelMonitor: GorMonitor): Array[String] = {
+      batches.add(batchGroupNames.toList)
+      fingerprints.map { fingerprint =>
+        val file = tempDirectory.resolve(fingerprint + ".gor")
+        Files.write(file, "chrom\tpos\nchr1\t1\n".getBytes)
+        file.toString
+      }
+    }
+
+    override def setForce(force: Boolean): Unit = {}
+    override def setQueryTime(time: java.lang.Long): Unit = {}
+    override def getWaitTime: Long = -1
+  }
+
+  private def createContext(workers: Int): GorContext = {
+    val session = new GorSession("dataflow-test")
+    val projectContext = new ProjectContext.Builder()
+      .setRoot("")
+      .setCacheDir(tempDirectory.toString)
+      .setFileReader(new DriverBackedFileReader("", "", null))
+      .setFileCache(new LocalFileCacheClient(tempDirectory))
+      .build()
+    val systemContext = new SystemContext.Builder()
+      .setWorkers(workers)
+      .setRunnerFactory(new GenericRunnerFactory())
+      .setServer(false)
+      .build()
+    session.init(projectContext, systemContext, GorSessionCacheManager.getCache(session.getRequestId))
+    session.getGorContext
+  }
+
+  test("Critical path lengths of script blocks") {
+    val blocks = ScriptExecutionEngine.parseScript(Array(
+      "create a = gorrow chr1,1",
+      "create b = gor [a]",
+      "create c = gor [b]",
+      "create d = gorrow chr1,2",
+      "gor [c] [d]"))
+
+    val lengths = DataflowScheduler.criticalPathLengths(blocks)
+
+    assert(lengths("a") == 4)
+    assert(lengths("b") == 3)
+    assert(lengths("c") == 2)
+    assert(lengths("d") == 2)
+    assert(lengths("") == 1)
+  }
+
+  test("Pending commands start as one batch with the longest critical path first") {
+    val budget = new WorkerBudget(1)
+    val firstRunning = new CountDownLatch(1)
+    val releaseFirst = new CountDownLatch(1)
+    val batches = new ConcurrentLinkedQueue[List[String]]()
+
+    val scheduler = new DataflowScheduler(budget, commands => {
+      batches.add(commands.map(_.createName).toList)
+      if (commands.exists(_.createName == "[first]")) {
+        firstRunning.countDown()
+        releaseFirst.await(10, TimeUnit.SECONDS)
+      }
+      commands.map(_.createName + ".gorz")
+    })
+
+    try {
+      scheduler.submit(ExecutionCommand("1", "gorrow chr1,1", "[first]", "[first]"), 1)
+      scheduler.dispatch()
+      assert(firstRunning.await(10, TimeUnit.SECONDS))
+      scheduler.submit(ExecutionCommand("2", "gorrow chr1,1", "[short]", "[short]"), 1)
+      scheduler.submit(ExecutionCommand("3", "gorrow chr1,1", "[long]", "[long]"), 5)
+      scheduler.dispatch()
+      assert(scheduler.runningCount == 1)
+      assert(scheduler.pendingCount == 2)
+      releaseFirst.countDown()
+
+      var completed = List.empty[String]
+      while (!scheduler.isIdle) {
+        completed :::= scheduler.awaitCompletions().map(_._2)
+      }
+
+      assert(completed.sorted == List("[first].gorz", "[long].gorz", "[short].gorz"))
+      assert(batches.asScala.toList == List(List("[first]"), List("[long]", "[short]")))
+      assert(budget.getAvailableWorkers == 1)
+    } finally {
+      scheduler.shutdown()
+    }
+  }
+
+  test("Ready creates are executed as one batch") {
+    val queryHandler = new RecordingQueryHandler
+    val context = createContext(4)
+    val engine = new ScriptExecutionEngine(queryHandler, queryHandler, context, new DefaultListener, dataflowScheduling = true)
+
+    val result = engine.execute(Array(
+      "create slow = gorrow chr1,1",
+      "create fast = gorrow chr1,2",
+      "create dep = gor [fast]",
+      "gor [slow] [dep]"))
+
+    val batches = queryHandler.batches.asScala.toList
+    assert(batches.map(_.sorted) == List(List("[fast]", "[slow]"), List("[dep]")))
+    assert(!result.contains("["))
+  }
+
+  test("Failing command fails the script") {
+    val context = createContext(2)
+    val queryHandler = new GorParallelQueryHandler {
+      override def executeBatch(fingerprints: Array[String], commandsToExecute: Array[String], batchGroupNames: Array[String], cancelMonitor: GorMonitor): Array[String] = {
+        throw new org.gorpipe.exceptions.GorSystemException("Failed " + batchGroupNames.mkString(","), null)
+      }
+      override def setForce(force: Boolean): Unit = {}
+      override def setQueryTime(time: java.lang.Long): Unit = {}
+      override def getWaitTime: Long = -1
+    }
+    val engine = new ScriptExecutionEngine(queryHandler, queryHandler, context, new DefaultListener, dataflowScheduling = true)
+
+    intercept[org.gorpipe.exceptions.GorSystemException] {
+      engine.execute(Array("create x = gorrow chr1,1", "gor [x]"))
+    }
+  }
+}
@@ -31,6 +31,8 @@ import gorsat.process.{GenericSessionFactory, GorPipeCommands, GorPipeMacros, Pi
 import org.gorpipe.exceptions.{GorException, GorParsingException}
 import org.gorpipe.gor.GorContext
 import org.gorpipe.test.utils.FileTestUtils
+import java.nio.file.{Files, StandardOpenOption}
+import org.apache.commons.io.FileUtils
 import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
 import org.scalatest.{BeforeAndAfter, FunSuite}
@@ -38,17 +40,19 @@ import org.scalatest.{BeforeAndAfter, FunSuite}
 @RunWith(classOf[JUnitRunner])
 class UTestScriptExecutionEngine extends FunSuite with BeforeAndAfter {
 
-  def createScriptExecutionEngine(listener: ScriptExecutionListener): ScriptExecutionEngine = {
+  def createScriptExecutionEngine(listener: ScriptExecutionListener,
+                                  dataflowScheduling: Boolean = ScriptExecutionEngine.DATAFLOW_SCHEDULING): ScriptExecutionEngine = {
     val context = new GenericSessionFactory().create().getGorContext
     val queryHandler = new GeneralQueryHandler(context, false)
     val headerQueryHandler = new GeneralQueryHandler(context, true)
     val usedListend = if (listener == null) new DefaultListener else listener
-    new ScriptExecutionEngine(queryHandler, headerQueryHandler, context, usedListend)
+    new ScriptExecutionEngine(queryHandler, headerQueryHandler, context, usedListend, dataflowScheduling)
   }
 
-  def performTest(commands: Array[String], listener: ScriptExecutionListener): Unit = {
+  def performTest(commands: Array[String], listener: ScriptExecutionListener,
+                  dataflowScheduling: Boolean = ScriptExecutionEngine.DATAFLOW_SCHEDULING): Unit = {
     try {
-      val engine = createScriptExecutionEngine(listener)
+      val engine = createScriptExecutionEngine(listener, dataflowScheduling)
       engine.execute(commands)
     } catch {
       case e: GorException => // Do nothing
@@ -350,7 +354,7 @@ class UTestScriptExecutionEngine extends FunSuite with BeforeAndAfter {
       }
     }
 
-    performTest(igorCommands, Listener())
+    performTest(igorCommands, Listener(), dataflowScheduling = false)
   }
 
   test("Expansion of gor query should not happen") {
@@ -595,4 +599,32 @@ class UTestScriptExecutionEngine extends FunSuite with BeforeAndAfter {
 
     assert(thrown.getMessage.contains("is not a valid name"))
   }
+
+  test("Partition signatures only change for partitions overlapping new dictionary files") {
+    val workDir = Files.createTempDirectory("partitionsignature")
+    try {
+      Files.write(workDir.resolve("a.gor"), "Chrom\tPos\nchr1\t1\n".getBytes)
+      Files.write(workDir.resolve("b.gor"), "Chrom\tPos\nchr2\t1\n".getBytes)
+      Files.write(workDir.resolve("c.gor"), "Chrom\tPos\nchr2\t5\n".getBytes)
+      val dict = workDir.resolve("x.gord")
+      Files.write(dict, "a.gor\ta\tchr1\t0\tchr1\t100\nb.gor\tb\tchr2\t0\tchr2\t100\n".getBytes)
+
+      val command = "gor -p " + SplitManager.SPLIT_REPLACEMENT_PATTERN + " <(" + dict + " | top 10)"
+      val usedFiles = List("#gordict#" + dict)
+      def signatures(): Seq[String] = {
+        val engine = createScriptExecutionEngine(null)
+        Seq("chr1:0-1000", "chr2:0-1000").map(range =>
+          engine.getPartitionFileSignature(command, "gor -p " + range + " <(" + dict + " | top 10)", usedFiles))
+      }
+
+      val before = signatures()
+      Files.write(dict, "c.gor\tc\tchr2\t5\tchr2\t5\n".getBytes, StandardOpenOption.APPEND)
+      val after = signatures()
+
+      assert(before.head == after.head)
+      assert(before(1) != after(1))
+    } finally {
+      FileUtils.deleteDirectory(workDir.toFile)
+    }
+  }
 }
@@ -181,6 +181,61 @@ class UTestSplitManager extends FunSuite {
     assert(thrown.getMessage.startsWith("Too many splits for query."))
   }
 
+  test("Balanced split follows the data density") {
+    val buildSizes = Map("chr1" -> 1000000, "chr2" -> 1000000)
+    val segments = List(BalancedSplit.DensitySegment("chr1", 100000, 200000, 8000.0),
+      BalancedSplit.DensitySegment("chr1", 200000, 1000000, 1000.0),
+      BalancedSplit.DensitySegment("chr2", 0, 1000000, 1000.0))
+    val splits = BalancedSplit.createSplits(segments, buildSizes, 12, 0)
+
+    assert(splits.size == 12)
+    assert(splits.keys.count(_.startsWith("chr1_")) == 10)
+    assert(splits("chr2_1") == SplitEntry("chr2:0-500000", "0<= #2i and #2i < 500001"))
+    assert(splits("chr1_1") == SplitEntry("chr1:0-111250", "0<= #2i and #2i < 111251"))
+    assert(splits("chr1_10").range.endsWith("-1000000"))
+  }
+
+  test("Balanced split with overlap") {
+    val buildSizes = Map("chr1" -> 1000000)
+    val segments = List(BalancedSplit.DensitySegment("chr1", 0, 1000000, 1000.0))
+    val splits = BalancedSplit.createSplits(segments, buildSizes, 4, 1000)
+
+    assert(splits.size == 4)
+    assert(splits("chr1_1") == SplitEntry("chr1:0-251000", "0<= #2i and #2i < 250001"))
+    assert(splits("chr1_2") == SplitEntry("chr1:249001-501000", "250001<= #2i and #2i < 500001"))
+  }
+
+  test("Balanced split samples gor file") {
+    val file = java.io.File.createTempFile("balanced", ".gor")
+    file.deleteOnExit()
+    val rows = (0 until 10000).map(i => "chr1\t" + (1000 + i) + "\tsome data") ++ (0 until 100).map(i => "chr2\t" + i * 1000 + "\tsome data")
+    java.nio.file.Files.write(file.toPath, ("Chrom\tPos\tData\n" + rows.mkString("\n") + "\n").getBytes)
+    val buildSizes = Map("chr1" -> 1000000, "chr2" -> 1000000)
+    val segments = BalancedSplit.sampleSource(file.toPath, buildSizes)
+
+    assert(segments.map(_.bytes).sum == file.length())
+    val chr1Bytes = segments.filter(_.chr == "chr1").map(_.bytes).sum
+    assert(chr1Bytes / segments.map(_.bytes).sum > 0.95)
+    val splits = BalancedSplit.createSplits(segments, buildSizes, 10, 0)
+    assert(splits.keys.count(_.startsWith("chr1_")) > 5)
+    assert(splits.keys.count(_.startsWith("chr2_")) == 1)
+  }
+
+  test("Balanced option is removed from expanded commands") {
+    val manager = SplitManager("Car", BalancedSplit.createSplits(Nil, Map("chr1" -> 1000), 2, 0), SplitManager.SPLIT_REPLACEMENT_PATTERN)
+    val command = "gor -p " + SplitManager.SPLIT_REPLACEMENT_PATTERN + " <(-balanced -split 10 x.gorz y.gord | top 10)"
+    val commandGroup = manager.expandCommand(command, "xxx")
+
+    assert(BalancedSplit.isBalanced(command))
+    assert(BalancedSplit.sourceFiles(command) == Seq("x.gorz", "y.gord"))
+    assert(commandGroup.commandEntries.map(_.query) == List("gor -p chr1:0-1000 <(x.gorz y.gord | top 10)"))
+  }
+
+  test("Balanced option is only removed from gor steps") {
+    val command = "gor -balanced x.gorz | where t = '-balanced ' | join <(gor -balanced y-balanced.gorz) | calc z -balanced "
+    assert(BalancedSplit.removeOption(command) == "gor x.gorz | where t = '-balanced ' | join <(gor y-balanced.gorz) | calc z -balanced ")
+  }
+
   test("Basic query with normal split") {
     assert(SplitManager.useWholeChromosomeSplit("pgor #dbsnp# | top 100") == false)
   }
@@ -197,4 +252,34 @@ class UTestSplitManager extends FunSuite {
     assert(SplitManager.useWholeChromosomeSplit("pgor #dbsnp# | calc rank = 'some text' | top 100") == false)
   }
 
+  test("Only queries with partition safe steps are split into genomic ranges") {
+    PipeInstance.initialize()
+    assert(SplitManager.isPartitionSafe("gor genes.gorz | calc x len(gene_symbol) | where x > 3 | select 1-3"))
+    assert(SplitManager.isPartitionSafe("genes.gorz | group 1 -count | rank 1 x"))
+    assert(SplitManager.isPartitionSafe("gor genes.gorz | group chrom -count"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | top 10"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | rownum"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | group genome -count"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | sort genome -c gene_symbol"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | write out.gorz"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | calc x once(gene_end)"))
+    assert(!SplitManager.isPartitionSafe("gor genes.gorz | join -segseg <(gor genes.gorz | top 10)"))
+    assert(!SplitManager.isPartitionSafe("cmd {grep chr1 genes.tsv}"))
+  }
+
+  test("Contig and window steps only get whole contig splits") {
+    PipeInstance.initialize()
+    assert(!SplitManager.needsWholeContigs("gor genes.gorz | group 1 -count | where allcount > 1"))
+    assert(SplitManager.needsWholeContigs("gor genes.gorz | group chrom -count"))
+    assert(SplitManager.needsWholeContigs("gor genes.gorz | group 100 -count"))
+    assert(SplitManager.needsWholeContigs("gor genes.gorz | join -segseg <(gor genes.gorz)"))
+    assert(SplitManager.needsWholeContigs("gor genes.gorz | calc x 1 | segproj"))
+  }
+
+  test("Genome wide approximate groups are found in nested queries") {
+    assert(SplitManager.hasGenomeWideApproximateGroup("pgor genes.gorz | group genome -count -dis -approx"))
+    assert(SplitManager.hasGenomeWideApproximateGroup("pgor genes.gorz | join <(gor genes.gorz | group genome -med -approx)"))
+    assert(!SplitManager.hasGenomeWideApproximateGroup("pgor genes.gorz | group chrom -dis -approx"))
+    assert(!SplitManager.hasGenomeWideApproximateGroup("pgor genes.gorz | group genome -dis"))
+  }
 }
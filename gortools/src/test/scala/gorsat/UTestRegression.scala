@@ -25,6 +25,7 @@ package gorsat
 import java.io.{File, FileWriter}
 import java.nio.file.Files
 
+import org.gorpipe.exceptions.GorParsingException
 import org.junit.{Assert, ComparisonFailure}
 import org.junit.runner.RunWith
 import org.scalatest.FunSuite
@@ -57,6 +58,83 @@ class UTestRegression extends FunSuite {
     Assert.assertEquals( "Chrom\tPos\tPhenotype\tCovariate\tbeta\tZ_stat\tP_value\nchr1\t1\tPassed\tIntercept\t-4.0777\t-2.3156\t0.020582\nchr1\t1\tPassed\tGenotype\t1.5046\t2.3932\t0.016703\n", res)
   }
 
+  test("test logistic regression - score test") {
+    val gorFile = new File(tmpDir, "scoreGorFile.gor")
+    val gorFileWriter = new FileWriter(gorFile)
+    gorFileWriter.write("Chrom\tPos\tValues\n")
+    gorFileWriter.write("chr1\t1\t0.5,0.75,1,1.25,1.5,1.75,1.75,2,2.25,2.5,2.75,3,3.25,3.5,4,4.25,4.5,4.75,5,5.5\n")
+    gorFileWriter.write("chr1\t2\t1,0,2,1,0,1,2,0,1,1,0,2,1,0,1,2,0,1,0,1\n")
+    gorFileWriter.close()
+    val gorFileName = gorFile.getAbsolutePath
+
+    val phenoFile = new File(tmpDir, "scorePheno.tsv")
+    val phenoFileWriter = new FileWriter(phenoFile)
+    phenoFileWriter.write("PN\tPassed\n1\t1\n2\t1\n3\t1\n4\t1\n5\t1\n6\t1\n7\t2\n8\t1\n9\t2\n10\t1\n11\t2\n12\t1\n13\t2\n14\t1\n15\t2\n16\t2\n17\t2\n18\t2\n19\t2\n20\t2\n")
+    phenoFileWriter.close()
+    val phenoFileName = phenoFile.getAbsolutePath
+
+    val query = String.join(" ", "gor", gorFileName, "| regression -logistic -s ,", phenoFileName)
+    val full = TestUtils.runGorPipe(query)
+
+    //No score test p-value is below 0 so the score test result is reported for every variant.
+    val scoreOnly = TestUtils.runGorPipe(query + " -score 0").split('\n')
+    Assert.assertEquals(5, scoreOnly.length)
+    Assert.assertEquals("Chrom\tPos\tPhenotype\tCovariate\tbeta\tZ_stat\tP_value\tTest", scoreOnly(0))
+    Assert.assertTrue(scoreOnly.drop(1).forall(_.endsWith("\tScore")))
+    Assert.assertTrue(scoreOnly(1).startsWith("chr1\t1\tPassed\tIntercept\t0.0000\t"))
+    //The genotype of the second variant has a small effect, where the score and Wald statistics agree.
+    val scoreZ = scoreOnly(4).split('\t')(5).toDouble
+    val waldZ = full.split('\n')(4).split('\t')(5).toDouble
+    Assert.assertEquals(waldZ, scoreZ, 0.01)
+
+    //The variants where the score test is significant get the full regression.
+    val lines = TestUtils.runGorPipe(query + " -score 0.05").split('\n')
+    Assert.assertEquals(full.split('\n').slice(1, 3).map(_ + "\tWald").mkString("\n"), lines.slice(1, 3).mkString("\n"))
+    Assert.assertEquals(scoreOnly.drop(3).mkString("\n"), lines.drop(3).mkString("\n"))
+  }
+
+  test("test logistic regression - warm start") {
+    val gorFile = new File(tmpDir, "warmGorFile.gor")
+    val gorFileWriter = new FileWriter(gorFile)
+    gorFileWriter.write("Chrom\tPos\tValues\n")
+    gorFileWriter.write("chr1\t1\t0.5,0.75,1,1.25,1.5,1.75,1.75,2,2.25,2.5,2.75,3,3.25,3.5,4,4.25,4.5,4.75,5,5.5\n")
+    gorFileWriter.write("chr1\t2\t1,0,2,1,0,1,2,0,1,1,0,2,1,0,1,2,0,1,0,1\n")
+    gorFileWriter.close()
+    val gorFileName = gorFile.getAbsolutePath
+
+    val phenoFile = new File(tmpDir, "warmPheno.tsv")
+    val phenoFileWriter = new FileWriter(phenoFile)
+    phenoFileWriter.write("PN\tPassed\n1\t1\n2\t1\n3\t1\n4\t1\n5\t1\n6\t1\n7\t2\n8\t1\n9\t2\n10\t1\n11\t2\n12\t1\n13\t2\n14\t1\n15\t2\n16\t2\n17\t2\n18\t2\n19\t2\n20\t2\n")
+    phenoFileWriter.close()
+    val phenoFileName = phenoFile.getAbsolutePath
+
+    val query = String.join(" ", "gor", gorFileName, "| regression -logistic -s ,", phenoFileName)
+    val cold = TestUtils.runGorPipe(query).split('\n')
+    val warm = TestUtils.runGorPipe(query + " -warm").split('\n')
+    Assert.assertEquals(cold.length, warm.length)
+    //The warm start only agrees with the start from zero to within the tolerance of the fit.
+    for ((coldLine, warmLine) <- cold.zip(warm).drop(1)) {
+      val coldCols = coldLine.split('\t')
+      val warmCols = warmLine.split('\t')
+      Assert.assertEquals(coldCols.take(4).mkString("\t"), warmCols.take(4).mkString("\t"))
+      for (i <- 4 until coldCols.length) {
+        Assert.assertEquals(coldCols(i).toDouble, warmCols(i).toDouble, 1e-3 * math.abs(coldCols(i).toDouble))
+      }
+    }
+  }
+
+  test("test linear regression - warm start not supported") {
+    intercept[GorParsingException] {
+      TestUtils.runGorPipe("gorrow chr1,1 | calc values '1,2' | regression -linear -warm -s , phenos.tsv")
+    }
+  }
+
+  test("test linear regression - score test not supported") {
+    intercept[GorParsingException] {
+      TestUtils.runGorPipe("gorrow chr1,1 | calc values '1,2' | regression -linear -score 0.01 -s , phenos.tsv")
+    }
+  }
+
   test("test logistic regression - comprehensive") {
     val numberOfSamples = 100
     val missingProbs = 0.1
@@ -77,6 +155,16 @@ class UTestRegression extends FunSuite {
     }
   }
 
+  test("test regression - variants sharing samples across blocks") {
+    //More variants than fit in one block, without missing genotypes so the samples are reused between variants.
+    for (numberOfCovs <- 0 to 2) {
+      testWithUnknownsLogistic(100, 2, 0.0, numberOfCovs, 70)
+      testWithUnknownsLinear(100, 2, 0.0, numberOfCovs, 70)
+    }
+    testWithUnknownsLogistic(100, 2, 0.1, 1, 70)
+    testWithUnknownsLinear(100, 2, 0.1, 1, 70)
+  }
+
   def testWithUnknownsLogistic(numberOfSamples: Int, numberOfPhenoTypes: Int, missingProbs: Double, numberOfCovs: Int =  0, numberOfVariants: Int = 1): Unit = {
     //Probabilities
     val probs = Array.tabulate(numberOfVariants)(_ => getRandomProbabilities(numberOfSamples))
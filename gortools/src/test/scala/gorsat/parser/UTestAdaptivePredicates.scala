@@ -0,0 +1,81 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import gorsat.parser.FunctionTypes.bFun
+import org.gorpipe.gor.ColumnValueProvider
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UTestAdaptivePredicates extends FlatSpec {
+  private val cvp = MockCvp(Array(Column("x", "I", 0)), ParseArith())
+
+  private def counter(result: Int => Boolean): bFun = {
+    var row = 0
+    (_: ColumnValueProvider) => {
+      row += 1
+      result(row)
+    }
+  }
+
+  "AND" should "move the most selective condition first after the warm-up" in {
+    val mostlyTrue = counter(_ => true)
+    val rarelyTrue = counter(row => row % 100 == 0)
+    val predicates = new AdaptivePredicates(Array(mostlyTrue, rarelyTrue), true, 10)
+    (1 to 10).foreach(_ => predicates(cvp))
+    assert(predicates.currentOrder.toSeq == Seq(rarelyTrue, mostlyTrue))
+  }
+
+  it should "give the same results in either order" in {
+    var row = 0
+    val even: bFun = _ => row % 2 == 0
+    val third: bFun = _ => row % 3 == 0
+    val predicates = new AdaptivePredicates(Array(even, third), true, 10)
+    (1 to 100).foreach(i => {
+      row = i
+      assert(predicates(cvp) == (i % 6 == 0))
+    })
+  }
+
+  it should "keep the written order when a later condition depends on an earlier one" in {
+    var row = 0
+    val guard: bFun = _ => row % 2 == 0
+    val guarded: bFun = _ => if (row % 2 == 0) row % 4 == 0 else throw new NumberFormatException()
+    val predicates = new AdaptivePredicates(Array(guard, guarded), true, 10)
+    (1 to 100).foreach(i => {
+      row = i
+      assert(predicates(cvp) == (i % 4 == 0))
+    })
+    assert(predicates.currentOrder.toSeq == Seq(guard, guarded))
+  }
+
+  "OR" should "move the condition that passes most often first" in {
+    val rarelyTrue = counter(row => row % 100 == 0)
+    val mostlyTrue = counter(_ => true)
+    val predicates = new AdaptivePredicates(Array(rarelyTrue, mostlyTrue), false, 10)
+    (1 to 10).foreach(_ => assert(predicates(cvp)))
+    assert(predicates.currentOrder.toSeq == Seq(mostlyTrue, rarelyTrue))
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import java.lang.management.ManagementFactory
+
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.JUnitRunner
+
+/**
+  * Calls every function variant in the registry with constant arguments and reports the time and the bytes allocated
+  * per row, to catch functions that redo per row what could be done once per expression.
+  */
+@RunWith(classOf[JUnitRunner])
+class UTestBenchmarkFunctions extends FlatSpec {
+  private val iterations = 100000
+  private val excluded = Set("SLEEP", "SYSTEM", "EVAL", "ONCE")
+
+  private val argumentValues = Map(
+    FunctionTypes.IntFun -> "3",
+    FunctionTypes.LongFun -> "17179869184",
+    FunctionTypes.DoubleFun -> "0.5",
+    FunctionTypes.StringFun -> "'a,b,c'",
+    FunctionTypes.BooleanFun -> "1=1",
+    FunctionTypes.StringList -> "'a','b'"
+  )
+
+  private def expressions: List[(String, String)] = {
+    val registry = CalcFunctions.registry
+    registry.functionNames.filterNot(excluded.contains).flatMap(name => {
+      registry.getVariants(name).flatMap(signature => {
+        val args = FunctionTypes.getArgumentTypesFromSignature(signature).map(argumentValues.get)
+        if (args.forall(_.isDefined)) {
+          Some((name + "(" + args.flatten.mkString(",") + ")", FunctionTypes.getReturnTypeFromSignature(signature)))
+        } else None
+      })
+    }).distinct
+  }
+
+  ignore should "report the cost per row of each function" in {
+    val threads = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+    val threadId = Thread.currentThread().getId
+    expressions.foreach { case (expression, returnType) =>
+      val p = ParseArith()
+      val cvp = MockCvp(Array(Column("x", "I", 1)), p)
+      try {
+        if (returnType == FunctionTypes.BooleanFun) p.compileFilter(expression) else p.compileCalculation(expression)
+        val evaluate: () => Any =
+          if (returnType == FunctionTypes.BooleanFun) () => p.evalBooleanFunction(cvp) else () => p.evalFunction(cvp)
+        evaluate()
+        val bytes = threads.getThreadAllocatedBytes(threadId)
+        val start = System.nanoTime()
+        var i = 0
+        while (i < iterations) {
+          evaluate()
+          i += 1
+        }
+        val nanosPerRow = (System.nanoTime() - start) / iterations
+        val bytesPerRow = (threads.getThreadAllocatedBytes(threadId) - bytes) / iterations
+        info(s"$expression\t$nanosPerRow ns\t$bytesPerRow bytes")
+      } catch {
+        case _: Exception => info(s"$expression\tskipped")
+      }
+    }
+  }
+}
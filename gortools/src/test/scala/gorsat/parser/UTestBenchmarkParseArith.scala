@@ -0,0 +1,54 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.JUnitRunner
+
+/**
+  * Times a filter with many conditions over the same row, to compare the evaluation cost of WHERE expressions. This
+  * is a manual benchmark, enable it to compare two builds on the same machine. No speedup is asserted.
+  */
+@RunWith(classOf[JUnitRunner])
+class UTestBenchmarkParseArith extends FlatSpec {
+  private val iterations = 10000000
+
+  private val filter = Range(0, 12).map(i => s"x$i > $i and x$i < ${i + 100}").mkString(" and ")
+
+  ignore should "evaluate a filter with many conjuncts" in {
+    val p = ParseArith()
+    val cvp = MockCvp(Range(0, 12).map(i => Column("x" + i, "I", i + 50)).toArray, p)
+    p.compileFilter(filter)
+    var matches = 0
+    val start = System.nanoTime()
+    var i = 0
+    while (i < iterations) {
+      if (p.evalBooleanFunction(cvp)) matches += 1
+      i += 1
+    }
+    val ms = (System.nanoTime() - start) / 1000000
+    assert(matches == iterations)
+    info(s"${filter.length} character filter evaluated $iterations times in $ms ms")
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser
+
+import gorsat.TestUtils
+import org.junit.runner.RunWith
+import org.scalatest.FlatSpec
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UTestExpressionCache extends FlatSpec {
+  private val columns = Array(Column("x", "S", "abc"), Column("n", "I", 3))
+
+  "Constant folding" should "only replace calls that do not read a column" in {
+    assert(ExpressionCache.constantValue(_ => 42).contains(42))
+    assert(ExpressionCache.constantValue(cvp => cvp.intValue(1)).isEmpty)
+    assert(ExpressionCache.constantValue(cvp => if (cvp.stringValue(0).isEmpty) 1 else 2).isEmpty)
+  }
+
+  it should "keep errors for each row" in {
+    val p = ParseArith()
+    val cvp = MockCvp(columns, p)
+    p.compileCalculation("int('x') + n")
+    assertThrows[NumberFormatException](p.evalIntFunction(cvp))
+  }
+
+  it should "not fold functions that depend on more than their arguments" in {
+    val functions = CalcFunctions.registry
+    assert(!ExpressionCache.isDeterministic("len(random())", functions))
+    assert(!ExpressionCache.isDeterministic("TIME ()", functions))
+    assert(!ExpressionCache.isDeterministic("listmap(x, 'upper(x)')", functions))
+    assert(ExpressionCache.isDeterministic("if(len(x) > 1, upper(x), 'a')", functions))
+    val p = ParseArith()
+    p.compileCalculation("random()")
+    assert((1 to 10).map(_ => p.evalDoubleFunction(null)).distinct.length > 1)
+  }
+
+  it should "give the same values as the unfolded expression" in {
+    val p = ParseArith()
+    val cvp = MockCvp(columns, p)
+    assert(p.compileCalculation("len('abcd') + n") == FunctionTypes.IntFun)
+    assert(p.evalIntFunction(cvp) == 7)
+    p.compileFilter("upper(x) = upper('ABC') and len(x) = 3")
+    assert(p.evalBooleanFunction(cvp))
+  }
+
+  it should "bind a call once when the parser backtracks" in {
+    // The int and long alternatives fail after the call has been built, the double alternative succeeds
+    val cache = new ExpressionCache
+    val p = ParseArith()
+    p.setExpressionCache(cache)
+    val cvp = MockCvp(columns, p)
+    assert(p.compileCalculation("len(x) + 1.5") == FunctionTypes.DoubleFun)
+    cache.startRow()
+    assert(p.evalDoubleFunction(cvp) == 4.5)
+    assert(cache.size == 1)
+  }
+
+  "Canonical text" should "ignore case and white space outside of strings" in {
+    assert(ExpressionCache.canonical(" len( x ,  'a  B' ) ") == ExpressionCache.canonical("LEN( X , 'a  B')"))
+    assert(ExpressionCache.canonical("len('a  B')") != ExpressionCache.canonical("len('A B')"))
+  }
+
+  "Shared expressions" should "evaluate a call repeated across parsers once per row" in {
+    val cache = new ExpressionCache
+    val calc = ParseArith()
+    val where = ParseArith()
+    calc.setExpressionCache(cache)
+    where.setExpressionCache(cache)
+    val row1 = MockCvp(columns, calc)
+    MockCvp(columns, where)
+    calc.compileCalculation("len(x) + 1")
+    where.compileFilter("LEN( x ) = 3")
+
+    cache.startRow()
+    assert(calc.evalIntFunction(row1) == 4)
+    assert(where.evalBooleanFunction(row1))
+    assert(cache.size == 1)
+
+    // Until the next row is started the value computed for the first row is used
+    val row2 = MockCvp(Array(Column("x", "S", "abcd"), Column("n", "I", 3)), calc)
+    assert(where.evalBooleanFunction(row2))
+    cache.startRow()
+    assert(!where.evalBooleanFunction(row2))
+    assert(calc.evalIntFunction(row2) == 5)
+  }
+
+  "Adjacent CALC and WHERE steps" should "give the same results with shared expressions" in {
+    val lines = TestUtils.runGorPipeLines("gorrows -p chr1:1-5 | calc x 'ab' + pos | calc l len(x) | where len(x) = 3 " +
+      "and len('abc') = 3 | calc m len(x) * 2 + len('abc') | calc s substr(x, 0, len(x) - 1)")
+    assert(lines.toSeq == Seq(
+      "chrom\tpos\tx\tl\tm\ts\n",
+      "chr1\t1\tab1\t3\t9\tab\n",
+      "chr1\t2\tab2\t3\t9\tab\n",
+      "chr1\t3\tab3\t3\t9\tab\n",
+      "chr1\t4\tab4\t3\t9\tab\n"))
+  }
+}
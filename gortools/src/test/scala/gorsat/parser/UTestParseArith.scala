@@ -344,6 +344,46 @@ class UTestParseArith extends FlatSpec {
     assert(!p.evalBooleanFunction(cvp))
   }
 
+  "AND and OR chains" should "short circuit left to right" in {
+    val p = ParseArith()
+    val cvp = MockCvp(Array(Column("x", "I", 5), Column("y", "L", 7L), Column("s", "S", "abc")), p)
+    val expected = Map(
+      "x>1 and x<10 and y>=7 and y<=7 and s='abc' and s<>'abd' and s>'abb' and s<'abd' and x!=4 and x=5" -> true,
+      "x>1 and x<10 and y>=7 and y<=7 and s='abc' and s<>'abd' and s>'abb' and s<'abd' and x!=4 and x=6" -> false,
+      "x=1 or y=1 or s='x' or x=5" -> true,
+      "x=1 or y=1 or s='x' or x=6" -> false,
+      "x=1 or x=5 and y=7" -> true,
+      "x=5 and y=1 or s='abc' and x=5" -> true
+    )
+    expected.foreach { case (filter, result) =>
+      p.compileFilter(filter)
+      assert(p.evalBooleanFunction(cvp) == result, filter)
+    }
+  }
+
+  "Functions with list or pattern arguments" should "follow an argument that changes between rows" in {
+    val p = ParseArith()
+    val first = MockCvp(Array(Column("x", "S", "a,b"), Column("y", "S", "b,c")), p)
+    val second = MockCvp(Array(Column("x", "S", "a,b"), Column("y", "S", "c,d")), p)
+    p.compileFilter("listhasany(x,y)")
+    assert(p.evalBooleanFunction(first))
+    assert(!p.evalBooleanFunction(second))
+    assert(p.evalBooleanFunction(first))
+
+    val third = MockCvp(Array(Column("x", "S", "ab12"), Column("y", "S", "ab(.*)")), p)
+    val fourth = MockCvp(Array(Column("x", "S", "ab12"), Column("y", "S", "a(.*)")), p)
+    p.compileCalculation("regsel(x,y)")
+    assert(p.evalStringFunction(third) == "12")
+    assert(p.evalStringFunction(fourth) == "b12")
+  }
+
+  it should "match a literal LIKE and RLIKE pattern" in {
+    val p = ParseArith()
+    val cvp = MockCvp(Array(Column("x", "S", "abc")), p)
+    p.compileFilter("x like 'a*' and x rlike 'a.c' and not(x like 'b?c')")
+    assert(p.evalBooleanFunction(cvp))
+  }
+
   "Function expecting Double" should "accept an Int variable" in {
     val p = ParseArith()
     val cvp = MockCvp(Array(Column("x", "I", 42)), p)
@@ -22,6 +22,7 @@
 
 package org.gorpipe.gor;
 
+import org.gorpipe.model.util.ArenaHashMap;
 import org.gorpipe.util.Pair;
 
 import java.util.HashMap;
@@ -85,4 +86,22 @@ public class GorSessionCache {
     public Map<String, Set<String>> getSets() {
         return sets;
     }
+
+    /**
+     * Returns the memory recorded for the cached lookup tables to the memory budget, called when the cache is dropped.
+     */
+    public void releaseMemory() {
+        synchronized (singleHashMaps) {
+            releaseMemory(singleHashMaps.values());
+        }
+        synchronized (multiHashMaps) {
+            releaseMemory(multiHashMaps.values());
+        }
+    }
+
+    private static void releaseMemory(Iterable<? extends Map<String, ?>> maps) {
+        for (Map<String, ?> map : maps) {
+            if (map instanceof ArenaHashMap) ((ArenaHashMap<?>) map).releaseMemory();
+        }
+    }
 }
@@ -45,8 +45,12 @@ public class GorSessionCacheManager {
     private static Cache<String, GorSessionCache> createCache() {
         DurationConverter converter = new DurationConverter();
         RemovalListener<String, GorSessionCache> removalNotifier;
-        removalNotifier = notification -> log.info("Removing from gor session cache, key: {}, cause: {}.  Remaining entries: {}",
-                notification.getKey(), notification.getCause(), gorCache.size());
+        removalNotifier = notification -> {
+            log.info("Removing from gor session cache, key: {}, cause: {}.  Remaining entries: {}",
+                    notification.getKey(), notification.getCause(), gorCache.size());
+            // A collected cache has no value, the memory of its maps is reclaimed by the budget once they are unreachable
+            if (notification.getValue() != null) notification.getValue().releaseMemory();
+        };
 
         CacheBuilder builder =  CacheBuilder.newBuilder()
                 .removalListener(removalNotifier)
@@ -0,0 +1,306 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide budget of the memory used by the buffers of the gor operators, e.g. sort runs, group tables and row
+ * buffers. Operators hold a {@link Reservation} that they grow without blocking as their buffers fill up, when the
+ * budget or the quota of their query is exhausted they spill to disk or keep their buffers small instead of failing.
+ * <p>
+ * Queries that hold no memory are admitted through {@link #admit(String)}, which queues them in arrival order while
+ * the budget is nearly exhausted. Queries that already hold memory are never blocked so nested executions can not
+ * deadlock on the budget. Reservations that become unreachable without being released are reclaimed by the budget.
+ */
+public class MemoryBudget {
+    private static final Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+
+    /**
+     * Reservations grow by at least this much so that the budget is not consulted for every row.
+     */
+    public static final long CHUNK_BYTES = 4L << 20;
+
+    private static final MemoryBudget GLOBAL = new MemoryBudget(totalFromProperties(),
+            Long.parseLong(System.getProperty("gor.memory.query.quota.mb", "0").trim()) << 20,
+            Double.parseDouble(System.getProperty("gor.memory.admission.ratio", "0.9").trim()),
+            Long.parseLong(System.getProperty("gor.memory.admission.timeout.seconds", "60").trim()) * 1000);
+
+    private final long totalBytes;
+    private final long queryQuotaBytes;
+    private final long admissionBytes;
+    private final long admissionTimeoutMillis;
+
+    private long usedBytes;
+    private final Map<String, Long> queryBytes = new HashMap<>();
+    private final Set<GrantReference> grants = new HashSet<>();
+    private final ReferenceQueue<Reservation> unreachable = new ReferenceQueue<>();
+    private final ArrayDeque<Object> admissionQueue = new ArrayDeque<>();
+
+    /**
+     * @param totalBytes             the memory shared by all the reservations
+     * @param queryQuotaBytes        the memory a single query can reserve, 0 or less for the whole budget
+     * @param admissionRatio         the part of the budget in use from which new queries wait for admission
+     * @param admissionTimeoutMillis the longest a query waits for admission before it is let through anyway
+     */
+    public MemoryBudget(long totalBytes, long queryQuotaBytes, double admissionRatio, long admissionTimeoutMillis) {
+        this.totalBytes = Math.max(1, totalBytes);
+        this.queryQuotaBytes = queryQuotaBytes > 0 ? Math.min(queryQuotaBytes, this.totalBytes) : this.totalBytes;
+        this.admissionBytes = (long) (this.totalBytes * admissionRatio);
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    /**
+     * The budget of the process, gor.memory.budget.mb or gor.memory.budget.ratio of the maximum heap size.
+     */
+    public static MemoryBudget global() {
+        return GLOBAL;
+    }
+
+    private static long totalFromProperties() {
+        String mb = System.getProperty("gor.memory.budget.mb");
+        if (mb != null) return Long.parseLong(mb.trim()) << 20;
+        double ratio = Double.parseDouble(System.getProperty("gor.memory.budget.ratio", "0.75").trim());
+        return (long) (Runtime.getRuntime().maxMemory() * ratio);
+    }
+
+    /**
+     * @param query the request id of the query whose quota the reservation counts against, null or empty for none
+     * @return an empty reservation
+     */
+    public Reservation reservation(String query) {
+        return new Reservation(this, key(query));
+    }
+
+    /**
+     * Waits until the query can start, i.e. until the queries admitted before it are running and the budget is not
+     * nearly exhausted. A query that already holds memory, or has no request id, is admitted at once. Gives up
+     * waiting after the admission timeout or when the thread is interrupted, the query then runs on whatever memory
+     * its operators can get.
+     */
+    public void admit(String query) {
+        String key = key(query);
+        if (key == null) return;
+        Object token = new Object();
+        synchronized (this) {
+            expungeUnreachable();
+            // A query holding memory never queues behind others, they could be waiting for that memory
+            if (queryBytes.containsKey(key)) return;
+            if (admissionQueue.isEmpty() && !mustWait(key)) return;
+            admissionQueue.addLast(token);
+            long deadline = System.currentTimeMillis() + admissionTimeoutMillis;
+            try {
+                while (admissionQueue.peekFirst() != token || mustWait(key)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        log.warn("Query {} admitted after waiting {} ms for memory, {} of {} bytes in use",
+                                key, admissionTimeoutMillis, usedBytes, totalBytes);
+                        break;
+                    }
+                    // Wake up now and then to reclaim reservations that were dropped without being released
+                    wait(Math.min(remaining, 100));
+                    expungeUnreachable();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                admissionQueue.remove(token);
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean mustWait(String key) {
+        return usedBytes >= admissionBytes && !queryBytes.containsKey(key);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getQueryQuotaBytes() {
+        return queryQuotaBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        expungeUnreachable();
+        return usedBytes;
+    }
+
+    public synchronized long getAvailableBytes() {
+        expungeUnreachable();
+        return totalBytes - usedBytes;
+    }
+
+    public synchronized long getQueryBytes(String query) {
+        expungeUnreachable();
+        return queryBytes.getOrDefault(key(query), 0L);
+    }
+
+    public synchronized int getWaitingQueries() {
+        return admissionQueue.size();
+    }
+
+    private synchronized boolean grow(Reservation reservation, long bytes) {
+        expungeUnreachable();
+        Grant grant = reservation.grant;
+        long free = totalBytes - usedBytes;
+        if (grant.query != null) {
+            free = Math.min(free, queryQuotaBytes - queryBytes.getOrDefault(grant.query, 0L));
+        }
+        if (bytes - grant.bytes > free) return false;
+
+        long delta = Math.min(Math.max(bytes, grant.bytes + CHUNK_BYTES) - grant.bytes, free);
+        add(reservation, delta);
+        return true;
+    }
+
+    private synchronized void record(Reservation reservation, long bytes) {
+        expungeUnreachable();
+        if (bytes > reservation.grant.bytes) add(reservation, bytes - reservation.grant.bytes);
+    }
+
+    private void add(Reservation reservation, long delta) {
+        Grant grant = reservation.grant;
+        usedBytes += delta;
+        if (grant.query != null) queryBytes.merge(grant.query, delta, Long::sum);
+        grant.bytes += delta;
+        if (reservation.reference == null) {
+            reservation.reference = new GrantReference(reservation, unreachable);
+            grants.add(reservation.reference);
+        }
+    }
+
+    private synchronized void release(Reservation reservation) {
+        GrantReference reference = reservation.reference;
+        if (reference == null) return;
+        reservation.reference = null;
+        grants.remove(reference);
+        reference.clear();
+        free(reservation.grant);
+    }
+
+    private void expungeUnreachable() {
+        Reference<? extends Reservation> reference;
+        while ((reference = unreachable.poll()) != null) {
+            if (grants.remove(reference)) {
+                Grant grant = ((GrantReference) reference).grant;
+                log.debug("Reclaiming {} bytes of an unreleased memory reservation", grant.bytes);
+                free(grant);
+            }
+        }
+    }
+
+    private void free(Grant grant) {
+        if (grant.bytes == 0) return;
+        usedBytes -= grant.bytes;
+        if (grant.query != null) {
+            queryBytes.computeIfPresent(grant.query, (query, bytes) -> bytes == grant.bytes ? null : bytes - grant.bytes);
+        }
+        grant.bytes = 0;
+        notifyAll();
+    }
+
+    private static String key(String query) {
+        return query == null || query.isEmpty() ? null : query;
+    }
+
+    /**
+     * Memory reserved by an operator. Growing never blocks, the operator is expected to spill or shrink its buffers
+     * when it is denied. The memory is returned to the budget on {@link #release()}, or when the reservation is no
+     * longer reachable.
+     */
+    public static final class Reservation implements AutoCloseable {
+        private final MemoryBudget budget;
+        // Kept apart from the reservation so the budget can reclaim it once the reservation is unreachable
+        private final Grant grant;
+        private GrantReference reference;
+
+        private Reservation(MemoryBudget budget, String query) {
+            this.budget = budget;
+            this.grant = new Grant(query);
+        }
+
+        /**
+         * Makes sure at least the given number of bytes are reserved, growing the reservation by at least
+         * {@link #CHUNK_BYTES} at a time.
+         *
+         * @return false if the budget or the quota of the query can not cover it, the reservation is then unchanged
+         */
+        public boolean ensure(long bytes) {
+            return bytes <= grant.bytes || budget.grow(this, bytes);
+        }
+
+        /**
+         * Records that the given number of bytes are in use whether or not the budget covers them, for memory that can
+         * neither spill nor shrink. Other reservations and admission then see it in use, the budget may be exceeded.
+         */
+        public void record(long bytes) {
+            if (bytes > grant.bytes) budget.record(this, bytes);
+        }
+
+        public long getBytes() {
+            return grant.bytes;
+        }
+
+        /**
+         * Returns all the reserved memory to the budget, the reservation can be grown again afterwards.
+         */
+        public void release() {
+            if (grant.bytes > 0) budget.release(this);
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    private static final class Grant {
+        final String query;
+        volatile long bytes;
+
+        Grant(String query) {
+            this.query = query;
+        }
+    }
+
+    private static final class GrantReference extends PhantomReference<Reservation> {
+        final Grant grant;
+
+        GrantReference(Reservation reservation, ReferenceQueue<Reservation> queue) {
+            super(reservation, queue);
+            this.grant = reservation.grant;
+        }
+    }
+}
@@ -36,6 +36,7 @@ public class SystemContext {
     private GorMonitor monitor;
     private GorRunnerFactory runnerFactory;
     private Object commandWhitelist;
+    private WorkerBudget workerBudget;
 
     public static class Builder {
         private int workers = 0;
@@ -45,6 +46,7 @@ public class SystemContext {
         private GorMonitor monitor;
         private GorRunnerFactory runnerFactory;
         private Object commandWhitelist;
+        private WorkerBudget workerBudget;
 
         public Builder setWorkers(int workers) {
             this.workers = workers;
@@ -81,6 +83,15 @@ public class SystemContext {
             return this;
         }
 
+        /**
+         * Share a worker budget between system contexts, e.g. all sessions of a server process. If not set the
+         * context gets its own budget sized by the number of workers.
+         */
+        public Builder setWorkerBudget(WorkerBudget workerBudget) {
+            this.workerBudget = workerBudget;
+            return this;
+        }
+
         public SystemContext build() {
             SystemContext systemContext = new SystemContext();
             systemContext.monitor = this.monitor;
@@ -90,6 +101,7 @@ public class SystemContext {
             systemContext.startTime = this.startTime;
             systemContext.workers = this.workers <= 0 ? Runtime.getRuntime().availableProcessors() : this.workers;
             systemContext.commandWhitelist = this.commandWhitelist;
+            systemContext.workerBudget = this.workerBudget != null ? this.workerBudget : new WorkerBudget(systemContext.workers);
 
             return systemContext;
         }
@@ -101,6 +113,10 @@ public class SystemContext {
         return workers;
     }
 
+    public WorkerBudget getWorkerBudget() {
+        return workerBudget;
+    }
+
     public long getStartTime() {
         return startTime;
     }
@@ -0,0 +1,59 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded pool of worker slots shared by everything that executes gor queries in parallel for a system context,
+ * i.e. the script execution engine and the parallel query handlers. Slots are only acquired without blocking so
+ * nested executions can never deadlock on the budget, the calling thread always counts as a worker of its own.
+ */
+public class WorkerBudget {
+    private final int maxWorkers;
+    private final Semaphore slots;
+
+    public WorkerBudget(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.slots = new Semaphore(this.maxWorkers);
+    }
+
+    /**
+     * @return true if a worker slot was reserved, the caller must then call {@link #release()} when done
+     */
+    public boolean tryAcquire() {
+        return slots.tryAcquire();
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public int getAvailableWorkers() {
+        return slots.availablePermits();
+    }
+}
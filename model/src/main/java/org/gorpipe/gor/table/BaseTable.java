@@ -456,6 +456,34 @@ public abstract class BaseTable<T extends BucketableTableEntry> {
         return fingerPrintString.md5();
     }
 
+    /**
+     * Calculate a MD5 digest for the lines of the dictionary that overlap the given range, based on the physical file,
+     * last modification date and range of each line. Lines added or changed outside of the range do not affect the
+     * signature, so results for a genomic partition can be reused when the dictionary only changes elsewhere.
+     *
+     * @param commonRoot root that relative file paths of the lines are resolved against, or null
+     * @param chr   chromosome of the range
+     * @param start start position of the range
+     * @param stop  stop position of the range
+     * @param tags  The tags from the dictionary file that will be touched
+     * @return The MD5 digest that is the file signature for the range
+     */
+    public String getRangeSignature(String commonRoot, String chr, int start, int stop, String... tags) throws IOException {
+        List<T> matchingLines = filter().tags(tags != null && tags.length > 0 ? tags : null).includeDeleted().get();
+        ByteTextBuilder fingerPrintString = new ByteTextBuilder(300);
+        fingerPrintString.append(getPath().toString());
+        for (T line : matchingLines) {
+            if (line.getRange() == null || line.getRange().overlaps(chr, start, stop)) {
+                fingerPrintString.append((byte) '&');
+                fingerPrintString.append(line.formatEntryNoNewLine());
+                fingerPrintString.append((byte) '&');
+                fingerPrintString.append(getLastModifiedTime(line.getContentReal(), securityContext, commonRoot));
+            }
+        }
+
+        return fingerPrintString.md5();
+    }
+
     public String getSignature(String... tags) throws IOException {
         return getSignature(false,null, tags);
     }
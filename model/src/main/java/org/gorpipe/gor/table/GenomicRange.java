@@ -90,6 +90,27 @@ public class GenomicRange {
                 this.stopPos >= 0 ? this.stopPos : "");
     }
 
+    /**
+     * Check if this range overlaps the given single chromosome range. Chromosomes are compared lexicographically as in
+     * gor order and an empty range or a missing stop position is treated as open ended.
+     *
+     * @param chr   chromosome of the range to check
+     * @param start start position of the range to check
+     * @param stop  stop position of the range to check
+     * @return <true> if the ranges overlap
+     */
+    public boolean overlaps(String chr, int start, int stop) {
+        if (isEmpty || startChr.isEmpty()) {
+            return true;
+        }
+        String lastChr = stopChr.isEmpty() ? startChr : stopChr;
+        int startCompare = startChr.compareTo(chr);
+        int stopCompare = lastChr.compareTo(chr);
+        boolean startsBeforeStop = startCompare < 0 || (startCompare == 0 && Math.max(0, startPos) <= stop);
+        boolean endsAfterStart = stopCompare > 0 || (stopCompare == 0 && (stopPos < 0 || stopPos >= start));
+        return startsBeforeStop && endsAfterStart;
+    }
+
     public String format() {
         if (isEmpty) return "\t\t\t";
         StringBuilder sb =  new StringBuilder();
@@ -24,6 +24,9 @@ package org.gorpipe.model.genome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * @author gfj
  * @version $Id$
@@ -34,16 +37,39 @@ public class CancelMonitor {
     /**
      * set this to true to request gor to cancel loading
      */
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Called on the cancelling thread when the cancel flag is set, to stop reading threads waiting for data
+     */
+    private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
 
     public boolean isCancelled() {
         return cancelled;
     }
 
     public void setCancelled(boolean c) {
+        boolean wasCancelled = cancelled;
         if (c) {
             log.debug("Cancel flag set", new RuntimeException("Stack trace for setting cancel flag"));
         }
         cancelled = c;
+        if (c && !wasCancelled) {
+            for (Runnable listener : cancelListeners) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    log.warn("Cancel listener failed", e);
+                }
+            }
+        }
+    }
+
+    public void addCancelListener(Runnable listener) {
+        cancelListeners.add(listener);
+    }
+
+    public void removeCancelListener(Runnable listener) {
+        cancelListeners.remove(listener);
     }
 }
@@ -179,6 +179,12 @@ public class DefaultFileReader extends FileReader {
     }
 
 
+    @Override
+    public String getDictionaryRangeSignature(String dictionary, String[] tags, String chr, int start, int stop) throws IOException {
+        return new DictionaryTable.Builder<>(dictionary).securityContext(securityContext).build().getRangeSignature(null, chr, start, stop, tags);
+    }
+
+
     public String getFileSignature(String file) throws IOException {
         return GorOptions.getFileSignature(file, securityContext);
     }
@@ -187,6 +187,13 @@ public class DriverBackedFileReader extends FileReader {
         return new DictionaryTable.Builder<>(Paths.get(getResolvedUrl(file))).securityContext(securityContext).build().getSignature(true, file.getSourceReference().commonRoot, tags);
     }
 
+    @Override
+    public String getDictionaryRangeSignature(String dictionary, String[] tags, String chr, int start, int stop) throws IOException {
+        final DataSource file = resolveUrl(dictionary);
+        return new DictionaryTable.Builder<>(Paths.get(getResolvedUrl(file))).securityContext(securityContext).build()
+                .getRangeSignature(file.getSourceReference().commonRoot, chr, start, stop, tags);
+    }
+
     @Override
     public String getFileSignature(String file) throws IOException {
         DataSource source = resolveUrl(file);
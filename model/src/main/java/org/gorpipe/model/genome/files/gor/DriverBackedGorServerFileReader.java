@@ -70,6 +70,14 @@ public class DriverBackedGorServerFileReader extends DriverBackedFileReader {
         return super.getDictionarySignature(dictionary, tags);
     }
 
+    @Override
+    public String getDictionaryRangeSignature(String dictionary, String[] tags, String chr, int start, int stop) throws IOException {
+        if (dictionary.startsWith(RESULT_CACHE_DIR)) { // Files in Result Cache can be assumed to never change
+            return Util.md5(dictionary);
+        }
+        return super.getDictionaryRangeSignature(dictionary, tags, chr, start, stop);
+    }
+
     @Override
     Stream<String> directDbUrl(String resolvedUrl) {
         throw new GorException("Direct queries on db urls not allowed on server", "Trying to open "+resolvedUrl);
@@ -133,6 +133,22 @@ public abstract class FileReader {
      */
     public abstract String getDictionarySignature(String dictionary, String[] tags) throws IOException;
 
+    /**
+     * Calculate a MD5 digest for the specified dictionary file based on the lines overlapping the given range only.
+     * Implementations that can not read the dictionary lines return the signature of the whole dictionary.
+     *
+     * @param dictionary A dictionary file
+     * @param tags       The tags from the dictionary file that will be touched
+     * @param chr        Chromosome of the range
+     * @param start      Start position of the range
+     * @param stop       Stop position of the range
+     * @return The MD5 digest that is the file signature for the range
+     * @throws IOException if the file does not exist or an I/O error occurs
+     */
+    public String getDictionaryRangeSignature(String dictionary, String[] tags, String chr, int start, int stop) throws IOException {
+        return getDictionarySignature(dictionary, tags);
+    }
+
 
     /**
      * Calculate a MD5 digest for the specified file based on the fullname of the physical file and last modification date. Note
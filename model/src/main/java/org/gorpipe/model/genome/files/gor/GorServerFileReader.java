@@ -103,6 +103,17 @@ public class GorServerFileReader extends FileReader {
         return new DictionaryTable.Builder<>(Paths.get(fileName)).securityContext(securityContext).build().getSignature(true, resolvedSessionRoot, tags);
     }
 
+    @Override
+    public String getDictionaryRangeSignature(String dictionary, String[] tags, String chr, int start, int stop) throws IOException {
+        if (dictionary.startsWith(RESULT_CACHE_DIR)) { // Files in Result Cache can be assumed to never change
+            return Util.md5(dictionary);
+        }
+
+        final String fileName = resolveUrl(dictionary);
+        return new DictionaryTable.Builder<>(Paths.get(fileName)).securityContext(securityContext).build()
+                .getRangeSignature(resolvedSessionRoot, chr, start, stop, tags);
+    }
+
     @Override
     public String getFileSignature(String file) throws IOException {
         // Notes:
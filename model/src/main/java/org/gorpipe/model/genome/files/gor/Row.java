@@ -95,6 +95,18 @@ public abstract class Row implements Comparable<Row>,ColumnValueProvider, Serial
         int sortColumn;
         SortOrder sortOrder;
         SortType sortType;
+
+        public int getSortColumn() {
+            return sortColumn;
+        }
+
+        public SortOrder getSortOrder() {
+            return sortOrder;
+        }
+
+        public SortType getSortType() {
+            return sortType;
+        }
     }
 
     public int advancedCompare(Row that, SortInfo[] sortArray) {
@@ -218,6 +230,21 @@ public abstract class Row implements Comparable<Row>,ColumnValueProvider, Serial
      */
     public abstract CharSequence getAllCols();
 
+    /**
+     * @param index Index into the text of the row, see {@link #getAllCols()}
+     * @return The character at the index
+     */
+    public char charAt(int index) {
+        return getAllCols().charAt(index);
+    }
+
+    /**
+     * Must be called after the text returned by {@link #getAllCols()} has been edited in place, so that values parsed
+     * from the old text are not used.
+     */
+    public void columnsChanged() {
+    }
+
     /**
      * Returns the number of columns in the row, including chromosome and position
      * @return The number of columns
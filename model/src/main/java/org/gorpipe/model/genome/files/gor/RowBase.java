@@ -45,6 +45,19 @@ public class RowBase extends Row implements Serializable {
      */
     private int[] splitArray;
 
+    /**
+     * Parsed values of the numeric columns, so that a column referenced by several expressions along the pipeline,
+     * e.g. a where followed by calc steps, is parsed only once. Bit n of a mask is set when column n has a cached
+     * value. Only the first 64 columns are cached. A column is dropped from the cache when it is changed, and all of
+     * them when code editing allCols in place calls {@link #columnsChanged()}.
+     */
+    private transient long cachedInts;
+    private transient long cachedDoubles;
+    private transient int[] intValues;
+    private transient double[] doubleValues;
+
+    private static final int MAX_CACHED_COLUMNS = 64;
+
     private RowBase() {
     }
 
@@ -94,6 +107,16 @@ public class RowBase extends Row implements Serializable {
         return allCols;
     }
 
+    @Override
+    public char charAt(int index) {
+        return allCols.charAt(index);
+    }
+
+    @Override
+    public void columnsChanged() {
+        clearCachedValues();
+    }
+
     @Override
     public int[] getSplitArray() {
         return splitArray;
@@ -106,6 +129,7 @@ public class RowBase extends Row implements Serializable {
 
     @Override
     public void removeColumn(int n) {
+        clearCachedValues();
         final int[] oldSplitArray = this.splitArray;
         this.splitArray = new int[oldSplitArray.length - 1];
         System.arraycopy(oldSplitArray, 0, this.splitArray, 0, n);
@@ -138,6 +162,7 @@ public class RowBase extends Row implements Serializable {
 
     @Override
     public void setColumn(int i, String val) {
+        clearCachedValue(i + 2);
         if(splitArray[i+1] < allCols.length()) {
             final int prefixLength = splitArray[i + 1] + 1;
             final int tailLength = splitArray[splitArray.length - 1] - splitArray[i+2] + 1;
@@ -166,6 +191,9 @@ public class RowBase extends Row implements Serializable {
 
     @Override
     public void setColumns(int[] colsToReplace, String[] values) {
+        for (int col : colsToReplace) {
+            clearCachedValue(col);
+        }
         StringBuilder sb = new StringBuilder();
 
         addColumnsBefore(sb, colsToReplace[0]);
@@ -258,14 +286,36 @@ public class RowBase extends Row implements Serializable {
 
     @Override
     public int colAsInt(int n) {
+        if (n < MAX_CACHED_COLUMNS && (cachedInts & (1L << n)) != 0) {
+            return intValues[n];
+        }
         testColumnIndex(n);
-        return RowObj.colInt(n, allCols, splitArray);
+        int value = RowObj.colInt(n, allCols, splitArray);
+        if (n < MAX_CACHED_COLUMNS) {
+            if (intValues == null || intValues.length <= n) {
+                intValues = intValues == null ? new int[cacheSize(n)] : Arrays.copyOf(intValues, cacheSize(n));
+            }
+            intValues[n] = value;
+            cachedInts |= 1L << n;
+        }
+        return value;
     }
 
     @Override
     public double colAsDouble(int n) {
+        if (n < MAX_CACHED_COLUMNS && (cachedDoubles & (1L << n)) != 0) {
+            return doubleValues[n];
+        }
         testColumnIndex(n);
-        return RowObj.colDouble(n, allCols, splitArray);
+        double value = RowObj.colDouble(n, allCols, splitArray);
+        if (n < MAX_CACHED_COLUMNS) {
+            if (doubleValues == null || doubleValues.length <= n) {
+                doubleValues = doubleValues == null ? new double[cacheSize(n)] : Arrays.copyOf(doubleValues, cacheSize(n));
+            }
+            doubleValues[n] = value;
+            cachedDoubles |= 1L << n;
+        }
+        return value;
     }
 
     @Override
@@ -436,7 +486,9 @@ public class RowBase extends Row implements Serializable {
         }
         newSplitArray[numCols+cols.length-1] = offset;
 
-        return new RowBase(chr, pos, newStringBuilder, newSplitArray, null);
+        RowBase row = new RowBase(chr, pos, newStringBuilder, newSplitArray, null);
+        row.copyCachedValues(this);
+        return row;
     }
 
     @Override
@@ -479,6 +531,37 @@ public class RowBase extends Row implements Serializable {
         return colAsLong(col);
     }
 
+    private int cacheSize(int n) {
+        return Math.min(MAX_CACHED_COLUMNS, Math.max(n + 1, splitArray.length));
+    }
+
+    private void clearCachedValue(int n) {
+        if (n < MAX_CACHED_COLUMNS) {
+            cachedInts &= ~(1L << n);
+            cachedDoubles &= ~(1L << n);
+        }
+    }
+
+    private void clearCachedValues() {
+        cachedInts = 0;
+        cachedDoubles = 0;
+    }
+
+    /**
+     * Takes the cached values of a row with the same leading columns. The arrays are copied, never shared, as either
+     * row may change a column later on.
+     */
+    private void copyCachedValues(RowBase other) {
+        if (other.cachedInts != 0) {
+            intValues = other.intValues.clone();
+            cachedInts = other.cachedInts;
+        }
+        if (other.cachedDoubles != 0) {
+            doubleValues = other.doubleValues.clone();
+            cachedDoubles = other.cachedDoubles;
+        }
+    }
+
     private void addColumnToStringBuilder(StringBuilder sb, int column) {
         int start = column == 0 ? 0 : splitArray[column - 1] + 1;
         int end = splitArray[column];
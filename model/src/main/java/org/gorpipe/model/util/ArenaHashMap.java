@@ -0,0 +1,406 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.model.util;
+
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.MemoryBudget;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact map with string keys for large lookup tables, e.g. the ones used by MAP and MULTIMAP. The keys and values
+ * are stored as UTF-8 records in a {@link ByteArena} and the table is open addressing over arena offsets, so a map
+ * costs little more than the text it holds instead of several objects per entry.
+ * <p>
+ * A map can be written to a file and mapped back read only, so concurrent queries can share one copy of it through
+ * the page cache. A mapped map is read only.
+ * <p>
+ * The entries are iterated in the order a {@link java.util.HashMap} with the same puts would iterate them, so
+ * replacing a HashMap with this map does not change the order of output rows.
+ */
+public abstract class ArenaHashMap<V> extends AbstractMap<String, V> {
+    private static final long MAGIC = 0x474f524d41503031L; // GORMAP01
+    private static final int MAX_CAPACITY = 1 << 28;
+    private static final long UNRECORDED_BYTES = 1 << 20;
+
+    protected final ByteArena arena;
+    private final boolean readOnly;
+    private LongBuffer slots;
+    private IntBuffer hashes;
+    private int capacity;
+    private int size = 0;
+    private int usedSlots = 0;
+    private BitSet removed = null;
+    private int hashMapCapacity = 16;
+    private MemoryBudget.Reservation reservation;
+
+    protected ArenaHashMap() {
+        arena = new ByteArena();
+        readOnly = false;
+        allocate(16);
+    }
+
+    protected ArenaHashMap(Path file, int kind) {
+        readOnly = true;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(32);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getLong() != MAGIC || header.getInt() != kind) {
+                throw new GorSystemException("Not a map file of the right kind: " + file, null);
+            }
+            capacity = header.getInt();
+            size = header.getInt();
+            hashMapCapacity = header.getInt();
+            int pageCount = header.getInt();
+            ByteBuffer pageLengths = ByteBuffer.allocate(8 * pageCount);
+            channel.read(pageLengths, 32);
+            pageLengths.flip();
+            long position = 32 + 8L * pageCount;
+            slots = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * capacity).asLongBuffer();
+            position += 8L * capacity;
+            hashes = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * capacity).asIntBuffer();
+            position += 4L * capacity;
+            ByteBuffer[] pages = new ByteBuffer[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                long length = pageLengths.getLong();
+                pages[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+            }
+            arena = new ByteArena(pages);
+        } catch (IOException e) {
+            throw new GorSystemException("Unable to map " + file, e);
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        slots = LongBuffer.allocate(newCapacity);
+        hashes = IntBuffer.allocate(newCapacity);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean isRemoved(int slot) {
+        return removed != null && removed.get(slot);
+    }
+
+    /**
+     * @return the slot of the key or -(slot + 1) for the empty slot where it belongs
+     */
+    protected int find(String key, int hash) {
+        int mask = capacity - 1;
+        int i = mix(hash) & mask;
+        while (true) {
+            long record = slots.get(i);
+            if (record == 0) return -(i + 1);
+            if (hashes.get(i) == hash && !isRemoved(i) && keyEquals(record - 1, key)) return i;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Compares the key with the UTF-8 bytes of the record as it is encoded, so lookups allocate nothing. Unpaired
+     * surrogates are compared as '?', as {@link String#getBytes} encodes them.
+     */
+    private boolean keyEquals(long record, String key) {
+        int length = arena.getVarint(record);
+        long offset = record + ByteArena.varintSize(length);
+        long end = offset + length;
+        int n = key.length();
+        if (length < n) return false;
+        for (int i = 0; i < n; i++) {
+            int c = key.charAt(i);
+            if (c < 0x80) {
+                if (offset == end || arena.get(offset++) != (byte) c) return false;
+                continue;
+            }
+            if (Character.isSurrogate((char) c)) {
+                if (Character.isHighSurrogate((char) c) && i + 1 < n && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    c = Character.toCodePoint((char) c, key.charAt(++i));
+                } else {
+                    c = '?';
+                }
+            }
+            int count = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (end - offset < count) return false;
+            int first = count == 1 ? c : (0xf00 >> count) & 0xff | c >>> (6 * (count - 1));
+            if (arena.get(offset++) != (byte) first) return false;
+            for (int j = count - 2; j >= 0; j--) {
+                if (arena.get(offset++) != (byte) (0x80 | (c >>> (6 * j)) & 0x3f)) return false;
+            }
+        }
+        return offset == end;
+    }
+
+    /**
+     * Adds the key to the empty slot returned by {@link #find}.
+     *
+     * @return the offset of the payload after the key
+     */
+    protected long insert(String key, int hash, int emptySlot, int payloadSize) {
+        checkWritable();
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long record = arena.allocate(ByteArena.varintSize(bytes.length) + bytes.length + payloadSize);
+        long payload = arena.putVarint(record, bytes.length);
+        arena.put(payload, bytes);
+        slots.put(emptySlot, record + 1);
+        hashes.put(emptySlot, hash);
+        // Mirror the growth of a HashMap, which determines its iteration order
+        if (++size > hashMapCapacity / 4 * 3) hashMapCapacity *= 2;
+        if (2 * ++usedSlots > capacity) {
+            if (capacity >= MAX_CAPACITY) throw new GorSystemException("Map has too many entries: " + size, null);
+            rehash(2 * capacity);
+        }
+        return payload + bytes.length;
+    }
+
+    /**
+     * Moves the entries to a new table, leaving out the removed ones.
+     */
+    private void rehash(int newCapacity) {
+        LongBuffer oldSlots = slots;
+        IntBuffer oldHashes = hashes;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        usedSlots = 0;
+        for (int i = 0; i < oldCapacity; i++) {
+            long record = oldSlots.get(i);
+            if (record == 0 || isRemoved(i)) continue;
+            int hash = oldHashes.get(i);
+            int mask = capacity - 1;
+            int j = mix(hash) & mask;
+            while (slots.get(j) != 0) j = (j + 1) & mask;
+            slots.put(j, record);
+            hashes.put(j, hash);
+            usedSlots++;
+        }
+        removed = null;
+    }
+
+    protected long payload(int slot) {
+        long record = slots.get(slot) - 1;
+        int length = arena.getVarint(record);
+        return record + ByteArena.varintSize(length) + length;
+    }
+
+    protected void checkWritable() {
+        if (readOnly) throw new UnsupportedOperationException("Mapped maps are read only");
+    }
+
+    protected String readString(long record) {
+        int length = arena.getVarint(record);
+        return arena.getString(record + ByteArena.varintSize(length), length);
+    }
+
+    /**
+     * @return the offset after the string written at the given offset
+     */
+    protected long writeString(long offset, byte[] bytes) {
+        long position = arena.putVarint(offset, bytes.length);
+        arena.put(position, bytes);
+        return position + bytes.length;
+    }
+
+    protected static int stringSize(byte[] bytes) {
+        return ByteArena.varintSize(bytes.length) + bytes.length;
+    }
+
+    protected abstract V value(long payload);
+
+    /**
+     * @return the heap bytes held by the records and the table of the map, 0 for a mapped map
+     */
+    public long heapBytes() {
+        return readOnly ? 0 : arena.bytes() + 12L * capacity;
+    }
+
+    /**
+     * Records the heap memory of the map beyond the first megabyte as in use in the budget, without a query key, so
+     * large lookup tables are seen by admission and by the operators reserving memory. Small maps, e.g. config maps,
+     * are not recorded. The memory is never denied, it is returned when the map is cleared, its memory released, or
+     * when the map is no longer reachable.
+     */
+    public void recordMemory(MemoryBudget budget) {
+        long bytes = heapBytes();
+        if (bytes <= UNRECORDED_BYTES) return;
+        if (reservation == null) reservation = budget.reservation(null);
+        reservation.record(bytes);
+    }
+
+    /**
+     * Returns the memory recorded for the map to the budget, e.g. when the session cache holding it is dropped.
+     */
+    public void releaseMemory() {
+        if (reservation != null) reservation.release();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key, key.hashCode()) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof String)) return null;
+        int slot = find((String) key, key.hashCode());
+        return slot >= 0 ? value(payload(slot)) : null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        checkWritable();
+        if (!(key instanceof String)) return null;
+        int slot = find((String) key, key.hashCode());
+        if (slot < 0) return null;
+        V value = value(payload(slot));
+        if (removed == null) removed = new BitSet(capacity);
+        removed.set(slot);
+        size--;
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        allocate(16);
+        usedSlots = 0;
+        size = 0;
+        removed = null;
+        hashMapCapacity = 16;
+        releaseMemory();
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return entryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Iterator<Entry<String, V>> entryIterator() {
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (slots.get(i) != 0 && !isRemoved(i)) order[n++] = i;
+        }
+        int mask = hashMapCapacity - 1;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> {
+            int h = hashes.get(i);
+            return (h ^ (h >>> 16)) & mask;
+        }).thenComparingLong(i -> slots.get(i)));
+        return new Iterator<Entry<String, V>>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < order.length;
+            }
+
+            @Override
+            public Entry<String, V> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int slot = order[next++];
+                long record = slots.get(slot) - 1;
+                return new SimpleImmutableEntry<>(readString(record), value(payload(slot)));
+            }
+        };
+    }
+
+    /**
+     * Writes the map to a file that can be mapped with the constructor taking a path. The file is written to a
+     * temporary file first and moved in place, so readers never see a partial file.
+     */
+    protected void writeTo(Path file, int kind) throws IOException {
+        if (removed != null) rehash(capacity);
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                int pageCount = arena.pageCount();
+                ByteBuffer header = ByteBuffer.allocate(32 + 8 * pageCount);
+                header.putLong(MAGIC).putInt(kind).putInt(capacity).putInt(size).putInt(hashMapCapacity).putInt(pageCount).putInt(0);
+                for (int i = 0; i < pageCount; i++) header.putLong(arena.page(i).remaining());
+                header.flip();
+                writeFully(channel, header);
+                ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+                for (int i = 0; i < capacity; i++) {
+                    if (chunk.remaining() < 8) flush(channel, chunk);
+                    chunk.putLong(slots.get(i));
+                }
+                for (int i = 0; i < capacity; i++) {
+                    if (chunk.remaining() < 4) flush(channel, chunk);
+                    chunk.putInt(hashes.get(i));
+                }
+                flush(channel, chunk);
+                for (int i = 0; i < pageCount; i++) writeFully(channel, arena.page(i));
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        writeFully(channel, chunk);
+        chunk.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+}
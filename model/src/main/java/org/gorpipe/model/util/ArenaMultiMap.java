@@ -0,0 +1,132 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.model.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * {@link ArenaHashMap} from string to several strings. The values of a key are a linked list of records in the arena,
+ * the key record holds their count and the offsets of the first and last ones, so adding a value costs O(1).
+ * <p>
+ * The values are returned in the order MULTIMAP has always produced them: each added value used to be prepended to
+ * the existing ones and the result reversed, which leaves the values of the other parity than the last one first,
+ * newest first, followed by the ones of the same parity, oldest first.
+ */
+public class ArenaMultiMap extends ArenaHashMap<String[]> {
+    private static final int KIND = 2;
+    private static final int PAYLOAD_SIZE = 4 + 8 + 8;
+
+    public ArenaMultiMap() {
+        super();
+    }
+
+    private ArenaMultiMap(Path file) {
+        super(file, KIND);
+    }
+
+    /**
+     * @return a read only map backed by a file written with {@link #writeTo(Path)}
+     */
+    public static ArenaMultiMap map(Path file) {
+        return new ArenaMultiMap(file);
+    }
+
+    public void writeTo(Path file) throws IOException {
+        writeTo(file, KIND);
+    }
+
+    /**
+     * Adds a value to the values of the key.
+     */
+    public void add(String key, String value) {
+        checkWritable();
+        int hash = key.hashCode();
+        int slot = find(key, hash);
+        long payload = slot >= 0 ? payload(slot) : insert(key, hash, -(slot + 1), PAYLOAD_SIZE);
+        append(payload, slot >= 0 ? arena.getInt(payload) : 0, value);
+    }
+
+    private void append(long payload, int count, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long record = arena.allocate(stringSize(bytes) + 8);
+        long next = writeString(record, bytes);
+        arena.putLong(next, -1);
+        if (count == 0) {
+            arena.putLong(payload + 4, record);
+        } else {
+            long tail = arena.getLong(payload + 12);
+            arena.putLong(tail + stringSize(arena.getVarint(tail)), record);
+        }
+        arena.putLong(payload + 12, record);
+        arena.putInt(payload, count + 1);
+    }
+
+    private static int stringSize(int length) {
+        return ByteArena.varintSize(length) + length;
+    }
+
+    @Override
+    protected String[] value(long payload) {
+        int count = arena.getInt(payload);
+        String[] added = new String[count];
+        long record = arena.getLong(payload + 4);
+        for (int i = 0; i < count; i++) {
+            added[i] = readString(record);
+            record = arena.getLong(record + stringSize(arena.getVarint(record)));
+        }
+        String[] values = new String[count];
+        int v = 0;
+        for (int i = count - 2; i >= 0; i -= 2) values[v++] = added[i];
+        for (int i = (count - 1) % 2; i < count; i += 2) values[v++] = added[i];
+        return values;
+    }
+
+    /**
+     * Replaces the values of the key, the values are returned in the given order.
+     */
+    @Override
+    public String[] put(String key, String[] values) {
+        checkWritable();
+        int hash = key.hashCode();
+        int slot = find(key, hash);
+        String[] previous = null;
+        long payload;
+        if (slot >= 0) {
+            payload = payload(slot);
+            previous = value(payload);
+        } else {
+            payload = insert(key, hash, -(slot + 1), PAYLOAD_SIZE);
+        }
+        // Add the values so that the order above returns them as given
+        int count = values.length;
+        String[] added = new String[count];
+        int v = 0;
+        for (int i = count - 2; i >= 0; i -= 2) added[i] = values[v++];
+        for (int i = (count - 1) % 2; i < count; i += 2) added[i] = values[v++];
+        arena.putInt(payload, 0);
+        for (int i = 0; i < count; i++) append(payload, i, added[i]);
+        return previous;
+    }
+}
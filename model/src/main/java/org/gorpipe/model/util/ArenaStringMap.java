@@ -0,0 +1,79 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.model.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * {@link ArenaHashMap} from string to string. The key record points to a value record, a new value is appended to
+ * the arena and the pointer moved.
+ */
+public class ArenaStringMap extends ArenaHashMap<String> {
+    private static final int KIND = 1;
+
+    public ArenaStringMap() {
+        super();
+    }
+
+    private ArenaStringMap(Path file) {
+        super(file, KIND);
+    }
+
+    /**
+     * @return a read only map backed by a file written with {@link #writeTo(Path)}
+     */
+    public static ArenaStringMap map(Path file) {
+        return new ArenaStringMap(file);
+    }
+
+    public void writeTo(Path file) throws IOException {
+        writeTo(file, KIND);
+    }
+
+    @Override
+    protected String value(long payload) {
+        return readString(arena.getLong(payload));
+    }
+
+    @Override
+    public String put(String key, String value) {
+        checkWritable();
+        int hash = key.hashCode();
+        int slot = find(key, hash);
+        String previous = null;
+        long payload;
+        if (slot >= 0) {
+            payload = payload(slot);
+            previous = value(payload);
+        } else {
+            payload = insert(key, hash, -(slot + 1), 8);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long record = arena.allocate(stringSize(bytes));
+        writeString(record, bytes);
+        arena.putLong(payload, record);
+        return previous;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.model.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append only store of byte records in pages, addressed by long offsets holding the page in the high and the position
+ * in the low 32 bits. A record never spans pages. The last page grows by doubling until it reaches the page size, so
+ * small arenas stay small. The pages are heap buffers while building and can also be mapped from a file, then the
+ * arena is read only.
+ */
+class ByteArena {
+    static final int PAGE_SIZE = 1 << 24;
+    private static final int FIRST_PAGE_SIZE = 1 << 12;
+
+    private ByteBuffer[] pages;
+    private int[] lengths;
+    private int pageCount;
+
+    ByteArena() {
+        pages = new ByteBuffer[4];
+        lengths = new int[4];
+    }
+
+    ByteArena(ByteBuffer[] mappedPages) {
+        pages = mappedPages;
+        lengths = new int[mappedPages.length];
+        pageCount = mappedPages.length;
+        for (int i = 0; i < pageCount; i++) lengths[i] = mappedPages[i].capacity();
+    }
+
+    /**
+     * @return the offset of a new record of the given length
+     */
+    long allocate(int length) {
+        int last = pageCount - 1;
+        if (last < 0 || pages[last].capacity() - lengths[last] < length) {
+            if (last >= 0 && lengths[last] + length <= PAGE_SIZE) {
+                int capacity = pages[last].capacity();
+                while (capacity - lengths[last] < length) capacity *= 2;
+                ByteBuffer page = ByteBuffer.allocate(Math.min(PAGE_SIZE, capacity));
+                page.put(pages[last].array(), 0, lengths[last]);
+                pages[last] = page;
+            } else {
+                if (pageCount == pages.length) {
+                    pages = Arrays.copyOf(pages, 2 * pageCount);
+                    lengths = Arrays.copyOf(lengths, 2 * pageCount);
+                }
+                int capacity = pageCount == 0 ? FIRST_PAGE_SIZE : PAGE_SIZE;
+                while (capacity < length) capacity *= 2;
+                pages[pageCount++] = ByteBuffer.allocate(capacity);
+                last++;
+            }
+        }
+        long offset = ((long) last << 32) | lengths[last];
+        lengths[last] += length;
+        return offset;
+    }
+
+    int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the used part of a page
+     */
+    ByteBuffer page(int i) {
+        ByteBuffer page = pages[i].duplicate();
+        page.position(0);
+        page.limit(lengths[i]);
+        return page;
+    }
+
+    long bytes() {
+        long bytes = 0;
+        for (int i = 0; i < pageCount; i++) bytes += lengths[i];
+        return bytes;
+    }
+
+    private ByteBuffer buffer(long offset) {
+        return pages[(int) (offset >>> 32)];
+    }
+
+    byte get(long offset) {
+        return buffer(offset).get((int) offset);
+    }
+
+    int getInt(long offset) {
+        return buffer(offset).getInt((int) offset);
+    }
+
+    long getLong(long offset) {
+        return buffer(offset).getLong((int) offset);
+    }
+
+    void putInt(long offset, int value) {
+        buffer(offset).putInt((int) offset, value);
+    }
+
+    void putLong(long offset, long value) {
+        buffer(offset).putLong((int) offset, value);
+    }
+
+    void get(long offset, byte[] dst, int length) {
+        ByteBuffer buffer = buffer(offset);
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + (int) offset, dst, 0, length);
+        } else {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position((int) offset);
+            slice.get(dst, 0, length);
+        }
+    }
+
+    /**
+     * @return the UTF-8 string of the given length at the offset, decoded straight from heap pages
+     */
+    String getString(long offset, int length) {
+        ByteBuffer buffer = buffer(offset);
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + (int) offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        get(offset, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void put(long offset, byte[] src) {
+        ByteBuffer buffer = buffer(offset);
+        System.arraycopy(src, 0, buffer.array(), buffer.arrayOffset() + (int) offset, src.length);
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    /**
+     * @return the offset after the value
+     */
+    long putVarint(long offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer(offset).put((int) offset++, (byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer(offset).put((int) offset++, (byte) value);
+        return offset;
+    }
+
+    int getVarint(long offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = get(offset++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
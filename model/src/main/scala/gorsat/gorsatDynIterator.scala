@@ -231,6 +231,11 @@ class DynamicRowSource(iteratorCommand : String, context: GorContext, fixHeader
     if (itDyn != null) itDyn.close() // calls theSource.close
   }
 
+  override def terminateReading(): Unit = {
+    val source = theSource
+    if (source != null) source.terminateReading()
+  }
+
   override def getHeader : String = {
     if (header != "") return header
     val i = iteratorCommand.indexOf("<(")
@@ -22,13 +22,14 @@
 
 package gorsat.gorsatGorIterator
 
-import java.nio.file.Files
+import java.nio.file.{Files, Path, Paths}
 
 import org.gorpipe.model.genome.files.gor.FileReader
-import org.gorpipe.gor.GorSession
+import org.gorpipe.gor.{GorSession, MemoryBudget}
 import org.gorpipe.model.genome.files.gor.{DriverBackedFileReader, FileReader}
 import org.gorpipe.model.gor.MemoryMonitorUtil
 import org.gorpipe.model.gor.iterators.LineIterator
+import org.gorpipe.model.util.{ArenaMultiMap, ArenaStringMap, Util}
 
 import scala.collection.JavaConverters._
 
@@ -64,6 +65,45 @@ object MapAndListUtilities {
     getMultiHashMap(filename, FileLineIterator(filename, session.getProjectContext.getFileReader), caseInsensitive, ic, oc, session)
   }
 
+  /**
+    * Maps can be shared by queries and processes through files in the directory given by the gor.map.share.dir
+    * property. The files are keyed by the source of the map, the signature of the files it reads and the map options,
+    * and are mapped into memory, so all users of a map share one copy of it.
+    */
+  def getSharedMapFile(mapKey: String, sourceSignature: String): Option[Path] = {
+    val dir = System.getProperty("gor.map.share.dir")
+    if (dir == null || dir.isEmpty || sourceSignature == null) None
+    else Some(Paths.get(dir).resolve(Util.md5(mapKey + "\t" + sourceSignature) + ".gormap"))
+  }
+
+  /**
+    * @return the signature of the files read by a map source or null if they have no signature
+    */
+  def getSourceSignature(usedFiles: Seq[String], session: GorSession): String = {
+    if (System.getProperty("gor.map.share.dir") == null || usedFiles.isEmpty) return null
+    try {
+      val signatures = usedFiles.map(f => session.getProjectContext.getFileReader.getFileSignature(f))
+      if (signatures.contains(null)) null else signatures.mkString(",")
+    } catch {
+      case _: Exception => null
+    }
+  }
+
+  // Lines read between recording the memory of a map being read in the memory budget
+  private val RecordEveryLines = 4096
+
+  private def writeSharedMap(theMap: java.util.Map[String, _], file: Path): Unit = {
+    try {
+      theMap match {
+        case arenaMap: ArenaStringMap => arenaMap.writeTo(file)
+        case arenaMap: ArenaMultiMap => arenaMap.writeTo(file)
+        case _ =>
+      }
+    } catch {
+      case _: Exception => /* The map is still usable, it is just not shared */
+    }
+  }
+
   def getMultiHashMap(filename: String, iterator: LineIterator,
                       caseInsensitive: Boolean, session: GorSession): multiHashMap =
     getMultiHashMap(filename, iterator, caseInsensitive, 1, Array(1), session)
@@ -108,16 +148,24 @@ object MapAndListUtilities {
   }
 
   def getSingleHashMap(filename: String, iterator: LineIterator, caseInsensitive: Boolean, ic: Int,
-                       oc: Array[Int], asSet: Boolean, skipEmpty: Boolean, session: GorSession): singleHashMap =  {
+                       oc: Array[Int], asSet: Boolean, skipEmpty: Boolean, session: GorSession,
+                       sourceSignature: String = null): singleHashMap =  {
     val extFilename = "map" + filename + ic + oc.mkString(",")
     val ocl = oc.length
+    val sharedFile = getSharedMapFile(s"$extFilename\t$caseInsensitive\t$asSet\t$skipEmpty", sourceSignature)
     syncGetSingleHashMap(extFilename, session) match {
       case Some(theMap) =>
         iterator.close()
         theMap
+      case None if sharedFile.exists(Files.exists(_)) =>
+        iterator.close()
+        val theMap = ArenaStringMap.map(sharedFile.get)
+        syncAddSingleHashMap(extFilename, theMap, session)
+        theMap
       case None =>
         try {
-          var colMap = new java.util.HashMap[String, String]()
+          val colMap = new ArenaStringMap()
+          var lines = 0L
 
           val mmu: MemoryMonitorUtil =  new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler)
 
@@ -125,6 +173,8 @@ object MapAndListUtilities {
             val x = iterator.nextLine
             val cols = x.split("\t", -1)
             mmu.check("getSingleHashMap", mmu.lineNum, x)
+            lines += 1
+            if (lines % RecordEveryLines == 0) colMap.recordMemory(MemoryBudget.global())
             if (asSet) {
               val lookupString =
                 if (caseInsensitive) cols.slice(0, 1.max(ic)).mkString("\t").toUpperCase
@@ -146,7 +196,9 @@ object MapAndListUtilities {
               }
             }
           }
+          colMap.recordMemory(MemoryBudget.global())
           syncAddSingleHashMap(extFilename, colMap, session)
+          sharedFile.foreach(writeSharedMap(colMap, _))
           colMap
         } finally {
           iterator.close()
@@ -155,33 +207,40 @@ object MapAndListUtilities {
   }
 
   def getMultiHashMap(filename: String, iterator: LineIterator, caseInsensitive: Boolean, ic: Int,
-                      oc: Array[Int], session: GorSession): multiHashMap = {
+                      oc: Array[Int], session: GorSession, sourceSignature: String = null): multiHashMap = {
     val extFilename = "multimap" + filename + ic + oc.mkString(",")
     val ocl = oc.length
+    val sharedFile = getSharedMapFile(s"$extFilename\t$caseInsensitive", sourceSignature)
     syncGetMultiHashMap(extFilename, session) match {
       case Some(theMap) =>
         iterator.close()
         theMap
+      case None if sharedFile.exists(Files.exists(_)) =>
+        iterator.close()
+        val theMap = ArenaMultiMap.map(sharedFile.get)
+        syncAddMultiHashMap(extFilename, theMap, session)
+        theMap
       case None =>
         try {
-          val multiMap = new java.util.HashMap[String, Array[String]]()
+          val multiMap = new ArenaMultiMap()
+          var lines = 0L
           val mmu: MemoryMonitorUtil =  new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler)
 
           while (iterator.hasNext) {
             val x = iterator.nextLine
             val cols = x.split("\t", -1)
             mmu.check("getMultiHashMap", mmu.lineNum, x)
+            lines += 1
+            if (lines % RecordEveryLines == 0) multiMap.recordMemory(MemoryBudget.global())
             if (cols.length >= ic + ocl) {
               val (a, b) = (cols.slice(0, ic).mkString("\t"), (cols(oc.head) /: oc.tail.map(c => cols(c)))(_ + "\t" + _))
               val cisa = if (caseInsensitive) a.toUpperCase else a
-              if(multiMap.containsKey(cisa)) {
-                multiMap.put(cisa, (Array(b) ++ multiMap.get(cisa)).reverse)
-              } else {
-                multiMap.put(cisa, Array(b))
-              }
+              multiMap.add(cisa, b)
             }
           }
+          multiMap.recordMemory(MemoryBudget.global())
           syncAddMultiHashMap(extFilename, multiMap, session)
+          sharedFile.foreach(writeSharedMap(multiMap, _))
           multiMap
         } finally {
           iterator.close()
@@ -50,6 +50,11 @@ abstract class RowSource extends java.util.Iterator[Row] with AutoCloseable {
   def setPosition(seekChr: String, seekPos : Int)
   def moveToPosition(seekChr: String, seekPos : Int, maxReads: Int = 10000): Unit = setPosition(seekChr, seekPos)
   def close()
+  /**
+    * Stops reading ahead as soon as possible, the source then ends as if exhausted. Called when the rows are no
+    * longer wanted, possibly from another thread, sources reading on threads of their own or from nested sources
+    * pass it on.
+    */
   def terminateReading() { /* do nothing */ }
   def getHeader : String = header
   def setHeader(x : String) { header = x }
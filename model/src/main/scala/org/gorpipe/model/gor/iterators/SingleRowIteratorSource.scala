@@ -74,6 +74,11 @@ class SingleRowIteratorSource(theIterator: RowSource) extends RowSource{
   def close(): Unit = {
     theIterator.close()
   }
+
+  override def terminateReading(): Unit = {
+    theIterator.terminateReading()
+  }
+
   override def getHeader: String = theIterator.getHeader
 
   override def getGorHeader: GorHeader = theIterator.getGorHeader
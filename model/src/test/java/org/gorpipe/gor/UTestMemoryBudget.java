@@ -0,0 +1,165 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class UTestMemoryBudget {
+    private static final long MB = 1 << 20;
+
+    @Test
+    public void reservationsGrowInChunksWithinTheBudget() {
+        MemoryBudget budget = new MemoryBudget(10 * MB, 0, 0.9, 1000);
+        MemoryBudget.Reservation first = budget.reservation(null);
+        MemoryBudget.Reservation second = budget.reservation(null);
+
+        Assert.assertTrue(first.ensure(1));
+        Assert.assertEquals(MemoryBudget.CHUNK_BYTES, first.getBytes());
+        Assert.assertTrue(first.ensure(6 * MB));
+        Assert.assertEquals(8 * MB, first.getBytes());
+
+        // The chunk is cut down to what is left of the budget
+        Assert.assertTrue(second.ensure(MB));
+        Assert.assertEquals(2 * MB, second.getBytes());
+        Assert.assertFalse(second.ensure(3 * MB));
+        Assert.assertEquals(2 * MB, second.getBytes());
+        Assert.assertEquals(0, budget.getAvailableBytes());
+
+        first.release();
+        Assert.assertEquals(0, first.getBytes());
+        Assert.assertTrue(second.ensure(3 * MB));
+        Assert.assertEquals(6 * MB, budget.getUsedBytes());
+
+        second.close();
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void queriesAreLimitedByTheirQuota() {
+        MemoryBudget budget = new MemoryBudget(16 * MB, 6 * MB, 0.9, 1000);
+        MemoryBudget.Reservation a1 = budget.reservation("a");
+        MemoryBudget.Reservation a2 = budget.reservation("a");
+        MemoryBudget.Reservation b = budget.reservation("b");
+
+        Assert.assertTrue(a1.ensure(4 * MB));
+        Assert.assertTrue(a2.ensure(2 * MB));
+        Assert.assertFalse(a2.ensure(3 * MB));
+        Assert.assertEquals(6 * MB, budget.getQueryBytes("a"));
+        Assert.assertTrue(b.ensure(6 * MB));
+
+        a1.release();
+        Assert.assertEquals(2 * MB, budget.getQueryBytes("a"));
+        Assert.assertTrue(a2.ensure(6 * MB));
+        a2.release();
+        b.release();
+        Assert.assertEquals(0, budget.getQueryBytes("a"));
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void recordedMemoryMayExceedTheBudget() {
+        MemoryBudget budget = new MemoryBudget(4 * MB, 0, 0.9, 1000);
+        MemoryBudget.Reservation table = budget.reservation(null);
+        MemoryBudget.Reservation other = budget.reservation(null);
+
+        table.record(3 * MB);
+        Assert.assertEquals(3 * MB, table.getBytes());
+        table.record(5 * MB);
+        Assert.assertEquals(5 * MB, table.getBytes());
+        Assert.assertEquals(-MB, budget.getAvailableBytes());
+        Assert.assertFalse(other.ensure(1));
+
+        table.release();
+        Assert.assertTrue(other.ensure(1));
+        other.release();
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void admissionWaitsForMemoryToBeReleased() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(8 * MB, 0, 0.5, 60000);
+        MemoryBudget.Reservation running = budget.reservation("running");
+        Assert.assertTrue(running.ensure(8 * MB));
+
+        // A query that already holds memory is never blocked
+        budget.admit("running");
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            budget.admit("waiting");
+            admitted.countDown();
+        });
+        waiting.start();
+        Assert.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, budget.getWaitingQueries());
+
+        running.release();
+        Assert.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiting.join();
+        Assert.assertEquals(0, budget.getWaitingQueries());
+    }
+
+    @Test
+    public void queryHoldingMemoryIsAdmittedAheadOfWaitingQueries() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(8 * MB, 0, 0.5, 60000);
+        MemoryBudget.Reservation running = budget.reservation("running");
+        Assert.assertTrue(running.ensure(8 * MB));
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            budget.admit("waiting");
+            admitted.countDown();
+        });
+        waiting.start();
+        while (budget.getWaitingQueries() == 0) {
+            Thread.sleep(10);
+        }
+
+        // The running query starts a nested query while another one is queued
+        long start = System.nanoTime();
+        budget.admit("running");
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals(1, budget.getWaitingQueries());
+
+        running.release();
+        Assert.assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiting.join();
+    }
+
+    @Test
+    public void admissionGivesUpAfterTheTimeout() {
+        MemoryBudget budget = new MemoryBudget(8 * MB, 0, 0.5, 100);
+        MemoryBudget.Reservation running = budget.reservation("running");
+        Assert.assertTrue(running.ensure(8 * MB));
+
+        long start = System.nanoTime();
+        budget.admit("waiting");
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(0, budget.getWaitingQueries());
+        running.release();
+    }
+}
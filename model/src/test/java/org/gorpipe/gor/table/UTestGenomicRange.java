@@ -179,5 +179,26 @@ public class UTestGenomicRange {
         Assert.assertEquals("Format: Invalid number of tabs", "",
                 GenomicRange.parseGenomicRange("chr1\t10\tchr2").toString());
     }
+
+    @Test
+    public void testGenomicRangeOverlaps() {
+        GenomicRange range = new GenomicRange("chr2", 100, "chr2", 200);
+        Assert.assertTrue(range.overlaps("chr2", 0, 100));
+        Assert.assertTrue(range.overlaps("chr2", 200, 1000));
+        Assert.assertFalse(range.overlaps("chr2", 201, 1000));
+        Assert.assertFalse(range.overlaps("chr1", 0, 1000));
+
+        range = new GenomicRange("chr1", 100, "chr3", 200);
+        Assert.assertTrue("Chromosome within range", range.overlaps("chr2", 0, 10));
+        Assert.assertTrue("Chromosome sorts within range", range.overlaps("chr10", 0, 10));
+        Assert.assertFalse(range.overlaps("chr3", 300, 400));
+        Assert.assertFalse(range.overlaps("chrX", 0, 10));
+
+        range = new GenomicRange("chr2", 100, "", -1);
+        Assert.assertTrue("Open ended range", range.overlaps("chr2", 1000000, 2000000));
+        Assert.assertFalse(range.overlaps("chr3", 0, 10));
+
+        Assert.assertTrue("Empty range", GenomicRange.EMPTY_RANGE.overlaps("chr1", 0, 10));
+    }
     
 }
@@ -22,9 +22,57 @@
 
 package org.gorpipe.model.genome.files.gor;
 
+import org.junit.Assert;
+import org.junit.Test;
+
 public class UTestRowBase extends UTestRowImplementations {
 
     public Row createRow(CharSequence input) {
         return new RowBase(input);
     }
+
+    @Test
+    public void cachedValuesFollowColumnChanges() {
+        Row row = createRow("chr1\t10\t5\t0.5");
+        Assert.assertEquals(5, row.colAsInt(2));
+        Assert.assertEquals(0.5, row.colAsDouble(3), 0.0);
+
+        row.setColumn(0, "7");
+        Assert.assertEquals(7, row.colAsInt(2));
+        Assert.assertEquals(0.5, row.colAsDouble(3), 0.0);
+
+        row.addColumns(1);
+        row.setColumn(2, "2.5");
+        Assert.assertEquals(2.5, row.colAsDouble(4), 0.0);
+        Assert.assertEquals(7, row.colAsInt(2));
+
+        row.setColumns(new int[]{3}, new String[]{"0.25"});
+        Assert.assertEquals(0.25, row.colAsDouble(3), 0.0);
+
+        row.removeColumn(2);
+        Assert.assertEquals(0.25, row.colAsDouble(2), 0.0);
+        Assert.assertEquals(2.5, row.colAsDouble(3), 0.0);
+    }
+
+    @Test
+    public void cachedValuesAreCopiedToRowWithAddedColumns() {
+        Row row = createRow("chr1\t10\t5");
+        Assert.assertEquals(5, row.colAsInt(2));
+        Row added = row.rowWithAddedColumns(new CharSequence[]{"3"});
+        row.setColumn(0, "6");
+
+        Assert.assertEquals(6, row.colAsInt(2));
+        Assert.assertEquals(5, added.colAsInt(2));
+        Assert.assertEquals(3, added.colAsInt(3));
+    }
+
+    @Test
+    public void cachedValuesFollowInPlaceEdits() {
+        Row row = createRow(new StringBuilder("chr1\t10\t5"));
+        Assert.assertEquals(5, row.colAsInt(2));
+
+        ((StringBuilder) row.getAllCols()).setCharAt(8, '7');
+        row.columnsChanged();
+        Assert.assertEquals(7, row.colAsInt(2));
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.model.util;
+
+import org.gorpipe.gor.MemoryBudget;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class UTestArenaHashMap {
+
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private static String randomKey(Random random) {
+        int length = random.nextInt(12);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            key.append(random.nextInt(50) == 0 ? 'é' : (char) ('a' + random.nextInt(26)));
+        }
+        return key.toString();
+    }
+
+    private static List<String> entries(Map<String, String> map) {
+        List<String> entries = new ArrayList<>();
+        map.forEach((k, v) -> entries.add(k + "=" + v));
+        return entries;
+    }
+
+    @Test
+    public void testBehavesLikeHashMap() {
+        Random random = new Random(3);
+        Map<String, String> expected = new HashMap<>();
+        ArenaStringMap map = new ArenaStringMap();
+        for (int i = 0; i < 20000; i++) {
+            String key = randomKey(random);
+            String value = "v" + random.nextInt(1000);
+            Assert.assertEquals(expected.put(key, value), map.put(key, value));
+            if (i % 7 == 0) {
+                String other = randomKey(random);
+                Assert.assertEquals(expected.remove(other), map.remove(other));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (String key : expected.keySet()) Assert.assertEquals(expected.get(key), map.get(key));
+        Assert.assertNull(map.get("not a key"));
+        Assert.assertFalse(map.containsKey("not a key"));
+        Assert.assertEquals(entries(expected), entries(map));
+    }
+
+    @Test
+    public void testNonAsciiKeys() {
+        String[] keys = {"\u00e9", "a\u00e9b", "\u65e5\u672c", "\ud83d\ude00", "a?b", "\u00e9\u00e9"};
+        ArenaStringMap map = new ArenaStringMap();
+        Map<String, String> expected = new HashMap<>();
+        for (String key : keys) {
+            map.put(key, key + "=");
+            expected.put(key, key + "=");
+        }
+        for (String key : keys) Assert.assertEquals(expected.get(key), map.get(key));
+        Assert.assertNull(map.get("\u00e8"));
+        Assert.assertNull(map.get("\ud83d\ude01"));
+        Assert.assertNull(map.get("\u65e5"));
+        Assert.assertNull(map.get("\u00e9\u00e9\u00e9"));
+    }
+
+    @Test
+    public void testMultiMapKeepsLegacyOrder() {
+        ArenaMultiMap map = new ArenaMultiMap();
+        Map<String, String[]> expected = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            String key = "k" + (i % 4);
+            String value = "v" + i;
+            map.add(key, value);
+            String[] existing = expected.get(key);
+            if (existing == null) {
+                expected.put(key, new String[]{value});
+            } else {
+                String[] values = new String[existing.length + 1];
+                values[0] = value;
+                System.arraycopy(existing, 0, values, 1, existing.length);
+                for (int j = 0; j < values.length / 2; j++) {
+                    String tmp = values[j];
+                    values[j] = values[values.length - 1 - j];
+                    values[values.length - 1 - j] = tmp;
+                }
+                expected.put(key, values);
+            }
+            Assert.assertArrayEquals(expected.get(key), map.get(key));
+        }
+        map.put("k1", new String[]{"a", "b", "c"});
+        Assert.assertArrayEquals(new String[]{"a", "b", "c"}, map.get("k1"));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        ArenaStringMap map = new ArenaStringMap();
+        ArenaMultiMap multiMap = new ArenaMultiMap();
+        for (int i = 0; i < 100000; i++) {
+            map.put("key" + i, "value" + i);
+            multiMap.add("key" + (i % 1000), "value" + i);
+        }
+        map.remove("key7");
+        Path file = workDir.getRoot().toPath().resolve("map.gormap");
+        Path multiFile = workDir.getRoot().toPath().resolve("multimap.gormap");
+        map.writeTo(file);
+        multiMap.writeTo(multiFile);
+
+        ArenaStringMap mapped = ArenaStringMap.map(file);
+        Assert.assertEquals(map.size(), mapped.size());
+        Assert.assertEquals("value99999", mapped.get("key99999"));
+        Assert.assertNull(mapped.get("key7"));
+        Assert.assertEquals(entries(map), entries(mapped));
+        try {
+            mapped.put("key", "value");
+            Assert.fail("Mapped maps are read only");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        try {
+            mapped.remove("key8");
+            Assert.fail("Mapped maps are read only");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        Assert.assertEquals("value8", mapped.get("key8"));
+
+        ArenaMultiMap mappedMulti = ArenaMultiMap.map(multiFile);
+        Assert.assertEquals(1000, mappedMulti.size());
+        Assert.assertTrue(Arrays.equals(multiMap.get("key5"), mappedMulti.get("key5")));
+        Assert.assertEquals(100, mappedMulti.get("key5").length);
+    }
+
+    @Test
+    public void testRecordedMemoryIsReleased() {
+        MemoryBudget budget = new MemoryBudget(1L << 20, 0, 1.0, 0);
+        ArenaStringMap small = new ArenaStringMap();
+        small.put("buildPath", "ref/build");
+        small.recordMemory(budget);
+        Assert.assertEquals(0, budget.getUsedBytes());
+
+        // Large maps are recorded even beyond the budget
+        ArenaStringMap map = new ArenaStringMap();
+        for (int i = 0; i < 100000; i++) map.put("key" + i, "value" + i);
+        map.recordMemory(budget);
+        Assert.assertEquals(map.heapBytes(), budget.getUsedBytes());
+
+        map.releaseMemory();
+        Assert.assertEquals(0, budget.getUsedBytes());
+        map.recordMemory(budget);
+        map.clear();
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+}